@@ -0,0 +1,54 @@
+package com.darringer.games.chess.archive;
+
+import java.util.List;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.GameResult;
+
+/**
+ * A game replayed from an archive: the position it started from, the
+ * moves played, the position they led to and the result.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.archive.GameArchiveReader
+ *
+ */
+public class ArchivedGame {
+
+	private ChessModel start;
+	private List<ChessMove> moves;
+	private ChessModel end;
+	private GameResult result;
+
+
+	ArchivedGame(ChessModel start, List<ChessMove> moves, ChessModel end, GameResult result) {
+		this.start = start;
+		this.moves = moves;
+		this.end = end;
+		this.result = result;
+	}
+
+	public ChessModel getStart() {
+		return start;
+	}
+
+	public List<ChessMove> getMoves() {
+		return moves;
+	}
+
+	public ChessModel getEnd() {
+		return end;
+	}
+
+	public GameResult getResult() {
+		return result;
+	}
+
+
+	@Override
+	public String toString() {
+		return String.format("ArchivedGame[moves=%d, result=%s]", moves.size(), result);
+	}
+}
@@ -0,0 +1,164 @@
+package com.darringer.games.chess.archive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.darringer.games.chess.converter.ChessModelBinaryConverter;
+import com.darringer.games.chess.converter.ChessModelFENConverter;
+import com.darringer.games.chess.converter.ChessModelFastFENConverter;
+import com.darringer.games.chess.logic.GameLogic;
+import com.darringer.games.chess.logic.MoveLogic;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessParseException;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.GameResult;
+
+/**
+ * One block of a game archive, checked and in memory, ready to be
+ * replayed.  A block needs nothing from the blocks before it, so blocks
+ * can be replayed on as many threads as there are blocks.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.archive.GameArchiveReader
+ * @see com.darringer.games.chess.archive.GameArchiveWriter
+ *
+ */
+public class GameArchiveBlock {
+
+	private static final GameResult[] results = GameResult.values();
+
+	private byte[] bytes;
+	private int gameCount;
+	private long offset;
+
+
+	/**
+	 * @param bytes the games of the block, without its header
+	 * @param gameCount
+	 * @param offset of the games in the archive
+	 */
+	GameArchiveBlock(byte[] bytes, int gameCount, long offset) {
+		this.bytes = bytes;
+		this.gameCount = gameCount;
+		this.offset = offset;
+	}
+
+
+	/**
+	 * Number of games in the block
+	 *
+	 * @return
+	 */
+	public int getGameCount() {
+		return gameCount;
+	}
+
+
+	/**
+	 * Offset of the block's games in the archive
+	 *
+	 * @return
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+
+	/**
+	 * Offset in the archive of the block after this one
+	 *
+	 * @return
+	 */
+	public long getEndOffset() {
+		return offset + bytes.length;
+	}
+
+
+	/**
+	 * Replay every game in the block through {@link MoveLogic}, on the
+	 * calling thread, telling the listener about each move and game
+	 *
+	 * @param listener
+	 * @return number of games replayed
+	 * @throws ChessParseException if a game is cut short or has a move that isn't there
+	 * @throws ChessSystemException
+	 */
+	public int replay(GameArchiveListener listener) throws ChessSystemException {
+		GameLogic gameLogic = new GameLogic();
+		MoveLogic moveLogic = new MoveLogic();
+		ChessModelBinaryConverter binaryConverter = new ChessModelBinaryConverter();
+		ChessModelFastFENConverter fenConverter = new ChessModelFastFENConverter();
+		int position = 0;
+		for (int game=0; game < gameCount; game++) {
+			if (position >= bytes.length) {
+				throw getException("Block ends before its last game", position);
+			}
+			int flags = bytes[position++] & 0xff;
+			ChessModel start;
+			if ((flags & GameArchiveWriter.START_POSITION_FLAG) == 0) {
+				start = fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW);
+			} else {
+				if (position + ChessModelBinaryConverter.RECORD_SIZE > bytes.length) {
+					throw getException("Start position cut short", position);
+				}
+				try {
+					start = binaryConverter.getModelFromBytes(bytes, position);
+				} catch (ChessParseException cpe) {
+					throw getException(cpe.getMessage(), position + cpe.getOffset());
+				}
+				position += ChessModelBinaryConverter.RECORD_SIZE;
+			}
+
+			int moveCount = 0;
+			int shift = 0;
+			while (true) {
+				if ((position >= bytes.length) || (shift > 28)) {
+					throw getException("Invalid move count", position);
+				}
+				int value = bytes[position++] & 0xff;
+				moveCount |= (value & 0x7f) << shift;
+				shift += 7;
+				if ((value & 0x80) == 0) {
+					break;
+				}
+			}
+
+			List<ChessMove> moves = new ArrayList<ChessMove>(moveCount);
+			ChessModel model = new ChessModel(start);
+			long bits = 0l;
+			int pendingBits = 0;
+			for (int ply=0; ply < moveCount; ply++) {
+				List<ChessMove> legalMoves = GameArchiveWriter.getLegalMoves(gameLogic, model);
+				int width = GameArchiveWriter.getWidth(legalMoves.size());
+				while (pendingBits < width) {
+					if (position >= bytes.length) {
+						throw getException("Moves cut short", position);
+					}
+					bits = (bits << 8) | (bytes[position++] & 0xff);
+					pendingBits += 8;
+				}
+				pendingBits -= width;
+				int index = (int) (bits >>> pendingBits) & ((1 << width) - 1);
+				if (index >= legalMoves.size()) {
+					throw getException(String.format("Move %d of game %d is not legal", ply + 1, game + 1), position - 1);
+				}
+				ChessMove move = legalMoves.get(index);
+				listener.moveReplayed(model, move);
+				moves.add(move);
+				model = moveLogic.applyMoveToModel(model, move);
+			}
+			listener.gameReplayed(new ArchivedGame(start, moves, model, results[flags & GameArchiveWriter.RESULT_MASK]));
+		}
+		if (position != bytes.length) {
+			throw getException("Bytes left after the last game", position);
+		}
+		return gameCount;
+	}
+
+
+	private ChessParseException getException(String message, int position) {
+		return new ChessParseException(message, (int) Math.min(offset + position, Integer.MAX_VALUE));
+	}
+}
@@ -0,0 +1,36 @@
+package com.darringer.games.chess.archive;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+
+/**
+ * Callback interface for clients of the {@link GameArchiveReader}.  When
+ * blocks are replayed in parallel the listener is called from several
+ * threads at once, though the moves of any one game are replayed in
+ * order on a single thread.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.archive.GameArchiveReader
+ * @see com.darringer.games.chess.archive.ArchivedGame
+ *
+ */
+public interface GameArchiveListener {
+
+	/**
+	 * A move is about to be replayed.  The model is then changed by the
+	 * move, so anything needed later must be copied before returning.
+	 *
+	 * @param model the position the move is played from
+	 * @param move
+	 */
+	void moveReplayed(ChessModel model, ChessMove move);
+
+
+	/**
+	 * Every move of a game has been replayed
+	 *
+	 * @param game
+	 */
+	void gameReplayed(ArchivedGame game);
+}
@@ -0,0 +1,248 @@
+package com.darringer.games.chess.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import com.darringer.games.chess.model.ChessParseException;
+import com.darringer.games.chess.model.ChessSystemException;
+
+/**
+ * Reads a game archive written by {@link GameArchiveWriter} a block at a
+ * time, so archives of any size stream through in the memory of a few
+ * blocks, and replays its games through
+ * {@link com.darringer.games.chess.logic.MoveLogic} for a
+ * {@link GameArchiveListener}.  Each block's checksum is verified as it
+ * is read.
+ * <p />
+ * Blocks can be replayed one after another on the reading thread, or
+ * handed to an {@link Executor} to be replayed in parallel, or read with
+ * {@link #readBlock(ReadableByteChannel, long)} and replayed however the
+ * caller likes.  A reader keeps no state of its own between blocks, so
+ * one reader can read several archives at once.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.archive.GameArchiveWriter
+ * @see com.darringer.games.chess.archive.GameArchiveBlock
+ *
+ */
+public class GameArchiveReader {
+
+	private static Logger log = Logger.getLogger(GameArchiveReader.class);
+
+	/* blocks read ahead of the oldest one still being replayed */
+	public static final int DEFAULT_BLOCKS_IN_FLIGHT = 64;
+
+	private GameArchiveListener listener;
+	private int blocksInFlight = DEFAULT_BLOCKS_IN_FLIGHT;
+
+
+	/**
+	 * @param listener
+	 */
+	public GameArchiveReader(GameArchiveListener listener) {
+		this.listener = listener;
+	}
+
+
+	/**
+	 * Set how many blocks may be read ahead while replaying in parallel
+	 * (the default is {@link #DEFAULT_BLOCKS_IN_FLIGHT})
+	 *
+	 * @param blocksInFlight
+	 */
+	public void setBlocksInFlight(int blocksInFlight) {
+		this.blocksInFlight = blocksInFlight;
+	}
+
+
+	/**
+	 * Replay all the games in the given file on this thread
+	 *
+	 * @param file
+	 * @return number of games replayed
+	 * @throws ChessSystemException
+	 */
+	public long read(File file) throws ChessSystemException {
+		return read(file, null);
+	}
+
+
+	/**
+	 * Replay all the games in the given file, a block at a time on the
+	 * given {@link Executor} (or on this thread if it is <code>null</code>)
+	 *
+	 * @param file
+	 * @param executor
+	 * @return number of games replayed
+	 * @throws ChessSystemException
+	 */
+	public long read(File file, Executor executor) throws ChessSystemException {
+		try {
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				return read(channel, executor);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+	}
+
+
+	/**
+	 * Replay all the games in the given channel on this thread
+	 *
+	 * @param channel
+	 * @return number of games replayed
+	 * @throws ChessSystemException
+	 */
+	public long read(ReadableByteChannel channel) throws ChessSystemException {
+		return read(channel, null);
+	}
+
+
+	/**
+	 * Replay all the games in the given channel, a block at a time on the
+	 * given {@link Executor} (or on this thread if it is <code>null</code>).
+	 * The listener must be safe to call from the executor's threads.
+	 *
+	 * @param channel
+	 * @param executor
+	 * @return number of games replayed
+	 * @throws ChessSystemException
+	 */
+	public long read(ReadableByteChannel channel, Executor executor) throws ChessSystemException {
+		long offset = 0l;
+		long gameCount = 0l;
+		Deque<CompletableFuture<Integer>> futures = new ArrayDeque<CompletableFuture<Integer>>();
+		try {
+			GameArchiveBlock block;
+			while ((block = readBlock(channel, offset)) != null) {
+				offset = block.getEndOffset();
+				if (executor == null) {
+					gameCount += block.replay(listener);
+				} else {
+					if (futures.size() >= blocksInFlight) {
+						gameCount += join(futures.removeFirst());
+					}
+					futures.addLast(replay(block, executor));
+				}
+			}
+			while (!futures.isEmpty()) {
+				gameCount += join(futures.removeFirst());
+			}
+		} finally {
+			for (CompletableFuture<Integer> future : futures) {
+				future.cancel(false);
+			}
+		}
+		log.debug(String.format("Replayed %d games from %d bytes", gameCount, offset));
+		return gameCount;
+	}
+
+
+	/**
+	 * Read the next block from the given channel and check it.  The block
+	 * after it starts at {@link GameArchiveBlock#getEndOffset()}.
+	 *
+	 * @param channel
+	 * @param offset of the block in the archive, where the channel is
+	 * @return the block, or <code>null</code> at the end of the archive
+	 * @throws ChessSystemException if it can't be read, or is not a whole block
+	 */
+	public GameArchiveBlock readBlock(ReadableByteChannel channel, long offset) throws ChessSystemException {
+		ByteBuffer header = ByteBuffer.allocate(GameArchiveWriter.BLOCK_HEADER_SIZE);
+		if (!readFully(channel, header)) {
+			if (header.position() == 0) {
+				return null;
+			}
+			throw new ChessParseException("Block header cut short", (int) Math.min(offset, Integer.MAX_VALUE));
+		}
+		int magic = header.getInt(0);
+		int gameCount = header.getInt(4);
+		int length = header.getInt(8);
+		int checksum = header.getInt(12);
+		if ((magic != GameArchiveWriter.MAGIC) || (gameCount < 0) || (length < 0) || (length > GameArchiveWriter.MAX_BLOCK_SIZE)) {
+			throw new ChessParseException("Not a game archive block", (int) Math.min(offset, Integer.MAX_VALUE));
+		}
+		long blockOffset = offset + GameArchiveWriter.BLOCK_HEADER_SIZE;
+		byte[] bytes = new byte[length];
+		if (!readFully(channel, ByteBuffer.wrap(bytes))) {
+			throw new ChessParseException("Block cut short", (int) Math.min(blockOffset, Integer.MAX_VALUE));
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, length);
+		if ((int) crc.getValue() != checksum) {
+			throw new ChessParseException("Block checksum does not match", (int) Math.min(blockOffset, Integer.MAX_VALUE));
+		}
+		return new GameArchiveBlock(bytes, gameCount, blockOffset);
+	}
+
+
+	private CompletableFuture<Integer> replay(final GameArchiveBlock block, Executor executor) {
+		final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+		executor.execute(new Runnable() {
+			public void run() {
+				if (future.isCancelled()) {
+					return;
+				}
+				try {
+					future.complete(block.replay(listener));
+				} catch (Throwable throwable) {
+					future.completeExceptionally(throwable);
+				}
+			}
+		});
+		return future;
+	}
+
+
+	private static int join(CompletableFuture<Integer> future) throws ChessSystemException {
+		try {
+			return future.join();
+		} catch (CompletionException ce) {
+			Throwable cause = ce.getCause();
+			if (cause instanceof ChessSystemException) {
+				throw (ChessSystemException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ChessSystemException(cause);
+		}
+	}
+
+
+	/**
+	 * Fill the buffer from the channel
+	 *
+	 * @return <code>false</code> if the channel ended first
+	 */
+	private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer) throws ChessSystemException {
+		try {
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					return false;
+				}
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+		return true;
+	}
+}
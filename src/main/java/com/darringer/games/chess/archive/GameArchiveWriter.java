@@ -0,0 +1,344 @@
+package com.darringer.games.chess.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import com.darringer.games.chess.converter.ChessModelBinaryConverter;
+import com.darringer.games.chess.converter.ChessModelFENConverter;
+import com.darringer.games.chess.converter.ChessModelFastFENConverter;
+import com.darringer.games.chess.logic.GameLogic;
+import com.darringer.games.chess.logic.MoveLogic;
+import com.darringer.games.chess.model.ChessInvalidMoveException;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.GameResult;
+
+/**
+ * Writes games to an archive, for keeping every game played in a
+ * fraction of the space of a log of FEN strings.  Each move is stored as
+ * its index in the list of legal moves of the position it was played
+ * from, in just enough bits to tell that many moves apart, so a typical
+ * move takes five or six bits and a forced one none at all.  The legal
+ * moves are sorted by from square, to square and promotion piece (see
+ * {@link #getLegalMoves(GameLogic, ChessModel)}), since the order
+ * {@link GameLogic#getLegalMoves(ChessModel, com.darringer.games.chess.model.Color)}
+ * generates them in is not fixed from one run to the next.
+ * <p />
+ * An archive is a series of blocks, each of which can be checked and
+ * replayed on its own (see {@link GameArchiveReader}).  A block starts
+ * with a {@link #BLOCK_HEADER_SIZE} byte header: {@link #MAGIC}, the
+ * number of games, the number of bytes of games that follow and their
+ * CRC-32, all big endian.  Then come the games, each of them:
+ * <ul>
+ *   <li>a flags byte: the {@link GameResult} ordinal in bits 0-1, bit 2
+ *   set when the game did not start from the initial position</li>
+ *   <li>if so, the start position as a {@link ChessModelBinaryConverter}
+ *   record</li>
+ *   <li>the number of moves, seven bits to a byte, lowest first, with
+ *   the top bit set on all but the last byte</li>
+ *   <li>the move indices, most significant bit first, padded with zeros
+ *   to a whole byte</li>
+ * </ul>
+ * Games are collected in memory and written a block at a time, once
+ * there are at least {@link #setBlockSize(int)} bytes of them, or before
+ * a game that would take the block past {@link #MAX_BLOCK_SIZE} bytes, so
+ * a reader never has to hold more than that to check a block.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.archive.GameArchiveReader
+ *
+ */
+public class GameArchiveWriter {
+
+	private static Logger log = Logger.getLogger(GameArchiveWriter.class);
+
+	/* "GARC" */
+	static final int MAGIC = 0x47415243;
+
+	static final int BLOCK_HEADER_SIZE = 16;
+
+	/* bytes of games per block */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+	/* no block has more bytes of games than this, whatever the block size */
+	static final int MAX_BLOCK_SIZE = 1 << 24;
+
+	/* bits of the flags byte */
+	static final int RESULT_MASK = 3;
+	static final int START_POSITION_FLAG = 4;
+
+	/* the order of the legal moves that move indices refer to */
+	private static final Comparator<ChessMove> MOVE_ORDER = new Comparator<ChessMove>() {
+		@Override
+		public int compare(ChessMove move1, ChessMove move2) {
+			int result = move1.getFrom().ordinal() - move2.getFrom().ordinal();
+			if (result == 0) {
+				result = move1.getTo().ordinal() - move2.getTo().ordinal();
+			}
+			if (result == 0) {
+				result = move1.getPawnPromotionPiece().ordinal() - move2.getPawnPromotionPiece().ordinal();
+			}
+			return result;
+		}
+	};
+
+	private WritableByteChannel channel;
+	private int blockSize = DEFAULT_BLOCK_SIZE;
+	private GameLogic gameLogic = new GameLogic();
+	private MoveLogic moveLogic = new MoveLogic();
+	private ChessModelBinaryConverter binaryConverter = new ChessModelBinaryConverter();
+	private byte[] initialRecord;
+	private byte[] block = new byte[BLOCK_HEADER_SIZE + 1024];
+	private int blockLength = BLOCK_HEADER_SIZE;
+	private int blockGameCount;
+	private int[] indices = new int[256];
+	private int[] widths = new int[256];
+	private long gameCount;
+	private long byteCount;
+
+
+	/**
+	 * Write an archive to the given file, replacing anything in it
+	 *
+	 * @param file
+	 * @throws ChessSystemException
+	 */
+	public GameArchiveWriter(File file) throws ChessSystemException {
+		this(openFile(file));
+	}
+
+
+	/**
+	 * Write an archive to the given channel
+	 *
+	 * @param channel
+	 * @throws ChessSystemException
+	 */
+	public GameArchiveWriter(WritableByteChannel channel) throws ChessSystemException {
+		this.channel = channel;
+		initialRecord = binaryConverter.getBytesFromModel(new ChessModelFastFENConverter().getModelFromString(ChessModelFENConverter.FEN_NEW));
+	}
+
+
+	/**
+	 * Set the number of bytes of games collected before a block is written
+	 * (the default is {@link #DEFAULT_BLOCK_SIZE}).  Larger blocks save a
+	 * little space, smaller ones split the work of replaying an archive
+	 * more finely.  No block grows past {@link #MAX_BLOCK_SIZE} bytes
+	 * however large this is.
+	 *
+	 * @param blockSize
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+
+	/**
+	 * Number of games added
+	 *
+	 * @return
+	 */
+	public long getGameCount() {
+		return gameCount;
+	}
+
+
+	/**
+	 * Number of bytes written to the channel so far
+	 *
+	 * @return
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+
+	/**
+	 * Add a game to the archive
+	 *
+	 * @param start position before the first move
+	 * @param moves moves played, in order
+	 * @param result
+	 * @throws ChessInvalidMoveException if a move is not legal, in which case nothing is added
+	 * @throws ChessSystemException if a block can't be written, or the game is too long for one
+	 */
+	public void addGame(ChessModel start, List<ChessMove> moves, GameResult result) throws ChessInvalidMoveException, ChessSystemException {
+		// find every move before writing anything
+		if (indices.length < moves.size()) {
+			indices = new int[Math.max(moves.size(), indices.length * 2)];
+			widths = new int[indices.length];
+		}
+		ChessModel model = new ChessModel(start);
+		int bitCount = 0;
+		for (int ply=0; ply < moves.size(); ply++) {
+			ChessMove move = moves.get(ply);
+			List<ChessMove> legalMoves = getLegalMoves(gameLogic, model);
+			int index = getIndex(legalMoves, move);
+			if (index < 0) {
+				throw new ChessInvalidMoveException(String.format("Move %d (%s) is not legal", ply + 1, move));
+			}
+			indices[ply] = index;
+			widths[ply] = getWidth(legalMoves.size());
+			bitCount += widths[ply];
+			model = moveLogic.applyMoveToModel(model, legalMoves.get(index));
+		}
+		byte[] startRecord = binaryConverter.getBytesFromModel(start);
+		boolean isInitial = Arrays.equals(startRecord, initialRecord);
+
+		int gameLength = 1 + (isInitial ? 0 : startRecord.length) + 5 + ((bitCount + 7) >>> 3);
+		if (gameLength > MAX_BLOCK_SIZE) {
+			throw new ChessSystemException(String.format("Game of %d moves is too long for a block", moves.size()));
+		}
+		if ((blockLength - BLOCK_HEADER_SIZE) + gameLength > MAX_BLOCK_SIZE) {
+			writeBlock();
+		}
+		ensureCapacity(gameLength);
+		block[blockLength++] = (byte) (result.ordinal() | (isInitial ? 0 : START_POSITION_FLAG));
+		if (!isInitial) {
+			System.arraycopy(startRecord, 0, block, blockLength, startRecord.length);
+			blockLength += startRecord.length;
+		}
+		int moveCount = moves.size();
+		while (moveCount >= 0x80) {
+			block[blockLength++] = (byte) ((moveCount & 0x7f) | 0x80);
+			moveCount >>>= 7;
+		}
+		block[blockLength++] = (byte) moveCount;
+
+		long bits = 0l;
+		int pendingBits = 0;
+		for (int ply=0; ply < moves.size(); ply++) {
+			bits = (bits << widths[ply]) | indices[ply];
+			pendingBits += widths[ply];
+			while (pendingBits >= 8) {
+				pendingBits -= 8;
+				block[blockLength++] = (byte) (bits >>> pendingBits);
+			}
+		}
+		if (pendingBits > 0) {
+			block[blockLength++] = (byte) (bits << (8 - pendingBits));
+		}
+
+		blockGameCount++;
+		gameCount++;
+		if (blockLength - BLOCK_HEADER_SIZE >= blockSize) {
+			writeBlock();
+		}
+	}
+
+
+	/**
+	 * Write the games collected so far as a block of their own
+	 *
+	 * @throws ChessSystemException
+	 */
+	public void flush() throws ChessSystemException {
+		if (blockGameCount > 0) {
+			writeBlock();
+		}
+	}
+
+
+	/**
+	 * Write the games collected so far and close the channel
+	 *
+	 * @throws ChessSystemException
+	 */
+	public void close() throws ChessSystemException {
+		try {
+			flush();
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException ioe) {
+				throw new ChessSystemException(ioe);
+			}
+		}
+		log.debug(String.format("Archived %d games in %d bytes", gameCount, byteCount));
+	}
+
+
+	/**
+	 * Bits needed to tell the given number of moves apart
+	 */
+	static int getWidth(int moveCount) {
+		return (moveCount <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(moveCount - 1));
+	}
+
+
+	/**
+	 * Legal moves of the side to move, in the order move indices refer to
+	 */
+	static List<ChessMove> getLegalMoves(GameLogic gameLogic, ChessModel model) {
+		List<ChessMove> legalMoves = gameLogic.getLegalMoves(model, model.getActiveColor());
+		Collections.sort(legalMoves, MOVE_ORDER);
+		return legalMoves;
+	}
+
+
+	/**
+	 * Index of the legal move with the same squares (and promotion piece)
+	 * as the given move
+	 */
+	private static int getIndex(List<ChessMove> legalMoves, ChessMove move) {
+		for (int i=0; i < legalMoves.size(); i++) {
+			ChessMove legalMove = legalMoves.get(i);
+			if ((legalMove.getFrom() == move.getFrom()) && (legalMove.getTo() == move.getTo())
+					&& (legalMove.getPawnPromotionPiece() == move.getPawnPromotionPiece())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+
+	private void ensureCapacity(int length) {
+		if (blockLength + length > block.length) {
+			block = Arrays.copyOf(block, Math.max(blockLength + length, block.length * 2));
+		}
+	}
+
+
+	private void writeBlock() throws ChessSystemException {
+		CRC32 crc = new CRC32();
+		crc.update(block, BLOCK_HEADER_SIZE, blockLength - BLOCK_HEADER_SIZE);
+		ByteBuffer buffer = ByteBuffer.wrap(block, 0, blockLength);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, blockGameCount);
+		buffer.putInt(8, blockLength - BLOCK_HEADER_SIZE);
+		buffer.putInt(12, (int) crc.getValue());
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+		byteCount += blockLength;
+		blockLength = BLOCK_HEADER_SIZE;
+		blockGameCount = 0;
+	}
+
+
+	private static WritableByteChannel openFile(File file) throws ChessSystemException {
+		try {
+			return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package com.darringer.games.chess.book;
+
+import com.darringer.games.chess.model.ChessModel;
+
+/**
+ * Hashes a {@link ChessModel} into the 64 bit key its moves are stored
+ * under in an {@link OpeningBook}.  A book can only be read with the
+ * same keys it was built with.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.book.OpeningBook
+ *
+ */
+public interface BookKey {
+
+	/**
+	 * Key of the given position
+	 * 
+	 * @param model
+	 * @return
+	 */
+	long getKey(ChessModel model);
+}
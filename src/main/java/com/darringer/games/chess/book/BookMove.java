@@ -0,0 +1,96 @@
+package com.darringer.games.chess.book;
+
+import com.darringer.games.chess.model.ChessMove;
+
+/**
+ * A candidate {@link ChessMove} from an {@link OpeningBook}, with its
+ * weight: how often it should be played, relative to the other moves
+ * for the same position.  A move with weight zero is in the book but
+ * should not be played.  Books built by {@link OpeningBookBuilder} also
+ * know how many games the move won, drew and lost for the side that 
+ * played it.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.book.OpeningBook
+ *
+ */
+public class BookMove {
+	
+	/* game counts of a book without statistics */
+	public static final int UNKNOWN = -1;
+	
+	private ChessMove move;
+	private int weight;
+	private int wins = UNKNOWN;
+	private int draws = UNKNOWN;
+	private int losses = UNKNOWN;
+	
+	/**
+	 * 
+	 * @param move
+	 * @param weight
+	 */
+	public BookMove(ChessMove move, int weight) {
+		this.move = move;
+		this.weight = weight;
+	}
+	
+	/**
+	 * 
+	 * @param move
+	 * @param weight
+	 * @param wins
+	 * @param draws
+	 * @param losses
+	 */
+	public BookMove(ChessMove move, int weight, int wins, int draws, int losses) {
+		this(move, weight);
+		this.wins = wins;
+		this.draws = draws;
+		this.losses = losses;
+	}
+
+	public ChessMove getMove() {
+		return move;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Games won by the side that played the move, or {@link #UNKNOWN}
+	 * 
+	 * @return
+	 */
+	public int getWins() {
+		return wins;
+	}
+
+	/**
+	 * Games drawn after the move, or {@link #UNKNOWN}
+	 * 
+	 * @return
+	 */
+	public int getDraws() {
+		return draws;
+	}
+
+	/**
+	 * Games lost by the side that played the move, or {@link #UNKNOWN}
+	 * 
+	 * @return
+	 */
+	public int getLosses() {
+		return losses;
+	}
+	
+	@Override
+	public String toString() {
+		if (wins == UNKNOWN) {
+			return String.format("%s (%d)", move, weight);
+		}
+		return String.format("%s (%d: +%d =%d -%d)", move, weight, wins, draws, losses);
+	}
+}
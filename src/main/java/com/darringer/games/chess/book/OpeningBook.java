@@ -0,0 +1,311 @@
+package com.darringer.games.chess.book;
+
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.darringer.games.chess.logic.GameStateLogic;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessMoveType;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * An opening book in the Polyglot <code>.bin</code> format, read through
+ * a memory mapped file.  The file is a list of 16 byte big endian
+ * entries sorted by position key: the key (8 bytes), the move (2 bytes),
+ * its weight (2 bytes) and a learning value (4 bytes, unused here).  A
+ * position's moves are found with a binary search for its key, so a
+ * lookup touches a handful of pages however large the book is.
+ * <p />
+ * A move is packed as <code>to file, to row, from file, from row</code>
+ * (3 bits each, lowest first) followed by the promotion piece (1 knight,
+ * 2 bishop, 3 rook, 4 queen).  Castling is written as the king capturing
+ * its own rook.
+ * <p />
+ * The win, draw and loss counts behind the weights don't fit in an entry,
+ * so books built by {@link OpeningBookBuilder} keep them in a statistics
+ * file alongside (see {@link #getStatisticsFile(File)}): three big endian
+ * ints per entry, in the same order as the entries.  Other tools just
+ * ignore it, and a book without one is read all the same.
+ * <p />
+ * Keys are pluggable with a {@link BookKey}.  The default is the standard
+ * Polyglot hash ({@link PolyglotKey}), so books built by other tools can
+ * be read as they are.  Books keyed by our own 
+ * {@link ChessModel#getPositionKey()} are read with {@link #POSITION_KEY}.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.book.BookKey
+ * @see com.darringer.games.chess.book.BookMove
+ * @see com.darringer.games.chess.book.PolyglotKey
+ *
+ */
+public class OpeningBook {
+
+	/* bytes per entry */
+	static final int ENTRY_SIZE = 16;
+
+	/* bytes per entry of the statistics file: wins, draws and losses */
+	static final int STATISTICS_ENTRY_SIZE = 12;
+
+	/* the default keys, the standard Polyglot hash */
+	public static final BookKey POLYGLOT_KEY = new PolyglotKey();
+
+	/* our own position keys, only understood by this library */
+	public static final BookKey POSITION_KEY = new BookKey() {
+		public long getKey(ChessModel model) {
+			return model.getPositionKey();
+		}
+	};
+
+	/* promotion pieces by their code in a move */
+	private static final Piece[] whitePromotionPieces = {None, WhiteKnight, WhiteBishop, WhiteRook, WhiteQueen};
+	private static final Piece[] blackPromotionPieces = {None, BlackKnight, BlackBishop, BlackRook, BlackQueen};
+
+	private BookKey bookKey;
+	private MappedByteBuffer entries;
+	private MappedByteBuffer statistics;
+	private int entryCount;
+	private GameStateLogic gameStateLogic = new GameStateLogic();
+
+
+	/**
+	 * Map the book in the given file, keyed by {@link #POLYGLOT_KEY}
+	 *
+	 * @param file
+	 * @throws ChessSystemException
+	 */
+	public OpeningBook(File file) throws ChessSystemException {
+		this(file, POLYGLOT_KEY);
+	}
+
+
+	/**
+	 * Map the book in the given file, keyed by the given {@link BookKey},
+	 * and its statistics file if it has one
+	 *
+	 * @param file
+	 * @param bookKey
+	 * @throws ChessSystemException if the file can't be read or is not a book
+	 */
+	public OpeningBook(File file, BookKey bookKey) throws ChessSystemException {
+		this.bookKey = bookKey;
+		try {
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				long length = in.length();
+				if ((length % ENTRY_SIZE) != 0) {
+					throw new ChessSystemException(String.format("%s is not an opening book", file));
+				}
+				entries = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+				entryCount = (int) (length / ENTRY_SIZE);
+			} finally {
+				in.close();
+			}
+			File statisticsFile = getStatisticsFile(file);
+			if (statisticsFile.exists()) {
+				in = new RandomAccessFile(statisticsFile, "r");
+				try {
+					long length = in.length();
+					if (length != ((long) entryCount) * STATISTICS_ENTRY_SIZE) {
+						throw new ChessSystemException(String.format("%s does not match the book", statisticsFile));
+					}
+					statistics = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+				} finally {
+					in.close();
+				}
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+	}
+
+
+	/**
+	 * The statistics file of the book in the given file
+	 *
+	 * @param file
+	 * @return
+	 */
+	public static File getStatisticsFile(File file) {
+		return new File(file.getPath() + ".wdl");
+	}
+
+
+	/**
+	 * Number of entries (positions and moves) in the book
+	 *
+	 * @return
+	 */
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+
+	/**
+	 * Does the book know the win, draw and loss counts of its moves?
+	 *
+	 * @return
+	 */
+	public boolean hasStatistics() {
+		return (statistics != null);
+	}
+
+
+	/**
+	 * The legal book moves for the given {@link ChessModel}, for its
+	 * active color, in the order they are stored in the book (typically
+	 * strongest first).  Empty if the position is not in the book.
+	 *
+	 * @param model
+	 * @return
+	 */
+	public List<BookMove> getMoves(ChessModel model) {
+		List<BookMove> moves = new ArrayList<BookMove>();
+		long key = bookKey.getKey(model);
+		for (int i=getFirstEntry(key); (i < entryCount) && (getKey(i) == key); i++) {
+			int offset = i * ENTRY_SIZE;
+			ChessMove move = decodeMove(model, entries.getShort(offset + 8) & 0xffff, gameStateLogic);
+			if (move == null) {
+				continue;
+			}
+			int weight = entries.getShort(offset + 10) & 0xffff;
+			if (statistics == null) {
+				moves.add(new BookMove(move, weight));
+			} else {
+				int statisticsOffset = i * STATISTICS_ENTRY_SIZE;
+				moves.add(new BookMove(move, weight, statistics.getInt(statisticsOffset), 
+						statistics.getInt(statisticsOffset + 4), statistics.getInt(statisticsOffset + 8)));
+			}
+		}
+		return moves;
+	}
+
+
+	/**
+	 * Pick one of the book moves for the given {@link ChessModel} at
+	 * random, each in proportion to its weight.
+	 *
+	 * @param model
+	 * @param random
+	 * @return the move, or <code>null</code> if the book has none to play
+	 */
+	public ChessMove getMove(ChessModel model, Random random) {
+		List<BookMove> moves = getMoves(model);
+		int totalWeight = 0;
+		for (BookMove move : moves) {
+			totalWeight += move.getWeight();
+		}
+		if (totalWeight == 0) {
+			return null;
+		}
+		int choice = random.nextInt(totalWeight);
+		for (BookMove move : moves) {
+			choice -= move.getWeight();
+			if (choice < 0) {
+				return move.getMove();
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Pack the given {@link ChessMove} as it is stored in a book
+	 *
+	 * @param move
+	 * @return
+	 */
+	static int encodeMove(ChessMove move) {
+		Location from = move.getFrom();
+		Location to = move.getTo();
+		int toX = to.getX();
+		if (move.getType() == ChessMoveType.CastleKingSide) {
+			toX = 7;
+		} else if (move.getType() == ChessMoveType.CastleQueenSide) {
+			toX = 0;
+		}
+		int promotion = 0;
+		Piece promotionPiece = move.getPawnPromotionPiece();
+		for (int i=1; i < whitePromotionPieces.length; i++) {
+			if ((promotionPiece == whitePromotionPieces[i]) || (promotionPiece == blackPromotionPieces[i])) {
+				promotion = i;
+			}
+		}
+		return toX | (to.getY() << 3) | (from.getX() << 6) | (from.getY() << 9) | (promotion << 12);
+	}
+
+
+	/**
+	 * Find the legal {@link ChessMove} in the given {@link ChessModel}
+	 * that was packed as the given book move
+	 *
+	 * @param model
+	 * @param encodedMove
+	 * @param gameStateLogic
+	 * @return the move, or <code>null</code> if there is no such legal move
+	 */
+	static ChessMove decodeMove(ChessModel model, int encodedMove, GameStateLogic gameStateLogic) {
+		Location from = Location.get((encodedMove >>> 6) & 7, (encodedMove >>> 9) & 7);
+		int toX = encodedMove & 7;
+		int toY = (encodedMove >>> 3) & 7;
+		int promotion = (encodedMove >>> 12) & 7;
+		Piece piece = model.getPieceAtLocation(from);
+		if ((piece == None) || (piece.getColor() != model.getActiveColor()) || (promotion >= whitePromotionPieces.length)) {
+			return null;
+		}
+
+		// the king taking its own rook is castling
+		boolean isCastling = ((piece == WhiteKing) || (piece == BlackKing)) && (from.getX() == 4) && (toY == from.getY())
+				&& ((toX == 0) || (toX == 7));
+		if (isCastling) {
+			toX = (toX == 7 ? 6 : 2);
+		}
+		Location to = Location.get(toX, toY);
+		Piece promotionPiece = (piece.getColor() == White ? whitePromotionPieces : blackPromotionPieces)[promotion];
+		for (ChessMove move : piece.getLogic().getPossibleMoves(model, from)) {
+			if ((move.getTo() == to) && (move.getPawnPromotionPiece() == promotionPiece)) {
+				return (gameStateLogic.isLegalMove(model, move) ? move : null);
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Index of the first entry whose key is not less than the given key
+	 * (keys compare as unsigned numbers)
+	 *
+	 * @param key
+	 * @return
+	 */
+	private int getFirstEntry(long key) {
+		int low = 0;
+		int high = entryCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (Long.compareUnsigned(getKey(middle), key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+
+	private long getKey(int entry) {
+		return entries.getLong(entry * ENTRY_SIZE);
+	}
+}
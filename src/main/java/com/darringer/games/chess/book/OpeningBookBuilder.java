@@ -0,0 +1,547 @@
+package com.darringer.games.chess.book;
+
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.GameResult.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+import com.darringer.games.chess.converter.ChessModelFENConverter;
+import com.darringer.games.chess.logic.MoveLogic;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.Color;
+import com.darringer.games.chess.model.GameResult;
+import com.darringer.games.chess.pgn.PgnGame;
+import com.darringer.games.chess.pgn.PgnGameListener;
+import com.darringer.games.chess.pgn.PgnReader;
+
+/**
+ * Builds an {@link OpeningBook} from games in PGN, streamed through a
+ * {@link PgnReader}.  Each game is replayed through {@link MoveLogic} 
+ * from the standard starting position, and every move played in the 
+ * first few plies is counted as a win, draw or loss for the side that 
+ * played it.  The counts go in the book's statistics file, and the weight
+ * of a book move is two points per win and one per draw.  Books are keyed
+ * by {@link PolyglotKey} unless told otherwise, so other tools can read
+ * them.
+ * <p />
+ * Counts are kept in memory only up to a limit.  When it is reached they
+ * are sorted and spilled to a temporary run file, and {@link #build(File)}
+ * merges the runs into the book, adding up the counts of the same move
+ * from different runs.  At most {@link #setMergeFanIn(int)} runs are 
+ * merged at once, so when there are more, groups of them are first 
+ * merged into longer runs.  Memory use and open files are bounded however
+ * many games are read, at the cost of a few extra passes over the disk.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.book.OpeningBook
+ *
+ */
+public class OpeningBookBuilder {
+
+	private static Logger log = Logger.getLogger(OpeningBookBuilder.class);
+
+	/* moves are counted up to this many plies into the game */
+	public static final int DEFAULT_MAX_PLY = 20;
+
+	/* distinct (position, move) pairs held in memory before spilling a run */
+	public static final int DEFAULT_MAX_ENTRIES_IN_MEMORY = 1 << 18;
+
+	/* runs merged (and open) at once */
+	public static final int DEFAULT_MERGE_FAN_IN = 64;
+
+	/* the largest weight that fits in a book entry */
+	private static final int MAX_WEIGHT = 0xffff;
+
+	/* runs are sorted by key (unsigned, like the book) and then by move */
+	private static final Comparator<BookEntry> entryComparator = new Comparator<BookEntry>() {
+		public int compare(BookEntry entry1, BookEntry entry2) {
+			int result = Long.compareUnsigned(entry1.key, entry2.key);
+			return (result != 0 ? result : entry1.move - entry2.move);
+		}
+	};
+
+	private BookKey bookKey;
+	private int maxPly = DEFAULT_MAX_PLY;
+	private int maxEntriesInMemory = DEFAULT_MAX_ENTRIES_IN_MEMORY;
+	private int mergeFanIn = DEFAULT_MERGE_FAN_IN;
+	private int minGames = 1;
+	private File tempDirectory;
+	private ChessModel startModel;
+	private MoveLogic moveLogic = new MoveLogic();
+	private Map<BookEntry, BookEntry> entries = new HashMap<BookEntry, BookEntry>();
+	private List<File> runs = new ArrayList<File>();
+
+
+	/**
+	 * Build a book keyed by {@link OpeningBook#POLYGLOT_KEY}
+	 *
+	 * @throws ChessSystemException
+	 */
+	public OpeningBookBuilder() throws ChessSystemException {
+		this(OpeningBook.POLYGLOT_KEY);
+	}
+
+
+	/**
+	 * Build a book keyed by the given {@link BookKey}
+	 *
+	 * @param bookKey
+	 * @throws ChessSystemException
+	 */
+	public OpeningBookBuilder(BookKey bookKey) throws ChessSystemException {
+		this.bookKey = bookKey;
+		this.startModel = new ChessModelFENConverter().getModelFromString(ChessModelFENConverter.FEN_NEW);
+	}
+
+
+	/**
+	 * Only count moves up to this many plies into each game
+	 *
+	 * @param maxPly
+	 */
+	public void setMaxPly(int maxPly) {
+		this.maxPly = maxPly;
+	}
+
+
+	/**
+	 * Spill the counts to a run file once there are this many distinct
+	 * (position, move) pairs in memory
+	 *
+	 * @param maxEntriesInMemory
+	 */
+	public void setMaxEntriesInMemory(int maxEntriesInMemory) {
+		this.maxEntriesInMemory = maxEntriesInMemory;
+	}
+
+
+	/**
+	 * Merge at most this many runs at once (at least two)
+	 *
+	 * @param mergeFanIn
+	 */
+	public void setMergeFanIn(int mergeFanIn) {
+		if (mergeFanIn < 2) {
+			throw new IllegalArgumentException("At least two runs must be merged at once");
+		}
+		this.mergeFanIn = mergeFanIn;
+	}
+
+
+	/**
+	 * Leave out of the book the moves played in fewer than this many games
+	 *
+	 * @param minGames
+	 */
+	public void setMinGames(int minGames) {
+		this.minGames = minGames;
+	}
+
+
+	/**
+	 * Write the run files here, rather than in the default temporary
+	 * directory
+	 *
+	 * @param tempDirectory
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+
+	/**
+	 * Count the moves of a game played from the starting position.  The
+	 * moves are trusted to be legal.  Games without a result are ignored.
+	 *
+	 * @param moves
+	 * @param result
+	 * @throws ChessSystemException if a run can't be spilled
+	 */
+	public void addGame(List<ChessMove> moves, GameResult result) throws ChessSystemException {
+		if (result == Unknown) {
+			return;
+		}
+		ChessModel model = new ChessModel(startModel);
+		int plies = Math.min(moves.size(), maxPly);
+		for (int ply=0; ply < plies; ply++) {
+			ChessMove move = moves.get(ply);
+			addMove(bookKey.getKey(model), OpeningBook.encodeMove(move), move.getColor(), result);
+			model = moveLogic.applyMoveToModel(model, move);
+		}
+	}
+
+
+	/**
+	 * Count the games in the given PGN file.  Games from a position other
+	 * than the standard one, without a result or with a move that can't 
+	 * be played are skipped.
+	 *
+	 * @param file
+	 * @return number of games counted
+	 * @throws ChessSystemException
+	 */
+	public long addGames(File file) throws ChessSystemException {
+		GameCounter counter = new GameCounter();
+		new PgnReader(counter).read(file);
+		return counter.getGameCount();
+	}
+
+
+	/**
+	 * Count the games in the given PGN channel, see {@link #addGames(File)}
+	 *
+	 * @param channel
+	 * @return number of games counted
+	 * @throws ChessSystemException
+	 */
+	public long addGames(ReadableByteChannel channel) throws ChessSystemException {
+		GameCounter counter = new GameCounter();
+		new PgnReader(counter).read(channel);
+		return counter.getGameCount();
+	}
+
+
+	/**
+	 * Merge everything counted so far into a book in the given file, and
+	 * its win, draw and loss counts into its statistics file (see 
+	 * {@link OpeningBook#getStatisticsFile(File)}).  The builder is empty 
+	 * again afterwards.
+	 *
+	 * @param file
+	 * @return number of entries in the book
+	 * @throws ChessSystemException
+	 */
+	public int build(File file) throws ChessSystemException {
+		int entryCount = 0;
+		spill();
+		try {
+			// merge the oldest runs into a new one until a single pass is left
+			while (runs.size() > mergeFanIn) {
+				List<File> group = new ArrayList<File>(runs.subList(0, mergeFanIn));
+				runs.subList(0, mergeFanIn).clear();
+				File runFile = createRunFile();
+				runs.add(runFile);
+				try {
+					final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile)));
+					try {
+						merge(group, new EntryWriter() {
+							public int write(BookEntry entry) throws IOException {
+								writeRunEntry(out, entry);
+								return 1;
+							}
+						});
+					} finally {
+						out.close();
+					}
+				} finally {
+					for (File groupFile : group) {
+						groupFile.delete();
+					}
+				}
+			}
+			log.debug(String.format("Merging %d runs into the book", runs.size()));
+
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				final DataOutputStream statisticsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(OpeningBook.getStatisticsFile(file))));
+				try {
+					entryCount = merge(runs, new EntryWriter() {
+						public int write(BookEntry entry) throws IOException {
+							return writeBookEntry(out, statisticsOut, entry);
+						}
+					});
+				} finally {
+					statisticsOut.close();
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		} finally {
+			for (File runFile : runs) {
+				runFile.delete();
+			}
+			runs.clear();
+		}
+		log.info(String.format("Wrote %d book entries to %s", entryCount, file));
+		return entryCount;
+	}
+
+
+	/**
+	 * Merge the given runs, adding up the counts of the same move in the 
+	 * same position, and hand each merged entry to the writer in order
+	 *
+	 * @param runFiles
+	 * @param writer
+	 * @return the sum of what the writer returned
+	 * @throws IOException
+	 */
+	private int merge(List<File> runFiles, EntryWriter writer) throws IOException {
+		int count = 0;
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(Math.max(runFiles.size(), 1), new Comparator<Run>() {
+			public int compare(Run run1, Run run2) {
+				return entryComparator.compare(run1.entry, run2.entry);
+			}
+		});
+		try {
+			for (File runFile : runFiles) {
+				Run run = new Run(runFile);
+				if (run.next()) {
+					queue.add(run);
+				} else {
+					run.close();
+				}
+			}
+			BookEntry pending = null;
+			while (!queue.isEmpty()) {
+				Run run = queue.poll();
+				BookEntry entry = run.entry;
+				if ((pending != null) && (entryComparator.compare(pending, entry) == 0)) {
+					pending.add(entry);
+				} else {
+					if (pending != null) {
+						count += writer.write(pending);
+					}
+					pending = entry;
+				}
+				if (run.next()) {
+					queue.add(run);
+				} else {
+					run.close();
+				}
+			}
+			if (pending != null) {
+				count += writer.write(pending);
+			}
+		} finally {
+			for (Run run : queue) {
+				run.close();
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * Count one move played in a game with the given result
+	 */
+	private void addMove(long key, int move, Color color, GameResult result) throws ChessSystemException {
+		BookEntry entry = new BookEntry(key, move);
+		BookEntry existingEntry = entries.get(entry);
+		if (existingEntry == null) {
+			entries.put(entry, entry);
+		} else {
+			entry = existingEntry;
+		}
+		if (result == Draw) {
+			entry.draws++;
+		} else if ((result == WhiteWin) == (color == White)) {
+			entry.wins++;
+		} else {
+			entry.losses++;
+		}
+		if (entries.size() >= maxEntriesInMemory) {
+			spill();
+		}
+	}
+
+
+	/**
+	 * Write the counts held in memory to a new run file, sorted
+	 */
+	private void spill() throws ChessSystemException {
+		if (entries.isEmpty()) {
+			return;
+		}
+		List<BookEntry> sortedEntries = new ArrayList<BookEntry>(entries.values());
+		Collections.sort(sortedEntries, entryComparator);
+		try {
+			File runFile = createRunFile();
+			runs.add(runFile);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile)));
+			try {
+				for (BookEntry entry : sortedEntries) {
+					writeRunEntry(out, entry);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+		log.debug(String.format("Spilled %d book entries to run %d", sortedEntries.size(), runs.size()));
+		entries.clear();
+	}
+
+
+	private File createRunFile() throws IOException {
+		return File.createTempFile("book", ".run", tempDirectory);
+	}
+
+
+	private static void writeRunEntry(DataOutputStream out, BookEntry entry) throws IOException {
+		out.writeLong(entry.key);
+		out.writeShort(entry.move);
+		out.writeInt(entry.wins);
+		out.writeInt(entry.draws);
+		out.writeInt(entry.losses);
+	}
+
+
+	/**
+	 * Write a merged entry to the book and its counts to the statistics,
+	 * if it was played often enough.  The weight is two points per win
+	 * and one per draw.
+	 *
+	 * @return number of entries written
+	 */
+	private int writeBookEntry(DataOutputStream out, DataOutputStream statisticsOut, BookEntry entry) throws IOException {
+		if ((entry.wins + entry.draws + entry.losses) < minGames) {
+			return 0;
+		}
+		out.writeLong(entry.key);
+		out.writeShort(entry.move);
+		out.writeShort((int) Math.min((2l * entry.wins) + entry.draws, MAX_WEIGHT));
+		out.writeInt(0);
+		statisticsOut.writeInt(entry.wins);
+		statisticsOut.writeInt(entry.draws);
+		statisticsOut.writeInt(entry.losses);
+		return 1;
+	}
+
+
+	/**
+	 * Where merged entries go: a longer run or the book itself
+	 */
+	private interface EntryWriter {
+		int write(BookEntry entry) throws IOException;
+	}
+
+
+	/**
+	 * Counts the games handed on by a {@link PgnReader}.  The listener 
+	 * can't throw, so a run that can't be spilled is kept to be thrown
+	 * once reading is done, and the rest of the games are ignored.
+	 */
+	private class GameCounter implements PgnGameListener {
+		private long gameCount;
+		private ChessSystemException exception;
+
+		public void gameRead(PgnGame game) {
+			if ((exception != null) || (game.getResult() == Unknown)) {
+				return;
+			}
+			String startFen = game.getStartFen();
+			if ((startFen != null) && !startFen.trim().equals(ChessModelFENConverter.FEN_NEW)) {
+				return;
+			}
+			int plies = Math.min(game.getMoveCount(), maxPly);
+			List<ChessMove> moves = new ArrayList<ChessMove>(plies);
+			for (int ply=0; ply < plies; ply++) {
+				moves.add(game.getChessMove(ply));
+			}
+			try {
+				addGame(moves, game.getResult());
+				gameCount++;
+			} catch (ChessSystemException cse) {
+				exception = cse;
+			}
+		}
+
+		private long getGameCount() throws ChessSystemException {
+			if (exception != null) {
+				throw exception;
+			}
+			return gameCount;
+		}
+	}
+
+
+	/**
+	 * Win, draw and loss counts of one move in one position
+	 */
+	private static class BookEntry {
+		private long key;
+		private int move;
+		private int wins;
+		private int draws;
+		private int losses;
+
+		private BookEntry(long key, int move) {
+			this.key = key;
+			this.move = move;
+		}
+
+		private void add(BookEntry entry) {
+			wins += entry.wins;
+			draws += entry.draws;
+			losses += entry.losses;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof BookEntry) {
+				BookEntry otherObj = (BookEntry) obj;
+				return (otherObj.key == key) && (otherObj.move == move);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (key ^ (key >>> 32)) * 31 + move;
+		}
+	}
+
+
+	/**
+	 * A run file being merged, positioned at its current entry
+	 */
+	private static class Run {
+		private DataInputStream in;
+		private BookEntry entry;
+
+		private Run(File file) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		}
+
+		private boolean next() throws IOException {
+			try {
+				entry = new BookEntry(in.readLong(), in.readShort() & 0xffff);
+			} catch (EOFException eofe) {
+				return false;
+			}
+			entry.wins = in.readInt();
+			entry.draws = in.readInt();
+			entry.losses = in.readInt();
+			return true;
+		}
+
+		private void close() throws IOException {
+			in.close();
+		}
+	}
+}
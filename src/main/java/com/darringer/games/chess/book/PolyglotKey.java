@@ -0,0 +1,314 @@
+package com.darringer.games.chess.book;
+
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Location.Unknown;
+import static com.darringer.games.chess.model.Piece.BlackPawn;
+import static com.darringer.games.chess.model.Piece.None;
+import static com.darringer.games.chess.model.Piece.WhitePawn;
+
+import com.darringer.games.chess.model.CastlingAvailability;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * The standard Polyglot hash of a position, for reading opening books
+ * built by other tools.  Like our own
+ * {@link com.darringer.games.chess.model.Zobrist} keys, it xors together
+ * a key for each (piece, square) pair, castling right and en passant
+ * file, but the keys come from Polyglot's published <code>Random64</code>
+ * table.  The en passant file only counts when a pawn of the side to
+ * move stands ready to make the capture, and the side key is added when
+ * white (rather than black) is to move.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.book.OpeningBook
+ * @see com.darringer.games.chess.model.Zobrist
+ *
+ */
+public class PolyglotKey implements BookKey {
+
+	/*
+	 * Offsets into the table: 12 x 64 piece keys (black pawn, white pawn,
+	 * black knight, ... white king, each from a1 to h8), then the four
+	 * castling rights, the eight en passant files and white to move
+	 */
+	private static final int CASTLING_OFFSET = 768;
+	private static final int EN_PASSANT_OFFSET = 772;
+	private static final int WHITE_TO_MOVE_OFFSET = 780;
+
+	/* Polyglot's piece number by Piece ordinal */
+	private static final int[] pieceNumbers = new int[Piece.values().length];
+
+	static {
+		for (Piece piece : Piece.values()) {
+			if (piece != None) {
+				pieceNumbers[piece.ordinal()] = (2 * (piece.ordinal() % 6)) + (piece.getColor() == White ? 1 : 0);
+			}
+		}
+	}
+
+	private static final long[] random64 = {
+		0x9D39247E33776D41l, 0x2AF7398005AAA5C7l, 0x44DB015024623547l, 0x9C15F73E62A76AE2l,
+		0x75834465489C0C89l, 0x3290AC3A203001BFl, 0x0FBBAD1F61042279l, 0xE83A908FF2FB60CAl,
+		0x0D7E765D58755C10l, 0x1A083822CEAFE02Dl, 0x9605D5F0E25EC3B0l, 0xD021FF5CD13A2ED5l,
+		0x40BDF15D4A672E32l, 0x011355146FD56395l, 0x5DB4832046F3D9E5l, 0x239F8B2D7FF719CCl,
+		0x05D1A1AE85B49AA1l, 0x679F848F6E8FC971l, 0x7449BBFF801FED0Bl, 0x7D11CDB1C3B7ADF0l,
+		0x82C7709E781EB7CCl, 0xF3218F1C9510786Cl, 0x331478F3AF51BBE6l, 0x4BB38DE5E7219443l,
+		0xAA649C6EBCFD50FCl, 0x8DBD98A352AFD40Bl, 0x87D2074B81D79217l, 0x19F3C751D3E92AE1l,
+		0xB4AB30F062B19ABFl, 0x7B0500AC42047AC4l, 0xC9452CA81A09D85Dl, 0x24AA6C514DA27500l,
+		0x4C9F34427501B447l, 0x14A68FD73C910841l, 0xA71B9B83461CBD93l, 0x03488B95B0F1850Fl,
+		0x637B2B34FF93C040l, 0x09D1BC9A3DD90A94l, 0x3575668334A1DD3Bl, 0x735E2B97A4C45A23l,
+		0x18727070F1BD400Bl, 0x1FCBACD259BF02E7l, 0xD310A7C2CE9B6555l, 0xBF983FE0FE5D8244l,
+		0x9F74D14F7454A824l, 0x51EBDC4AB9BA3035l, 0x5C82C505DB9AB0FAl, 0xFCF7FE8A3430B241l,
+		0x3253A729B9BA3DDEl, 0x8C74C368081B3075l, 0xB9BC6C87167C33E7l, 0x7EF48F2B83024E20l,
+		0x11D505D4C351BD7Fl, 0x6568FCA92C76A243l, 0x4DE0B0F40F32A7B8l, 0x96D693460CC37E5Dl,
+		0x42E240CB63689F2Fl, 0x6D2BDCDAE2919661l, 0x42880B0236E4D951l, 0x5F0F4A5898171BB6l,
+		0x39F890F579F92F88l, 0x93C5B5F47356388Bl, 0x63DC359D8D231B78l, 0xEC16CA8AEA98AD76l,
+		0x5355F900C2A82DC7l, 0x07FB9F855A997142l, 0x5093417AA8A7ED5El, 0x7BCBC38DA25A7F3Cl,
+		0x19FC8A768CF4B6D4l, 0x637A7780DECFC0D9l, 0x8249A47AEE0E41F7l, 0x79AD695501E7D1E8l,
+		0x14ACBAF4777D5776l, 0xF145B6BECCDEA195l, 0xDABF2AC8201752FCl, 0x24C3C94DF9C8D3F6l,
+		0xBB6E2924F03912EAl, 0x0CE26C0B95C980D9l, 0xA49CD132BFBF7CC4l, 0xE99D662AF4243939l,
+		0x27E6AD7891165C3Fl, 0x8535F040B9744FF1l, 0x54B3F4FA5F40D873l, 0x72B12C32127FED2Bl,
+		0xEE954D3C7B411F47l, 0x9A85AC909A24EAA1l, 0x70AC4CD9F04F21F5l, 0xF9B89D3E99A075C2l,
+		0x87B3E2B2B5C907B1l, 0xA366E5B8C54F48B8l, 0xAE4A9346CC3F7CF2l, 0x1920C04D47267BBDl,
+		0x87BF02C6B49E2AE9l, 0x092237AC237F3859l, 0xFF07F64EF8ED14D0l, 0x8DE8DCA9F03CC54El,
+		0x9C1633264DB49C89l, 0xB3F22C3D0B0B38EDl, 0x390E5FB44D01144Bl, 0x5BFEA5B4712768E9l,
+		0x1E1032911FA78984l, 0x9A74ACB964E78CB3l, 0x4F80F7A035DAFB04l, 0x6304D09A0B3738C4l,
+		0x2171E64683023A08l, 0x5B9B63EB9CEFF80Cl, 0x506AACF489889342l, 0x1881AFC9A3A701D6l,
+		0x6503080440750644l, 0xDFD395339CDBF4A7l, 0xEF927DBCF00C20F2l, 0x7B32F7D1E03680ECl,
+		0xB9FD7620E7316243l, 0x05A7E8A57DB91B77l, 0xB5889C6E15630A75l, 0x4A750A09CE9573F7l,
+		0xCF464CEC899A2F8Al, 0xF538639CE705B824l, 0x3C79A0FF5580EF7Fl, 0xEDE6C87F8477609Dl,
+		0x799E81F05BC93F31l, 0x86536B8CF3428A8Cl, 0x97D7374C60087B73l, 0xA246637CFF328532l,
+		0x043FCAE60CC0EBA0l, 0x920E449535DD359El, 0x70EB093B15B290CCl, 0x73A1921916591CBDl,
+		0x56436C9FE1A1AA8Dl, 0xEFAC4B70633B8F81l, 0xBB215798D45DF7AFl, 0x45F20042F24F1768l,
+		0x930F80F4E8EB7462l, 0xFF6712FFCFD75EA1l, 0xAE623FD67468AA70l, 0xDD2C5BC84BC8D8FCl,
+		0x7EED120D54CF2DD9l, 0x22FE545401165F1Cl, 0xC91800E98FB99929l, 0x808BD68E6AC10365l,
+		0xDEC468145B7605F6l, 0x1BEDE3A3AEF53302l, 0x43539603D6C55602l, 0xAA969B5C691CCB7Al,
+		0xA87832D392EFEE56l, 0x65942C7B3C7E11AEl, 0xDED2D633CAD004F6l, 0x21F08570F420E565l,
+		0xB415938D7DA94E3Cl, 0x91B859E59ECB6350l, 0x10CFF333E0ED804Al, 0x28AED140BE0BB7DDl,
+		0xC5CC1D89724FA456l, 0x5648F680F11A2741l, 0x2D255069F0B7DAB3l, 0x9BC5A38EF729ABD4l,
+		0xEF2F054308F6A2BCl, 0xAF2042F5CC5C2858l, 0x480412BAB7F5BE2Al, 0xAEF3AF4A563DFE43l,
+		0x19AFE59AE451497Fl, 0x52593803DFF1E840l, 0xF4F076E65F2CE6F0l, 0x11379625747D5AF3l,
+		0xBCE5D2248682C115l, 0x9DA4243DE836994Fl, 0x066F70B33FE09017l, 0x4DC4DE189B671A1Cl,
+		0x51039AB7712457C3l, 0xC07A3F80C31FB4B4l, 0xB46EE9C5E64A6E7Cl, 0xB3819A42ABE61C87l,
+		0x21A007933A522A20l, 0x2DF16F761598AA4Fl, 0x763C4A1371B368FDl, 0xF793C46702E086A0l,
+		0xD7288E012AEB8D31l, 0xDE336A2A4BC1C44Bl, 0x0BF692B38D079F23l, 0x2C604A7A177326B3l,
+		0x4850E73E03EB6064l, 0xCFC447F1E53C8E1Bl, 0xB05CA3F564268D99l, 0x9AE182C8BC9474E8l,
+		0xA4FC4BD4FC5558CAl, 0xE755178D58FC4E76l, 0x69B97DB1A4C03DFEl, 0xF9B5B7C4ACC67C96l,
+		0xFC6A82D64B8655FBl, 0x9C684CB6C4D24417l, 0x8EC97D2917456ED0l, 0x6703DF9D2924E97El,
+		0xC547F57E42A7444El, 0x78E37644E7CAD29El, 0xFE9A44E9362F05FAl, 0x08BD35CC38336615l,
+		0x9315E5EB3A129ACEl, 0x94061B871E04DF75l, 0xDF1D9F9D784BA010l, 0x3BBA57B68871B59Dl,
+		0xD2B7ADEEDED1F73Fl, 0xF7A255D83BC373F8l, 0xD7F4F2448C0CEB81l, 0xD95BE88CD210FFA7l,
+		0x336F52F8FF4728E7l, 0xA74049DAC312AC71l, 0xA2F61BB6E437FDB5l, 0x4F2A5CB07F6A35B3l,
+		0x87D380BDA5BF7859l, 0x16B9F7E06C453A21l, 0x7BA2484C8A0FD54El, 0xF3A678CAD9A2E38Cl,
+		0x39B0BF7DDE437BA2l, 0xFCAF55C1BF8A4424l, 0x18FCF680573FA594l, 0x4C0563B89F495AC3l,
+		0x40E087931A00930Dl, 0x8CFFA9412EB642C1l, 0x68CA39053261169Fl, 0x7A1EE967D27579E2l,
+		0x9D1D60E5076F5B6Fl, 0x3810E399B6F65BA2l, 0x32095B6D4AB5F9B1l, 0x35CAB62109DD038Al,
+		0xA90B24499FCFAFB1l, 0x77A225A07CC2C6BDl, 0x513E5E634C70E331l, 0x4361C0CA3F692F12l,
+		0xD941ACA44B20A45Bl, 0x528F7C8602C5807Bl, 0x52AB92BEB9613989l, 0x9D1DFA2EFC557F73l,
+		0x722FF175F572C348l, 0x1D1260A51107FE97l, 0x7A249A57EC0C9BA2l, 0x04208FE9E8F7F2D6l,
+		0x5A110C6058B920A0l, 0x0CD9A497658A5698l, 0x56FD23C8F9715A4Cl, 0x284C847B9D887AAEl,
+		0x04FEABFBBDB619CBl, 0x742E1E651C60BA83l, 0x9A9632E65904AD3Cl, 0x881B82A13B51B9E2l,
+		0x506E6744CD974924l, 0xB0183DB56FFC6A79l, 0x0ED9B915C66ED37El, 0x5E11E86D5873D484l,
+		0xF678647E3519AC6El, 0x1B85D488D0F20CC5l, 0xDAB9FE6525D89021l, 0x0D151D86ADB73615l,
+		0xA865A54EDCC0F019l, 0x93C42566AEF98FFBl, 0x99E7AFEABE000731l, 0x48CBFF086DDF285Al,
+		0x7F9B6AF1EBF78BAFl, 0x58627E1A149BBA21l, 0x2CD16E2ABD791E33l, 0xD363EFF5F0977996l,
+		0x0CE2A38C344A6EEDl, 0x1A804AADB9CFA741l, 0x907F30421D78C5DEl, 0x501F65EDB3034D07l,
+		0x37624AE5A48FA6E9l, 0x957BAF61700CFF4El, 0x3A6C27934E31188Al, 0xD49503536ABCA345l,
+		0x088E049589C432E0l, 0xF943AEE7FEBF21B8l, 0x6C3B8E3E336139D3l, 0x364F6FFA464EE52El,
+		0xD60F6DCEDC314222l, 0x56963B0DCA418FC0l, 0x16F50EDF91E513AFl, 0xEF1955914B609F93l,
+		0x565601C0364E3228l, 0xECB53939887E8175l, 0xBAC7A9A18531294Bl, 0xB344C470397BBA52l,
+		0x65D34954DAF3CEBDl, 0xB4B81B3FA97511E2l, 0xB422061193D6F6A7l, 0x071582401C38434Dl,
+		0x7A13F18BBEDC4FF5l, 0xBC4097B116C524D2l, 0x59B97885E2F2EA28l, 0x99170A5DC3115544l,
+		0x6F423357E7C6A9F9l, 0x325928EE6E6F8794l, 0xD0E4366228B03343l, 0x565C31F7DE89EA27l,
+		0x30F5611484119414l, 0xD873DB391292ED4Fl, 0x7BD94E1D8E17DEBCl, 0xC7D9F16864A76E94l,
+		0x947AE053EE56E63Cl, 0xC8C93882F9475F5Fl, 0x3A9BF55BA91F81CAl, 0xD9A11FBB3D9808E4l,
+		0x0FD22063EDC29FCAl, 0xB3F256D8ACA0B0B9l, 0xB03031A8B4516E84l, 0x35DD37D5871448AFl,
+		0xE9F6082B05542E4El, 0xEBFAFA33D7254B59l, 0x9255ABB50D532280l, 0xB9AB4CE57F2D34F3l,
+		0x693501D628297551l, 0xC62C58F97DD949BFl, 0xCD454F8F19C5126Al, 0xBBE83F4ECC2BDECBl,
+		0xDC842B7E2819E230l, 0xBA89142E007503B8l, 0xA3BC941D0A5061CBl, 0xE9F6760E32CD8021l,
+		0x09C7E552BC76492Fl, 0x852F54934DA55CC9l, 0x8107FCCF064FCF56l, 0x098954D51FFF6580l,
+		0x23B70EDB1955C4BFl, 0xC330DE426430F69Dl, 0x4715ED43E8A45C0Al, 0xA8D7E4DAB780A08Dl,
+		0x0572B974F03CE0BBl, 0xB57D2E985E1419C7l, 0xE8D9ECBE2CF3D73Fl, 0x2FE4B17170E59750l,
+		0x11317BA87905E790l, 0x7FBF21EC8A1F45ECl, 0x1725CABFCB045B00l, 0x964E915CD5E2B207l,
+		0x3E2B8BCBF016D66Dl, 0xBE7444E39328A0ACl, 0xF85B2B4FBCDE44B7l, 0x49353FEA39BA63B1l,
+		0x1DD01AAFCD53486Al, 0x1FCA8A92FD719F85l, 0xFC7C95D827357AFAl, 0x18A6A990C8B35EBDl,
+		0xCCCB7005C6B9C28Dl, 0x3BDBB92C43B17F26l, 0xAA70B5B4F89695A2l, 0xE94C39A54A98307Fl,
+		0xB7A0B174CFF6F36El, 0xD4DBA84729AF48ADl, 0x2E18BC1AD9704A68l, 0x2DE0966DAF2F8B1Cl,
+		0xB9C11D5B1E43A07El, 0x64972D68DEE33360l, 0x94628D38D0C20584l, 0xDBC0D2B6AB90A559l,
+		0xD2733C4335C6A72Fl, 0x7E75D99D94A70F4Dl, 0x6CED1983376FA72Bl, 0x97FCAACBF030BC24l,
+		0x7B77497B32503B12l, 0x8547EDDFB81CCB94l, 0x79999CDFF70902CBl, 0xCFFE1939438E9B24l,
+		0x829626E3892D95D7l, 0x92FAE24291F2B3F1l, 0x63E22C147B9C3403l, 0xC678B6D860284A1Cl,
+		0x5873888850659AE7l, 0x0981DCD296A8736Dl, 0x9F65789A6509A440l, 0x9FF38FED72E9052Fl,
+		0xE479EE5B9930578Cl, 0xE7F28ECD2D49EECDl, 0x56C074A581EA17FEl, 0x5544F7D774B14AEFl,
+		0x7B3F0195FC6F290Fl, 0x12153635B2C0CF57l, 0x7F5126DBBA5E0CA7l, 0x7A76956C3EAFB413l,
+		0x3D5774A11D31AB39l, 0x8A1B083821F40CB4l, 0x7B4A38E32537DF62l, 0x950113646D1D6E03l,
+		0x4DA8979A0041E8A9l, 0x3BC36E078F7515D7l, 0x5D0A12F27AD310D1l, 0x7F9D1A2E1EBE1327l,
+		0xDA3A361B1C5157B1l, 0xDCDD7D20903D0C25l, 0x36833336D068F707l, 0xCE68341F79893389l,
+		0xAB9090168DD05F34l, 0x43954B3252DC25E5l, 0xB438C2B67F98E5E9l, 0x10DCD78E3851A492l,
+		0xDBC27AB5447822BFl, 0x9B3CDB65F82CA382l, 0xB67B7896167B4C84l, 0xBFCED1B0048EAC50l,
+		0xA9119B60369FFEBDl, 0x1FFF7AC80904BF45l, 0xAC12FB171817EEE7l, 0xAF08DA9177DDA93Dl,
+		0x1B0CAB936E65C744l, 0xB559EB1D04E5E932l, 0xC37B45B3F8D6F2BAl, 0xC3A9DC228CAAC9E9l,
+		0xF3B8B6675A6507FFl, 0x9FC477DE4ED681DAl, 0x67378D8ECCEF96CBl, 0x6DD856D94D259236l,
+		0xA319CE15B0B4DB31l, 0x073973751F12DD5El, 0x8A8E849EB32781A5l, 0xE1925C71285279F5l,
+		0x74C04BF1790C0EFEl, 0x4DDA48153C94938Al, 0x9D266D6A1CC0542Cl, 0x7440FB816508C4FEl,
+		0x13328503DF48229Fl, 0xD6BF7BAEE43CAC40l, 0x4838D65F6EF6748Fl, 0x1E152328F3318DEAl,
+		0x8F8419A348F296BFl, 0x72C8834A5957B511l, 0xD7A023A73260B45Cl, 0x94EBC8ABCFB56DAEl,
+		0x9FC10D0F989993E0l, 0xDE68A2355B93CAE6l, 0xA44CFE79AE538BBEl, 0x9D1D84FCCE371425l,
+		0x51D2B1AB2DDFB636l, 0x2FD7E4B9E72CD38Cl, 0x65CA5B96B7552210l, 0xDD69A0D8AB3B546Dl,
+		0x604D51B25FBF70E2l, 0x73AA8A564FB7AC9El, 0x1A8C1E992B941148l, 0xAAC40A2703D9BEA0l,
+		0x764DBEAE7FA4F3A6l, 0x1E99B96E70A9BE8Bl, 0x2C5E9DEB57EF4743l, 0x3A938FEE32D29981l,
+		0x26E6DB8FFDF5ADFEl, 0x469356C504EC9F9Dl, 0xC8763C5B08D1908Cl, 0x3F6C6AF859D80055l,
+		0x7F7CC39420A3A545l, 0x9BFB227EBDF4C5CEl, 0x89039D79D6FC5C5Cl, 0x8FE88B57305E2AB6l,
+		0xA09E8C8C35AB96DEl, 0xFA7E393983325753l, 0xD6B6D0ECC617C699l, 0xDFEA21EA9E7557E3l,
+		0xB67C1FA481680AF8l, 0xCA1E3785A9E724E5l, 0x1CFC8BED0D681639l, 0xD18D8549D140CAEAl,
+		0x4ED0FE7E9DC91335l, 0xE4DBF0634473F5D2l, 0x1761F93A44D5AEFEl, 0x53898E4C3910DA55l,
+		0x734DE8181F6EC39Al, 0x2680B122BAA28D97l, 0x298AF231C85BAFABl, 0x7983EED3740847D5l,
+		0x66C1A2A1A60CD889l, 0x9E17E49642A3E4C1l, 0xEDB454E7BADC0805l, 0x50B704CAB602C329l,
+		0x4CC317FB9CDDD023l, 0x66B4835D9EAFEA22l, 0x219B97E26FFC81BDl, 0x261E4E4C0A333A9Dl,
+		0x1FE2CCA76517DB90l, 0xD7504DFA8816EDBBl, 0xB9571FA04DC089C8l, 0x1DDC0325259B27DEl,
+		0xCF3F4688801EB9AAl, 0xF4F5D05C10CAB243l, 0x38B6525C21A42B0El, 0x36F60E2BA4FA6800l,
+		0xEB3593803173E0CEl, 0x9C4CD6257C5A3603l, 0xAF0C317D32ADAA8Al, 0x258E5A80C7204C4Bl,
+		0x8B889D624D44885Dl, 0xF4D14597E660F855l, 0xD4347F66EC8941C3l, 0xE699ED85B0DFB40Dl,
+		0x2472F6207C2D0484l, 0xC2A1E7B5B459AEB5l, 0xAB4F6451CC1D45ECl, 0x63767572AE3D6174l,
+		0xA59E0BD101731A28l, 0x116D0016CB948F09l, 0x2CF9C8CA052F6E9Fl, 0x0B090A7560A968E3l,
+		0xABEEDDB2DDE06FF1l, 0x58EFC10B06A2068Dl, 0xC6E57A78FBD986E0l, 0x2EAB8CA63CE802D7l,
+		0x14A195640116F336l, 0x7C0828DD624EC390l, 0xD74BBE77E6116AC7l, 0x804456AF10F5FB53l,
+		0xEBE9EA2ADF4321C7l, 0x03219A39EE587A30l, 0x49787FEF17AF9924l, 0xA1E9300CD8520548l,
+		0x5B45E522E4B1B4EFl, 0xB49C3B3995091A36l, 0xD4490AD526F14431l, 0x12A8F216AF9418C2l,
+		0x001F837CC7350524l, 0x1877B51E57A764D5l, 0xA2853B80F17F58EEl, 0x993E1DE72D36D310l,
+		0xB3598080CE64A656l, 0x252F59CF0D9F04BBl, 0xD23C8E176D113600l, 0x1BDA0492E7E4586El,
+		0x21E0BD5026C619BFl, 0x3B097ADAF088F94El, 0x8D14DEDB30BE846El, 0xF95CFFA23AF5F6F4l,
+		0x3871700761B3F743l, 0xCA672B91E9E4FA16l, 0x64C8E531BFF53B55l, 0x241260ED4AD1E87Dl,
+		0x106C09B972D2E822l, 0x7FBA195410E5CA30l, 0x7884D9BC6CB569D8l, 0x0647DFEDCD894A29l,
+		0x63573FF03E224774l, 0x4FC8E9560F91B123l, 0x1DB956E450275779l, 0xB8D91274B9E9D4FBl,
+		0xA2EBEE47E2FBFCE1l, 0xD9F1F30CCD97FB09l, 0xEFED53D75FD64E6Bl, 0x2E6D02C36017F67Fl,
+		0xA9AA4D20DB084E9Bl, 0xB64BE8D8B25396C1l, 0x70CB6AF7C2D5BCF0l, 0x98F076A4F7A2322El,
+		0xBF84470805E69B5Fl, 0x94C3251F06F90CF3l, 0x3E003E616A6591E9l, 0xB925A6CD0421AFF3l,
+		0x61BDD1307C66E300l, 0xBF8D5108E27E0D48l, 0x240AB57A8B888B20l, 0xFC87614BAF287E07l,
+		0xEF02CDD06FFDB432l, 0xA1082C0466DF6C0Al, 0x8215E577001332C8l, 0xD39BB9C3A48DB6CFl,
+		0x2738259634305C14l, 0x61CF4F94C97DF93Dl, 0x1B6BACA2AE4E125Bl, 0x758F450C88572E0Bl,
+		0x959F587D507A8359l, 0xB063E962E045F54Dl, 0x60E8ED72C0DFF5D1l, 0x7B64978555326F9Fl,
+		0xFD080D236DA814BAl, 0x8C90FD9B083F4558l, 0x106F72FE81E2C590l, 0x7976033A39F7D952l,
+		0xA4EC0132764CA04Bl, 0x733EA705FAE4FA77l, 0xB4D8F77BC3E56167l, 0x9E21F4F903B33FD9l,
+		0x9D765E419FB69F6Dl, 0xD30C088BA61EA5EFl, 0x5D94337FBFAF7F5Bl, 0x1A4E4822EB4D7A59l,
+		0x6FFE73E81B637FB3l, 0xDDF957BC36D8B9CAl, 0x64D0E29EEA8838B3l, 0x08DD9BDFD96B9F63l,
+		0x087E79E5A57D1D13l, 0xE328E230E3E2B3FBl, 0x1C2559E30F0946BEl, 0x720BF5F26F4D2EAAl,
+		0xB0774D261CC609DBl, 0x443F64EC5A371195l, 0x4112CF68649A260El, 0xD813F2FAB7F5C5CAl,
+		0x660D3257380841EEl, 0x59AC2C7873F910A3l, 0xE846963877671A17l, 0x93B633ABFA3469F8l,
+		0xC0C0F5A60EF4CDCFl, 0xCAF21ECD4377B28Cl, 0x57277707199B8175l, 0x506C11B9D90E8B1Dl,
+		0xD83CC2687A19255Fl, 0x4A29C6465A314CD1l, 0xED2DF21216235097l, 0xB5635C95FF7296E2l,
+		0x22AF003AB672E811l, 0x52E762596BF68235l, 0x9AEBA33AC6ECC6B0l, 0x944F6DE09134DFB6l,
+		0x6C47BEC883A7DE39l, 0x6AD047C430A12104l, 0xA5B1CFDBA0AB4067l, 0x7C45D833AFF07862l,
+		0x5092EF950A16DA0Bl, 0x9338E69C052B8E7Bl, 0x455A4B4CFE30E3F5l, 0x6B02E63195AD0CF8l,
+		0x6B17B224BAD6BF27l, 0xD1E0CCD25BB9C169l, 0xDE0C89A556B9AE70l, 0x50065E535A213CF6l,
+		0x9C1169FA2777B874l, 0x78EDEFD694AF1EEDl, 0x6DC93D9526A50E68l, 0xEE97F453F06791EDl,
+		0x32AB0EDB696703D3l, 0x3A6853C7E70757A7l, 0x31865CED6120F37Dl, 0x67FEF95D92607890l,
+		0x1F2B1D1F15F6DC9Cl, 0xB69E38A8965C6B65l, 0xAA9119FF184CCCF4l, 0xF43C732873F24C13l,
+		0xFB4A3D794A9A80D2l, 0x3550C2321FD6109Cl, 0x371F77E76BB8417El, 0x6BFA9AAE5EC05779l,
+		0xCD04F3FF001A4778l, 0xE3273522064480CAl, 0x9F91508BFFCFC14Al, 0x049A7F41061A9E60l,
+		0xFCB6BE43A9F2FE9Bl, 0x08DE8A1C7797DA9Bl, 0x8F9887E6078735A1l, 0xB5B4071DBFC73A66l,
+		0x230E343DFBA08D33l, 0x43ED7F5A0FAE657Dl, 0x3A88A0FBBCB05C63l, 0x21874B8B4D2DBC4Fl,
+		0x1BDEA12E35F6A8C9l, 0x53C065C6C8E63528l, 0xE34A1D250E7A8D6Bl, 0xD6B04D3B7651DD7El,
+		0x5E90277E7CB39E2Dl, 0x2C046F22062DC67Dl, 0xB10BB459132D0A26l, 0x3FA9DDFB67E2F199l,
+		0x0E09B88E1914F7AFl, 0x10E8B35AF3EEAB37l, 0x9EEDECA8E272B933l, 0xD4C718BC4AE8AE5Fl,
+		0x81536D601170FC20l, 0x91B534F885818A06l, 0xEC8177F83F900978l, 0x190E714FADA5156El,
+		0xB592BF39B0364963l, 0x89C350C893AE7DC1l, 0xAC042E70F8B383F2l, 0xB49B52E587A1EE60l,
+		0xFB152FE3FF26DA89l, 0x3E666E6F69AE2C15l, 0x3B544EBE544C19F9l, 0xE805A1E290CF2456l,
+		0x24B33C9D7ED25117l, 0xE74733427B72F0C1l, 0x0A804D18B7097475l, 0x57E3306D881EDB4Fl,
+		0x4AE7D6A36EB5DBCBl, 0x2D8D5432157064C8l, 0xD1E649DE1E7F268Bl, 0x8A328A1CEDFE552Cl,
+		0x07A3AEC79624C7DAl, 0x84547DDC3E203C94l, 0x990A98FD5071D263l, 0x1A4FF12616EEFC89l,
+		0xF6F7FD1431714200l, 0x30C05B1BA332F41Cl, 0x8D2636B81555A786l, 0x46C9FEB55D120902l,
+		0xCCEC0A73B49C9921l, 0x4E9D2827355FC492l, 0x19EBB029435DCB0Fl, 0x4659D2B743848A2Cl,
+		0x963EF2C96B33BE31l, 0x74F85198B05A2E7Dl, 0x5A0F544DD2B1FB18l, 0x03727073C2E134B1l,
+		0xC7F6AA2DE59AEA61l, 0x352787BAA0D7C22Fl, 0x9853EAB63B5E0B35l, 0xABBDCDD7ED5C0860l,
+		0xCF05DAF5AC8D77B0l, 0x49CAD48CEBF4A71El, 0x7A4C10EC2158C4A6l, 0xD9E92AA246BF719El,
+		0x13AE978D09FE5557l, 0x730499AF921549FFl, 0x4E4B705B92903BA4l, 0xFF577222C14F0A3Al,
+		0x55B6344CF97AAFAEl, 0xB862225B055B6960l, 0xCAC09AFBDDD2CDB4l, 0xDAF8E9829FE96B5Fl,
+		0xB5FDFC5D3132C498l, 0x310CB380DB6F7503l, 0xE87FBB46217A360El, 0x2102AE466EBB1148l,
+		0xF8549E1A3AA5E00Dl, 0x07A69AFDCC42261Al, 0xC4C118BFE78FEAAEl, 0xF9F4892ED96BD438l,
+		0x1AF3DBE25D8F45DAl, 0xF5B4B0B0D2DEEEB4l, 0x962ACEEFA82E1C84l, 0x046E3ECAAF453CE9l,
+		0xF05D129681949A4Cl, 0x964781CE734B3C84l, 0x9C2ED44081CE5FBDl, 0x522E23F3925E319El,
+		0x177E00F9FC32F791l, 0x2BC60A63A6F3B3F2l, 0x222BBFAE61725606l, 0x486289DDCC3D6780l,
+		0x7DC7785B8EFDFC80l, 0x8AF38731C02BA980l, 0x1FAB64EA29A2DDF7l, 0xE4D9429322CD065Al,
+		0x9DA058C67844F20Cl, 0x24C0E332B70019B0l, 0x233003B5A6CFE6ADl, 0xD586BD01C5C217F6l,
+		0x5E5637885F29BC2Bl, 0x7EBA726D8C94094Bl, 0x0A56A5F0BFE39272l, 0xD79476A84EE20D06l,
+		0x9E4C1269BAA4BF37l, 0x17EFEE45B0DEE640l, 0x1D95B0A5FCF90BC6l, 0x93CBE0B699C2585Dl,
+		0x65FA4F227A2B6D79l, 0xD5F9E858292504D5l, 0xC2B5A03F71471A6Fl, 0x59300222B4561E00l,
+		0xCE2F8642CA0712DCl, 0x7CA9723FBB2E8988l, 0x2785338347F2BA08l, 0xC61BB3A141E50E8Cl,
+		0x150F361DAB9DEC26l, 0x9F6A419D382595F4l, 0x64A53DC924FE7AC9l, 0x142DE49FFF7A7C3Dl,
+		0x0C335248857FA9E7l, 0x0A9C32D5EAE45305l, 0xE6C42178C4BBB92El, 0x71F1CE2490D20B07l,
+		0xF1BCC3D275AFE51Al, 0xE728E8C83C334074l, 0x96FBF83A12884624l, 0x81A1549FD6573DA5l,
+		0x5FA7867CAF35E149l, 0x56986E2EF3ED091Bl, 0x917F1DD5F8886C61l, 0xD20D8C88C8FFE65Fl,
+		0x31D71DCE64B2C310l, 0xF165B587DF898190l, 0xA57E6339DD2CF3A0l, 0x1EF6E6DBB1961EC9l,
+		0x70CC73D90BC26E24l, 0xE21A6B35DF0C3AD7l, 0x003A93D8B2806962l, 0x1C99DED33CB890A1l,
+		0xCF3145DE0ADD4289l, 0xD0E4427A5514FB72l, 0x77C621CC9FB3A483l, 0x67A34DAC4356550Bl,
+		0xF8D626AAAF278509l
+	};
+
+
+	/**
+	 * @see com.darringer.games.chess.book.BookKey#getKey(ChessModel)
+	 */
+	@Override
+	public long getKey(ChessModel model) {
+		long key = 0l;
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece != None) {
+					key ^= random64[(pieceNumbers[piece.ordinal()] << 6) + (y << 3) + x];
+				}
+			}
+		}
+
+		CastlingAvailability castlingAvailability = model.getCastlingAvailability();
+		if (castlingAvailability != null) {
+			if (castlingAvailability.isWhiteCanCastleKingSide()) {
+				key ^= random64[CASTLING_OFFSET];
+			}
+			if (castlingAvailability.isWhiteCanCastleQueenSide()) {
+				key ^= random64[CASTLING_OFFSET + 1];
+			}
+			if (castlingAvailability.isBlackCanCastleKingSide()) {
+				key ^= random64[CASTLING_OFFSET + 2];
+			}
+			if (castlingAvailability.isBlackCanCastleQueenSide()) {
+				key ^= random64[CASTLING_OFFSET + 3];
+			}
+		}
+
+		if (isEnPassantCapturePossible(model)) {
+			key ^= random64[EN_PASSANT_OFFSET + model.getEnPassant().getX()];
+		}
+
+		if (model.getActiveColor() == White) {
+			key ^= random64[WHITE_TO_MOVE_OFFSET];
+		}
+		return key;
+	}
+
+
+	/**
+	 * Polyglot only counts the en passant square when a pawn of the side
+	 * to move is beside the pawn that just moved two squares, whether or
+	 * not the capture would be legal
+	 *
+	 * @param model
+	 * @return
+	 */
+	private static boolean isEnPassantCapturePossible(ChessModel model) {
+		Location enPassant = model.getEnPassant();
+		if ((enPassant == null) || (enPassant == Unknown)) {
+			return false;
+		}
+		boolean isWhiteToMove = (model.getActiveColor() == White);
+		Piece pawn = (isWhiteToMove ? WhitePawn : BlackPawn);
+		int y = (isWhiteToMove ? 4 : 3);
+		int x = enPassant.getX();
+		return ((x > 0) && (model.getPieceAtIndex(x - 1, y) == pawn))
+				|| ((x < 7) && (model.getPieceAtIndex(x + 1, y) == pawn));
+	}
+}
@@ -0,0 +1,320 @@
+package com.darringer.games.chess.converter;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Location.Unknown;
+import static com.darringer.games.chess.model.Piece.None;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.darringer.games.chess.model.CastlingAvailability;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessParseException;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * Converts {@link ChessModel}s to and from fixed size binary records of
+ * {@link #RECORD_SIZE} bytes, for storing and shipping positions in bulk
+ * where FEN would be too large and too slow to parse.  Being a fixed
+ * size, records can be memory mapped and read at random by index.  The
+ * layout is:
+ * <ul>
+ *   <li>bytes 0-7: occupancy bitboard, bit <code>y*8+x</code> set for
+ *   each occupied square, most significant byte first</li>
+ *   <li>bytes 8-23: the {@link Piece} ordinal of each occupied square in
+ *   turn, from a1 up, four bits each with the high nibble first</li>
+ *   <li>byte 24: bit 0 set when black is to move, bits 1-4 castling
+ *   availability (white king side, white queen side, black king side,
+ *   black queen side)</li>
+ *   <li>byte 25: en passant square as <code>y*8+x</code>, or 255</li>
+ *   <li>bytes 26-27: halfmove clock, bytes 28-29: fullmove number</li>
+ *   <li>bytes 30-31: zero</li>
+ * </ul>
+ * A record holds at most 32 pieces.  Unused bits are always zero, so two
+ * records are byte for byte equal exactly when their models are, and the
+ * bytes themselves make a good hash key.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.converter.ChessModelConverter
+ * @see com.darringer.games.chess.model.ChessModel
+ *
+ */
+public class ChessModelBinaryConverter {
+
+	/* bytes per position */
+	public static final int RECORD_SIZE = 32;
+
+	/* pieces a record has room for */
+	public static final int MAX_PIECES = 32;
+
+	private static final int PIECES_OFFSET = 8;
+	private static final int FLAGS_OFFSET = 24;
+	private static final int EN_PASSANT_OFFSET = 25;
+	private static final int HALFMOVE_CLOCK_OFFSET = 26;
+	private static final int FULLMOVE_NUMBER_OFFSET = 28;
+
+	/* no en passant square */
+	private static final int NO_EN_PASSANT = 0xff;
+
+	private static final Piece[] pieces = Piece.values();
+	private static final Location[] locations = Location.values();
+
+
+	/**
+	 * Default constructor
+	 */
+	public ChessModelBinaryConverter() {
+
+	}
+
+
+	/**
+	 * The model as a record of its own
+	 *
+	 * @param model
+	 * @return
+	 */
+	public byte[] getBytesFromModel(ChessModel model) {
+		byte[] bytes = new byte[RECORD_SIZE];
+		encode(model, ByteBuffer.wrap(bytes), 0);
+		return bytes;
+	}
+
+
+	/**
+	 * The model in the record at the given offset of an array
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @return
+	 * @throws ChessParseException
+	 */
+	public ChessModel getModelFromBytes(byte[] bytes, int offset) throws ChessParseException {
+		return decode(ByteBuffer.wrap(bytes), offset);
+	}
+
+
+	/**
+	 * Put the model's record at the buffer's position and move the
+	 * position past it
+	 *
+	 * @param model
+	 * @param buffer
+	 */
+	public void putModel(ChessModel model, ByteBuffer buffer) {
+		int position = buffer.position();
+		if (buffer.remaining() < RECORD_SIZE) {
+			throw new IllegalArgumentException("No room for a position record");
+		}
+		encode(model, buffer, position);
+		buffer.position(position + RECORD_SIZE);
+	}
+
+
+	/**
+	 * Put the model's record at the given record index of the buffer,
+	 * leaving the buffer's position as it is
+	 *
+	 * @param model
+	 * @param buffer
+	 * @param index
+	 */
+	public void putModel(ChessModel model, ByteBuffer buffer, int index) {
+		encode(model, buffer, index * RECORD_SIZE);
+	}
+
+
+	/**
+	 * Put the records of all the models, one after another, at the
+	 * buffer's position and move the position past them
+	 *
+	 * @param models
+	 * @param buffer
+	 */
+	public void putModels(List<ChessModel> models, ByteBuffer buffer) {
+		if (buffer.remaining() < models.size() * RECORD_SIZE) {
+			throw new IllegalArgumentException("No room for " + models.size() + " position records");
+		}
+		int position = buffer.position();
+		for (ChessModel model : models) {
+			encode(model, buffer, position);
+			position += RECORD_SIZE;
+		}
+		buffer.position(position);
+	}
+
+
+	/**
+	 * The model in the record at the buffer's position, which is moved
+	 * past it
+	 *
+	 * @param buffer
+	 * @return
+	 * @throws ChessParseException
+	 */
+	public ChessModel getModel(ByteBuffer buffer) throws ChessParseException {
+		int position = buffer.position();
+		if (buffer.remaining() < RECORD_SIZE) {
+			throw new ChessParseException("Incomplete position record", 0);
+		}
+		ChessModel model = decode(buffer, position);
+		buffer.position(position + RECORD_SIZE);
+		return model;
+	}
+
+
+	/**
+	 * The model in the record at the given record index of the buffer,
+	 * leaving the buffer's position as it is
+	 *
+	 * @param buffer
+	 * @param index
+	 * @return
+	 * @throws ChessParseException
+	 */
+	public ChessModel getModel(ByteBuffer buffer, int index) throws ChessParseException {
+		return decode(buffer, index * RECORD_SIZE);
+	}
+
+
+	/**
+	 * The models in all the whole records from the buffer's position to
+	 * its limit, moving the position past them
+	 *
+	 * @param buffer
+	 * @return
+	 * @throws ChessParseException
+	 */
+	public List<ChessModel> getModels(ByteBuffer buffer) throws ChessParseException {
+		int count = buffer.remaining() / RECORD_SIZE;
+		List<ChessModel> models = new ArrayList<ChessModel>(count);
+		int position = buffer.position();
+		for (int i=0; i < count; i++) {
+			models.add(decode(buffer, position));
+			position += RECORD_SIZE;
+		}
+		buffer.position(position);
+		return models;
+	}
+
+
+	/**
+	 * Write the model's record at the given absolute position
+	 */
+	private static void encode(ChessModel model, ByteBuffer buffer, int at) {
+		long occupancy = 0l;
+		int pieceCount = 0;
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece != None) {
+					occupancy |= 1l << ((y << 3) + x);
+					pieceCount++;
+				}
+			}
+		}
+		if (pieceCount > MAX_PIECES) {
+			throw new IllegalArgumentException("Too many pieces for a position record: " + pieceCount);
+		}
+		int halfmoveClock = model.getHalfmoveClock();
+		int fullmoveNumber = model.getFullmoveNumber();
+		if ((halfmoveClock < 0) || (halfmoveClock > 0xffff) || (fullmoveNumber < 0) || (fullmoveNumber > 0xffff)) {
+			throw new IllegalArgumentException("Clocks out of range for a position record");
+		}
+
+		for (int i=0; i < 8; i++) {
+			buffer.put(at + i, (byte) (occupancy >>> (56 - (i << 3))));
+		}
+
+		// pieces in square order, two to a byte
+		int nibbles = 0;
+		int nibbleCount = 0;
+		int pieceAt = at + PIECES_OFFSET;
+		long remaining = occupancy;
+		while (remaining != 0l) {
+			int square = Long.numberOfTrailingZeros(remaining);
+			remaining &= remaining - 1;
+			nibbles = (nibbles << 4) | model.getPieceAtIndex(square & 7, square >>> 3).ordinal();
+			if (++nibbleCount == 2) {
+				buffer.put(pieceAt++, (byte) nibbles);
+				nibbles = 0;
+				nibbleCount = 0;
+			}
+		}
+		if (nibbleCount == 1) {
+			buffer.put(pieceAt++, (byte) (nibbles << 4));
+		}
+		while (pieceAt < at + FLAGS_OFFSET) {
+			buffer.put(pieceAt++, (byte) 0);
+		}
+
+		CastlingAvailability castlingAvailability = model.getCastlingAvailability();
+		int flags = (model.getActiveColor() == Black ? 1 : 0);
+		flags |= (castlingAvailability.isWhiteCanCastleKingSide() ? 2 : 0);
+		flags |= (castlingAvailability.isWhiteCanCastleQueenSide() ? 4 : 0);
+		flags |= (castlingAvailability.isBlackCanCastleKingSide() ? 8 : 0);
+		flags |= (castlingAvailability.isBlackCanCastleQueenSide() ? 16 : 0);
+		buffer.put(at + FLAGS_OFFSET, (byte) flags);
+		Location enPassant = model.getEnPassant();
+		buffer.put(at + EN_PASSANT_OFFSET, (byte) (enPassant == Unknown ? NO_EN_PASSANT : enPassant.ordinal()));
+		buffer.put(at + HALFMOVE_CLOCK_OFFSET, (byte) (halfmoveClock >>> 8));
+		buffer.put(at + HALFMOVE_CLOCK_OFFSET + 1, (byte) halfmoveClock);
+		buffer.put(at + FULLMOVE_NUMBER_OFFSET, (byte) (fullmoveNumber >>> 8));
+		buffer.put(at + FULLMOVE_NUMBER_OFFSET + 1, (byte) fullmoveNumber);
+		buffer.put(at + RECORD_SIZE - 2, (byte) 0);
+		buffer.put(at + RECORD_SIZE - 1, (byte) 0);
+	}
+
+
+	/**
+	 * Read the model in the record at the given absolute position
+	 */
+	private static ChessModel decode(ByteBuffer buffer, int at) throws ChessParseException {
+		long occupancy = 0l;
+		for (int i=0; i < 8; i++) {
+			occupancy = (occupancy << 8) | (buffer.get(at + i) & 0xff);
+		}
+		if (Long.bitCount(occupancy) > MAX_PIECES) {
+			throw new ChessParseException("Too many pieces in the position record", 0);
+		}
+
+		ChessModel model = new ChessModel();
+		int nibbleIndex = 0;
+		while (occupancy != 0l) {
+			int square = Long.numberOfTrailingZeros(occupancy);
+			occupancy &= occupancy - 1;
+			int nibbles = buffer.get(at + PIECES_OFFSET + (nibbleIndex >>> 1)) & 0xff;
+			int ordinal = ((nibbleIndex & 1) == 0 ? nibbles >>> 4 : nibbles & 15);
+			if (ordinal >= None.ordinal()) {
+				throw new ChessParseException("Invalid piece " + ordinal + " in the position record", PIECES_OFFSET + (nibbleIndex >>> 1));
+			}
+			model.setPieceAtLocation(locations[square], pieces[ordinal]);
+			nibbleIndex++;
+		}
+
+		int flags = buffer.get(at + FLAGS_OFFSET) & 0xff;
+		model.setActiveColor((flags & 1) != 0 ? Black : White);
+		CastlingAvailability castlingAvailability = new CastlingAvailability();
+		castlingAvailability.setWhiteCanCastleKingSide((flags & 2) != 0);
+		castlingAvailability.setWhiteCanCastleQueenSide((flags & 4) != 0);
+		castlingAvailability.setBlackCanCastleKingSide((flags & 8) != 0);
+		castlingAvailability.setBlackCanCastleQueenSide((flags & 16) != 0);
+		model.setCastlingAvailability(castlingAvailability);
+
+		int enPassant = buffer.get(at + EN_PASSANT_OFFSET) & 0xff;
+		if (enPassant == NO_EN_PASSANT) {
+			model.setEnPassant(Unknown);
+		} else if (enPassant < 64) {
+			model.setEnPassant(locations[enPassant]);
+		} else {
+			throw new ChessParseException("Invalid en passant square " + enPassant + " in the position record", EN_PASSANT_OFFSET);
+		}
+		model.setHalfmoveClock(((buffer.get(at + HALFMOVE_CLOCK_OFFSET) & 0xff) << 8) | (buffer.get(at + HALFMOVE_CLOCK_OFFSET + 1) & 0xff));
+		model.setFullmoveNumber(((buffer.get(at + FULLMOVE_NUMBER_OFFSET) & 0xff) << 8) | (buffer.get(at + FULLMOVE_NUMBER_OFFSET + 1) & 0xff));
+		return model;
+	}
+}
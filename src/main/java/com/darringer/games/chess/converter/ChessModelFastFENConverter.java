@@ -0,0 +1,454 @@
+package com.darringer.games.chess.converter;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Location.Unknown;
+import static com.darringer.games.chess.model.Piece.None;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.darringer.games.chess.model.CastlingAvailability;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessParseException;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * Implementation of {@link ChessModelConverter} that parses Forsyth
+ * Edwards Notation (FEN) by hand, in a single pass over the characters,
+ * rather than through the ANTLR grammar.  It accepts what
+ * <code>ForsythEdwards.g</code> accepts, with a few exceptions: the
+ * clocks may have more than one digit, ranks must add up to eight
+ * squares, and nothing but white space may follow the fullmove number.
+ * Anything else is reported as a {@link ChessParseException} with the
+ * offset of the offending character.
+ * <p/>
+ * Apart from the model itself nothing is created while parsing, and the
+ * FEN may be given as a String, any other {@link CharSequence}, or
+ * (ASCII) bytes, so callers reading requests or files don't have to
+ * decode them into Strings first.  Likewise FEN is written straight
+ * into an {@link Appendable}, a char array or a {@link ByteBuffer},
+ * exactly as {@link ChessModelFENConverter} formats it but without
+ * building any Strings on the way.  Instances hold no state and may be
+ * shared between threads.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.converter.ChessModelFENConverter
+ * @see com.darringer.games.chess.model.ChessParseException
+ *
+ */
+public class ChessModelFastFENConverter extends ChessModelFENConverter {
+
+	/* pieces by their FEN code */
+	private static final Piece[] piecesByCode = new Piece[128];
+
+	/* squares by y*8+x, without the hashing of Location.get */
+	private static final Location[] locations = Location.values();
+
+	/* FEN codes by piece ordinal */
+	private static final char[] pieceCodes = new char[Piece.values().length];
+
+	/* the clocks don't need more digits than this */
+	private static final int MAX_DIGITS = 9;
+
+	/* room for the longest FEN we write */
+	public static final int MAX_FEN_LENGTH = 128;
+
+	static {
+		for (Piece piece : Piece.values()) {
+			if (piece != None) {
+				piecesByCode[piece.getCode()] = piece;
+				pieceCodes[piece.ordinal()] = piece.getCode();
+			}
+		}
+	}
+
+	/**
+	 * Default constructor
+	 */
+	public ChessModelFastFENConverter() {
+
+	}
+
+	/**
+	 * @see com.darringer.games.chess.converter.ChessModelConverter#getModelFromString(String)
+	 */
+	@Override
+	public ChessModel getModelFromString(String modelAsString) throws ChessSystemException {
+		return parse(modelAsString, null, null, 0, modelAsString.length());
+	}
+
+
+	/**
+	 * Parse the FEN between the given offsets of a sequence of characters
+	 *
+	 * @param modelAsChars
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws ChessParseException
+	 */
+	public ChessModel getModelFromChars(CharSequence modelAsChars, int start, int end) throws ChessParseException {
+		return parse(modelAsChars, null, null, start, end);
+	}
+
+
+	/**
+	 * Parse the FEN between the given offsets of an array of ASCII bytes
+	 *
+	 * @param modelAsBytes
+	 * @param start
+	 * @param end
+	 * @return
+	 * @throws ChessParseException
+	 */
+	public ChessModel getModelFromBytes(byte[] modelAsBytes, int start, int end) throws ChessParseException {
+		return parse(null, modelAsBytes, null, start, end);
+	}
+
+
+	/**
+	 * Parse the FEN between the position and the limit of a buffer of
+	 * ASCII bytes.  The buffer's position is left as it was, and offsets
+	 * in exceptions are relative to it.
+	 *
+	 * @param modelAsBytes
+	 * @return
+	 * @throws ChessParseException
+	 */
+	public ChessModel getModelFromBuffer(ByteBuffer modelAsBytes) throws ChessParseException {
+		if (modelAsBytes.hasArray()) {
+			int offset = modelAsBytes.arrayOffset();
+			return parse(null, modelAsBytes.array(), null, offset + modelAsBytes.position(), offset + modelAsBytes.limit());
+		}
+		return parse(null, null, modelAsBytes, modelAsBytes.position(), modelAsBytes.limit());
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.converter.ChessModelConverter#getStringFromModel(ChessModel)
+	 */
+	@Override
+	public String getStringFromModel(ChessModel model) {
+		char[] chars = new char[MAX_FEN_LENGTH];
+		int length = getCharsFromModel(model, chars, 0);
+		return new String(chars, 0, length);
+	}
+
+
+	/**
+	 * Write the model's FEN into a char array, which needs room for
+	 * {@link #MAX_FEN_LENGTH} characters from the offset
+	 *
+	 * @param model
+	 * @param chars
+	 * @param offset
+	 * @return number of characters written
+	 */
+	public int getCharsFromModel(ChessModel model, char[] chars, int offset) {
+		try {
+			return write(model, chars, null, null, offset) - offset;
+		} catch (IOException ioe) {
+			// only an Appendable throws
+			throw new IllegalStateException(ioe);
+		}
+	}
+
+
+	/**
+	 * Append the model's FEN
+	 *
+	 * @param model
+	 * @param out
+	 * @throws IOException
+	 */
+	public void appendModel(ChessModel model, Appendable out) throws IOException {
+		write(model, null, null, out, 0);
+	}
+
+
+	/**
+	 * Put the model's FEN, as ASCII bytes, at the buffer's position and
+	 * move the position past it
+	 *
+	 * @param model
+	 * @param buffer
+	 */
+	public void putModel(ChessModel model, ByteBuffer buffer) {
+		try {
+			write(model, null, buffer, null, 0);
+		} catch (IOException ioe) {
+			// only an Appendable throws
+			throw new IllegalStateException(ioe);
+		}
+	}
+
+
+	/**
+	 * Parse the FEN from whichever one of the sources is given
+	 */
+	private static ChessModel parse(CharSequence chars, byte[] bytes, ByteBuffer buffer, int start, int end) throws ChessParseException {
+		ChessModel model = new ChessModel();
+		int p = start;
+
+		// piece placement, from the eighth rank down
+		for (int y=7; y >= 0; y--) {
+			int x = 0;
+			int c;
+			while (true) {
+				c = charAt(chars, bytes, buffer, p, end);
+				if ((c >= '1') && (c <= '8')) {
+					x += c - '0';
+				} else if ((c > 0) && (c < piecesByCode.length) && (piecesByCode[c] != null)) {
+					if (x < 8) {
+						model.setPieceAtLocation(locations[(y << 3) + x], piecesByCode[c]);
+					}
+					x++;
+				} else {
+					break;
+				}
+				if (x > 8) {
+					throw new ChessParseException(String.format("Rank %d has more than 8 squares", y + 1), p - start);
+				}
+				p++;
+			}
+			char separator = (y > 0 ? '/' : ' ');
+			if ((x < 8) && (c == separator)) {
+				throw new ChessParseException(String.format("Rank %d has only %d squares", y + 1, x), p - start);
+			}
+			p = expect(chars, bytes, buffer, p, end, separator, start);
+		}
+
+		// active color
+		int c = charAt(chars, bytes, buffer, p, end);
+		if (c == 'w') {
+			model.setActiveColor(White);
+		} else if (c == 'b') {
+			model.setActiveColor(Black);
+		} else {
+			throw unexpected(c, "active color", p - start);
+		}
+		p = expect(chars, bytes, buffer, p + 1, end, ' ', start);
+
+		// castling availability, in any order
+		CastlingAvailability castlingAvailability = new CastlingAvailability();
+		castlingAvailability.setWhiteCanCastleKingSide(false);
+		castlingAvailability.setWhiteCanCastleQueenSide(false);
+		castlingAvailability.setBlackCanCastleKingSide(false);
+		castlingAvailability.setBlackCanCastleQueenSide(false);
+		int castlingStart = p;
+		while (true) {
+			c = charAt(chars, bytes, buffer, p, end);
+			if (c == 'K') {
+				castlingAvailability.setWhiteCanCastleKingSide(true);
+			} else if (c == 'Q') {
+				castlingAvailability.setWhiteCanCastleQueenSide(true);
+			} else if (c == 'k') {
+				castlingAvailability.setBlackCanCastleKingSide(true);
+			} else if (c == 'q') {
+				castlingAvailability.setBlackCanCastleQueenSide(true);
+			} else if (c != '-') {
+				break;
+			}
+			p++;
+		}
+		if (p == castlingStart) {
+			throw unexpected(c, "castling availability", p - start);
+		}
+		model.setCastlingAvailability(castlingAvailability);
+		p = expect(chars, bytes, buffer, p, end, ' ', start);
+
+		// en passant target square
+		c = charAt(chars, bytes, buffer, p, end);
+		if (c == '-') {
+			model.setEnPassant(Unknown);
+			p++;
+		} else if ((c >= 'a') && (c <= 'h')) {
+			int rank = charAt(chars, bytes, buffer, p + 1, end);
+			if ((rank < '1') || (rank > '8')) {
+				throw unexpected(rank, "en passant rank", p + 1 - start);
+			}
+			model.setEnPassant(locations[((rank - '1') << 3) + (c - 'a')]);
+			p += 2;
+		} else {
+			throw unexpected(c, "en passant square", p - start);
+		}
+		p = expect(chars, bytes, buffer, p, end, ' ', start);
+
+		// halfmove clock
+		int numberEnd = getNumberEnd(chars, bytes, buffer, p, end, "halfmove clock", start);
+		model.setHalfmoveClock(getNumber(chars, bytes, buffer, p, numberEnd));
+		p = expect(chars, bytes, buffer, numberEnd, end, ' ', start);
+
+		// fullmove number, and perhaps the end of the line
+		numberEnd = getNumberEnd(chars, bytes, buffer, p, end, "fullmove number", start);
+		model.setFullmoveNumber(getNumber(chars, bytes, buffer, p, numberEnd));
+		p = numberEnd;
+		while ((p < end) && (charAt(chars, bytes, buffer, p, end) <= ' ')) {
+			p++;
+		}
+		if (p < end) {
+			throw unexpected(charAt(chars, bytes, buffer, p, end), "end of string", p - start);
+		}
+		return model;
+	}
+
+
+	/**
+	 * Write the FEN into whichever one of the targets is given
+	 *
+	 * @return the position in the char array after the FEN
+	 */
+	private static int write(ChessModel model, char[] chars, ByteBuffer buffer, Appendable out, int p) throws IOException {
+		// for example, "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1"
+		for (int y=7; y >= 0; y--) {
+			int spaceCount = 0;
+			for (int x=0; x < 8; x++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece == None) {
+					spaceCount++;
+				} else {
+					if (spaceCount != 0) {
+						p = put(chars, buffer, out, p, (char) ('0' + spaceCount));
+						spaceCount = 0;
+					}
+					p = put(chars, buffer, out, p, pieceCodes[piece.ordinal()]);
+				}
+			}
+			if (spaceCount != 0) {
+				p = put(chars, buffer, out, p, (char) ('0' + spaceCount));
+			}
+			p = put(chars, buffer, out, p, (y > 0 ? '/' : ' '));
+		}
+		p = put(chars, buffer, out, p, model.getActiveColor().getCode());
+		p = put(chars, buffer, out, p, ' ');
+
+		CastlingAvailability castlingAvailability = model.getCastlingAvailability();
+		int castlingStart = p;
+		if (castlingAvailability.isWhiteCanCastleKingSide()) {
+			p = put(chars, buffer, out, p, 'K');
+		}
+		if (castlingAvailability.isWhiteCanCastleQueenSide()) {
+			p = put(chars, buffer, out, p, 'Q');
+		}
+		if (castlingAvailability.isBlackCanCastleKingSide()) {
+			p = put(chars, buffer, out, p, 'k');
+		}
+		if (castlingAvailability.isBlackCanCastleQueenSide()) {
+			p = put(chars, buffer, out, p, 'q');
+		}
+		if (p == castlingStart) {
+			p = put(chars, buffer, out, p, '-');
+		}
+		p = put(chars, buffer, out, p, ' ');
+
+		Location enPassant = model.getEnPassant();
+		if (enPassant == Unknown) {
+			p = put(chars, buffer, out, p, '-');
+		} else {
+			p = put(chars, buffer, out, p, (char) ('a' + enPassant.getX()));
+			p = put(chars, buffer, out, p, (char) ('1' + enPassant.getY()));
+		}
+		p = put(chars, buffer, out, p, ' ');
+		p = putNumber(chars, buffer, out, p, model.getHalfmoveClock());
+		p = put(chars, buffer, out, p, ' ');
+		return putNumber(chars, buffer, out, p, model.getFullmoveNumber());
+	}
+
+
+	private static int put(char[] chars, ByteBuffer buffer, Appendable out, int p, char c) throws IOException {
+		if (chars != null) {
+			chars[p] = c;
+		} else if (buffer != null) {
+			buffer.put((byte) c);
+		} else {
+			out.append(c);
+		}
+		return p + 1;
+	}
+
+
+	/**
+	 * Put the decimal digits of a number, most significant first
+	 */
+	private static int putNumber(char[] chars, ByteBuffer buffer, Appendable out, int p, int number) throws IOException {
+		long n = number;
+		if (n < 0) {
+			p = put(chars, buffer, out, p, '-');
+			n = -n;
+		}
+		long divisor = 1l;
+		while (divisor * 10 <= n) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			p = put(chars, buffer, out, p, (char) ('0' + (n / divisor) % 10));
+		}
+		return p;
+	}
+
+
+	/**
+	 * The character at the given position, or -1 past the end
+	 */
+	private static int charAt(CharSequence chars, byte[] bytes, ByteBuffer buffer, int p, int end) {
+		if (p >= end) {
+			return -1;
+		} else if (chars != null) {
+			return chars.charAt(p);
+		} else if (bytes != null) {
+			return bytes[p] & 0xff;
+		} else {
+			return buffer.get(p) & 0xff;
+		}
+	}
+
+
+	/**
+	 * The position after the expected character
+	 */
+	private static int expect(CharSequence chars, byte[] bytes, ByteBuffer buffer, int p, int end, char expected, int start) throws ChessParseException {
+		int c = charAt(chars, bytes, buffer, p, end);
+		if (c != expected) {
+			throw unexpected(c, "'" + expected + "'", p - start);
+		}
+		return p + 1;
+	}
+
+
+	/**
+	 * The position after the digits of a number
+	 */
+	private static int getNumberEnd(CharSequence chars, byte[] bytes, ByteBuffer buffer, int p, int end, String what, int start) throws ChessParseException {
+		int numberEnd = p;
+		int c = charAt(chars, bytes, buffer, numberEnd, end);
+		while ((c >= '0') && (c <= '9')) {
+			if (numberEnd - p == MAX_DIGITS) {
+				throw new ChessParseException("Too many digits in the " + what, numberEnd - start);
+			}
+			c = charAt(chars, bytes, buffer, ++numberEnd, end);
+		}
+		if (numberEnd == p) {
+			throw unexpected(c, what, p - start);
+		}
+		return numberEnd;
+	}
+
+
+	private static int getNumber(CharSequence chars, byte[] bytes, ByteBuffer buffer, int p, int numberEnd) {
+		int number = 0;
+		for (; p < numberEnd; p++) {
+			number = number * 10 + (charAt(chars, bytes, buffer, p, numberEnd) - '0');
+		}
+		return number;
+	}
+
+
+	private static ChessParseException unexpected(int c, String expected, int offset) {
+		String found = (c < 0 ? "end of string" : "'" + (char) c + "'");
+		return new ChessParseException(String.format("Expected %s but found %s", expected, found), offset);
+	}
+}
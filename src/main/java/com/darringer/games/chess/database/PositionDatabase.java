@@ -0,0 +1,625 @@
+package com.darringer.games.chess.database;
+
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * A persistent store of {@link PositionRecord}s (best move, score, depth
+ * and visit count) by position key, kept in memory mapped files in one
+ * directory so that analysis done once, by any process, is there for
+ * every later search to read at the cost of a page cache lookup.
+ * <p />
+ * Records are {@link #RECORD_SIZE} bytes each, with a checksum, and are
+ * only ever appended, to segment files of a fixed number of records.
+ * Storing a position again appends a new record.  The index
+ * (<code>positions.idx</code>) is an open addressing hash table of
+ * (key, record number) slots, linearly probed and never more than half
+ * full, doubling when it would be.  It starts with two copies of a
+ * checksummed header, written alternately, which record how many records
+ * and positions there are and whether the database was closed cleanly.
+ * <p />
+ * Only one process at a time may write; it holds a lock on
+ * <code>positions.lock</code>, and other instances open the database read
+ * only.  The header is committed by {@link #flush()} and
+ * {@link #close()}, after the records and index have been forced to
+ * disk.  If a writer dies, the next one to open the database keeps every
+ * whole record past the last commit (a torn record fails its checksum)
+ * and rebuilds the index from the records.  A reader sees new records as
+ * they are stored, until the writer grows the index; it then has to be
+ * reopened to see positions stored after that.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.database.PositionRecord
+ *
+ */
+public class PositionDatabase {
+
+	private static Logger log = Logger.getLogger(PositionDatabase.class);
+
+	/* "PSDB" */
+	static final int MAGIC = 0x50534442;
+	static final int VERSION = 1;
+
+	/* bytes per record and per index slot */
+	public static final int RECORD_SIZE = 32;
+	static final int SLOT_SIZE = 16;
+
+	/* the index starts with two copies of the header, in separate sectors */
+	static final int HEADER_SIZE = 4096;
+	static final int HEADER_COPY_OFFSET = 2048;
+
+	public static final int DEFAULT_SLOT_COUNT = 1 << 16;
+	public static final int DEFAULT_SEGMENT_RECORDS = 1 << 16;
+
+	/* the index has to fit in one mapping */
+	private static final int MAX_SLOT_COUNT = 1 << 26;
+
+	/* depths are stored in a byte */
+	private static final int MAX_DEPTH = 0xff;
+
+	private static final String INDEX_FILE = "positions.idx";
+	private static final String NEW_INDEX_FILE = "positions.idx.new";
+	private static final String LOCK_FILE = "positions.lock";
+	private static final String SEGMENT_FILE = "positions-%05d.dat";
+
+	/* promotion pieces by their code in a move */
+	private static final Piece[] whitePromotionPieces = {None, WhiteKnight, WhiteBishop, WhiteRook, WhiteQueen};
+	private static final Piece[] blackPromotionPieces = {None, BlackKnight, BlackBishop, BlackRook, BlackQueen};
+
+	private File directory;
+	private FileChannel lockChannel;
+	private FileLock lock;
+	private boolean isWritable;
+	private MappedByteBuffer index;
+	private int slotCount;
+	private int segmentRecords;
+	private long sequence;
+	private long recordCount;
+	private int positionCount;
+	private List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+
+	/**
+	 * Open the database in the given directory, creating it with the
+	 * default sizes if there isn't one yet
+	 *
+	 * @param directory
+	 * @throws ChessSystemException
+	 */
+	public PositionDatabase(File directory) throws ChessSystemException {
+		this(directory, DEFAULT_SLOT_COUNT, DEFAULT_SEGMENT_RECORDS);
+	}
+
+
+	/**
+	 * Open the database in the given directory, creating it with the given
+	 * initial number of index slots and records per segment file (both
+	 * powers of two) if there isn't one yet
+	 *
+	 * @param directory
+	 * @param slotCount
+	 * @param segmentRecords
+	 * @throws ChessSystemException if the files can't be used, or are not a position database
+	 */
+	public PositionDatabase(File directory, int slotCount, int segmentRecords) throws ChessSystemException {
+		if ((Integer.bitCount(slotCount) != 1) || (slotCount > MAX_SLOT_COUNT) || (Integer.bitCount(segmentRecords) != 1)) {
+			throw new IllegalArgumentException("Slot count and records per segment must be powers of two");
+		}
+		this.directory = directory;
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new ChessSystemException(String.format("Can't create %s", directory));
+			}
+			lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				lock = lockChannel.tryLock();
+			} catch (OverlappingFileLockException ofle) {
+				// another instance in this process is writing
+				lock = null;
+			}
+			isWritable = (lock != null);
+
+			File indexFile = new File(directory, INDEX_FILE);
+			boolean isClean = true;
+			if (indexFile.length() == 0l) {
+				if (!isWritable) {
+					throw new ChessSystemException(String.format("%s is being created by another process", directory));
+				}
+				this.slotCount = slotCount;
+				this.segmentRecords = segmentRecords;
+				index = createIndex(indexFile, slotCount);
+			} else {
+				isClean = openIndex(indexFile);
+			}
+
+			if (isWritable) {
+				// keep whole records written after the last commit, and make
+				// sure the index knows about them
+				long committedCount = recordCount;
+				while (readRecord(recordCount, 0l, false) != null) {
+					recordCount++;
+				}
+				if (!isClean || (recordCount != committedCount)) {
+					log.info(String.format("Recovering %s: %d committed records, %d found", directory, committedCount, recordCount));
+					rebuildIndex();
+				}
+				writeHeader(false);
+			}
+		} catch (IOException ioe) {
+			release();
+			throw new ChessSystemException(ioe);
+		} catch (ChessSystemException cse) {
+			release();
+			throw cse;
+		}
+		log.info(String.format("Opened %s %s: %d positions, %d records", directory, (isWritable ? "read write" : "read only"),
+				positionCount, recordCount));
+	}
+
+
+	/**
+	 * Pack the given {@link ChessMove} as it is stored in a record:
+	 * <code>to file, to row, from file, from row</code> (3 bits each,
+	 * lowest first) followed by the promotion piece (1 knight, 2 bishop,
+	 * 3 rook, 4 queen)
+	 *
+	 * @param move
+	 * @return
+	 */
+	public static int encodeMove(ChessMove move) {
+		Location from = move.getFrom();
+		Location to = move.getTo();
+		int promotion = 0;
+		Piece promotionPiece = move.getPawnPromotionPiece();
+		for (int i=1; i < whitePromotionPieces.length; i++) {
+			if ((promotionPiece == whitePromotionPieces[i]) || (promotionPiece == blackPromotionPieces[i])) {
+				promotion = i;
+			}
+		}
+		return to.getX() | (to.getY() << 3) | (from.getX() << 6) | (from.getY() << 9) | (promotion << 12);
+	}
+
+
+	/**
+	 * Can this instance store records?
+	 *
+	 * @return
+	 */
+	public boolean isWritable() {
+		return isWritable;
+	}
+
+
+	/**
+	 * Number of distinct positions stored
+	 *
+	 * @return
+	 */
+	public synchronized int getPositionCount() {
+		return positionCount;
+	}
+
+
+	/**
+	 * Number of records stored, including those replaced by a later
+	 * record for the same position
+	 *
+	 * @return
+	 */
+	public synchronized long getRecordCount() {
+		return recordCount;
+	}
+
+
+	/**
+	 * The record for the given {@link ChessModel}'s position
+	 *
+	 * @param model
+	 * @return the record, or <code>null</code> if the position has none
+	 */
+	public PositionRecord get(ChessModel model) {
+		return get(model.getPositionKey());
+	}
+
+
+	/**
+	 * The record for the given position key
+	 *
+	 * @param key
+	 * @return the record, or <code>null</code> if the position has none
+	 */
+	public synchronized PositionRecord get(long key) {
+		if (index == null) {
+			return null;
+		}
+		int offset = getSlotOffset(index, slotCount, key);
+		long reference = index.getLong(offset + 8);
+		if (reference == 0l) {
+			return null;
+		}
+		try {
+			return readRecord(reference - 1, key, true);
+		} catch (IOException ioe) {
+			log.warn(String.format("Can't read record %d of %s: %s", reference - 1, directory, ioe.getMessage()));
+			return null;
+		}
+	}
+
+
+	/**
+	 * Store the result of a search of the given position, replacing any
+	 * earlier record for it
+	 *
+	 * @param key
+	 * @param move packed by {@link #encodeMove(ChessMove)}
+	 * @param score
+	 * @param depth
+	 * @return the new record
+	 * @throws ChessSystemException if the record can't be written
+	 */
+	public synchronized PositionRecord put(long key, int move, int score, int depth) throws ChessSystemException {
+		if (!isWritable || (index == null)) {
+			throw new ChessSystemException(String.format("%s is not open for writing", directory));
+		}
+		PositionRecord previous = get(key);
+		PositionRecord record = new PositionRecord(key, move & 0xffff, score, Math.min(Math.max(depth, 0), MAX_DEPTH),
+				(previous == null ? 1l : previous.getVisitCount() + 1));
+		try {
+			writeRecord(recordCount, record);
+			recordCount++;
+			insert(key, recordCount);
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+		return record;
+	}
+
+
+	/**
+	 * Force everything stored so far to disk and commit it in the header
+	 *
+	 * @throws ChessSystemException
+	 */
+	public synchronized void flush() throws ChessSystemException {
+		if (isWritable && (index != null)) {
+			commit(false);
+		}
+	}
+
+
+	/**
+	 * Commit everything stored and release the files
+	 */
+	public synchronized void close() {
+		try {
+			if (isWritable && (index != null)) {
+				commit(true);
+			}
+		} catch (ChessSystemException cse) {
+			log.error(String.format("Can't commit %s: %s", directory, cse.getMessage()));
+		}
+		release();
+	}
+
+
+	/**
+	 * Let go of the files without committing anything, as if the process
+	 * had died
+	 */
+	void abandon() {
+		release();
+	}
+
+
+	private void release() {
+		index = null;
+		segments.clear();
+		isWritable = false;
+		try {
+			if (lock != null) {
+				lock.release();
+				lock = null;
+			}
+			if (lockChannel != null) {
+				lockChannel.close();
+				lockChannel = null;
+			}
+		} catch (IOException ioe) {
+			log.error(String.format("Can't unlock %s: %s", directory, ioe.getMessage()));
+		}
+	}
+
+
+	private void commit(boolean isClean) throws ChessSystemException {
+		for (MappedByteBuffer segment : segments) {
+			if (segment != null) {
+				segment.force();
+			}
+		}
+		index.force();
+		writeHeader(isClean);
+	}
+
+
+	/**
+	 * Map an existing index and read its header
+	 *
+	 * @return whether it was closed cleanly
+	 */
+	private boolean openIndex(File indexFile) throws IOException, ChessSystemException {
+		RandomAccessFile file = new RandomAccessFile(indexFile, (isWritable ? "rw" : "r"));
+		try {
+			index = file.getChannel().map((isWritable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY), 0, file.length());
+		} finally {
+			file.close();
+		}
+		int copy = getHeaderCopy(index, 0);
+		int otherCopy = getHeaderCopy(index, HEADER_COPY_OFFSET);
+		if ((copy < 0) || ((otherCopy >= 0) && (index.getLong(otherCopy + 8) > index.getLong(copy + 8)))) {
+			copy = otherCopy;
+		}
+		if (copy < 0) {
+			throw new ChessSystemException(String.format("%s is not a position database", directory));
+		}
+		sequence = index.getLong(copy + 8);
+		slotCount = index.getInt(copy + 16);
+		segmentRecords = index.getInt(copy + 20);
+		recordCount = index.getLong(copy + 24);
+		positionCount = index.getInt(copy + 32);
+		if (index.capacity() < HEADER_SIZE + ((long) slotCount * SLOT_SIZE)) {
+			throw new ChessSystemException(String.format("The index of %s is truncated", directory));
+		}
+		return (index.getInt(copy + 36) != 0);
+	}
+
+
+	/**
+	 * Offset of the given header copy, or -1 if it isn't a valid one
+	 */
+	private static int getHeaderCopy(MappedByteBuffer index, int offset) {
+		if ((index.capacity() < offset + 48) || (index.getInt(offset) != MAGIC) || (index.getInt(offset + 4) != VERSION)) {
+			return -1;
+		}
+		long checksum = MAGIC;
+		for (int i=0; i < 40; i += 8) {
+			checksum = mix(checksum ^ index.getLong(offset + i));
+		}
+		return (index.getLong(offset + 40) == checksum ? offset : -1);
+	}
+
+
+	/**
+	 * Write the header over the older of its two copies
+	 */
+	private void writeHeader(boolean isClean) throws ChessSystemException {
+		sequence++;
+		int offset = ((sequence & 1l) == 0l ? 0 : HEADER_COPY_OFFSET);
+		index.putInt(offset, MAGIC);
+		index.putInt(offset + 4, VERSION);
+		index.putLong(offset + 8, sequence);
+		index.putInt(offset + 16, slotCount);
+		index.putInt(offset + 20, segmentRecords);
+		index.putLong(offset + 24, recordCount);
+		index.putInt(offset + 32, positionCount);
+		index.putInt(offset + 36, (isClean ? 1 : 0));
+		long checksum = MAGIC;
+		for (int i=0; i < 40; i += 8) {
+			checksum = mix(checksum ^ index.getLong(offset + i));
+		}
+		index.putLong(offset + 40, checksum);
+		index.force();
+	}
+
+
+	/**
+	 * Create an empty index with the given number of slots
+	 */
+	private static MappedByteBuffer createIndex(File indexFile, int slotCount) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+		try {
+			file.setLength(0l);
+			file.setLength(HEADER_SIZE + ((long) slotCount * SLOT_SIZE));
+			return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+		} finally {
+			file.close();
+		}
+	}
+
+
+	/**
+	 * Point the key's slot at the given record number (plus one, so that
+	 * zero is an empty slot), growing the index first if a new position
+	 * would make it more than half full
+	 */
+	private void insert(long key, long reference) throws IOException, ChessSystemException {
+		int offset = getSlotOffset(index, slotCount, key);
+		if (index.getLong(offset + 8) == 0l) {
+			if (positionCount + 1 > slotCount / 2) {
+				growIndex(slotCount * 2);
+				offset = getSlotOffset(index, slotCount, key);
+			}
+			positionCount++;
+		}
+		index.putLong(offset, key);
+		index.putLong(offset + 8, reference);
+	}
+
+
+	/**
+	 * Move the slots into a new index with the given number of slots,
+	 * which replaces the old one in a single rename
+	 */
+	private void growIndex(int newSlotCount) throws IOException, ChessSystemException {
+		if (newSlotCount > MAX_SLOT_COUNT) {
+			throw new ChessSystemException(String.format("The index of %s is full", directory));
+		}
+		File newIndexFile = new File(directory, NEW_INDEX_FILE);
+		MappedByteBuffer newIndex = createIndex(newIndexFile, newSlotCount);
+		for (int slot=0; slot < slotCount; slot++) {
+			int offset = HEADER_SIZE + (slot * SLOT_SIZE);
+			long reference = index.getLong(offset + 8);
+			if (reference != 0l) {
+				long key = index.getLong(offset);
+				int newOffset = getSlotOffset(newIndex, newSlotCount, key);
+				newIndex.putLong(newOffset, key);
+				newIndex.putLong(newOffset + 8, reference);
+			}
+		}
+		replaceIndex(newIndexFile, newIndex, newSlotCount);
+		log.debug(String.format("Grew the index of %s to %d slots", directory, newSlotCount));
+	}
+
+
+	/**
+	 * Index every record again, from the first, in a new index
+	 */
+	private void rebuildIndex() throws IOException, ChessSystemException {
+		File newIndexFile = new File(directory, NEW_INDEX_FILE);
+		replaceIndex(newIndexFile, createIndex(newIndexFile, slotCount), slotCount);
+		positionCount = 0;
+		for (long number=0; number < recordCount; number++) {
+			PositionRecord record = readRecord(number, 0l, false);
+			insert(record.getKey(), number + 1);
+		}
+	}
+
+
+	private void replaceIndex(File newIndexFile, MappedByteBuffer newIndex, int newSlotCount) throws IOException, ChessSystemException {
+		index = newIndex;
+		slotCount = newSlotCount;
+		writeHeader(false);
+		Files.move(newIndexFile.toPath(), new File(directory, INDEX_FILE).toPath(),
+				StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+
+	/**
+	 * Offset of the slot holding the given key, or of the empty slot where
+	 * it would go
+	 */
+	private static int getSlotOffset(MappedByteBuffer index, int slotCount, long key) {
+		int mask = slotCount - 1;
+		int slot = (int) (key ^ (key >>> 32)) & mask;
+		while (true) {
+			int offset = HEADER_SIZE + (slot * SLOT_SIZE);
+			if ((index.getLong(offset + 8) == 0l) || (index.getLong(offset) == key)) {
+				return offset;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+
+	/**
+	 * The segment holding the given record, mapping it if need be
+	 *
+	 * @return the segment, or <code>null</code> if it doesn't exist (yet)
+	 */
+	private MappedByteBuffer getSegment(long number, boolean isCreate) throws IOException {
+		int segmentIndex = (int) (number / segmentRecords);
+		while (segments.size() <= segmentIndex) {
+			segments.add(null);
+		}
+		MappedByteBuffer segment = segments.get(segmentIndex);
+		if (segment == null) {
+			File segmentFile = new File(directory, String.format(SEGMENT_FILE, segmentIndex));
+			long length = (long) segmentRecords * RECORD_SIZE;
+			if (!isCreate && (segmentFile.length() < length)) {
+				return null;
+			}
+			RandomAccessFile file = new RandomAccessFile(segmentFile, (isWritable ? "rw" : "r"));
+			try {
+				if (file.length() < length) {
+					file.setLength(length);
+				}
+				segment = file.getChannel().map((isWritable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY), 0, length);
+			} finally {
+				file.close();
+			}
+			segments.set(segmentIndex, segment);
+		}
+		return segment;
+	}
+
+
+	/**
+	 * Record layout: key (8 bytes), score (4), move (2), depth (1), unused
+	 * (1), visit count (8), unused (4) and the checksum of all that (4)
+	 */
+	private void writeRecord(long number, PositionRecord record) throws IOException {
+		MappedByteBuffer segment = getSegment(number, true);
+		int offset = (int) (number % segmentRecords) * RECORD_SIZE;
+		segment.putLong(offset, record.getKey());
+		segment.putInt(offset + 8, record.getScore());
+		segment.putShort(offset + 12, (short) record.getMove());
+		segment.put(offset + 14, (byte) record.getDepth());
+		segment.put(offset + 15, (byte) 0);
+		segment.putLong(offset + 16, record.getVisitCount());
+		segment.putInt(offset + 24, 0);
+		segment.putInt(offset + 28, getChecksum(record.getKey(), record.getScore(), record.getMove(), record.getDepth(), record.getVisitCount()));
+	}
+
+
+	/**
+	 * The given record, if it is whole (and has the given key)
+	 *
+	 * @return the record, or <code>null</code>
+	 */
+	private PositionRecord readRecord(long number, long key, boolean isKeyChecked) throws IOException {
+		MappedByteBuffer segment = getSegment(number, false);
+		if (segment == null) {
+			return null;
+		}
+		int offset = (int) (number % segmentRecords) * RECORD_SIZE;
+		long recordKey = segment.getLong(offset);
+		int score = segment.getInt(offset + 8);
+		int move = segment.getShort(offset + 12) & 0xffff;
+		int depth = segment.get(offset + 14) & 0xff;
+		long visitCount = segment.getLong(offset + 16);
+		if ((isKeyChecked && (recordKey != key)) || (segment.getInt(offset + 28) != getChecksum(recordKey, score, move, depth, visitCount))) {
+			return null;
+		}
+		return new PositionRecord(recordKey, move, score, depth, visitCount);
+	}
+
+
+	/**
+	 * Checksum of a record's fields, never the same as the zeros of a
+	 * record that was never written
+	 */
+	private static int getChecksum(long key, int score, int move, int depth, long visitCount) {
+		long checksum = mix(MAGIC ^ key);
+		checksum = mix(checksum ^ (((long) score << 32) | (move << 8) | depth));
+		checksum = mix(checksum ^ visitCount);
+		return ((int) checksum == 0 ? 1 : (int) checksum);
+	}
+
+
+	private static long mix(long value) {
+		value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdl;
+		value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53l;
+		return value ^ (value >>> 33);
+	}
+}
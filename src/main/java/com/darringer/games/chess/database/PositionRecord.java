@@ -0,0 +1,70 @@
+package com.darringer.games.chess.database;
+
+import com.darringer.games.chess.model.ChessMove;
+
+/**
+ * What a {@link PositionDatabase} knows about one position: the best
+ * move found for it, packed with {@link PositionDatabase#encodeMove(ChessMove)},
+ * its score (from white's point of view, as the search scores it), the
+ * depth of the search that found it, and how many searches have stored a
+ * result for the position.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.database.PositionDatabase
+ *
+ */
+public class PositionRecord {
+
+	private long key;
+	private int move;
+	private int score;
+	private int depth;
+	private long visitCount;
+
+
+	PositionRecord(long key, int move, int score, int depth, long visitCount) {
+		this.key = key;
+		this.move = move;
+		this.score = score;
+		this.depth = depth;
+		this.visitCount = visitCount;
+	}
+
+	public long getKey() {
+		return key;
+	}
+
+	public int getMove() {
+		return move;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public long getVisitCount() {
+		return visitCount;
+	}
+
+
+	/**
+	 * Is the given move the best move of this record?
+	 *
+	 * @param chessMove
+	 * @return
+	 */
+	public boolean isMove(ChessMove chessMove) {
+		return PositionDatabase.encodeMove(chessMove) == move;
+	}
+
+
+	@Override
+	public String toString() {
+		return String.format("PositionRecord[key=%016x, move=%04x, score=%d, depth=%d, visits=%d]", key, move, score, depth, visitCount);
+	}
+}
@@ -0,0 +1,29 @@
+package com.darringer.games.chess.logic;
+
+import com.darringer.games.chess.model.PositionBatch;
+
+/**
+ * An {@link EvaluationLogic} that can score a whole {@link PositionBatch}
+ * in one call, for bulk consumers such as position suites, tuning and
+ * game database analysis.  Scoring a batch avoids the per-call overhead
+ * of {@link EvaluationLogic#evaluateModel(com.darringer.games.chess.model.ChessModel)}
+ * and lets implementations sweep the batch's per-square arrays.
+ * <p />
+ * Batch scores must be identical to scoring each position on its own.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.logic.EvaluationLogic
+ * @see com.darringer.games.chess.model.PositionBatch
+ *
+ */
+public interface BatchEvaluationLogic extends EvaluationLogic {
+
+	/**
+	 * Return the score of each position in the given {@link PositionBatch}
+	 *
+	 * @param batch
+	 * @return one score per position, in batch order
+	 */
+	int[] evaluateBatch(PositionBatch batch);
+}
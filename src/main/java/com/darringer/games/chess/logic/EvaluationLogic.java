@@ -8,7 +8,8 @@ import com.darringer.games.chess.model.ChessModel;
  * how much of an advantage white or black has at a given point in the
  * game.  A score of 0 implies an equally matched game, while positive
  * scores indicate a white advantage and negative scores indicate a 
- * black advantage.
+ * black advantage.  Scores are integer centipawns (a pawn is worth 100
+ * points) - integer arithmetic is fast, and exact.
  * <p />
  * Evaluation logic is called once for each node on the search tree -
  * many millions of times - so performance is an important consideration.
@@ -25,19 +26,34 @@ public interface EvaluationLogic {
 	 * Scores greater than <code>WHITE_WIN_THRESHOLD</code> mean 
 	 * that white has won the game
 	 */ 
-	static float WHITE_WIN_THRESHOLD = 50.0f;
+	static int WHITE_WIN_THRESHOLD = 5000;
 
 	/*
 	 * Scores less than <code>BLACK_WIN_THRESHOLD</code> mean that 
 	 * black has won the game.
 	 */
-	static float BLACK_WIN_THRESHOLD = -50.0f;
+	static int BLACK_WIN_THRESHOLD = -5000;
+	
+	/*
+	 * The search reports won games as <code>MATE_SCORE</code> minus the 
+	 * number of plies it takes to capture the king (negated for black), 
+	 * so shorter mates get better scores.  All such scores are beyond
+	 * <code>MATE_THRESHOLD</code> in one direction or the other.
+	 */
+	static int MATE_SCORE = 1000000;
+	static int MATE_THRESHOLD = MATE_SCORE - 1000;
+	
+	/*
+	 * Drawn games (repetition, fifty moves without a capture or pawn 
+	 * move) are scored as dead even
+	 */
+	static int DRAW_SCORE = 0;
 
 	 /**
-	  * Return the score associated with the given {@link ChessModel}.
+	  * Return the score, in centipawns, associated with the given {@link ChessModel}.
 	  *  
 	  * @param model
 	  * @return
 	  */
-	public float evaluateModel(ChessModel model);
+	public int evaluateModel(ChessModel model);
 }
@@ -0,0 +1,54 @@
+package com.darringer.games.chess.logic;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.PositionBatch;
+
+/**
+ * Decorator giving any {@link EvaluationLogic} a
+ * {@link BatchEvaluationLogic} interface.  Batches are handed straight to
+ * evaluations that can score them natively, anything else falls back to
+ * rebuilding and scoring one position at a time.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.logic.BatchEvaluationLogic
+ *
+ */
+public class EvaluationLogicBatchAdapter implements BatchEvaluationLogic {
+
+	private EvaluationLogic evaluationLogic;
+
+	public EvaluationLogicBatchAdapter(EvaluationLogic evaluationLogic) {
+		this.evaluationLogic = evaluationLogic;
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.EvaluationLogic#evaluateModel(ChessModel)
+	 */
+	@Override
+	public int evaluateModel(ChessModel model) {
+		return evaluationLogic.evaluateModel(model);
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.BatchEvaluationLogic#evaluateBatch(PositionBatch)
+	 */
+	@Override
+	public int[] evaluateBatch(PositionBatch batch) {
+		if (evaluationLogic instanceof BatchEvaluationLogic) {
+			return ((BatchEvaluationLogic) evaluationLogic).evaluateBatch(batch);
+		}
+		int[] scores = new int[batch.getSize()];
+		for (int i=0; i < scores.length; i++) {
+			scores[i] = evaluationLogic.evaluateModel(batch.getModel(i));
+		}
+		return scores;
+	}
+
+
+	public EvaluationLogic getEvaluationLogic() {
+		return this.evaluationLogic;
+	}
+}
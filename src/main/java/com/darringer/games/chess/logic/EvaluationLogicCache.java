@@ -0,0 +1,276 @@
+package com.darringer.games.chess.logic;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+import com.darringer.games.chess.model.PositionBatch;
+
+/**
+ * Decorator that puts a small direct-mapped cache in front of another
+ * {@link EvaluationLogic}.  Scores are stored by the {@link ChessModel}'s
+ * Zobrist position key (mixed with the phase of the game, for a
+ * {@link PhasedEvaluationLogic}) in a pair of primitive arrays, and a new
+ * entry simply replaces whatever was in its slot.  The same leaf positions
+ * come up again and again across iterative deepening passes and 
+ * transpositions, so this saves a lot of board scans once the evaluation
+ * gets heavier.
+ * <p />
+ * The running totals of an {@link IncrementalEvaluationLogic}, the tiers
+ * of a {@link LazyEvaluationLogic} and the batches of a 
+ * {@link BatchEvaluationLogic} are passed through to the wrapped 
+ * evaluation, so the cache can wrap any kind of evaluation.  Evaluations
+ * that are not lazy or batched are simply scored in full, as the search 
+ * would have scored them without the cache.  Lazy scores outside the 
+ * window are only bounds, so they are not cached.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.logic.EvaluationLogic
+ * @see com.darringer.games.chess.model.ChessModel#getPositionKey()
+ *
+ */
+public class EvaluationLogicCache implements IncrementalEvaluationLogic, LazyEvaluationLogic, BatchEvaluationLogic {
+
+	/* default number of entries, must be a power of two */
+	public static final int DEFAULT_SIZE = 1 << 16;
+
+	/* odd multiplier that spreads the phase of the game over the key's bits */
+	private static final long PHASE_MULTIPLIER = 0x9E3779B97F4A7C15l;
+
+	private EvaluationLogic evaluationLogic;
+	private IncrementalEvaluationLogic incrementalEvaluationLogic;
+	private LazyEvaluationLogic lazyEvaluationLogic;
+	private BatchEvaluationLogic batchEvaluationLogic;
+	private PhasedEvaluationLogic phasedEvaluationLogic;
+	private long[] keys;
+	private int[] scores;
+	private int mask;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Cache the given {@link EvaluationLogic} with the default size
+	 *
+	 * @param evaluationLogic
+	 */
+	public EvaluationLogicCache(EvaluationLogic evaluationLogic) {
+		this(evaluationLogic, DEFAULT_SIZE);
+	}
+
+	/**
+	 * Cache the given {@link EvaluationLogic}, the size is rounded up to
+	 * the next power of two.
+	 *
+	 * @param evaluationLogic
+	 * @param size
+	 */
+	public EvaluationLogicCache(EvaluationLogic evaluationLogic, int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		int capacity = Integer.highestOneBit(size);
+		if (capacity < size) {
+			capacity = capacity << 1;
+		}
+		this.evaluationLogic = evaluationLogic;
+		if (evaluationLogic instanceof IncrementalEvaluationLogic) {
+			this.incrementalEvaluationLogic = (IncrementalEvaluationLogic) evaluationLogic;
+		}
+		if (evaluationLogic instanceof LazyEvaluationLogic) {
+			this.lazyEvaluationLogic = (LazyEvaluationLogic) evaluationLogic;
+		}
+		if (evaluationLogic instanceof BatchEvaluationLogic) {
+			this.batchEvaluationLogic = (BatchEvaluationLogic) evaluationLogic;
+		}
+		if (evaluationLogic instanceof PhasedEvaluationLogic) {
+			this.phasedEvaluationLogic = (PhasedEvaluationLogic) evaluationLogic;
+		}
+		this.keys = new long[capacity];
+		this.scores = new int[capacity];
+		this.mask = capacity - 1;
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.EvaluationLogic#evaluateModel(ChessModel)
+	 */
+	@Override
+	public int evaluateModel(ChessModel model) {
+		long key = getKey(model);
+		int index = (int) (key & mask);
+		if ((keys[index] == key) && (key != 0l)) {
+			hits++;
+			return scores[index];
+		}
+		misses++;
+		int score = evaluationLogic.evaluateModel(model);
+		keys[index] = key;
+		scores[index] = score;
+		return score;
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#evaluateModelIncrementally(ChessModel)
+	 */
+	@Override
+	public int evaluateModelIncrementally(ChessModel model) {
+		if (incrementalEvaluationLogic == null) {
+			return evaluateModel(model);
+		}
+		long key = getKey(model);
+		int index = (int) (key & mask);
+		if ((keys[index] == key) && (key != 0l)) {
+			hits++;
+			return scores[index];
+		}
+		misses++;
+		int score = incrementalEvaluationLogic.evaluateModelIncrementally(model);
+		keys[index] = key;
+		scores[index] = score;
+		return score;
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.LazyEvaluationLogic#evaluateMaterial(ChessModel)
+	 */
+	@Override
+	public int evaluateMaterial(ChessModel model) {
+		if (lazyEvaluationLogic == null) {
+			return evaluateModelIncrementally(model);
+		}
+		return lazyEvaluationLogic.evaluateMaterial(model);
+	}
+
+
+	/**
+	 * A cached score is exact, so it is returned whatever the window.  Only
+	 * scores inside the window are cached, the rest are just bounds.
+	 *
+	 * @see com.darringer.games.chess.logic.LazyEvaluationLogic#evaluateModel(ChessModel, int, int)
+	 */
+	@Override
+	public int evaluateModel(ChessModel model, int alpha, int beta) {
+		if (lazyEvaluationLogic == null) {
+			return evaluateModelIncrementally(model);
+		}
+		long key = getKey(model);
+		int index = (int) (key & mask);
+		if ((keys[index] == key) && (key != 0l)) {
+			hits++;
+			return scores[index];
+		}
+		misses++;
+		int score = lazyEvaluationLogic.evaluateModel(model, alpha, beta);
+		if ((score > alpha) && (score < beta)) {
+			keys[index] = key;
+			scores[index] = score;
+		}
+		return score;
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.BatchEvaluationLogic#evaluateBatch(PositionBatch)
+	 */
+	@Override
+	public int[] evaluateBatch(PositionBatch batch) {
+		if (batchEvaluationLogic != null) {
+			return batchEvaluationLogic.evaluateBatch(batch);
+		}
+		int[] scores = new int[batch.getSize()];
+		for (int i=0; i < scores.length; i++) {
+			scores[i] = evaluateModel(batch.getModel(i));
+		}
+		return scores;
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#initializeModel(ChessModel)
+	 */
+	@Override
+	public void initializeModel(ChessModel model) {
+		if (incrementalEvaluationLogic != null) {
+			incrementalEvaluationLogic.initializeModel(model);
+		}
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceAdded(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceAdded(ChessModel model, Piece piece, Location location) {
+		if (incrementalEvaluationLogic != null) {
+			incrementalEvaluationLogic.pieceAdded(model, piece, location);
+		}
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceRemoved(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceRemoved(ChessModel model, Piece piece, Location location) {
+		if (incrementalEvaluationLogic != null) {
+			incrementalEvaluationLogic.pieceRemoved(model, piece, location);
+		}
+	}
+
+
+	/**
+	 * Cache key for the given {@link ChessModel}: its position key, and 
+	 * the phase of the game if the wrapped evaluation depends on it
+	 *
+	 * @param model
+	 * @return
+	 */
+	private long getKey(ChessModel model) {
+		long key = model.getPositionKey();
+		if (phasedEvaluationLogic != null) {
+			key ^= phasedEvaluationLogic.getPhase(model) * PHASE_MULTIPLIER;
+		}
+		return key;
+	}
+
+
+	/**
+	 * Empty the cache and reset the counters
+	 */
+	public void clear() {
+		for (int i=0; i < keys.length; i++) {
+			keys[i] = 0l;
+			scores[i] = 0;
+		}
+		hits = 0l;
+		misses = 0l;
+	}
+
+	public EvaluationLogic getEvaluationLogic() {
+		return this.evaluationLogic;
+	}
+
+	public int getSize() {
+		return this.keys.length;
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	public long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Fraction of lookups answered from the cache
+	 *
+	 * @return
+	 */
+	public float getHitRate() {
+		long lookups = hits + misses;
+		return (lookups == 0l ? 0.0f : ((float) hits) / lookups);
+	}
+}
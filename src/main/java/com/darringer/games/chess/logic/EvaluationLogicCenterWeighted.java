@@ -1,8 +1,12 @@
 package com.darringer.games.chess.logic;
 
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
 import static com.darringer.games.chess.model.Piece.None;
 
+import com.darringer.games.chess.model.AttackMap;
 import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.Location;
 import com.darringer.games.chess.model.Piece;
 
 /**
@@ -11,58 +15,282 @@ import com.darringer.games.chess.model.Piece;
  * advantage and then partially by location (with the assumption that 
  * controlling the center of the board is advantageous). 
  * <p />
- * Floating point multiplication is actually quite slow, so we should
- * be more intelligent about applying weightings only when they are
- * not 0
+ * Floating point multiplication is actually quite slow, so the center
+ * weightings are a table of integer bonuses (in thousandths of a point).  
+ * When used incrementally, the material and center weighting totals are 
+ * kept in the same units.
+ * <p />
+ * Pawn structure terms come from a {@link PawnStructureLogic}, which 
+ * caches them by pawn structure, so they cost next to nothing.  Mobility
+ * and king safety come from the model's {@link AttackMap}.  These are the
+ * expensive tiers of the lazy evaluation, and are skipped when the cheaper
+ * tiers are already far enough outside the window.
  * 
  * @author cdarringer
  * 
  * @see com.darringer.games.logic.EvaluationLogic
+ * @see com.darringer.games.chess.logic.PawnStructureLogic
  *
  */
-public class EvaluationLogicCenterWeighted implements EvaluationLogic {
+public class EvaluationLogicCenterWeighted implements IncrementalEvaluationLogic, LazyEvaluationLogic, PhasedEvaluationLogic {
+	
+	/*
+	 * Positions of the running totals in the model's evaluation terms
+	 */
+	private static final int MATERIAL = 0;
+	private static final int CENTER = 1;
+	
+	/*
+	 * We value control of the center until the game is well underway,
+	 * after the 20th move we focus solely on piece capture and check mate
+	 */
+	private static final int CENTER_WEIGHTED_MOVES = 20;
+	private static final int OPENING_PHASE = 0;
+	private static final int MIDDLE_GAME_PHASE = 1;
+	
+	/*
+	 * Largest swing of the pawn structure and attack terms, in centipawns.
+	 * Each term is clamped to its margin, so the lazy evaluation can skip
+	 * it knowing it could not have moved the score any further.
+	 */
+	private static final int PAWN_STRUCTURE_MARGIN = 150;
+	private static final int ATTACK_MARGIN = 100;
+	
+	/*
+	 * Bonus for each square a side attacks, and penalty for each attack on
+	 * the squares around a side's king
+	 */
+	private static final int MOBILITY_BONUS = 2;
+	private static final int KING_ZONE_PENALTY = 5;
 	
 	/**
-	 * Central locations are weighted higher than perimeter locations.
-	 * For performance reasons, changing a value here does not necessarily
-	 * mean it will be applied automatically - check the 
-	 * {@link EvaluationLogicCenterWeighted#evaluateModel(ChessModel)}
-	 * method below.
-	 */
-    private static final Float[][] weightings = {
-    		{1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f},
-    		{1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f},
-    		{1.000f, 1.000f, 1.002f, 1.005f, 1.005f, 1.002f, 1.000f, 1.000f},
-    		{1.000f, 1.000f, 1.005f, 1.009f, 1.009f, 1.005f, 1.000f, 1.000f},
-    		{1.000f, 1.000f, 1.005f, 1.009f, 1.009f, 1.005f, 1.000f, 1.000f},
-    		{1.000f, 1.000f, 1.002f, 1.005f, 1.005f, 1.002f, 1.000f, 1.000f},
-    		{1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f},
-    		{1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f, 1.000f}    		
-    };
+	 * Central locations are weighted higher than perimeter locations: the
+	 * extra value of a piece on each location, in thousandths of its 
+	 * points, indexed by location ordinal (a1 to h8).
+	 */
+	private static final int[] centerBonus = {
+		0,  0,  0,  0,  0,  0,  0,  0,
+		0,  0,  0,  0,  0,  0,  0,  0,
+		0,  0,  2,  5,  5,  2,  0,  0,
+		0,  0,  5,  9,  9,  5,  0,  0,
+		0,  0,  5,  9,  9,  5,  0,  0,
+		0,  0,  2,  5,  5,  2,  0,  0,
+		0,  0,  0,  0,  0,  0,  0,  0,
+		0,  0,  0,  0,  0,  0,  0,  0
+	};
+	
+    private PawnStructureLogic pawnStructureLogic = new PawnStructureLogic();
 	    
 	/**
 	 * Evaluation of the board is a simple summation of points with
-	 * an additional weighting factor for control of the center of the board.
+	 * an additional weighting factor for control of the center of the board,
+	 * plus the pawn structure terms.
+	 * 
+	 * @param model
+	 * @return
+	 */
+	public int evaluateModel(ChessModel model) {
+		return getCentipawns(getWeightedMaterial(model)) + getPawnScore(model) + getAttackScore(model);
+	}
+	
+	
+	/**
+	 * @see com.darringer.games.chess.logic.LazyEvaluationLogic#evaluateMaterial(ChessModel)
+	 */
+	@Override
+	public int evaluateMaterial(ChessModel model) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms != null) {
+			return getCentipawns(terms[MATERIAL]);
+		}
+		int score = 0;
+		for (int x=0; x < 8; x++) {
+			for (int y=0; y < 8; y++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece != None) {
+					score += piece.getPoints() * 100;
+				}
+			}
+		}
+		return score;
+	}
+	
+	
+	/**
+	 * Material and center control first, then the pawn structure and the
+	 * attack terms, each only if they could bring the score back inside
+	 * the window.
+	 * 
+	 * @see com.darringer.games.chess.logic.LazyEvaluationLogic#evaluateModel(ChessModel, int, int)
+	 */
+	@Override
+	public int evaluateModel(ChessModel model, int alpha, int beta) {
+		int[] terms = model.getEvaluationTerms();
+		int score;
+		if (terms == null) {
+			score = getCentipawns(getWeightedMaterial(model));
+		} else if (getPhase(model) == OPENING_PHASE) {
+			score = getCentipawns(terms[MATERIAL] + terms[CENTER]);
+		} else {
+			score = getCentipawns(terms[MATERIAL]);
+		}
+		int margin = PAWN_STRUCTURE_MARGIN + ATTACK_MARGIN;
+		if ((score + margin <= alpha) || (score - margin >= beta)) {
+			return score;
+		}
+		score += getPawnScore(model);
+		if ((score + ATTACK_MARGIN <= alpha) || (score - ATTACK_MARGIN >= beta)) {
+			return score;
+		}
+		return score + getAttackScore(model);
+	}
+	
+	
+	/**
+	 * Pawn structure terms from our {@link PawnStructureLogic}, clamped to
+	 * within <code>PAWN_STRUCTURE_MARGIN</code>, in centipawns.
+	 * 
+	 * @param model
+	 * @return
+	 */
+	public int getPawnScore(ChessModel model) {
+		return clamp(pawnStructureLogic.evaluatePawns(model), PAWN_STRUCTURE_MARGIN);
+	}
+	
+	
+	/**
+	 * Mobility (squares attacked) and king safety (attacks on the squares
+	 * around the king) from the model's {@link AttackMap}, clamped to 
+	 * within <code>ATTACK_MARGIN</code>, in centipawns.
+	 * 
+	 * @param model
+	 * @return
+	 */
+	public int getAttackScore(ChessModel model) {
+		AttackMap attackMap = model.getAttackMap();
+		int mobility = Long.bitCount(attackMap.getAttacks(White)) - Long.bitCount(attackMap.getAttacks(Black));
+		int kingAttacks = attackMap.getAttackCount(attackMap.getKingZone(Black), White) - attackMap.getAttackCount(attackMap.getKingZone(White), Black);
+		return clamp((mobility * MOBILITY_BONUS) + (kingAttacks * KING_ZONE_PENALTY), ATTACK_MARGIN);
+	}
+	
+	
+	private static int clamp(int score, int margin) {
+		return Math.max(-margin, Math.min(margin, score));
+	}
+	
+	
+	/**
+	 * Material plus the center weighting, in thousandths of a point.
 	 * 
 	 * @param model
 	 * @return
 	 */
-	public float evaluateModel(ChessModel model) {
-		float score = 0.0f;
+	private int getWeightedMaterial(ChessModel model) {
+		boolean isCenterWeighted = (getPhase(model) == OPENING_PHASE);
+		int score = 0;
 		for (int x=0; x < 8; x++) {
 			for (int y=0; y < 8; y++) {
 				Piece piece = model.getPieceAtIndex(x, y);
 				if (piece != None) {
-					if ((model.getFullmoveNumber() < 20) && (x > 1) && (x < 6) && (y > 1) && (y < 6)) {
-						// we value control of the center until the game is well underway
-						score += (piece.getPoints() * weightings[y][x]);							
-					} else {
-						// after the 20th move we focus solely on piece capture and check mate
-						score += piece.getPoints();
+					score += piece.getPoints() * 1000;
+					if (isCenterWeighted) {
+						score += piece.getPoints() * centerBonus[(y * 8) + x];
 					}
 				}
 			}
 		}
 		return score;
-	}	
+	}
+	
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#initializeModel(ChessModel)
+	 */
+	@Override
+	public void initializeModel(ChessModel model) {
+		int[] terms = new int[2];
+		for (int x=0; x < 8; x++) {
+			for (int y=0; y < 8; y++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece != None) {
+					terms[MATERIAL] += piece.getPoints() * 1000;
+					terms[CENTER] += piece.getPoints() * centerBonus[(y * 8) + x];
+				}
+			}
+		}
+		model.setEvaluationTerms(terms);
+	}
+	
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceAdded(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceAdded(ChessModel model, Piece piece, Location location) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms != null) {
+			terms[MATERIAL] += piece.getPoints() * 1000;
+			terms[CENTER] += piece.getPoints() * centerBonus[location.ordinal()];
+		}
+	}
+	
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceRemoved(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceRemoved(ChessModel model, Piece piece, Location location) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms != null) {
+			terms[MATERIAL] -= piece.getPoints() * 1000;
+			terms[CENTER] -= piece.getPoints() * centerBonus[location.ordinal()];
+		}
+	}
+	
+	
+	/**
+	 * Same as {@link #evaluateModel(ChessModel)}, but using the running totals.
+	 * 
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#evaluateModelIncrementally(ChessModel)
+	 */
+	@Override
+	public int evaluateModelIncrementally(ChessModel model) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms == null) {
+			return evaluateModel(model);
+		}
+		int positionalScore = getPawnScore(model) + getAttackScore(model);
+		if (getPhase(model) == OPENING_PHASE) {
+			return getCentipawns(terms[MATERIAL] + terms[CENTER]) + positionalScore;
+		} else {
+			return getCentipawns(terms[MATERIAL]) + positionalScore;
+		}
+	}
+	
+	
+	/**
+	 * The center weighting only applies to the opening
+	 * 
+	 * @see com.darringer.games.chess.logic.PhasedEvaluationLogic#getPhase(ChessModel)
+	 */
+	@Override
+	public int getPhase(ChessModel model) {
+		return (model.getFullmoveNumber() < CENTER_WEIGHTED_MOVES ? OPENING_PHASE : MIDDLE_GAME_PHASE);
+	}
+	
+	
+	public PawnStructureLogic getPawnStructureLogic() {
+		return this.pawnStructureLogic;
+	}
+	
+	
+	/**
+	 * Convert thousandths of a point to centipawns
+	 * 
+	 * @param thousandths
+	 * @return
+	 */
+	private int getCentipawns(int thousandths) {
+		return Math.round(thousandths / 10.0f);
+	}
 }
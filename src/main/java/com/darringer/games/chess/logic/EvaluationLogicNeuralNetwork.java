@@ -0,0 +1,352 @@
+package com.darringer.games.chess.logic;
+
+import static com.darringer.games.chess.model.Piece.BlackKing;
+import static com.darringer.games.chess.model.Piece.None;
+import static com.darringer.games.chess.model.Piece.WhiteKing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * Implementation of {@link EvaluationLogic} backed by a small quantized
+ * neural network in the style of NNUE.  The input layer has one feature
+ * per (piece, square) pair, seen both from white's side of the board and,
+ * colors swapped and ranks mirrored, from black's.  Each side feeds a
+ * hidden layer (the accumulator), and the clipped accumulators of both
+ * sides feed a single output neuron.
+ * <p />
+ * Only a couple of features change with each move, so when used
+ * incrementally the accumulators are kept in the model's evaluation terms
+ * and updated by {@link MoveLogic} one piece at a time, which leaves just
+ * the output layer to compute per node.  Weights are stored as 16 bit
+ * integers and all of the arithmetic is integer; the inner loops run over
+ * flat arrays so the JIT can vectorize them.
+ * <p />
+ * Networks are loaded from a little-endian binary file: the
+ * <code>MAGIC</code> number, the format <code>VERSION</code>, the hidden
+ * layer size <i>H</i>, then the feature weights (768 x <i>H</i> shorts,
+ * feature major), the hidden biases (<i>H</i> shorts), the output weights
+ * (2 x <i>H</i> shorts, white's side first) and the output bias (an int,
+ * in units of <code>QA * QB</code>).
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.logic.EvaluationLogic
+ * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic
+ *
+ */
+public class EvaluationLogicNeuralNetwork implements IncrementalEvaluationLogic {
+
+	/*
+	 * File format identification, "NNUE" and the layout version
+	 */
+	public static final int MAGIC = 0x4E4E5545;
+	public static final int VERSION = 1;
+
+	/*
+	 * One input feature for each of the 12 pieces on each of the 64 squares
+	 */
+	public static final int FEATURE_COUNT = 12 * 64;
+
+	/*
+	 * Quantization: accumulator values are clipped to [0, QA], output
+	 * weights are scaled by QB and the output is scaled to centipawns
+	 */
+	private static final int QA = 255;
+	private static final int QB = 64;
+	private static final int SCALE = 400;
+
+	/*
+	 * The network knows nothing about losing the king, so we report it
+	 * the same way the material based evaluations do
+	 */
+	private static final int LOST_KING_SCORE = 10000;
+
+	/*
+	 * A network with the king still on the board must never look like a
+	 * won game, so its output is kept strictly inside the win thresholds
+	 */
+	private static final int MAX_OUTPUT = WHITE_WIN_THRESHOLD - 1;
+	private static final int MIN_OUTPUT = BLACK_WIN_THRESHOLD + 1;
+
+	private int hiddenSize;
+	private short[] featureWeights;
+	private short[] featureBiases;
+	private short[] outputWeights;
+	private int outputBias;
+
+	/**
+	 * Load a network from the given file
+	 *
+	 * @param file
+	 * @throws ChessSystemException if the file can't be read or is not a network
+	 */
+	public EvaluationLogicNeuralNetwork(File file) throws ChessSystemException {
+		ByteBuffer buffer;
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				FileChannel channel = in.getChannel();
+				buffer = ByteBuffer.allocate((int) channel.size());
+				while (buffer.hasRemaining() && (channel.read(buffer) >= 0)) {
+					// keep reading
+				}
+				buffer.flip();
+			} finally {
+				in.close();
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if ((buffer.remaining() < 12) || (buffer.getInt() != MAGIC)) {
+			throw new ChessSystemException(String.format("%s is not a network file", file));
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new ChessSystemException(String.format("Unsupported network version %d", version));
+		}
+		hiddenSize = buffer.getInt();
+		if ((hiddenSize < 1) || (buffer.remaining() != getParameterBytes(hiddenSize))) {
+			throw new ChessSystemException(String.format("Network file %s has the wrong size", file));
+		}
+		featureWeights = new short[FEATURE_COUNT * hiddenSize];
+		featureBiases = new short[hiddenSize];
+		outputWeights = new short[2 * hiddenSize];
+		buffer.asShortBuffer().get(featureWeights);
+		buffer.position(buffer.position() + (featureWeights.length * 2));
+		buffer.asShortBuffer().get(featureBiases);
+		buffer.position(buffer.position() + (featureBiases.length * 2));
+		buffer.asShortBuffer().get(outputWeights);
+		buffer.position(buffer.position() + (outputWeights.length * 2));
+		outputBias = buffer.getInt();
+	}
+
+	/**
+	 * Create a network from its parameters, see the class description for
+	 * their layout
+	 *
+	 * @param hiddenSize
+	 * @param featureWeights
+	 * @param featureBiases
+	 * @param outputWeights
+	 * @param outputBias
+	 */
+	public EvaluationLogicNeuralNetwork(int hiddenSize, short[] featureWeights, short[] featureBiases, short[] outputWeights, int outputBias) {
+		if ((hiddenSize < 1)
+				|| (featureWeights.length != FEATURE_COUNT * hiddenSize)
+				|| (featureBiases.length != hiddenSize)
+				|| (outputWeights.length != 2 * hiddenSize)) {
+			throw new IllegalArgumentException("Network parameters do not match the hidden layer size");
+		}
+		this.hiddenSize = hiddenSize;
+		this.featureWeights = featureWeights;
+		this.featureBiases = featureBiases;
+		this.outputWeights = outputWeights;
+		this.outputBias = outputBias;
+	}
+
+
+	/**
+	 * Write this network to the given file
+	 *
+	 * @param file
+	 * @throws ChessSystemException
+	 */
+	public void save(File file) throws ChessSystemException {
+		ByteBuffer buffer = ByteBuffer.allocate(12 + getParameterBytes(hiddenSize)).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(hiddenSize);
+		buffer.asShortBuffer().put(featureWeights).put(featureBiases).put(outputWeights);
+		buffer.position(buffer.position() + ((featureWeights.length + featureBiases.length + outputWeights.length) * 2));
+		buffer.putInt(outputBias);
+		buffer.flip();
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				FileChannel channel = out.getChannel();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+	}
+
+
+	/**
+	 * Build both accumulators from scratch and run the output layer.
+	 *
+	 * @see com.darringer.games.chess.logic.EvaluationLogic#evaluateModel(ChessModel)
+	 */
+	@Override
+	public int evaluateModel(ChessModel model) {
+		return getOutput(getAccumulators(model));
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#initializeModel(ChessModel)
+	 */
+	@Override
+	public void initializeModel(ChessModel model) {
+		model.setEvaluationTerms(getAccumulators(model));
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceAdded(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceAdded(ChessModel model, Piece piece, Location location) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms != null) {
+			addFeature(terms, piece, location.ordinal(), 1);
+		}
+	}
+
+
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceRemoved(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceRemoved(ChessModel model, Piece piece, Location location) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms != null) {
+			addFeature(terms, piece, location.ordinal(), -1);
+		}
+	}
+
+
+	/**
+	 * Run the output layer on the running accumulators.
+	 *
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#evaluateModelIncrementally(ChessModel)
+	 */
+	@Override
+	public int evaluateModelIncrementally(ChessModel model) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms == null) {
+			return evaluateModel(model);
+		}
+		return getOutput(terms);
+	}
+
+
+	public int getHiddenSize() {
+		return this.hiddenSize;
+	}
+
+
+	/**
+	 * Accumulators for the given {@link ChessModel}: white's side, then
+	 * black's side, then the number of white and black kings on the board.
+	 *
+	 * @param model
+	 * @return
+	 */
+	private int[] getAccumulators(ChessModel model) {
+		int[] terms = new int[(2 * hiddenSize) + 2];
+		for (int i=0; i < hiddenSize; i++) {
+			terms[i] = featureBiases[i];
+			terms[hiddenSize + i] = featureBiases[i];
+		}
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece != None) {
+					addFeature(terms, piece, (y * 8) + x, 1);
+				}
+			}
+		}
+		return terms;
+	}
+
+
+	/**
+	 * Add (or with a sign of -1, remove) the feature weights of a piece
+	 * on a square to both accumulators.
+	 *
+	 * @param terms
+	 * @param piece
+	 * @param square
+	 * @param sign
+	 */
+	private void addFeature(int[] terms, Piece piece, int square, int sign) {
+		int ordinal = piece.ordinal();
+		int whiteOffset = ((ordinal * 64) + square) * hiddenSize;
+		int blackOffset = ((((ordinal + 6) % 12) * 64) + (square ^ 56)) * hiddenSize;
+		int n = hiddenSize;
+		short[] weights = featureWeights;
+		if (sign > 0) {
+			for (int i=0; i < n; i++) {
+				terms[i] += weights[whiteOffset + i];
+			}
+			for (int i=0; i < n; i++) {
+				terms[n + i] += weights[blackOffset + i];
+			}
+		} else {
+			for (int i=0; i < n; i++) {
+				terms[i] -= weights[whiteOffset + i];
+			}
+			for (int i=0; i < n; i++) {
+				terms[n + i] -= weights[blackOffset + i];
+			}
+		}
+		if (piece == WhiteKing) {
+			terms[2 * n] += sign;
+		} else if (piece == BlackKing) {
+			terms[(2 * n) + 1] += sign;
+		}
+	}
+
+
+	/**
+	 * Output layer: clip both accumulators, take the dot product with the
+	 * output weights and scale the result to centipawns, clamped strictly
+	 * inside the win thresholds.
+	 *
+	 * @param terms
+	 * @return
+	 */
+	private int getOutput(int[] terms) {
+		int n = hiddenSize;
+		if (terms[2 * n] < 1) {
+			return -LOST_KING_SCORE;
+		} else if (terms[(2 * n) + 1] < 1) {
+			return LOST_KING_SCORE;
+		}
+		long sum = 0l;
+		for (int i=0; i < 2 * n; i++) {
+			int value = terms[i];
+			value = (value < 0 ? 0 : (value > QA ? QA : value));
+			sum += value * outputWeights[i];
+		}
+		long score = ((sum + outputBias) * SCALE) / (QA * QB);
+		return (int) (score > MAX_OUTPUT ? MAX_OUTPUT : (score < MIN_OUTPUT ? MIN_OUTPUT : score));
+	}
+
+
+	/**
+	 * Number of bytes following the header for a network with the given
+	 * hidden layer size
+	 *
+	 * @param hiddenSize
+	 * @return
+	 */
+	private static int getParameterBytes(int hiddenSize) {
+		return (((FEATURE_COUNT + 3) * hiddenSize) * 2) + 4;
+	}
+}
@@ -0,0 +1,342 @@
+package com.darringer.games.chess.logic;
+
+import static com.darringer.games.chess.model.Piece.None;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.Color;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+import com.darringer.games.chess.model.PositionBatch;
+
+/**
+ * Implementation of {@link EvaluationLogic} driven by piece-square 
+ * tables.  Each {@link Piece} has a value for each {@link Location} 
+ * (its material value plus a positional bonus or penalty), with separate
+ * tables for the opening and the endgame.  The two scores are blended
+ * according to the game phase, which is derived from the non-pawn 
+ * material left on the board.
+ * <p />
+ * The tables are flat primitive arrays indexed by piece ordinal and 
+ * location ordinal, with black's values mirrored and negated up front,
+ * so evaluation is nothing more than integer additions.  The same holds
+ * for whole batches of positions, which are swept one square at a time.
+ * With running totals a score costs a handful of additions, so there are
+ * no expensive tiers to skip and this is not a {@link LazyEvaluationLogic}.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.logic.EvaluationLogic
+ * @see com.darringer.games.chess.logic.BatchEvaluationLogic
+ *
+ */
+public class EvaluationLogicPieceSquareTables implements IncrementalEvaluationLogic, BatchEvaluationLogic {
+
+	/*
+	 * Positions of the running totals in the model's evaluation terms
+	 */
+	private static final int OPENING = 0;
+	private static final int ENDGAME = 1;
+	private static final int PHASE = 2;
+	
+	/*
+	 * Phase of a game with all minor and major pieces still on the board
+	 */
+	private static final int MAX_PHASE = 24;
+	
+	/*
+	 * Positional tables from white's point of view, rank 8 first
+	 */
+	private static final int[] pawnOpening = {
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		 50,  50,  50,  50,  50,  50,  50,  50,
+		 10,  10,  20,  30,  30,  20,  10,  10,
+		  5,   5,  10,  25,  25,  10,   5,   5,
+		  0,   0,   0,  20,  20,   0,   0,   0,
+		  5,  -5, -10,   0,   0, -10,  -5,   5,
+		  5,  10,  10, -20, -20,  10,  10,   5,
+		  0,   0,   0,   0,   0,   0,   0,   0
+	};
+	
+	private static final int[] pawnEndgame = {
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		 80,  80,  80,  80,  80,  80,  80,  80,
+		 50,  50,  50,  50,  50,  50,  50,  50,
+		 30,  30,  30,  30,  30,  30,  30,  30,
+		 20,  20,  20,  20,  20,  20,  20,  20,
+		 10,  10,  10,  10,  10,  10,  10,  10,
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		  0,   0,   0,   0,   0,   0,   0,   0
+	};
+	
+	private static final int[] knight = {
+		-50, -40, -30, -30, -30, -30, -40, -50,
+		-40, -20,   0,   0,   0,   0, -20, -40,
+		-30,   0,  10,  15,  15,  10,   0, -30,
+		-30,   5,  15,  20,  20,  15,   5, -30,
+		-30,   0,  15,  20,  20,  15,   0, -30,
+		-30,   5,  10,  15,  15,  10,   5, -30,
+		-40, -20,   0,   5,   5,   0, -20, -40,
+		-50, -40, -30, -30, -30, -30, -40, -50
+	};
+	
+	private static final int[] bishop = {
+		-20, -10, -10, -10, -10, -10, -10, -20,
+		-10,   0,   0,   0,   0,   0,   0, -10,
+		-10,   0,   5,  10,  10,   5,   0, -10,
+		-10,   5,   5,  10,  10,   5,   5, -10,
+		-10,   0,  10,  10,  10,  10,   0, -10,
+		-10,  10,  10,  10,  10,  10,  10, -10,
+		-10,   5,   0,   0,   0,   0,   5, -10,
+		-20, -10, -10, -10, -10, -10, -10, -20
+	};
+	
+	private static final int[] rook = {
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		  5,  10,  10,  10,  10,  10,  10,   5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		  0,   0,   0,   5,   5,   0,   0,   0
+	};
+	
+	private static final int[] queen = {
+		-20, -10, -10,  -5,  -5, -10, -10, -20,
+		-10,   0,   0,   0,   0,   0,   0, -10,
+		-10,   0,   5,   5,   5,   5,   0, -10,
+		 -5,   0,   5,   5,   5,   5,   0,  -5,
+		  0,   0,   5,   5,   5,   5,   0,  -5,
+		-10,   5,   5,   5,   5,   5,   0, -10,
+		-10,   0,   5,   0,   0,   0,   0, -10,
+		-20, -10, -10,  -5,  -5, -10, -10, -20
+	};
+	
+	private static final int[] kingOpening = {
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-20, -30, -30, -40, -40, -30, -30, -20,
+		-10, -20, -20, -20, -20, -20, -20, -10,
+		 20,  20,   0,   0,   0,   0,  20,  20,
+		 20,  30,  10,   0,   0,  10,  30,  20
+	};
+	
+	private static final int[] kingEndgame = {
+		-50, -40, -30, -20, -20, -30, -40, -50,
+		-30, -20, -10,   0,   0, -10, -20, -30,
+		-30, -10,  20,  30,  30,  20, -10, -30,
+		-30, -10,  30,  40,  40,  30, -10, -30,
+		-30, -10,  30,  40,  40,  30, -10, -30,
+		-30, -10,  20,  30,  30,  20, -10, -30,
+		-30, -30,   0,   0,   0,   0, -30, -30,
+		-50, -30, -30, -30, -30, -30, -30, -50
+	};
+	
+	/**
+	 * Holder for the flat tables, built on first use so that creating an 
+	 * evaluation logic never depends on {@link Piece} being initialized.
+	 */
+	private static class Tables {
+
+		/*
+		 * Material plus positional value of each piece at each location, 
+		 * indexed by (piece ordinal * 64) + location ordinal (the entries
+		 * for None are all zero)
+		 */
+		private static final short[] openingValues = new short[Piece.values().length * 64];
+		private static final short[] endgameValues = new short[Piece.values().length * 64];
+
+		/*
+		 * Contribution of each piece to the game phase, indexed by piece ordinal
+		 */
+		private static final byte[] phaseValues = new byte[Piece.values().length];
+
+		static {
+			for (Piece piece : Piece.values()) {
+				if (piece == None) {
+					continue;
+				}
+				int[] opening, endgame;
+				int phase;
+				switch (piece) {
+				case WhitePawn: case BlackPawn:
+					opening = pawnOpening; endgame = pawnEndgame; phase = 0;
+					break;
+				case WhiteKnight: case BlackKnight:
+					opening = knight; endgame = knight; phase = 1;
+					break;
+				case WhiteBishop: case BlackBishop:
+					opening = bishop; endgame = bishop; phase = 1;
+					break;
+				case WhiteRook: case BlackRook:
+					opening = rook; endgame = rook; phase = 2;
+					break;
+				case WhiteQueen: case BlackQueen:
+					opening = queen; endgame = queen; phase = 4;
+					break;
+				default:
+					opening = kingOpening; endgame = kingEndgame; phase = 0;
+					break;
+				}
+				phaseValues[piece.ordinal()] = (byte) phase;
+				for (Location location : Location.values()) {
+					if (location == Location.Unknown) {
+						continue;
+					}
+					int index = (piece.ordinal() * 64) + location.ordinal();
+					int x = location.getX();
+					int y = location.getY();
+					if (piece.getColor() == Color.White) {
+						int tableIndex = ((7 - y) * 8) + x;
+						openingValues[index] = (short) ((piece.getPoints() * 100) + opening[tableIndex]);
+						endgameValues[index] = (short) ((piece.getPoints() * 100) + endgame[tableIndex]);
+					} else {
+						int tableIndex = (y * 8) + x;
+						openingValues[index] = (short) ((piece.getPoints() * 100) - opening[tableIndex]);
+						endgameValues[index] = (short) ((piece.getPoints() * 100) - endgame[tableIndex]);
+					}
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Sum the table values for every piece on the board and blend the 
+	 * opening and endgame scores by game phase.
+	 * 
+	 * @see com.darringer.games.chess.logic.EvaluationLogic#evaluateModel(ChessModel)
+	 */
+	@Override
+	public int evaluateModel(ChessModel model) {
+		int opening = 0;
+		int endgame = 0;
+		int phase = 0;
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece != None) {
+					int index = (piece.ordinal() * 64) + (y * 8) + x;
+					opening += Tables.openingValues[index];
+					endgame += Tables.endgameValues[index];
+					phase += Tables.phaseValues[piece.ordinal()];
+				}
+			}
+		}
+		return getTaperedScore(opening, endgame, phase);
+	}
+
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#initializeModel(ChessModel)
+	 */
+	@Override
+	public void initializeModel(ChessModel model) {
+		int[] terms = new int[3];
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece != None) {
+					int index = (piece.ordinal() * 64) + (y * 8) + x;
+					terms[OPENING] += Tables.openingValues[index];
+					terms[ENDGAME] += Tables.endgameValues[index];
+					terms[PHASE] += Tables.phaseValues[piece.ordinal()];
+				}
+			}
+		}
+		model.setEvaluationTerms(terms);
+	}
+
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceAdded(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceAdded(ChessModel model, Piece piece, Location location) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms != null) {
+			int index = (piece.ordinal() * 64) + location.ordinal();
+			terms[OPENING] += Tables.openingValues[index];
+			terms[ENDGAME] += Tables.endgameValues[index];
+			terms[PHASE] += Tables.phaseValues[piece.ordinal()];
+		}
+	}
+
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceRemoved(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceRemoved(ChessModel model, Piece piece, Location location) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms != null) {
+			int index = (piece.ordinal() * 64) + location.ordinal();
+			terms[OPENING] -= Tables.openingValues[index];
+			terms[ENDGAME] -= Tables.endgameValues[index];
+			terms[PHASE] -= Tables.phaseValues[piece.ordinal()];
+		}
+	}
+
+	
+	/**
+	 * Sweep each square across the whole batch, so the inner loops are 
+	 * branch free table lookups over primitive arrays.
+	 * 
+	 * @see com.darringer.games.chess.logic.BatchEvaluationLogic#evaluateBatch(PositionBatch)
+	 */
+	@Override
+	public int[] evaluateBatch(PositionBatch batch) {
+		int n = batch.getSize();
+		int[] opening = new int[n];
+		int[] endgame = new int[n];
+		int[] phase = new int[n];
+		short[] openingValues = Tables.openingValues;
+		short[] endgameValues = Tables.endgameValues;
+		byte[] phaseValues = Tables.phaseValues;
+		for (int square=0; square < 64; square++) {
+			byte[] pieces = batch.getSquare(square);
+			for (int i=0; i < n; i++) {
+				int index = (pieces[i] << 6) + square;
+				opening[i] += openingValues[index];
+				endgame[i] += endgameValues[index];
+				phase[i] += phaseValues[pieces[i]];
+			}
+		}
+		int[] scores = new int[n];
+		for (int i=0; i < n; i++) {
+			scores[i] = getTaperedScore(opening[i], endgame[i], phase[i]);
+		}
+		return scores;
+	}
+
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#evaluateModelIncrementally(ChessModel)
+	 */
+	@Override
+	public int evaluateModelIncrementally(ChessModel model) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms == null) {
+			return evaluateModel(model);
+		}
+		return getTaperedScore(terms[OPENING], terms[ENDGAME], terms[PHASE]);
+	}
+	
+	
+	/**
+	 * Blend the opening and endgame scores by game phase.
+	 * 
+	 * @param opening
+	 * @param endgame
+	 * @param phase
+	 * @return
+	 */
+	private int getTaperedScore(int opening, int endgame, int phase) {
+		if (phase > MAX_PHASE) {
+			phase = MAX_PHASE;
+		}
+		return ((opening * phase) + (endgame * (MAX_PHASE - phase))) / MAX_PHASE;
+	}
+}
@@ -3,7 +3,9 @@ package com.darringer.games.chess.logic;
 import static com.darringer.games.chess.model.Piece.None;
 
 import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.Location;
 import com.darringer.games.chess.model.Piece;
+import com.darringer.games.chess.model.PositionBatch;
 
 /**
  * Implementation of {@link EvaluationLogic} that is a 
@@ -15,7 +17,7 @@ import com.darringer.games.chess.model.Piece;
  * 
  * @see com.darringer.games.logic.EvaluationLogic
  */
-public class EvaluationLogicSimpleMaterialValue implements EvaluationLogic {
+public class EvaluationLogicSimpleMaterialValue implements IncrementalEvaluationLogic, BatchEvaluationLogic {
 		    
 	/**
 	 * Evaluation of the board is a simple summation of points 
@@ -24,16 +26,94 @@ public class EvaluationLogicSimpleMaterialValue implements EvaluationLogic {
 	 * @param model
 	 * @return
 	 */
-	public float evaluateModel(ChessModel model) {
+	public int evaluateModel(ChessModel model) {
 		int score = 0;
 		for (int x=0; x < 8; x++) {
 			for (int y=0; y < 8; y++) {
 				Piece piece = model.getPieceAtIndex(x, y);
 				if (piece != None) {
-					score += piece.getPoints();
+					score += piece.getPoints() * 100;
 				}
 			}
 		}
 		return score;
-	}	
+	}
+	
+	
+	/**
+	 * Same summation for a whole batch, one square at a time.
+	 * 
+	 * @see com.darringer.games.chess.logic.BatchEvaluationLogic#evaluateBatch(PositionBatch)
+	 */
+	@Override
+	public int[] evaluateBatch(PositionBatch batch) {
+		int[] values = MaterialValues.values;
+		int n = batch.getSize();
+		int[] scores = new int[n];
+		for (int square=0; square < 64; square++) {
+			byte[] pieces = batch.getSquare(square);
+			for (int i=0; i < n; i++) {
+				scores[i] += values[pieces[i]];
+			}
+		}
+		return scores;
+	}
+	
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#initializeModel(ChessModel)
+	 */
+	@Override
+	public void initializeModel(ChessModel model) {
+		model.setEvaluationTerms(new int[] { evaluateModel(model) });
+	}
+	
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceAdded(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceAdded(ChessModel model, Piece piece, Location location) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms != null) {
+			terms[0] += piece.getPoints() * 100;
+		}
+	}
+	
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#pieceRemoved(ChessModel, Piece, Location)
+	 */
+	@Override
+	public void pieceRemoved(ChessModel model, Piece piece, Location location) {
+		int[] terms = model.getEvaluationTerms();
+		if (terms != null) {
+			terms[0] -= piece.getPoints() * 100;
+		}
+	}
+	
+	
+	/**
+	 * @see com.darringer.games.chess.logic.IncrementalEvaluationLogic#evaluateModelIncrementally(ChessModel)
+	 */
+	@Override
+	public int evaluateModelIncrementally(ChessModel model) {
+		int[] terms = model.getEvaluationTerms();
+		return (terms == null ? evaluateModel(model) : terms[0]);
+	}
+	
+	
+	/**
+	 * Material value of each piece in centipawns, indexed by piece ordinal.
+	 * Built on first use, like the piece-square tables.
+	 */
+	private static class MaterialValues {
+		private static final int[] values = new int[Piece.values().length];
+		
+		static {
+			for (Piece piece : Piece.values()) {
+				values[piece.ordinal()] = (piece == None ? 0 : piece.getPoints() * 100);
+			}
+		}
+	}
 }
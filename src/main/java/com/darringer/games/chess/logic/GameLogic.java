@@ -1,25 +1,52 @@
 package com.darringer.games.chess.logic;
 
 import static com.darringer.games.chess.logic.EvaluationLogic.BLACK_WIN_THRESHOLD;
+import static com.darringer.games.chess.logic.EvaluationLogic.DRAW_SCORE;
+import static com.darringer.games.chess.logic.EvaluationLogic.MATE_SCORE;
+import static com.darringer.games.chess.logic.EvaluationLogic.MATE_THRESHOLD;
 import static com.darringer.games.chess.logic.EvaluationLogic.WHITE_WIN_THRESHOLD;
+import static com.darringer.games.chess.logic.GameStateLogic.FIFTY_MOVE_HALFMOVES;
+import static com.darringer.games.chess.model.ChessMoveType.EnPassantCapture;
 import static com.darringer.games.chess.model.Color.Black;
 import static com.darringer.games.chess.model.Color.White;
 import static com.darringer.games.chess.model.GameState.*;
 import static com.darringer.games.chess.model.Location.*;
 import static com.darringer.games.chess.model.Piece.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 import org.apache.log4j.Logger;
 
+import com.darringer.games.chess.book.OpeningBook;
+import com.darringer.games.chess.database.PositionDatabase;
+import com.darringer.games.chess.database.PositionRecord;
 import com.darringer.games.chess.model.ChessInvalidMoveException;
+import com.darringer.games.chess.model.AttackMap;
 import com.darringer.games.chess.model.ChessModel;
 import com.darringer.games.chess.model.ChessMove;
 import com.darringer.games.chess.model.ChessSearchTimeoutException;
+import com.darringer.games.chess.model.ChessSystemException;
 import com.darringer.games.chess.model.Color;
 import com.darringer.games.chess.model.GameState;
 import com.darringer.games.chess.model.Location;
 import com.darringer.games.chess.model.Piece;
+import com.darringer.games.chess.model.PositionHistory;
+import com.darringer.games.chess.tablebase.Tablebase;
 
 
 /**
@@ -38,10 +65,169 @@ public class GameLogic {
 	
 	private static Logger log = Logger.getLogger(GameLogic.class);
 	
-	private EvaluationLogic evaluationLogic = new EvaluationLogicCenterWeighted();
-	private MoveLogic moveLogic = new MoveLogic();
+	/*
+	 * The stop conditions are only polled once per this many stop checks
+	 */
+	private static final int STOP_CHECK_INTERVAL = 1024;
+	
+	/*
+	 * An idle search thread is let go after this long
+	 */
+	private static final long SEARCH_THREAD_KEEP_ALIVE_SECONDS = 60l;
+	
+	/*
+	 * Captures are searched at most this many plies beyond the depth limit
+	 */
+	private static final int MAX_QUIESCENCE_PLY = 8;
+	
+	/*
+	 * Iterative deepening stops here even with time to spare, e.g. when 
+	 * every line ends in a draw and each iteration is over instantly
+	 */
+	private static final int MAX_SEARCH_DEPTH = 64;
+	
+	/*
+	 * Returned by a probe when no endgame table covers the position
+	 */
+	private static final int NOT_IN_TABLEBASE = Integer.MIN_VALUE;
+	
+	/* default depth of a position database record that is played without searching */
+	private static final int DEFAULT_POSITION_DATABASE_DEPTH = 6;
+	
+	private EvaluationLogic evaluationLogic;
+	private IncrementalEvaluationLogic incrementalEvaluationLogic;
+	private LazyEvaluationLogic lazyEvaluationLogic;
+	private MoveLogic moveLogic;
+	private StaticExchangeLogic staticExchangeLogic = new StaticExchangeLogic();
+	private GameStateLogic gameStateLogic = new GameStateLogic();
+	private MaterialSignatureLogic materialSignatureLogic = new MaterialSignatureLogic();
+	private boolean isQuiescenceSearch = true;
+	private List<Tablebase> tablebases = new ArrayList<Tablebase>();
+	private OpeningBook openingBook;
+	private Random bookRandom = new Random();
+	private PositionDatabase positionDatabase;
+	private int positionDatabaseDepth = DEFAULT_POSITION_DATABASE_DEPTH;
 	private GameTimer timer = new GameTimer();
 	private long nodeCount;
+	private int bestScore;
+	private int rootSearchDepth;
+	private long[] searchKeys = new long[0];
+	private PositionHistory searchHistory = PositionHistory.EMPTY;
+	private SearchProgressListener progressListener;
+	private volatile AtomicBoolean requestedStop = new AtomicBoolean();
+	private AtomicBoolean searchStop = new AtomicBoolean();
+	private boolean isStopped;
+	private Executor searchExecutor;
+	private int stopCheckCountdown;
+	private List<SearchIteration> iterations = new ArrayList<SearchIteration>();
+	
+	
+	/**
+	 * Default constructor, uses piece-square table evaluation
+	 */
+	public GameLogic() {
+		setEvaluationLogic(new EvaluationLogicPieceSquareTables());
+	}
+	
+	
+	/**
+	 * Set the {@link EvaluationLogic} used by the search.  If it is an
+	 * {@link IncrementalEvaluationLogic}, its running totals are kept up to 
+	 * date as moves are applied and nodes are evaluated from those totals.
+	 * If it is a {@link LazyEvaluationLogic}, interior nodes only look at 
+	 * material and leaf nodes are evaluated within the search window.
+	 * 
+	 * @param evaluationLogic
+	 */
+	public void setEvaluationLogic(EvaluationLogic evaluationLogic) {
+		this.evaluationLogic = evaluationLogic;
+		this.lazyEvaluationLogic = (evaluationLogic instanceof LazyEvaluationLogic ? (LazyEvaluationLogic) evaluationLogic : null);
+		if (evaluationLogic instanceof IncrementalEvaluationLogic) {
+			this.incrementalEvaluationLogic = (IncrementalEvaluationLogic) evaluationLogic;
+			this.moveLogic = new MoveLogic(incrementalEvaluationLogic);
+		} else {
+			this.incrementalEvaluationLogic = null;
+			this.moveLogic = new MoveLogic();
+		}
+	}
+	
+	
+	/**
+	 * Turn incremental evaluation on or off.  When off, every node is 
+	 * evaluated with a full recompute, which is slower but useful to 
+	 * verify the incremental results.
+	 * 
+	 * @param isIncrementalEvaluation
+	 */
+	public void setIncrementalEvaluation(boolean isIncrementalEvaluation) {
+		if (isIncrementalEvaluation) {
+			setEvaluationLogic(evaluationLogic);
+		} else {
+			this.incrementalEvaluationLogic = null;
+			this.moveLogic = new MoveLogic();
+		}
+	}
+	
+	
+	/**
+	 * Turn the quiescence search on or off.  When on, the leaves of the
+	 * search are not evaluated until the captures that do not lose
+	 * material (by static exchange evaluation) have been played out.
+	 * 
+	 * @param isQuiescenceSearch
+	 */
+	public void setQuiescenceSearch(boolean isQuiescenceSearch) {
+		this.isQuiescenceSearch = isQuiescenceSearch;
+	}
+	
+	
+	/**
+	 * Add an endgame {@link Tablebase}.  Positions below the root of the
+	 * search with its material are not searched any further, but scored 
+	 * from the table like a mate found by the search, or as a draw.
+	 * 
+	 * @param tablebase
+	 */
+	public void addTablebase(Tablebase tablebase) {
+		tablebases.add(tablebase);
+	}
+	
+	
+	/**
+	 * Set the {@link OpeningBook} (or <code>null</code> for none).  While 
+	 * the game is in the book, black plays a book move, chosen at random 
+	 * by weight, without searching.
+	 * 
+	 * @param openingBook
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		this.openingBook = openingBook;
+	}
+	
+	
+	/**
+	 * Set the {@link PositionDatabase} (or <code>null</code> for none).  
+	 * Black plays the move stored for a position from a search at least 
+	 * as deep as {@link #setPositionDatabaseDepth(int)} without searching, 
+	 * and searches a shallower record's move first.  Searches that reach 
+	 * that depth, and go deeper than the stored record, are written back.
+	 * 
+	 * @param positionDatabase
+	 */
+	public void setPositionDatabase(PositionDatabase positionDatabase) {
+		this.positionDatabase = positionDatabase;
+	}
+	
+	
+	/**
+	 * Set the search depth from which results are trusted from, and 
+	 * written back to, the {@link PositionDatabase}
+	 * 
+	 * @param positionDatabaseDepth
+	 */
+	public void setPositionDatabaseDepth(int positionDatabaseDepth) {
+		this.positionDatabaseDepth = positionDatabaseDepth;
+	}
 	
 	
 	/**
@@ -56,8 +242,17 @@ public class GameLogic {
 	 * @throws ChessInvalidMoveException
 	 */
 	public ChessModel processMove(ChessModel model, ChessMove move, int timeoutInSeconds) throws ChessInvalidMoveException {
+		return processMoveRequest(model, move, timeoutInSeconds, newStopRequest());
+	}
+	
+	
+	/**
+	 * {@link #processMove(ChessModel, ChessMove, int)}, stopped by the 
+	 * given flag of its own
+	 */
+	private ChessModel processMoveRequest(ChessModel model, ChessMove move, int timeoutInSeconds, AtomicBoolean stop) throws ChessInvalidMoveException {
 		// evaluate game state
-		GameState state = getGameStateFromModelAndMove(model, move);
+		GameState state = gameStateLogic.getGameState(model, White);
 		model.setState(state);
 		
 		// is the original game over?
@@ -69,13 +264,111 @@ public class GameLogic {
 		model = applyWhiteMoveToModel(model, move);
 			
 		// it was a valid white move, perform the black counter move
-		model = performBlackCounterMove(model, timeoutInSeconds);
+		model = performBlackCounterMoveRequest(model, timeoutInSeconds, stop);
 			
 		// we are done...
 		return model;
 	}	
 	
 	
+	/**
+	 * Asynchronous version of {@link #processMove(ChessModel, ChessMove, int)}
+	 * that runs on a search thread of this instance's own, rather than 
+	 * tying up a thread of a shared pool for the length of a search.  The
+	 * thread is a daemon, and goes away when it has been idle for a while.
+	 * 
+	 * @param model
+	 * @param move
+	 * @param timeoutInSeconds
+	 * @param listener
+	 * @return
+	 */
+	public CompletableFuture<ChessModel> processMoveAsync(ChessModel model, ChessMove move, int timeoutInSeconds, SearchProgressListener listener) {
+		return processMoveAsync(model, move, timeoutInSeconds, listener, getSearchExecutor());
+	}
+	
+	
+	/**
+	 * The executor of this instance's search thread, created when first
+	 * needed
+	 * 
+	 * @return
+	 */
+	private synchronized Executor getSearchExecutor() {
+		if (searchExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, SEARCH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, 
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "GameLogic search");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+			searchExecutor = executor;
+		}
+		return searchExecutor;
+	}
+	
+	
+	/**
+	 * Asynchronous version of {@link #processMove(ChessModel, ChessMove, int)}.
+	 * The move is processed on the given {@link Executor} and the returned future
+	 * is completed with the updated {@link ChessModel}, or exceptionally with a
+	 * {@link ChessInvalidMoveException}.  The listener (which may be 
+	 * <code>null</code>) is told about each search iteration as it completes.
+	 * <p />
+	 * The search works on a copy of the given model, which the caller is 
+	 * free to go on using.  Each request has a stop flag of its own: 
+	 * cancelling the future stops this search and no other, and a 
+	 * {@link #stop()} stops this search until another one is requested.
+	 * <p />
+	 * A {@link GameLogic} instance runs one search at a time, so use one 
+	 * instance per game.
+	 * 
+	 * @param model
+	 * @param move
+	 * @param timeoutInSeconds
+	 * @param listener
+	 * @param executor
+	 * @return
+	 */
+	public CompletableFuture<ChessModel> processMoveAsync(ChessModel model, final ChessMove move, final int timeoutInSeconds, 
+			final SearchProgressListener listener, Executor executor) {
+		final CompletableFuture<ChessModel> future = new CompletableFuture<ChessModel>();
+		final ChessModel requestModel = new ChessModel(model);
+		
+		// a stop (or cancel) from here on applies to this request
+		final AtomicBoolean stop = newStopRequest();
+		future.whenComplete(new BiConsumer<ChessModel, Throwable>() {
+			public void accept(ChessModel result, Throwable throwable) {
+				if (future.isCancelled()) {
+					stop.set(true);
+				}
+			}
+		});
+		executor.execute(new Runnable() {
+			public void run() {
+				// were we cancelled before we got started?
+				if (future.isDone()) {
+					return;
+				}
+				setProgressListener(listener);
+				try {
+					future.complete(processMoveRequest(requestModel, move, timeoutInSeconds, stop));
+				} catch (ChessInvalidMoveException cime) {
+					future.completeExceptionally(cime);
+				} catch (RuntimeException re) {
+					future.completeExceptionally(re);
+				} finally {
+					setProgressListener(null);
+				}
+			}
+		});
+		return future;
+	}
+	
+	
 	/**
 	 * Verify the user's {@link ChessMove} is valid before applying it to 
 	 * the {@link ChessModel}.
@@ -103,16 +396,22 @@ public class GameLogic {
 			throw new ChessInvalidMoveException(String.format("%s is not a valid destination for piece at %s", move.getTo(), move.getFrom()));
 		}
 		
+		// play the generated move, which knows about en passant targets, 
+		// so the position key is the same as when the search plays it
+		for (ChessMove possibleMove : possibleMoves) {
+			if (possibleMove.equals(move)) {
+				move = possibleMove;
+				break;
+			}
+		}
+		
 		// if this move was actually made, would it put the player in check?
-		ChessModel modelClone = new ChessModel(model);
-		modelClone = moveLogic.applyMoveToModel(modelClone, move);
-		Location kingLocation = getPieceLocation(modelClone, WhiteKing);
-		if (isLocationReachableByColor(modelClone, kingLocation, Black)) {
+		if (!gameStateLogic.isLegalMove(model, move)) {
 			throw new ChessInvalidMoveException("You cannot make a move that would leave your king in check");
 		}
 
 		// it is a valid move, apply it to the actual model
-		model = moveLogic.applyMoveToModel(model, move);
+		model = applyGameMove(model, move);
 
 		// we are done
 		return model;
@@ -123,51 +422,265 @@ public class GameLogic {
 	 * White has made a valid move and now we will use the search 
 	 * function to find the best black counter move (while making 
 	 * sure we do not exceed the given time limit).
+	 * <p />
+	 * After each completed iteration we estimate the effective branching
+	 * factor and only start the next (deeper) iteration if it is predicted
+	 * to finish before the time limit.
 	 * 
 	 * @param model
 	 * @param timeoutInSeconds
 	 * @return
 	 */
 	public ChessModel performBlackCounterMove(ChessModel model, int timeoutInSeconds) {
+		return performBlackCounterMoveRequest(model, timeoutInSeconds, newStopRequest());
+	}
+	
+	
+	/**
+	 * {@link #performBlackCounterMove(ChessModel, int)}, stopped by the 
+	 * given flag of its own
+	 */
+	private ChessModel performBlackCounterMoveRequest(ChessModel model, int timeoutInSeconds, AtomicBoolean stop) {
 		// evaluate game state
-		float score = evaluationLogic.evaluateModel(model);
-		model.setState(getGameStateFromScore(score));;
+		GameState state = gameStateLogic.getGameState(model, Black);
+		model.setState(state);
 		
 		// is the original game over?
-		if (isTerminalState(score)) { 
+		if (!state.isInProgress()) { 
 			return model;
 		}
 		
 		// black makes its counter move...
-		// reset our global timer and then search progressively deeper 
-		// until we find check mate (or we are out of time)
-		int depth = 1;
 		ChessMove bestCounterMove = null;
-		timer = new GameTimer(timeoutInSeconds);
-		timer.start();
-		
-		// do not bother trying another level of search
-		// if more than half of the time is up
-		while (!timer.isHalfTimeUp()) {
-			try {
-				bestCounterMove = getBestMove(model, Black, depth++);
-			} catch (ChessSearchTimeoutException cste) {
-				// we ran out of time in this iteration 
-				break;
+		iterations = new ArrayList<SearchIteration>();
+		List<ChessMove> legalMoves = getLegalMoves(model, Black);
+		ChessMove bookMove = (openingBook == null ? null : openingBook.getMove(model, bookRandom));
+		PositionRecord storedRecord = (positionDatabase == null ? null : positionDatabase.get(model));
+		ChessMove storedMove = null;
+		if (storedRecord != null) {
+			for (ChessMove legalMove : legalMoves) {
+				if (storedRecord.isMove(legalMove)) {
+					storedMove = legalMove;
+				}
 			}
-			if (bestCounterMove.isWhiteInCheckMate()) break;
 		}
-		timer.stop();
+		if (legalMoves.size() == 1) {
+			// there is nothing to think about
+			bestCounterMove = legalMoves.get(0);
+			log.info(String.format("Only one legal move for Black: %s", bestCounterMove));
+		} else if (bookMove != null) {
+			// the book already knows a good move
+			bestCounterMove = bookMove;
+			log.info(String.format("Book move for Black: %s", bestCounterMove));
+		} else if ((storedMove != null) && (storedRecord.getDepth() >= positionDatabaseDepth)) {
+			// this position has been searched deeply enough before
+			bestCounterMove = storedMove;
+			log.info(String.format("Stored move for Black: %s (depth %d)", bestCounterMove, storedRecord.getDepth()));
+		} else {
+			// a shallower stored move is searched first
+			bestCounterMove = storedMove;
+
+			// reset our global timer and then search progressively deeper 
+			// until we find check mate (or we are out of time)
+			int depth = 1;
+			searchStop = stop;
+			timer = new GameTimer(timeoutInSeconds);
+			timer.start();
+			while (true) {
+				long iterationStartTime = timer.getElapsedMillis();
+				try {
+					ChessMove iterationMove = getBestMove(model, Black, depth, bestCounterMove);
+					if (iterationMove != null) {
+						bestCounterMove = iterationMove;
+					}
+				} catch (ChessSearchTimeoutException cste) {
+					// we were stopped before a single root move was searched
+					break;
+				}
+				SearchIteration iteration = new SearchIteration(depth, bestCounterMove, bestScore, nodeCount, 
+						timer.getElapsedMillis() - iterationStartTime, !isStopped);
+				iterations.add(iteration);
+				if (progressListener != null) {
+					progressListener.iterationComplete(iteration);
+				}
+				if (!iteration.isComplete()) break;
+				if (bestCounterMove == null) break;
+				if (bestCounterMove.isWhiteInCheckMate()) break;
+				if (isMateScore(iteration.getScore())) break;
+				if (depth >= MAX_SEARCH_DEPTH) break;
+				
+				// do not bother trying another level of search if it 
+				// is not expected to finish in the remaining time
+				long predictedTime = getPredictedIterationTime(iterations);
+				if (predictedTime > timer.getRemainingMillis()) {
+					log.info(String.format("Skipping depth %d, predicted %d ms with %d ms remaining", 
+							depth + 1, predictedTime, timer.getRemainingMillis()));
+					break;
+				}
+				depth++;
+			}
+			timer.stop();
+			storeSearchResult(model, storedRecord);
+		}
+		
+		// we ran out of time before the first iteration finished
+		if ((bestCounterMove == null) && !legalMoves.isEmpty()) {
+			bestCounterMove = legalMoves.get(0);
+		}
 		
 		// apply best move to the model and update the game state
-		model = moveLogic.applyMoveToModel(model, bestCounterMove);
+		model = applyGameMove(model, bestCounterMove);
 		
 		// final score and state update
-		model.setScore(evaluationLogic.evaluateModel(model));
-		model.setState(getGameStateFromModelAndMove(model, bestCounterMove));
+		model.setScore(getPoints(evaluationLogic.evaluateModel(model)));
+		model.setState(gameStateLogic.getGameState(model, White));
 		return model;
 	}
 	
+	
+	/**
+	 * Write the deepest complete iteration of the last search to the 
+	 * {@link PositionDatabase}, if it is deep enough and deeper than what 
+	 * was already stored for the position
+	 * 
+	 * @param model
+	 * @param storedRecord
+	 */
+	private void storeSearchResult(ChessModel model, PositionRecord storedRecord) {
+		if ((positionDatabase == null) || !positionDatabase.isWritable()) {
+			return;
+		}
+		SearchIteration deepest = null;
+		for (SearchIteration iteration : iterations) {
+			if (iteration.isComplete() && (iteration.getBestMove() != null)) {
+				deepest = iteration;
+			}
+		}
+		if ((deepest == null) || (deepest.getDepth() < positionDatabaseDepth)) {
+			return;
+		}
+		if ((storedRecord != null) && (storedRecord.getDepth() >= deepest.getDepth())) {
+			return;
+		}
+		try {
+			positionDatabase.put(model.getPositionKey(), PositionDatabase.encodeMove(deepest.getBestMove()), 
+					deepest.getScore(), deepest.getDepth());
+		} catch (ChessSystemException cse) {
+			log.warn(String.format("Can't store the search result: %s", cse.getMessage()));
+		}
+	}
+	
+	
+	/**
+	 * Apply a move that is actually played (rather than tried by the 
+	 * search), recording the position it was played from in the game's
+	 * {@link PositionHistory}.
+	 * 
+	 * @param model
+	 * @param move
+	 * @return
+	 */
+	private ChessModel applyGameMove(ChessModel model, ChessMove move) {
+		PositionHistory history = model.getHistory().add(model.getPositionKey());
+		model = moveLogic.applyMoveToModel(model, move);
+		model.setHistory(history);
+		return model;
+	}
+	
+	
+	/**
+	 * Return the statistics for each iteration of the most recent 
+	 * {@link #performBlackCounterMove(ChessModel, int)} search.
+	 * 
+	 * @return
+	 */
+	public List<SearchIteration> getIterations() {
+		return iterations;
+	}
+	
+	
+	/**
+	 * Set the listener (or <code>null</code>) to be told about the progress
+	 * of each search iteration. 
+	 * 
+	 * @param progressListener
+	 */
+	public void setProgressListener(SearchProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+	
+	
+	/**
+	 * Ask the most recently requested search to stop as soon as possible.
+	 * May be called from any thread.  The search will unwind and return
+	 * the best move found by the iterations completed so far.  A stop 
+	 * requested after {@link #processMoveAsync(ChessModel, ChessMove, int, SearchProgressListener, Executor)}
+	 * returns, but before its search starts, stops that search too, even
+	 * if another search is requested in the meantime.
+	 */
+	public void stop() {
+		requestedStop.set(true);
+	}
+	
+	
+	/**
+	 * A stop flag for a new search request, which {@link #stop()} sets 
+	 * until the next request
+	 * 
+	 * @return
+	 */
+	private AtomicBoolean newStopRequest() {
+		AtomicBoolean stop = new AtomicBoolean();
+		requestedStop = stop;
+		return stop;
+	}
+	
+	
+	/**
+	 * Estimate the effective branching factor from the node counts of the
+	 * completed iterations.  Alpha beta search trees alternate between odd 
+	 * and even depths, so when possible we take the geometric mean over 
+	 * the last two iterations. 
+	 * 
+	 * @param iterations
+	 * @return
+	 */
+	protected double getEffectiveBranchingFactor(List<SearchIteration> iterations) {
+		int count = iterations.size();
+		if (count == 0) {
+			return 0.0;
+		}
+		SearchIteration last = iterations.get(count - 1);
+		double lastNodes = Math.max(1l, last.getNodeCount());
+		if (count == 1) {
+			// the root is at depth 0, so depth n searches n + 1 plies
+			return Math.pow(lastNodes, 1.0 / (last.getDepth() + 1));
+		} else if (count == 2) {
+			return lastNodes / Math.max(1l, iterations.get(count - 2).getNodeCount());
+		} else {
+			return Math.sqrt(lastNodes / Math.max(1l, iterations.get(count - 3).getNodeCount()));
+		}
+	}
+	
+	
+	/**
+	 * Predict how many milliseconds the next iteration will take, assuming 
+	 * it grows by the effective branching factor and the node rate stays 
+	 * the same.
+	 * 
+	 * @param iterations
+	 * @return
+	 */
+	protected long getPredictedIterationTime(List<SearchIteration> iterations) {
+		if (iterations.isEmpty()) {
+			return 0l;
+		}
+		SearchIteration last = iterations.get(iterations.size() - 1);
+		double branchingFactor = Math.max(1.0, getEffectiveBranchingFactor(iterations));
+		return (long) (Math.max(1l, last.getTimeInMillis()) * branchingFactor);
+	}
+	
+	
 	/**
 	 * Uses Min-Max search to determine the "best" move.  
 	 * We limit the search depth to the passed in count.
@@ -183,50 +696,98 @@ public class GameLogic {
 	 * @throws ChessSearchTimeoutException
 	 */
 	public ChessMove getBestMove(ChessModel model, Color colorToMove, int searchDepth) throws ChessSearchTimeoutException {
+		return getBestMove(model, colorToMove, searchDepth, null);
+	}
+	
+	
+	/**
+	 * Same as {@link #getBestMove(ChessModel, Color, int)}, but the given 
+	 * move (typically the best move from the previous iteration) is searched
+	 * first.  If we run out of time after at least one root move has been 
+	 * fully searched, the best move found so far is returned rather than 
+	 * throwing away the partial iteration.
+	 * 
+	 * @param model
+	 * @param colorToMove
+	 * @param searchDepth
+	 * @param firstMove
+	 * @return
+	 * @throws ChessSearchTimeoutException if we were stopped before any root move was searched
+	 */
+	public ChessMove getBestMove(ChessModel model, Color colorToMove, int searchDepth, ChessMove firstMove) throws ChessSearchTimeoutException {
 		ChessMove bestMove = null;
-		float alpha = BLACK_WIN_THRESHOLD;
-		float beta = WHITE_WIN_THRESHOLD;
+		// the window is open wide enough for mate scores, so that the 
+		// distance to mate is kept and quicker mates are preferred
+		int alpha = -MATE_SCORE;
+		int beta = MATE_SCORE;
 		
-		// start the timer, reset node count
+		// start the timer, reset node count and stop flag
 		long startTime = System.currentTimeMillis();
 		nodeCount = 0l;
+		isStopped = false;
+		stopCheckCountdown = 0;
+		rootSearchDepth = searchDepth;
+		
+		// position keys along the current line, indexed by ply from the root
+		searchKeys = new long[searchDepth + 2];
+		searchKeys[0] = model.getPositionKey();
+		searchHistory = model.getHistory();
+		
+		// running evaluation totals are computed once for the root, and 
+		// must not be left over from an earlier search when not maintained
+		if (incrementalEvaluationLogic != null) {
+			incrementalEvaluationLogic.initializeModel(model);
+		} else {
+			model.setEvaluationTerms(null);
+		}
 		
 		// make sure the game isn't over already...
 		if (!isTerminalState(model)) {
-			cutoff:
-			for (int x=0; x < 8; x++) {
-				for (int y=0; y < 8; y++) {
-					Piece currentPiece = model.getPieceAtIndex(x, y);
-					if ((currentPiece != None) && (currentPiece.getColor() == colorToMove)) {
-						// this is a moveable piece
-						PieceLogic logic = currentPiece.getLogic();
-						Location currentLocation = Location.get(x, y);
-						Set<ChessMove> possibleMoves = logic.getPossibleMoves(model, currentLocation);
-						for (ChessMove currentMove : possibleMoves) {							
-							// evaluate this possible move
-							float currentScore;
-							log.debug(String.format("Evaluating move %s at depth %d (x=%d, y=%d)...", currentMove, searchDepth, x, y));
-							if (colorToMove == White) {
-								currentScore = getMinBlackScore(model, currentMove, alpha, beta, searchDepth);
-								log.debug(String.format("currentScore=%f, alpha=%f, beta=%f", currentScore, alpha, beta));
-								if (currentScore > alpha) {
-									bestMove = currentMove;
-									alpha = currentScore;
-									if (alpha >= beta) break cutoff; 
-								}
-							} else {
-								currentScore = getMaxWhiteScore(model, currentMove, alpha, beta, searchDepth);
-								log.debug(String.format("currentScore=%f, alpha=%f, beta=%f", currentScore, alpha, beta));
-								if (currentScore < beta) {
-									bestMove = currentMove;
-									beta = currentScore;
-									if (beta <= alpha) break cutoff;
-								}
-							}
-						}
+			List<ChessMove> possibleMoves = getPossibleMoves(model, colorToMove);
+			orderMoves(model, possibleMoves);
+			int firstMoveIndex = (firstMove == null ? -1 : possibleMoves.indexOf(firstMove));
+			if (firstMoveIndex > 0) {
+				possibleMoves.add(0, possibleMoves.remove(firstMoveIndex));
+			}
+			for (ChessMove currentMove : possibleMoves) {							
+				// evaluate this possible move
+				int currentScore;
+				log.debug(String.format("Evaluating move %s at depth %d...", currentMove, searchDepth));
+				if (colorToMove == White) {
+					currentScore = getMinBlackScore(model, currentMove, alpha, beta, searchDepth);
+					if (isStopped) break;
+					log.debug(String.format("currentScore=%d, alpha=%d, beta=%d", currentScore, alpha, beta));
+					if (currentScore > alpha) {
+						bestMove = currentMove;
+						alpha = currentScore;
+						if (alpha >= beta) break; 
+					}
+				} else {
+					currentScore = getMaxWhiteScore(model, currentMove, alpha, beta, searchDepth);
+					if (isStopped) break;
+					log.debug(String.format("currentScore=%d, alpha=%d, beta=%d", currentScore, alpha, beta));
+					if (currentScore < beta) {
+						bestMove = currentMove;
+						beta = currentScore;
+						if (beta <= alpha) break;
 					}
 				}
 			}
+			
+			// the interrupted move is discarded, but we keep the partial result if we have one
+			if (isStopped) {
+				if (bestMove == null) {
+					throw new ChessSearchTimeoutException(String.format("Search stopped at depth %d", searchDepth));
+				}
+				log.info(String.format("Search stopped at depth %d, keeping partial result", searchDepth));
+			}
+		}
+		
+		// remember the score of the best move
+		if (bestMove != null) {
+			bestScore = (colorToMove == White ? alpha : beta);
+		} else {
+			bestScore = evaluationLogic.evaluateModel(model);
 		}
 		
 		// stop timer
@@ -248,13 +809,12 @@ public class GameLogic {
 	 * @param beta
 	 * @param currentSearchDepth
 	 * @return
-	 * @throws ChessSearchTimeoutException
 	 */
-	private float getMaxWhiteScore(ChessModel originalModel, ChessMove blackMove, float alpha, float beta, int currentSearchDepth) throws ChessSearchTimeoutException 
+	private int getMaxWhiteScore(ChessModel originalModel, ChessMove blackMove, int alpha, int beta, int currentSearchDepth)
 	{
-		// are we out of time?
-		if (timer.isTimeUp()) {
-			throw new ChessSearchTimeoutException(String.format("Search timout at depth %d", currentSearchDepth));
+		// are we out of time (or asked to stop)? the caller discards this score
+		if (isSearchStopped()) {
+			return alpha;
 		}
 		
 		// we are evaluating this move against a clone of the model
@@ -263,9 +823,36 @@ public class GameLogic {
 		// apply black move to the cloned model
 		model = moveLogic.applyMoveToModel(model, blackMove);
 		
+		// taking the king ends the game, before any draw rule gets a say
+		if (originalModel.getPieceAtLocation(blackMove.getTo()) == WhiteKing) {
+			nodeCount = nodeCount + 1;
+			return getMateScore(-1, currentSearchDepth);
+		}
+		
+		// a repeated position or fifty moves without progress is a draw
+		if (isDraw(model, rootSearchDepth - currentSearchDepth + 1)) {
+			nodeCount = nodeCount + 1;
+			return DRAW_SCORE;
+		}
+		
+		// an endgame table knows the outcome
+		int tablebaseScore = probeTablebases(model, rootSearchDepth - currentSearchDepth + 1);
+		if (tablebaseScore != NOT_IN_TABLEBASE) {
+			nodeCount = nodeCount + 1;
+			return tablebaseScore;
+		}
+		
+		// at the depth limit, play out the captures before evaluating
+		if ((currentSearchDepth == 0) && isQuiescenceSearch) {
+			nodeCount = nodeCount + 1;
+			return getQuiescenceMaxWhiteScore(model, alpha, beta, 0);
+		}
+		
 		// is this a terminal (game ending) move for black OR are we at our search depth limit?  
-		float alphaScore = evaluationLogic.evaluateModel(model);
-		if ((currentSearchDepth > 0) && (!isTerminalState(alphaScore))) { 
+		int alphaScore = (currentSearchDepth > 0 ? evaluateMaterial(model) : evaluate(model, alpha, beta));
+		if (isTerminalState(alphaScore)) {
+			alphaScore = getMateScore(alphaScore, currentSearchDepth);
+		} else if (currentSearchDepth > 0) { 
 			// reset the score, check mate flag, and continue our search...
 			alphaScore = alpha;
 			blackMove.setWhiteInCheckMate(true);
@@ -282,10 +869,11 @@ public class GameLogic {
 						Set<ChessMove> possibleMoves = logic.getPossibleMoves(model, currentLocation);
 						for (ChessMove currentMove : possibleMoves) {
 							// evaluate this possible move
-							float currentScore = getMinBlackScore(model, currentMove, alphaScore, beta, currentSearchDepth - 1);
+							int currentScore = getMinBlackScore(model, currentMove, alphaScore, beta, currentSearchDepth - 1);
+							if (isStopped) break betacutoff;
 
-							// update check mate flag
-							if (currentScore >= BLACK_WIN_THRESHOLD) {
+							// white is only check mated if every reply loses its king on the next ply
+							if (currentScore > getMateScore(-1, currentSearchDepth - 2)) {
 								blackMove.setWhiteInCheckMate(false);
 							}
 
@@ -317,13 +905,12 @@ public class GameLogic {
 	 * @param beta
 	 * @param currentSearchDepth
 	 * @return
-	 * @throws ChessSearchTimeoutException
 	 */
-	private float getMinBlackScore(ChessModel originalModel, ChessMove whiteMove, float alpha, float beta, int currentSearchDepth) throws ChessSearchTimeoutException
+	private int getMinBlackScore(ChessModel originalModel, ChessMove whiteMove, int alpha, int beta, int currentSearchDepth)
 	{
-		// are we out of time?
-		if (timer.isTimeUp()) {
-			throw new ChessSearchTimeoutException(String.format("Search timout at depth %d", currentSearchDepth));
+		// are we out of time (or asked to stop)? the caller discards this score
+		if (isSearchStopped()) {
+			return beta;
 		}
 		
 		// we are evaluating this move against a clone of the model
@@ -332,9 +919,36 @@ public class GameLogic {
 		// apply white move to the cloned model
 		model = moveLogic.applyMoveToModel(model, whiteMove);
 
+		// taking the king ends the game, before any draw rule gets a say
+		if (originalModel.getPieceAtLocation(whiteMove.getTo()) == BlackKing) {
+			nodeCount = nodeCount + 1;
+			return getMateScore(1, currentSearchDepth);
+		}
+		
+		// a repeated position or fifty moves without progress is a draw
+		if (isDraw(model, rootSearchDepth - currentSearchDepth + 1)) {
+			nodeCount = nodeCount + 1;
+			return DRAW_SCORE;
+		}
+		
+		// an endgame table knows the outcome
+		int tablebaseScore = probeTablebases(model, rootSearchDepth - currentSearchDepth + 1);
+		if (tablebaseScore != NOT_IN_TABLEBASE) {
+			nodeCount = nodeCount + 1;
+			return tablebaseScore;
+		}
+		
+		// at the depth limit, play out the captures before evaluating
+		if ((currentSearchDepth == 0) && isQuiescenceSearch) {
+			nodeCount = nodeCount + 1;
+			return getQuiescenceMinBlackScore(model, alpha, beta, 0);
+		}
+
 		// is this a terminal (game ending) move for white OR are we at our search depth limit?  
-		float betaScore = evaluationLogic.evaluateModel(model);
-		if ((currentSearchDepth > 0) && (!isTerminalState(betaScore))) { 
+		int betaScore = (currentSearchDepth > 0 ? evaluateMaterial(model) : evaluate(model, alpha, beta));
+		if (isTerminalState(betaScore)) {
+			betaScore = getMateScore(betaScore, currentSearchDepth);
+		} else if (currentSearchDepth > 0) { 
 			// reset the score, check mate flag, and continue our search...
 			betaScore = beta;
 			whiteMove.setBlackInCheckMate(true);
@@ -351,10 +965,11 @@ public class GameLogic {
 						Set<ChessMove> possibleMoves = logic.getPossibleMoves(model, currentLocation);
 						for (ChessMove currentMove : possibleMoves) {
 							// evaluate this possible move
-							float currentScore = getMaxWhiteScore(model, currentMove, alpha, betaScore, currentSearchDepth - 1);
+							int currentScore = getMaxWhiteScore(model, currentMove, alpha, betaScore, currentSearchDepth - 1);
+							if (isStopped) break alphacutoff;
 
-							// update check and check mate flags
-							if (currentScore <= WHITE_WIN_THRESHOLD) {
+							// black is only check mated if every reply loses its king on the next ply
+							if (currentScore < getMateScore(1, currentSearchDepth - 2)) {
 								whiteMove.setBlackInCheckMate(false);
 							}
 							
@@ -376,35 +991,293 @@ public class GameLogic {
 	}
 	
 	/**
-	 * Utility function to determine whether the given {@Location}
-	 * is reachable by the player of the given {@link Color} 
+	 * Quiescence search with white to move: white may stand pat on the 
+	 * evaluation of the position or try any capture that does not lose
+	 * material, so that the score is not taken in the middle of an 
+	 * exchange.  Losing captures are pruned without being searched.
+	 * 
+	 * @param model
+	 * @param alpha
+	 * @param beta
+	 * @param quiescencePly
+	 * @return
+	 */
+	private int getQuiescenceMaxWhiteScore(ChessModel model, int alpha, int beta, int quiescencePly) {
+		int alphaScore = evaluate(model, alpha, beta);
+		if (isTerminalState(alphaScore)) {
+			return getMateScore(alphaScore, -quiescencePly);
+		}
+		if ((alphaScore >= beta) || (quiescencePly >= MAX_QUIESCENCE_PLY)) {
+			return alphaScore;
+		}
+		alphaScore = (alpha > alphaScore ? alpha : alphaScore);
+		for (ChessMove capture : getCaptures(model, White)) {
+			if (isSearchStopped()) {
+				break;
+			}
+			ChessModel captureModel = moveLogic.applyMoveToModel(new ChessModel(model), capture);
+			int currentScore = getQuiescenceMinBlackScore(captureModel, alphaScore, beta, quiescencePly + 1);
+			nodeCount = nodeCount + 1;
+			alphaScore = (currentScore > alphaScore ? currentScore : alphaScore);
+			if (alphaScore >= beta) {
+				break;
+			}
+		}
+		return alphaScore;
+	}
+	
+	
+	/**
+	 * Quiescence search with black to move, see 
+	 * {@link #getQuiescenceMaxWhiteScore(ChessModel, int, int, int)}
+	 * 
+	 * @param model
+	 * @param alpha
+	 * @param beta
+	 * @param quiescencePly
+	 * @return
+	 */
+	private int getQuiescenceMinBlackScore(ChessModel model, int alpha, int beta, int quiescencePly) {
+		int betaScore = evaluate(model, alpha, beta);
+		if (isTerminalState(betaScore)) {
+			return getMateScore(betaScore, -quiescencePly);
+		}
+		if ((betaScore <= alpha) || (quiescencePly >= MAX_QUIESCENCE_PLY)) {
+			return betaScore;
+		}
+		betaScore = (beta < betaScore ? beta : betaScore);
+		for (ChessMove capture : getCaptures(model, Black)) {
+			if (isSearchStopped()) {
+				break;
+			}
+			ChessModel captureModel = moveLogic.applyMoveToModel(new ChessModel(model), capture);
+			int currentScore = getQuiescenceMaxWhiteScore(captureModel, alpha, betaScore, quiescencePly + 1);
+			nodeCount = nodeCount + 1;
+			betaScore = (currentScore < betaScore ? currentScore : betaScore);
+			if (betaScore <= alpha) {
+				break;
+			}
+		}
+		return betaScore;
+	}
+	
+	
+	/**
+	 * Return the captures for the given {@link Color} that do not lose
+	 * material, best static exchange first
 	 * 
 	 * @param model
-	 * @param location
 	 * @param color
 	 * @return
 	 */
-	public boolean isLocationReachableByColor(ChessModel model, Location location, Color color) {
+	private List<ChessMove> getCaptures(ChessModel model, Color color) {
+		final Map<ChessMove, Integer> exchangeScores = new IdentityHashMap<ChessMove, Integer>();
+		List<ChessMove> captures = new ArrayList<ChessMove>();
+		for (ChessMove move : getPossibleMoves(model, color)) {
+			if (isCapture(model, move)) {
+				int exchangeScore = staticExchangeLogic.getExchangeScore(model, move);
+				if (exchangeScore >= 0) {
+					exchangeScores.put(move, exchangeScore);
+					captures.add(move);
+				}
+			}
+		}
+		Collections.sort(captures, new Comparator<ChessMove>() {
+			@Override
+			public int compare(ChessMove move1, ChessMove move2) {
+				return exchangeScores.get(move2) - exchangeScores.get(move1);
+			}
+		});
+		return captures;
+	}
+	
+	
+	/**
+	 * Does the given move capture a piece?
+	 * 
+	 * @param model
+	 * @param move
+	 * @return
+	 */
+	private boolean isCapture(ChessModel model, ChessMove move) {
+		return (move.getType() == EnPassantCapture) || (model.getPieceAtLocation(move.getTo()) != None);
+	}
+	
+	
+	/**
+	 * Record the position at the given ply of the current line and 
+	 * decide whether it is drawn: by the fifty move rule, because 
+	 * neither side has the material to mate, or because it repeats an
+	 * earlier position, in the search or in the game.  Only
+	 * positions since the last capture or pawn move (and with the same
+	 * side to move) can repeat, so that is as far back as we look.
+	 * 
+	 * @param model
+	 * @param ply
+	 * @return
+	 */
+	private boolean isDraw(ChessModel model, int ply) {
+		long key = model.getPositionKey();
+		searchKeys[ply] = key;
+		int halfmoveClock = model.getHalfmoveClock();
+		if ((halfmoveClock >= FIFTY_MOVE_HALFMOVES) || materialSignatureLogic.isDeadDraw(model.getMaterialSignature())) {
+			return true;
+		}
+		int oldest = Math.max(ply - halfmoveClock, -searchHistory.getSize());
+		for (int i=ply - 4; i >= oldest; i -= 2) {
+			long previousKey = (i >= 0 ? searchKeys[i] : searchHistory.getKey(searchHistory.getSize() + i));
+			if (previousKey == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * Score the position at the given ply of the current line from an
+	 * endgame table, if one covers it.  A mate the table sees coming is 
+	 * scored as the search would score it when the king is taken, two 
+	 * plies after the mating move.
+	 * 
+	 * @param model
+	 * @param ply
+	 * @return the score, or <code>NOT_IN_TABLEBASE</code>
+	 */
+	private int probeTablebases(ChessModel model, int ply) {
+		for (Tablebase tablebase : tablebases) {
+			if (tablebase.isApplicable(model)) {
+				int value = tablebase.probe(model);
+				if ((value == Tablebase.ILLEGAL) || (value == Tablebase.DRAW)) {
+					return (value == Tablebase.DRAW ? DRAW_SCORE : NOT_IN_TABLEBASE);
+				}
+				int score = MATE_SCORE - (ply + Tablebase.getDistance(value) + 2);
+				boolean isWhiteWin = (Tablebase.isWin(value) == (model.getActiveColor() == White));
+				return (isWhiteWin ? score : -score);
+			}
+		}
+		return NOT_IN_TABLEBASE;
+	}
+	
+	
+	/**
+	 * Should the search unwind?  The timer and external stop requests are
+	 * volatile, so we only poll them every {@link #STOP_CHECK_INTERVAL} 
+	 * checks and otherwise rely on the (cheap) cached flag.  This counts
+	 * checks rather than nodes, which a single check may add several of.
+	 * 
+	 * @return
+	 */
+	private boolean isSearchStopped() {
+		if (--stopCheckCountdown <= 0) {
+			stopCheckCountdown = STOP_CHECK_INTERVAL;
+			isStopped = searchStop.get() || timer.isTimeUp();
+		}
+		return isStopped;
+	}
+	
+	
+	/**
+	 * Return all of the possible (but not necessarily legal) moves for
+	 * the given {@link Color}, in board order.
+	 * 
+	 * @param model
+	 * @param color
+	 * @return
+	 */
+	public List<ChessMove> getPossibleMoves(ChessModel model, Color color) {
+		List<ChessMove> moves = new ArrayList<ChessMove>();
 		for (int x=0; x < 8; x++) {
 			for (int y=0; y < 8; y++) {
 				Piece currentPiece = model.getPieceAtIndex(x, y);
-				if ((currentPiece != None) && (color == currentPiece.getColor())) {
-					// TODO: remove the following if check, currently necessary to prevent circular dependency
-					// with king castling available move checks.
-					if ((currentPiece != WhiteKing) && (currentPiece != BlackKing)) {
-						PieceLogic logic = currentPiece.getLogic();
-						Location currentLocation = Location.get(x, y);
-						Set<ChessMove> possibleMoves = logic.getPossibleMoves(model, currentLocation);
-						for (ChessMove possibleMove : possibleMoves) {
-							if (possibleMove.getTo() == location) {
-								return true;
-							}
-						}
-					}
+				if ((currentPiece != None) && (currentPiece.getColor() == color)) {
+					PieceLogic logic = currentPiece.getLogic();
+					moves.addAll(logic.getPossibleMoves(model, Location.get(x, y)));
 				}
 			}
 		}
-		return false;
+		return moves;
+	}
+	
+	
+	/**
+	 * Put the most promising moves first: captures that win or break even
+	 * in the static exchange, best exchange first, then quiet moves to 
+	 * squares the opponent does not attack, then captures that lose 
+	 * material, then the rest.  The sort is stable, so moves that look 
+	 * alike keep their board order.
+	 * 
+	 * @param model
+	 * @param moves
+	 */
+	protected void orderMoves(ChessModel model, List<ChessMove> moves) {
+		AttackMap attackMap = model.getAttackMap();
+		final Map<ChessMove, Integer> orderingKeys = new IdentityHashMap<ChessMove, Integer>();
+		for (ChessMove move : moves) {
+			orderingKeys.put(move, getOrderingKey(model, attackMap, move));
+		}
+		Collections.sort(moves, new Comparator<ChessMove>() {
+			@Override
+			public int compare(ChessMove move1, ChessMove move2) {
+				return orderingKeys.get(move2) - orderingKeys.get(move1);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Ordering key of a move for {@link #orderMoves(ChessModel, List)},
+	 * higher keys first
+	 * 
+	 * @param model
+	 * @param attackMap
+	 * @param move
+	 * @return
+	 */
+	private int getOrderingKey(ChessModel model, AttackMap attackMap, ChessMove move) {
+		if (isCapture(model, move)) {
+			int exchangeScore = staticExchangeLogic.getExchangeScore(model, move);
+			return (exchangeScore >= 0 ? 2000 + exchangeScore : 500 + (exchangeScore / 100));
+		}
+		Color opponent = (move.getPiece().getColor() == White ? Black : White);
+		if (!attackMap.isAttacked(move.getTo(), opponent)) {
+			return 1000;
+		}
+		return -Math.min(Math.abs(move.getPiece().getPoints()), 10);
+	}
+	
+	
+	/**
+	 * Return the moves for the given {@link Color} that do not leave
+	 * its own king exposed to capture.
+	 * 
+	 * @param model
+	 * @param color
+	 * @return
+	 */
+	public List<ChessMove> getLegalMoves(ChessModel model, Color color) {
+		List<ChessMove> legalMoves = new ArrayList<ChessMove>();
+		for (ChessMove move : getPossibleMoves(model, color)) {
+			if (gameStateLogic.isLegalMove(model, move)) {
+				legalMoves.add(move);
+			}
+		}
+		return legalMoves;
+	}
+	
+	
+	/**
+	 * Utility function to determine whether the given {@Location}
+	 * is attacked by the player of the given {@link Color}, using the
+	 * model's shared {@link AttackMap}
+	 * 
+	 * @param model
+	 * @param location
+	 * @param color
+	 * @return
+	 */
+	public boolean isLocationReachableByColor(ChessModel model, Location location, Color color) {
+		return model.getAttackMap().isAttacked(location, color);
 	}
 	
 	
@@ -415,7 +1288,7 @@ public class GameLogic {
 	 * @param score
 	 * @return
 	 */
-	private boolean isTerminalState(float score) {
+	private boolean isTerminalState(int score) {
 		if ((score > WHITE_WIN_THRESHOLD) || (score < BLACK_WIN_THRESHOLD)) {
 			return true;
 		} else {
@@ -423,6 +1296,18 @@ public class GameLogic {
 		}		
 	}
 		
+	/**
+	 * Is this a score the search gives a won game (see 
+	 * {@link #getMateScore(int, int)}), rather than an evaluation?
+	 * 
+	 * @param score
+	 * @return
+	 */
+	private boolean isMateScore(int score) {
+		return (score > MATE_THRESHOLD) || (score < -MATE_THRESHOLD);
+	}
+	
+	
 	/**
 	 * Use our {@link EvaluationLogic} function to determine whether
 	 * this is a terminal node in the {@link ChessModel} search tree.
@@ -431,75 +1316,90 @@ public class GameLogic {
 	 * @return
 	 */
 	private boolean isTerminalState(ChessModel model) {
-		return isTerminalState(evaluationLogic.evaluateModel(model));
+		return isTerminalState(evaluate(model));
+	}
+	
+	
+	/**
+	 * Replace the evaluation of a terminal (king captured) node with a
+	 * mate score that encodes how many plies from the root it is, so
+	 * that quicker wins (and slower losses) are preferred.
+	 * 
+	 * @param score
+	 * @param currentSearchDepth
+	 * @return
+	 */
+	private int getMateScore(int score, int currentSearchDepth) {
+		int ply = rootSearchDepth - currentSearchDepth + 1;
+		return (score > 0 ? MATE_SCORE - ply : ply - MATE_SCORE);
 	}
 	
 	
 	/**
-	 * Return the {@link GameState} associated with the given 
-	 * score from our {@link EvaluationLogic} function.
+	 * Convert a score in centipawns to the points reported by 
+	 * {@link ChessModel#getScore()}
 	 * 
 	 * @param score
 	 * @return
 	 */
-	private GameState getGameStateFromScore(float score) {
-		if (score > WHITE_WIN_THRESHOLD) {
-			return BlackInCheckMate;
-		} else if (score < BLACK_WIN_THRESHOLD) {
-			return WhiteInCheckMate;
+	private float getPoints(int score) {
+		return score / 100.0f;
+	}
+	
+	
+	/**
+	 * Evaluate a node in the search tree, from the running totals when
+	 * we are evaluating incrementally.
+	 * 
+	 * @param model
+	 * @return
+	 */
+	private int evaluate(ChessModel model) {
+		if (incrementalEvaluationLogic != null) {
+			return incrementalEvaluationLogic.evaluateModelIncrementally(model);
 		} else {
-			return OK;
-		}		
-		
+			return evaluationLogic.evaluateModel(model);
+		}
 	}
 	
+	
 	/**
-	 * Return the {@link GameState} associated with the given 
-	 * {@link ChessModel} as well as the most recent {@link ChessMove}.
+	 * Evaluate a leaf node, letting a lazy evaluation skip the tiers that
+	 * cannot bring the score back inside the (alpha, beta) window.  Scores
+	 * of endgames the material alone says are drawish or won are adjusted
+	 * by our {@link MaterialSignatureLogic}, from a full evaluation since
+	 * the window does not apply to the unadjusted score.
 	 * 
 	 * @param model
-	 * @param move
+	 * @param alpha
+	 * @param beta
 	 * @return
 	 */
-	private GameState getGameStateFromModelAndMove(ChessModel model, ChessMove move) {
-		float score = evaluationLogic.evaluateModel(model);
-		if ((score > WHITE_WIN_THRESHOLD) || move.isBlackInCheckMate()) {
-			return BlackInCheckMate;
-		} else if ((score < BLACK_WIN_THRESHOLD) || move.isWhiteInCheckMate()) {
-			return WhiteInCheckMate;
+	private int evaluate(ChessModel model, int alpha, int beta) {
+		long signature = model.getMaterialSignature();
+		if (!materialSignatureLogic.isNormal(signature)) {
+			int score = evaluate(model);
+			return (isTerminalState(score) ? score : materialSignatureLogic.getScaledScore(signature, score));
+		} else if (lazyEvaluationLogic != null) {
+			return lazyEvaluationLogic.evaluateModel(model, alpha, beta);
 		} else {
-			// check?
-			Location whiteKingLocation = getPieceLocation(model, WhiteKing);
-			Location blackKingLocation = getPieceLocation(model, BlackKing);
-			if (isLocationReachableByColor(model, whiteKingLocation, Black)) {
-				return WhiteInCheck;
-			} else if (isLocationReachableByColor(model, blackKingLocation, White)) {
-				return BlackInCheck;
-			} else {
-				return OK;
-			}
-		}		
+			return evaluate(model);
+		}
 	}
 	
+	
 	/**
-	 * Return the {@link Location} associated with the given {@link Piece}, 
-	 * or <code>Unknown</code> if it is not present.  In the case multiple
-	 * instances of the piece exist, the first instance discovered will 
-	 * be returned.
+	 * Evaluate an interior node, where all we need to know is whether the
+	 * game is over, so a lazy evaluation only has to look at material.
 	 * 
 	 * @param model
-	 * @param piece
 	 * @return
 	 */
-	private Location getPieceLocation(ChessModel model, Piece piece) {
-		for (int y=0; y < 8; y++) {
-			for (int x=0; x < 8; x++) {
-				Piece currentPiece = model.getPieceAtIndex(x, y);
-				if (currentPiece == piece) {
-					return Location.get(x,  y);
-				}			
-			}
+	private int evaluateMaterial(ChessModel model) {
+		if (lazyEvaluationLogic != null) {
+			return lazyEvaluationLogic.evaluateMaterial(model);
+		} else {
+			return evaluate(model);
 		}
-		return Unknown;
 	}
 }
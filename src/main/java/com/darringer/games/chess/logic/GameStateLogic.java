@@ -0,0 +1,136 @@
+package com.darringer.games.chess.logic;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.GameState.*;
+import static com.darringer.games.chess.model.Location.Unknown;
+import static com.darringer.games.chess.model.Piece.BlackKing;
+import static com.darringer.games.chess.model.Piece.None;
+import static com.darringer.games.chess.model.Piece.WhiteKing;
+
+import com.darringer.games.chess.model.AttackMap;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.Color;
+import com.darringer.games.chess.model.GameState;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * Classifies a {@link ChessModel} as in progress, check, check mate,
+ * stalemate or drawn for the player whose turn it is.  Rather than
+ * leaning on the evaluation or on flags left behind by the search, it
+ * asks two direct questions: is the king attacked, and does any legal
+ * move exist?  The second question stops at the first legal move found,
+ * which in almost every position is one of the first few moves generated.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.model.GameState
+ * @see com.darringer.games.chess.model.AttackMap
+ *
+ */
+public class GameStateLogic {
+
+	/*
+	 * Fifty moves by each side without a capture or pawn move is a draw
+	 */
+	static final int FIFTY_MOVE_HALFMOVES = 100;
+
+	private MoveLogic moveLogic = new MoveLogic();
+	private MaterialSignatureLogic materialSignatureLogic = new MaterialSignatureLogic();
+
+
+	/**
+	 * Return the {@link GameState} of the given {@link ChessModel} with
+	 * the given {@link Color} to move.  A king that is missing from the
+	 * board has been check mated.
+	 *
+	 * @param model
+	 * @param colorToMove
+	 * @return
+	 */
+	public GameState getGameState(ChessModel model, Color colorToMove) {
+		AttackMap attackMap = model.getAttackMap();
+		if (attackMap.getKingLocation(White) == Unknown) {
+			return WhiteInCheckMate;
+		} else if (attackMap.getKingLocation(Black) == Unknown) {
+			return BlackInCheckMate;
+		}
+
+		boolean isInCheck = attackMap.isInCheck(colorToMove);
+		if (!hasLegalMove(model, colorToMove)) {
+			if (isInCheck) {
+				return (colorToMove == White ? WhiteInCheckMate : BlackInCheckMate);
+			}
+			return Stalemate;
+		}
+		if (isDraw(model)) {
+			return Draw;
+		}
+		if (isInCheck) {
+			return (colorToMove == White ? WhiteInCheck : BlackInCheck);
+		}
+		return OK;
+	}
+
+
+	/**
+	 * Is the game drawn by the fifty move rule, because neither side has
+	 * the material to mate, or because the position has now occurred
+	 * three times?
+	 *
+	 * @param model
+	 * @return
+	 */
+	public boolean isDraw(ChessModel model) {
+		int halfmoveClock = model.getHalfmoveClock();
+		if ((halfmoveClock >= FIFTY_MOVE_HALFMOVES) || materialSignatureLogic.isDeadDraw(model.getMaterialSignature())) {
+			return true;
+		}
+		return model.getHistory().getRepetitionCount(model.getPositionKey(), halfmoveClock) >= 2;
+	}
+
+
+	/**
+	 * Does the given {@link Color} have at least one legal move?
+	 *
+	 * @param model
+	 * @param color
+	 * @return
+	 */
+	public boolean hasLegalMove(ChessModel model, Color color) {
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				Piece currentPiece = model.getPieceAtIndex(x, y);
+				if ((currentPiece != None) && (currentPiece.getColor() == color)) {
+					for (ChessMove move : currentPiece.getLogic().getPossibleMoves(model, Location.get(x, y))) {
+						if (isLegalMove(model, move)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Would the given (possible) move leave the mover's king safe?
+	 *
+	 * @param model
+	 * @param move
+	 * @return
+	 */
+	public boolean isLegalMove(ChessModel model, ChessMove move) {
+		Color color = move.getColor();
+		Piece king = (color == White ? WhiteKing : BlackKing);
+		Location kingLocation = (move.getPiece() == king ? move.getTo() : model.getAttackMap().getKingLocation(color));
+		if (kingLocation == Unknown) {
+			return false;
+		}
+		ChessModel modelClone = moveLogic.applyMoveToModel(new ChessModel(model), move);
+		return !AttackMap.isAttacked(modelClone, kingLocation.ordinal(), (color == White ? Black : White));
+	}
+}
@@ -20,9 +20,10 @@ public class GameTimer {
 	
 	private Timer timer;
 	private Timer halfTimer;
-	private boolean isTimeUp;
-	private boolean isHalfTimeUp;
+	private volatile boolean isTimeUp;
+	private volatile boolean isHalfTimeUp;
 	private int timeoutInSeconds;
+	private long startTimeInMillis;
 
 	/**
 	 * Default constructor.
@@ -34,6 +35,7 @@ public class GameTimer {
 		isHalfTimeUp = false;
 		timer = null;
 		halfTimer = null;
+		startTimeInMillis = System.currentTimeMillis();
 	}
 	
 	
@@ -47,6 +49,7 @@ public class GameTimer {
 		this.timeoutInSeconds = timeoutInSeconds;
 		timer = new Timer();
 		halfTimer = new Timer();
+		startTimeInMillis = System.currentTimeMillis();
 	}
 
 	public boolean isTimeUp() {
@@ -56,8 +59,31 @@ public class GameTimer {
 	public boolean isHalfTimeUp() {
 		return isHalfTimeUp;
 	}
+	
+	/**
+	 * Milliseconds elapsed since the timer was started
+	 * 
+	 * @return
+	 */
+	public long getElapsedMillis() {
+		return System.currentTimeMillis() - startTimeInMillis;
+	}
+	
+	/**
+	 * Milliseconds left before the time limit is reached, or 
+	 * <code>Long.MAX_VALUE</code> for a timer with no timeouts.
+	 * 
+	 * @return
+	 */
+	public long getRemainingMillis() {
+		if (timer == null) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0l, (timeoutInSeconds * 1000l) - getElapsedMillis());
+	}
 
 	public void start() {
+		startTimeInMillis = System.currentTimeMillis();
 		if (timer != null) {
 			timer.schedule(new GameTimerTask(), timeoutInSeconds * 1000);
 		}
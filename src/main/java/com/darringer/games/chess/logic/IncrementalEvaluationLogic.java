@@ -0,0 +1,62 @@
+package com.darringer.games.chess.logic;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * An {@link EvaluationLogic} that can keep running totals (material,
+ * piece-square sums, etc.) in the {@link ChessModel} so that evaluating
+ * a node in the search tree does not require a scan of the whole board.
+ * <p />
+ * The totals are computed once with {@link #initializeModel(ChessModel)}
+ * and then kept up to date by {@link MoveLogic}, which reports every piece
+ * it adds to or removes from the board.  Since the totals travel with the 
+ * model they are copied along with it, so implementations should keep 
+ * them small.  {@link EvaluationLogic#evaluateModel(ChessModel)} is still
+ * a full recompute and can be used to verify the running totals.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.logic.EvaluationLogic
+ * @see com.darringer.games.chess.logic.MoveLogic
+ *
+ */
+public interface IncrementalEvaluationLogic extends EvaluationLogic {
+
+	/**
+	 * Compute the running totals for the given {@link ChessModel} from 
+	 * scratch and store them in the model.
+	 * 
+	 * @param model
+	 */
+	void initializeModel(ChessModel model);
+	
+	/**
+	 * The given {@link Piece} was placed at the given {@link Location}.
+	 * 
+	 * @param model
+	 * @param piece
+	 * @param location
+	 */
+	void pieceAdded(ChessModel model, Piece piece, Location location);
+	
+	/**
+	 * The given {@link Piece} was removed from the given {@link Location}.
+	 * 
+	 * @param model
+	 * @param piece
+	 * @param location
+	 */
+	void pieceRemoved(ChessModel model, Piece piece, Location location);
+	
+	/**
+	 * Return the score associated with the given {@link ChessModel} using
+	 * the running totals, falling back to a full evaluation if they have
+	 * not been initialized.
+	 * 
+	 * @param model
+	 * @return
+	 */
+	int evaluateModelIncrementally(ChessModel model);
+}
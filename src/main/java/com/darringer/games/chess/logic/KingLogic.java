@@ -8,6 +8,7 @@ import static com.darringer.games.chess.model.Piece.WhiteKing;
 import java.util.HashSet;
 import java.util.Set;
 
+import com.darringer.games.chess.model.AttackMap;
 import com.darringer.games.chess.model.CastlingAvailability;
 import com.darringer.games.chess.model.ChessModel;
 import com.darringer.games.chess.model.ChessMove;
@@ -28,11 +29,8 @@ import com.darringer.games.chess.model.Piece;
  */
 public class KingLogic extends AbstractPieceLogic {
 
-	private GameLogic logic;
-	
 	public KingLogic(Color color) {
 		super(color);
-		logic = new GameLogic();
 	}
 	
 	/**
@@ -151,14 +149,17 @@ public class KingLogic extends AbstractPieceLogic {
 	}
 	
 	/**
+	 * Are any of the given locations attacked by the opponent?  Uses the
+	 * model's shared {@link AttackMap}.
 	 * 
 	 * @param model
 	 * @param locations
 	 * @return
 	 */
 	protected boolean isInCheckAtLocations(ChessModel model, Location... locations) {
+		AttackMap attackMap = model.getAttackMap();
 		for (Location currentLocation : locations) {
-			if (logic.isLocationReachableByColor(model, currentLocation, getOtherColor())) {
+			if (attackMap.isAttacked(currentLocation, getOtherColor())) {
 				return true;
 			}
 		}
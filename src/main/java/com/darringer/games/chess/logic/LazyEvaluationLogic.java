@@ -0,0 +1,44 @@
+package com.darringer.games.chess.logic;
+
+import com.darringer.games.chess.model.ChessModel;
+
+/**
+ * An {@link EvaluationLogic} split into tiers: a cheap material tier and
+ * more expensive positional tiers on top of it.  The search passes its
+ * (alpha, beta) window, so the expensive tiers can be skipped whenever the
+ * cheaper ones already put the score so far outside the window that they
+ * could not change the cutoff decision.
+ * <p />
+ * Interior nodes of the search only need to know whether a king has been
+ * captured, which the material tier alone answers.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.logic.EvaluationLogic
+ * @see com.darringer.games.chess.logic.GameLogic
+ *
+ */
+public interface LazyEvaluationLogic extends EvaluationLogic {
+
+	/**
+	 * Return just the material balance of the given {@link ChessModel},
+	 * using running totals when they are available.  This is enough to
+	 * tell whether the game is over.
+	 *
+	 * @param model
+	 * @return
+	 */
+	int evaluateMaterial(ChessModel model);
+
+	/**
+	 * Return the score of the given {@link ChessModel}, skipping tiers
+	 * that cannot bring the score back inside (alpha, beta).  A score
+	 * outside the window is only a bound, not an exact score.
+	 *
+	 * @param model
+	 * @param alpha
+	 * @param beta
+	 * @return
+	 */
+	int evaluateModel(ChessModel model, int alpha, int beta);
+}
@@ -0,0 +1,193 @@
+package com.darringer.games.chess.logic;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Piece.*;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.Color;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * Recognizes endgames whose outcome follows from the material alone,
+ * using the piece counts in {@link ChessModel#getMaterialSignature()}:
+ * <ul>
+ *   <li>dead draws, where neither side can possibly check mate (bare
+ *       kings, or a single knight or bishop against a bare king)</li>
+ *   <li>drawish endings, where the side that is ahead has no pawns and
+ *       not enough extra material to force mate, whose scores are scaled
+ *       towards a draw</li>
+ *   <li>trivially won endings, a bare king against a queen, a rook or
+ *       two minor pieces that can force mate, which get a bonus so the
+ *       search steers towards them</li>
+ * </ul>
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.model.ChessModel#getMaterialSignature()
+ *
+ */
+public class MaterialSignatureLogic {
+
+	/*
+	 * Scores are scaled by a factor out of <code>FULL_SCALE</code>
+	 */
+	public static final int FULL_SCALE = 16;
+	private static final int DRAWISH_SCALE = 2;
+
+	/*
+	 * Added to the score of a trivially won ending, while staying well
+	 * clear of the win thresholds
+	 */
+	private static final int KNOWN_WIN_BONUS = 1000;
+
+	/* four bits per piece type */
+	private static final long COUNT_MASK = 0xfl;
+
+	/* pieces other than pawns and the king */
+	private static final Piece[] whitePieces = {WhiteKnight, WhiteBishop, WhiteRook, WhiteQueen};
+	private static final Piece[] blackPieces = {BlackKnight, BlackBishop, BlackRook, BlackQueen};
+
+
+	/**
+	 * Number of pieces of the given type in the given signature
+	 *
+	 * @param signature
+	 * @param piece
+	 * @return
+	 */
+	public int getCount(long signature, Piece piece) {
+		return (piece == None ? 0 : (int) ((signature >>> (piece.ordinal() * 4)) & COUNT_MASK));
+	}
+
+
+	/**
+	 * Can neither side possibly check mate?
+	 *
+	 * @param signature
+	 * @return
+	 */
+	public boolean isDeadDraw(long signature) {
+		if ((getPawns(signature, White) + getPawns(signature, Black)) > 0) {
+			return false;
+		}
+		if ((getMajors(signature, White) + getMajors(signature, Black)) > 0) {
+			return false;
+		}
+		return (getMinors(signature, White) + getMinors(signature, Black)) <= 1;
+	}
+
+
+	/**
+	 * Can the given {@link Color} force mate against a bare king without
+	 * any help?
+	 *
+	 * @param signature
+	 * @param color
+	 * @return
+	 */
+	public boolean isTriviallyWon(long signature, Color color) {
+		Color opponent = (color == White ? Black : White);
+		if ((getPawns(signature, opponent) + getMajors(signature, opponent) + getMinors(signature, opponent)) > 0) {
+			return false;
+		}
+		if (getMajors(signature, color) > 0) {
+			return true;
+		}
+		int bishops = getCount(signature, (color == White ? WhiteBishop : BlackBishop));
+		return (bishops > 0) && (getMinors(signature, color) >= 2);
+	}
+
+
+	/**
+	 * Scale factor, out of {@link #FULL_SCALE}, for a score in favor of
+	 * the given {@link Color}.  Without pawns, being a minor piece (or
+	 * less) ahead, or having nothing but knights, is not enough to win.
+	 *
+	 * @param signature
+	 * @param color
+	 * @return
+	 */
+	public int getScaleFactor(long signature, Color color) {
+		if (getPawns(signature, color) > 0) {
+			return FULL_SCALE;
+		}
+		Color opponent = (color == White ? Black : White);
+		int lead = getPieceMaterial(signature, color) - getPieceMaterial(signature, opponent);
+		int knights = getCount(signature, (color == White ? WhiteKnight : BlackKnight));
+		if ((lead <= Math.abs(WhiteBishop.getPoints())) || (knights == getMinors(signature, color) + getMajors(signature, color))) {
+			return DRAWISH_SCALE;
+		}
+		return FULL_SCALE;
+	}
+
+
+	/**
+	 * Is there nothing special about the given material?  Most positions
+	 * are normal, and their scores are left as they are.
+	 *
+	 * @param signature
+	 * @return
+	 */
+	public boolean isNormal(long signature) {
+		return !isDeadDraw(signature)
+				&& !isTriviallyWon(signature, White) && !isTriviallyWon(signature, Black)
+				&& (getScaleFactor(signature, White) == FULL_SCALE) && (getScaleFactor(signature, Black) == FULL_SCALE);
+	}
+
+
+	/**
+	 * Adjust a (non terminal) score for what the material says about the
+	 * outcome
+	 *
+	 * @param signature
+	 * @param score
+	 * @return
+	 */
+	public int getScaledScore(long signature, int score) {
+		if (isDeadDraw(signature)) {
+			return EvaluationLogic.DRAW_SCORE;
+		} else if (isTriviallyWon(signature, White)) {
+			return score + KNOWN_WIN_BONUS;
+		} else if (isTriviallyWon(signature, Black)) {
+			return score - KNOWN_WIN_BONUS;
+		}
+		Color strongerColor = (score >= 0 ? White : Black);
+		return (score * getScaleFactor(signature, strongerColor)) / FULL_SCALE;
+	}
+
+
+	private int getPawns(long signature, Color color) {
+		return getCount(signature, (color == White ? WhitePawn : BlackPawn));
+	}
+
+
+	private int getMinors(long signature, Color color) {
+		return (color == White)
+				? getCount(signature, WhiteKnight) + getCount(signature, WhiteBishop)
+				: getCount(signature, BlackKnight) + getCount(signature, BlackBishop);
+	}
+
+
+	private int getMajors(long signature, Color color) {
+		return (color == White)
+				? getCount(signature, WhiteRook) + getCount(signature, WhiteQueen)
+				: getCount(signature, BlackRook) + getCount(signature, BlackQueen);
+	}
+
+
+	/**
+	 * Points of the pieces other than pawns and the king
+	 *
+	 * @param signature
+	 * @param color
+	 * @return
+	 */
+	private int getPieceMaterial(long signature, Color color) {
+		int points = 0;
+		for (Piece piece : (color == White ? whitePieces : blackPieces)) {
+			points += getCount(signature, piece) * Math.abs(piece.getPoints());
+		}
+		return points;
+	}
+}
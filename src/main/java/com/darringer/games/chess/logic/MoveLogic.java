@@ -9,12 +9,15 @@ import static com.darringer.games.chess.model.Piece.*;
 import com.darringer.games.chess.model.CastlingAvailability;
 import com.darringer.games.chess.model.ChessModel;
 import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.Location;
 import com.darringer.games.chess.model.Piece;
 
 /**
  * Control logic for the application of a {@link ChessMove} to a 
  * {@link ChessModel), being sure to update the game state with 
- * the various move side effects.
+ * the various move side effects.  Pieces added to or removed from the
+ * board are reported to an (optional) {@link IncrementalEvaluationLogic}
+ * so that it can keep its running totals up to date.
  * 
  * @author cdarringer
  *
@@ -25,6 +28,27 @@ import com.darringer.games.chess.model.Piece;
  */
 public class MoveLogic {
 
+	private IncrementalEvaluationLogic evaluationLogic;
+	
+	
+	/**
+	 * Default constructor, no evaluation running totals are maintained
+	 */
+	public MoveLogic() {
+		this.evaluationLogic = null;
+	}
+	
+	
+	/**
+	 * Create move logic that keeps the running totals of the given 
+	 * {@link IncrementalEvaluationLogic} up to date.
+	 * 
+	 * @param evaluationLogic
+	 */
+	public MoveLogic(IncrementalEvaluationLogic evaluationLogic) {
+		this.evaluationLogic = evaluationLogic;
+	}
+	
 	
 	/**
 	 * Applies a {@link ChessMove} to a {@link ChessModel}.
@@ -43,44 +67,48 @@ public class MoveLogic {
 	 * @return
 	 */
 	public ChessModel applyMoveToModel(ChessModel model, ChessMove move) {
-		// move the piece assuming regular move
-		model.setPieceAtLocation(move.getTo(), move.getPiece());
-		model.setPieceAtLocation(move.getFrom(), None);
+		// captures and pawn moves cannot be undone, which resets the half move clock
+		Piece captured = model.getPieceAtLocation(move.getTo());
+		boolean isIrreversible = (captured != None) || (move.getPiece() == WhitePawn) || (move.getPiece() == BlackPawn);
+		
+		// move the piece assuming regular move (capturing anything at the destination)
+		setPiece(model, move.getFrom(), None);
+		setPiece(model, move.getTo(), move.getPiece());
 
 		// handling for "special" moves
 		switch (move.getType()) {
 		case CastleKingSide:
 			if (move.getColor() == White) {
 				// white castle king side - we also need to move the rook
-				model.setPieceAtLocation(H1, None);
-				model.setPieceAtLocation(F1, WhiteRook);
+				setPiece(model, H1, None);
+				setPiece(model, F1, WhiteRook);
 			} else {
 				// black castle king side - we also need to move the rook
-				model.setPieceAtLocation(H8, None);
-				model.setPieceAtLocation(F8, BlackRook);
+				setPiece(model, H8, None);
+				setPiece(model, F8, BlackRook);
 			}
 			break;
 
 		case CastleQueenSide:
 			if (move.getColor() == White) {
 				// white castle queen side - we also need to move the rook
-				model.setPieceAtLocation(A1, None);
-				model.setPieceAtLocation(D1, WhiteRook);
+				setPiece(model, A1, None);
+				setPiece(model, D1, WhiteRook);
 			} else {
 				// black castle queen side - we also need to move the rook
-				model.setPieceAtLocation(A8, None);
-				model.setPieceAtLocation(D8, BlackRook);
+				setPiece(model, A8, None);
+				setPiece(model, D8, BlackRook);
 			}
 			break;
 			
 		case EnPassantCapture:
 			// this was an en passant capture - remove captured piece
-			model.setPieceAtLocation(move.getEnPassantCaptureLocation(), None);			
+			setPiece(model, move.getEnPassantCaptureLocation(), None);			
 			break;
 			
 		case PawnPromotion:
 			// the pawn is promoted to a different piece
-			model.setPieceAtLocation(move.getTo(), move.getPawnPromotionPiece());
+			setPiece(model, move.getTo(), move.getPawnPromotionPiece());
 			break;
 			
 		default:
@@ -101,8 +129,8 @@ public class MoveLogic {
 			model.setFullmoveNumber(model.getFullmoveNumber() + 1);
 		}
 		
-		// TODO: update the half move clock
-		model.setHalfmoveClock(0);
+		// update the half move clock
+		model.setHalfmoveClock(isIrreversible ? 0 : model.getHalfmoveClock() + 1);
 		
 		// state
 		if (move.isBlackInCheckMate()) {
@@ -121,6 +149,28 @@ public class MoveLogic {
 	
 
 	
+	/**
+	 * Place a {@link Piece} (or <code>None</code>) at the given {@link Location},
+	 * reporting the removed and added pieces to our evaluation logic.
+	 * 
+	 * @param model
+	 * @param location
+	 * @param piece
+	 */
+	private void setPiece(ChessModel model, Location location, Piece piece) {
+		if (evaluationLogic != null) {
+			Piece oldPiece = model.getPieceAtLocation(location);
+			if (oldPiece != None) {
+				evaluationLogic.pieceRemoved(model, oldPiece, location);
+			}
+			if (piece != None) {
+				evaluationLogic.pieceAdded(model, piece, location);
+			}
+		}
+		model.setPieceAtLocation(location, piece);
+	}
+	
+	
 	/**
 	 * Get the en passant location in the case that a pawn moved forward
 	 * two squares.
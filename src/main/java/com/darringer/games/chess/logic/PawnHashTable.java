@@ -0,0 +1,142 @@
+package com.darringer.games.chess.logic;
+
+/**
+ * Direct-mapped table of pawn structure evaluations, keyed by the
+ * {@link com.darringer.games.chess.model.ChessModel}'s pawn-only Zobrist
+ * key.  Each entry holds the pawn structure score and the passed pawns of
+ * both colors as bitboards (bit <code>y*8+x</code> for the square (x, y)).
+ * <p />
+ * Entries live in parallel primitive arrays and a new entry simply
+ * replaces whatever was in its slot.  An empty slot has a key of zero,
+ * which is also the key of a board without pawns, whose score and masks
+ * are all zero anyway.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.logic.PawnStructureLogic
+ * @see com.darringer.games.chess.model.ChessModel#getPawnKey()
+ *
+ */
+public class PawnHashTable {
+
+	/* default number of entries, must be a power of two */
+	public static final int DEFAULT_SIZE = 1 << 14;
+
+	private long[] keys;
+	private int[] scores;
+	private long[] whitePassedPawns;
+	private long[] blackPassedPawns;
+	private int mask;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Default constructor creates a table of the default size
+	 */
+	public PawnHashTable() {
+		this(DEFAULT_SIZE);
+	}
+
+	/**
+	 * Create a table with the given number of entries, rounded up to the
+	 * next power of two.
+	 *
+	 * @param size
+	 */
+	public PawnHashTable(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Pawn hash table size must be positive");
+		}
+		int capacity = Integer.highestOneBit(size);
+		if (capacity < size) {
+			capacity = capacity << 1;
+		}
+		keys = new long[capacity];
+		scores = new int[capacity];
+		whitePassedPawns = new long[capacity];
+		blackPassedPawns = new long[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Look up the entry for the given pawn key
+	 *
+	 * @param key
+	 * @return the index of the entry, or -1 if it isn't in the table
+	 */
+	public int probe(long key) {
+		int index = (int) (key & mask);
+		if (keys[index] == key) {
+			hits++;
+			return index;
+		}
+		misses++;
+		return -1;
+	}
+
+	/**
+	 * Store an entry for the given pawn key, replacing whatever was there
+	 *
+	 * @param key
+	 * @param score
+	 * @param whitePassed
+	 * @param blackPassed
+	 * @return the index of the entry
+	 */
+	public int store(long key, int score, long whitePassed, long blackPassed) {
+		int index = (int) (key & mask);
+		keys[index] = key;
+		scores[index] = score;
+		whitePassedPawns[index] = whitePassed;
+		blackPassedPawns[index] = blackPassed;
+		return index;
+	}
+
+	public int getScore(int index) {
+		return scores[index];
+	}
+
+	public long getWhitePassedPawns(int index) {
+		return whitePassedPawns[index];
+	}
+
+	public long getBlackPassedPawns(int index) {
+		return blackPassedPawns[index];
+	}
+
+	/**
+	 * Empty the table and reset the counters
+	 */
+	public void clear() {
+		for (int i=0; i < keys.length; i++) {
+			keys[i] = 0l;
+			scores[i] = 0;
+			whitePassedPawns[i] = 0l;
+			blackPassedPawns[i] = 0l;
+		}
+		hits = 0l;
+		misses = 0l;
+	}
+
+	public int getSize() {
+		return keys.length;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Fraction of lookups answered from the table
+	 *
+	 * @return
+	 */
+	public float getHitRate() {
+		long lookups = hits + misses;
+		return (lookups == 0l ? 0.0f : ((float) hits) / lookups);
+	}
+}
@@ -0,0 +1,192 @@
+package com.darringer.games.chess.logic;
+
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Piece.BlackPawn;
+import static com.darringer.games.chess.model.Piece.WhitePawn;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.Color;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * Evaluation of the pawn structure: doubled and isolated pawns are
+ * penalized and passed pawns get a bonus that grows as they advance.
+ * Scores are in centipawns from white's point of view, like
+ * {@link EvaluationLogic}.
+ * <p />
+ * Pawns move rarely compared to the other pieces, so along a search path
+ * the same pawn structure comes up over and over again.  Results are kept
+ * in a {@link PawnHashTable} keyed by the model's pawn-only Zobrist key,
+ * which makes the pawn terms nearly free once the table is warm.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.logic.PawnHashTable
+ * @see com.darringer.games.chess.model.ChessModel#getPawnKey()
+ *
+ */
+public class PawnStructureLogic {
+
+	/*
+	 * Penalties for each extra pawn on a file, and for each pawn without
+	 * friendly pawns on the neighbouring files
+	 */
+	private static final int DOUBLED_PAWN_PENALTY = 15;
+	private static final int ISOLATED_PAWN_PENALTY = 12;
+
+	/*
+	 * Bonus for a passed pawn by rank, from the pawn's own point of view
+	 */
+	private static final int[] passedPawnBonus = {0, 5, 10, 20, 35, 60, 100, 0};
+
+	/* bitboard of the a-file, shift left by x for the other files */
+	private static final long FILE_A = 0x0101010101010101l;
+
+	/*
+	 * Files next to each file, and the squares in front of each square on
+	 * the same and neighbouring files (which must be free of enemy pawns
+	 * for a pawn to be passed)
+	 */
+	private static final long[] adjacentFiles = new long[8];
+	private static final long[] whiteFrontSpans = new long[64];
+	private static final long[] blackFrontSpans = new long[64];
+
+	static {
+		for (int x=0; x < 8; x++) {
+			adjacentFiles[x] = (x > 0 ? FILE_A << (x - 1) : 0l) | (x < 7 ? FILE_A << (x + 1) : 0l);
+		}
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				long files = adjacentFiles[x] | (FILE_A << x);
+				long ranksAbove = (y < 7 ? -1l << ((y + 1) * 8) : 0l);
+				long ranksBelow = (y > 0 ? -1l >>> ((8 - y) * 8) : 0l);
+				whiteFrontSpans[y * 8 + x] = files & ranksAbove;
+				blackFrontSpans[y * 8 + x] = files & ranksBelow;
+			}
+		}
+	}
+
+	private PawnHashTable table;
+
+	/**
+	 * Default constructor uses a pawn hash table of the default size
+	 */
+	public PawnStructureLogic() {
+		this(new PawnHashTable());
+	}
+
+	public PawnStructureLogic(PawnHashTable table) {
+		this.table = table;
+	}
+
+
+	/**
+	 * Score of the pawn structure of the given {@link ChessModel}
+	 *
+	 * @param model
+	 * @return
+	 */
+	public int evaluatePawns(ChessModel model) {
+		return table.getScore(getEntry(model));
+	}
+
+
+	/**
+	 * Passed pawns of the given {@link Color} as a bitboard, with bit
+	 * <code>y*8+x</code> set for a passed pawn on the square (x, y)
+	 *
+	 * @param model
+	 * @param color
+	 * @return
+	 */
+	public long getPassedPawns(ChessModel model, Color color) {
+		int index = getEntry(model);
+		return (color == White ? table.getWhitePassedPawns(index) : table.getBlackPassedPawns(index));
+	}
+
+
+	public PawnHashTable getPawnHashTable() {
+		return this.table;
+	}
+
+
+	/**
+	 * Find the pawn hash table entry for the given {@link ChessModel},
+	 * computing it if it isn't there yet
+	 *
+	 * @param model
+	 * @return
+	 */
+	private int getEntry(ChessModel model) {
+		long key = model.getPawnKey();
+		int index = table.probe(key);
+		if (index < 0) {
+			index = computeEntry(model, key);
+		}
+		return index;
+	}
+
+
+	/**
+	 * Evaluate the pawn structure from scratch and store the result
+	 *
+	 * @param model
+	 * @param key
+	 * @return
+	 */
+	private int computeEntry(ChessModel model, long key) {
+		// collect the pawns of each color
+		long whitePawns = 0l;
+		long blackPawns = 0l;
+		for (int y=1; y < 7; y++) {
+			for (int x=0; x < 8; x++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece == WhitePawn) {
+					whitePawns |= 1l << (y * 8 + x);
+				} else if (piece == BlackPawn) {
+					blackPawns |= 1l << (y * 8 + x);
+				}
+			}
+		}
+
+		// doubled and isolated pawns, file by file
+		int score = 0;
+		for (int x=0; x < 8; x++) {
+			long file = FILE_A << x;
+			int whiteCount = Long.bitCount(whitePawns & file);
+			int blackCount = Long.bitCount(blackPawns & file);
+			if (whiteCount > 1) {
+				score -= (whiteCount - 1) * DOUBLED_PAWN_PENALTY;
+			}
+			if (blackCount > 1) {
+				score += (blackCount - 1) * DOUBLED_PAWN_PENALTY;
+			}
+			if ((whitePawns & adjacentFiles[x]) == 0l) {
+				score -= whiteCount * ISOLATED_PAWN_PENALTY;
+			}
+			if ((blackPawns & adjacentFiles[x]) == 0l) {
+				score += blackCount * ISOLATED_PAWN_PENALTY;
+			}
+		}
+
+		// passed pawns
+		long whitePassed = 0l;
+		long blackPassed = 0l;
+		for (long pawns = whitePawns; pawns != 0l; pawns &= pawns - 1) {
+			int square = Long.numberOfTrailingZeros(pawns);
+			if ((blackPawns & whiteFrontSpans[square]) == 0l) {
+				whitePassed |= 1l << square;
+				score += passedPawnBonus[square >>> 3];
+			}
+		}
+		for (long pawns = blackPawns; pawns != 0l; pawns &= pawns - 1) {
+			int square = Long.numberOfTrailingZeros(pawns);
+			if ((whitePawns & blackFrontSpans[square]) == 0l) {
+				blackPassed |= 1l << square;
+				score -= passedPawnBonus[7 - (square >>> 3)];
+			}
+		}
+
+		return table.store(key, score, whitePassed, blackPassed);
+	}
+}
@@ -0,0 +1,29 @@
+package com.darringer.games.chess.logic;
+
+import com.darringer.games.chess.model.ChessModel;
+
+/**
+ * An {@link EvaluationLogic} that scores the same position differently
+ * depending on the phase of the game, judged from something the position
+ * key does not cover (such as the fullmove number).  Anything that stores
+ * scores by position key, like {@link EvaluationLogicCache}, has to key
+ * on the phase as well.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.logic.EvaluationLogic
+ * @see com.darringer.games.chess.logic.EvaluationLogicCache
+ *
+ */
+public interface PhasedEvaluationLogic extends EvaluationLogic {
+
+	/**
+	 * Return the phase of the game the given {@link ChessModel} is scored
+	 * in.  Positions with the same position key and phase get the same
+	 * score.
+	 *
+	 * @param model
+	 * @return
+	 */
+	int getPhase(ChessModel model);
+}
@@ -0,0 +1,91 @@
+package com.darringer.games.chess.logic;
+
+import com.darringer.games.chess.model.ChessMove;
+
+/**
+ * Statistics for a single iteration of the iterative deepening
+ * search performed by {@link GameLogic}.  We keep these around so 
+ * that we can estimate the effective branching factor and predict 
+ * whether another (deeper) iteration will finish in time.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.logic.GameLogic
+ *
+ */
+public class SearchIteration {
+	private int depth;
+	private ChessMove bestMove;
+	private int score;
+	private long nodeCount;
+	private long timeInMillis;
+	private boolean isComplete;
+	
+	/**
+	 * 
+	 * @param depth
+	 * @param bestMove
+	 * @param score
+	 * @param nodeCount
+	 * @param timeInMillis
+	 * @param isComplete
+	 */
+	public SearchIteration(int depth, ChessMove bestMove, int score, long nodeCount, long timeInMillis, boolean isComplete) {
+		this.depth = depth;
+		this.bestMove = bestMove;
+		this.score = score;
+		this.nodeCount = nodeCount;
+		this.timeInMillis = timeInMillis;
+		this.isComplete = isComplete;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public ChessMove getBestMove() {
+		return bestMove;
+	}
+
+	/**
+	 * Score of the best move in centipawns, see {@link EvaluationLogic}
+	 * 
+	 * @return
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	public long getNodeCount() {
+		return nodeCount;
+	}
+
+	public long getTimeInMillis() {
+		return timeInMillis;
+	}
+	
+	/**
+	 * An iteration is incomplete when the search ran out of time before
+	 * all of the root moves were explored.  The best move is still usable
+	 * since it was fully searched to this iteration's depth.
+	 * 
+	 * @return
+	 */
+	public boolean isComplete() {
+		return isComplete;
+	}
+	
+	public long getNodesPerMS() {
+		return (timeInMillis < 1l ? nodeCount : (nodeCount / timeInMillis));
+	}
+	
+	public long getNodesPerSecond() {
+		return getNodesPerMS() * 1000l;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("depth=%d, bestMove=%s, score=%d, nodes=%d, time=%dms, nps=%d%s", 
+				depth, bestMove, score, nodeCount, timeInMillis, getNodesPerSecond(), isComplete ? "" : " (partial)");
+	}
+}
@@ -0,0 +1,24 @@
+package com.darringer.games.chess.logic;
+
+/**
+ * Callback interface for clients that want to follow the progress 
+ * of a search while {@link GameLogic} is still thinking.  Called once 
+ * for each iteration of the iterative deepening search, on the 
+ * searching thread - implementations should return quickly.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.logic.GameLogic
+ * @see com.darringer.games.chess.logic.SearchIteration
+ *
+ */
+public interface SearchProgressListener {
+
+	/**
+	 * An iteration of the search has finished (or was cut short, see 
+	 * {@link SearchIteration#isComplete()}).
+	 * 
+	 * @param iteration
+	 */
+	void iterationComplete(SearchIteration iteration);
+}
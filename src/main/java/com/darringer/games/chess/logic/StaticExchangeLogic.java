@@ -0,0 +1,138 @@
+package com.darringer.games.chess.logic;
+
+import static com.darringer.games.chess.model.ChessMoveType.EnPassantCapture;
+import static com.darringer.games.chess.model.ChessMoveType.PawnPromotion;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Piece.None;
+
+import com.darringer.games.chess.model.AttackMap;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.Color;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * Static exchange evaluation: the material outcome of a capture once
+ * both sides have traded on the target square, each always recapturing
+ * with its least valuable attacker and free to stop whenever continuing
+ * would lose material.  This tells a winning capture from a losing one
+ * without searching it, using attack queries rather than full move
+ * generation.
+ * <p />
+ * Pieces are valued at their {@link Piece#getPoints()} in centipawns, so
+ * capturing into a defended square with the king is as bad as it gets.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.model.AttackMap#getAttackersTo(ChessModel, int, long)
+ *
+ */
+public class StaticExchangeLogic {
+
+	/*
+	 * No capture sequence on one square is longer than the number of
+	 * pieces on the board
+	 */
+	private static final int MAX_EXCHANGES = 33;
+
+	/**
+	 * Material gained (or lost, if negative) in centipawns by the side
+	 * making the given move, once the exchange on the target square has
+	 * been resolved.  Quiet moves are scored as the exchange that follows
+	 * if the opponent captures the moved piece.
+	 *
+	 * @param model
+	 * @param move
+	 * @return
+	 */
+	public int getExchangeScore(ChessModel model, ChessMove move) {
+		int target = move.getTo().ordinal();
+		long occupancy = model.getAttackMap().getOccupancy();
+
+		// the first capture
+		int[] gain = new int[MAX_EXCHANGES];
+		int onSquare = getValue(move.getPiece());
+		if (move.getType() == EnPassantCapture) {
+			gain[0] = 100;
+			occupancy &= ~(1l << move.getEnPassantCaptureLocation().ordinal());
+		} else {
+			gain[0] = getValue(model.getPieceAtLocation(move.getTo()));
+		}
+		if (move.getType() == PawnPromotion) {
+			onSquare = getValue(move.getPawnPromotionPiece());
+			gain[0] += onSquare - 100;
+		}
+		occupancy &= ~(1l << move.getFrom().ordinal());
+		occupancy |= 1l << target;
+		Color side = (move.getPiece().getColor() == White ? Color.Black : White);
+
+		// alternate recaptures with the least valuable attacker
+		int depth = 0;
+		while (depth < MAX_EXCHANGES - 1) {
+			long attackers = AttackMap.getAttackersTo(model, target, occupancy) & occupancy;
+			int from = getLeastValuableAttacker(model, attackers, side);
+			if (from < 0) {
+				break;
+			}
+			depth++;
+			gain[depth] = onSquare - gain[depth - 1];
+			onSquare = getValue(model.getPieceAtIndex(from & 7, from >>> 3));
+			occupancy &= ~(1l << from);
+			side = (side == White ? Color.Black : White);
+		}
+
+		// either side may stop capturing when it would only lose material
+		while (depth > 0) {
+			gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+			depth--;
+		}
+		return gain[0];
+	}
+
+
+	/**
+	 * Is the given move a capture that loses material?
+	 *
+	 * @param model
+	 * @param move
+	 * @return
+	 */
+	public boolean isLosingCapture(ChessModel model, ChessMove move) {
+		return getExchangeScore(model, move) < 0;
+	}
+
+
+	/**
+	 * Square of the least valuable of the given attackers of the given
+	 * {@link Color}, or -1 if there is none
+	 *
+	 * @param model
+	 * @param attackers
+	 * @param color
+	 * @return
+	 */
+	private int getLeastValuableAttacker(ChessModel model, long attackers, Color color) {
+		int bestSquare = -1;
+		int bestValue = Integer.MAX_VALUE;
+		for (; attackers != 0l; attackers &= attackers - 1) {
+			int square = Long.numberOfTrailingZeros(attackers);
+			Piece piece = model.getPieceAtIndex(square & 7, square >>> 3);
+			if ((piece.getColor() == color) && (getValue(piece) < bestValue)) {
+				bestSquare = square;
+				bestValue = getValue(piece);
+			}
+		}
+		return bestSquare;
+	}
+
+
+	/**
+	 * Value of a piece in centipawns, regardless of color
+	 *
+	 * @param piece
+	 * @return
+	 */
+	private static int getValue(Piece piece) {
+		return (piece == None ? 0 : Math.abs(piece.getPoints()) * 100);
+	}
+}
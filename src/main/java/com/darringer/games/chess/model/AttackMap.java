@@ -0,0 +1,473 @@
+package com.darringer.games.chess.model;
+
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Location.Unknown;
+
+/**
+ * The squares attacked by each piece type and color in a
+ * {@link ChessModel}, and the number of attackers of each color on every
+ * square.  Mobility and king safety terms, check detection, castling
+ * checks and move ordering all need this information, so it is computed
+ * once per position (see {@link ChessModel#getAttackMap()}) and shared.
+ * <p />
+ * Attack sets are bitboards with bit <code>y*8+x</code> set for the
+ * square (x, y), the same numbering as {@link Location#ordinal()}.  Pawns
+ * attack diagonally only, and sliding pieces attack up to and including
+ * the first occupied square in each direction.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.model.ChessModel#getAttackMap()
+ *
+ */
+public class AttackMap {
+
+	/*
+	 * Attack sets of the non-sliding pieces from each square
+	 */
+	private static final long[] knightAttacks = new long[64];
+	private static final long[] kingAttacks = new long[64];
+	private static final long[] whitePawnAttacks = new long[64];
+	private static final long[] blackPawnAttacks = new long[64];
+
+	/*
+	 * Directions of the sliding pieces, as (dx, dy) pairs
+	 */
+	private static final int[][] bishopDirections = {{1, 1}, {1, -1}, {-1, -1}, {-1, 1}};
+	private static final int[][] rookDirections = {{0, 1}, {1, 0}, {0, -1}, {-1, 0}};
+
+	/*
+	 * Squares from each square to the edge of the board in each sliding
+	 * direction, the bishop directions first and then the rook's.  A
+	 * sliding attack is the ray with everything beyond its first occupied
+	 * square taken off, which is found with a single bit scan.
+	 */
+	private static final int BISHOP_RAYS = 0;
+	private static final int ROOK_RAYS = 4;
+	private static final long[][] rays = new long[8][64];
+	private static final boolean[] isIncreasingRay = new boolean[8];
+
+	private static final Location[] locations = Location.values();
+
+	static {
+		int[][] knightSteps = {{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				int square = (y * 8) + x;
+				for (int[] step : knightSteps) {
+					knightAttacks[square] |= getBit(x + step[0], y + step[1]);
+				}
+				for (int dx=-1; dx <= 1; dx++) {
+					for (int dy=-1; dy <= 1; dy++) {
+						if ((dx != 0) || (dy != 0)) {
+							kingAttacks[square] |= getBit(x + dx, y + dy);
+						}
+					}
+				}
+				whitePawnAttacks[square] = getBit(x - 1, y + 1) | getBit(x + 1, y + 1);
+				blackPawnAttacks[square] = getBit(x - 1, y - 1) | getBit(x + 1, y - 1);
+				for (int ray=0; ray < 8; ray++) {
+					int[] direction = (ray < ROOK_RAYS ? bishopDirections[ray] : rookDirections[ray - ROOK_RAYS]);
+					isIncreasingRay[ray] = (direction[1] > 0) || ((direction[1] == 0) && (direction[0] > 0));
+					for (int i=1; i < 8; i++) {
+						rays[ray][square] |= getBit(x + (i * direction[0]), y + (i * direction[1]));
+					}
+				}
+			}
+		}
+	}
+
+	/* attacks of each piece type, indexed by piece ordinal */
+	private long[] pieceAttacks = new long[12];
+
+	/* attacks of each color, indexed by color ordinal */
+	private long[] colorAttacks = new long[2];
+
+	/* number of attackers on each square, by color */
+	private byte[] whiteCounts = new byte[64];
+	private byte[] blackCounts = new byte[64];
+
+	private int whiteKingSquare = -1;
+	private int blackKingSquare = -1;
+	private long occupancy;
+
+	/**
+	 * Compute the attacks in the given {@link ChessModel}
+	 *
+	 * @param model
+	 */
+	public AttackMap(ChessModel model) {
+		occupancy = 0l;
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				if (model.getPieceAtIndex(x, y) != Piece.None) {
+					occupancy |= 1l << ((y * 8) + x);
+				}
+			}
+		}
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				Piece piece = model.getPieceAtIndex(x, y);
+				if (piece == Piece.None) {
+					continue;
+				}
+				int square = (y * 8) + x;
+				long attacks;
+				switch (piece) {
+				case WhitePawn:
+					attacks = whitePawnAttacks[square];
+					break;
+				case BlackPawn:
+					attacks = blackPawnAttacks[square];
+					break;
+				case WhiteKnight: case BlackKnight:
+					attacks = knightAttacks[square];
+					break;
+				case WhiteBishop: case BlackBishop:
+					attacks = getSlidingAttacks(square, occupancy, BISHOP_RAYS);
+					break;
+				case WhiteRook: case BlackRook:
+					attacks = getSlidingAttacks(square, occupancy, ROOK_RAYS);
+					break;
+				case WhiteQueen: case BlackQueen:
+					attacks = getSlidingAttacks(square, occupancy, BISHOP_RAYS) | getSlidingAttacks(square, occupancy, ROOK_RAYS);
+					break;
+				case WhiteKing:
+					attacks = kingAttacks[square];
+					whiteKingSquare = square;
+					break;
+				default:
+					attacks = kingAttacks[square];
+					blackKingSquare = square;
+					break;
+				}
+				pieceAttacks[piece.ordinal()] |= attacks;
+				boolean isWhite = (piece.getColor() == White);
+				colorAttacks[isWhite ? 0 : 1] |= attacks;
+				byte[] counts = (isWhite ? whiteCounts : blackCounts);
+				for (; attacks != 0l; attacks &= attacks - 1) {
+					counts[Long.numberOfTrailingZeros(attacks)]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Is the given {@link Location} attacked by any piece of the given {@link Color}?
+	 *
+	 * @param location
+	 * @param color
+	 * @return
+	 */
+	public boolean isAttacked(Location location, Color color) {
+		if (location == Unknown) {
+			return false;
+		}
+		return (getAttacks(color) & (1l << location.ordinal())) != 0l;
+	}
+
+	/**
+	 * Number of pieces of the given {@link Color} attacking the given {@link Location}
+	 *
+	 * @param location
+	 * @param color
+	 * @return
+	 */
+	public int getAttackCount(Location location, Color color) {
+		if (location == Unknown) {
+			return 0;
+		}
+		return (color == White ? whiteCounts : blackCounts)[location.ordinal()];
+	}
+
+	/**
+	 * Total number of attacks by the given {@link Color} on the given set
+	 * of squares
+	 *
+	 * @param squares
+	 * @param color
+	 * @return
+	 */
+	public int getAttackCount(long squares, Color color) {
+		byte[] counts = (color == White ? whiteCounts : blackCounts);
+		int count = 0;
+		for (; squares != 0l; squares &= squares - 1) {
+			count += counts[Long.numberOfTrailingZeros(squares)];
+		}
+		return count;
+	}
+
+	/**
+	 * Squares attacked by the given {@link Color}
+	 *
+	 * @param color
+	 * @return
+	 */
+	public long getAttacks(Color color) {
+		return colorAttacks[color == White ? 0 : 1];
+	}
+
+	/**
+	 * Squares attacked by pieces of the given type
+	 *
+	 * @param piece
+	 * @return
+	 */
+	public long getAttacks(Piece piece) {
+		return (piece == Piece.None ? 0l : pieceAttacks[piece.ordinal()]);
+	}
+
+	/**
+	 * Location of the king of the given {@link Color}, or <code>Unknown</code>
+	 * if it is not on the board
+	 *
+	 * @param color
+	 * @return
+	 */
+	public Location getKingLocation(Color color) {
+		int square = (color == White ? whiteKingSquare : blackKingSquare);
+		return (square < 0 ? Unknown : locations[square]);
+	}
+
+	/**
+	 * Is the king of the given {@link Color} attacked?  A missing king is
+	 * not in check.
+	 *
+	 * @param color
+	 * @return
+	 */
+	public boolean isInCheck(Color color) {
+		return isAttacked(getKingLocation(color), (color == White ? Color.Black : White));
+	}
+
+	/**
+	 * Occupied squares
+	 *
+	 * @return
+	 */
+	public long getOccupancy() {
+		return occupancy;
+	}
+
+	/**
+	 * Squares of the pieces (of either color) that attack the given square,
+	 * taking only the pieces on the given occupied squares into account.
+	 * Removing pieces from the occupancy reveals the sliding pieces behind
+	 * them, which is what resolving a sequence of captures needs.
+	 *
+	 * @param model
+	 * @param square
+	 * @param occupancy
+	 * @return
+	 */
+	public static long getAttackersTo(ChessModel model, int square, long occupancy) {
+		long attackers = 0l;
+		for (long candidates = knightAttacks[square] & occupancy; candidates != 0l; candidates &= candidates - 1) {
+			int from = Long.numberOfTrailingZeros(candidates);
+			Piece piece = getPiece(model, from);
+			if ((piece == Piece.WhiteKnight) || (piece == Piece.BlackKnight)) {
+				attackers |= 1l << from;
+			}
+		}
+		for (long candidates = kingAttacks[square] & occupancy; candidates != 0l; candidates &= candidates - 1) {
+			int from = Long.numberOfTrailingZeros(candidates);
+			Piece piece = getPiece(model, from);
+			if ((piece == Piece.WhiteKing) || (piece == Piece.BlackKing)) {
+				attackers |= 1l << from;
+			}
+		}
+		
+		// a white pawn attacks this square from where a black pawn on it would attack, and vice versa
+		for (long candidates = blackPawnAttacks[square] & occupancy; candidates != 0l; candidates &= candidates - 1) {
+			int from = Long.numberOfTrailingZeros(candidates);
+			if (getPiece(model, from) == Piece.WhitePawn) {
+				attackers |= 1l << from;
+			}
+		}
+		for (long candidates = whitePawnAttacks[square] & occupancy; candidates != 0l; candidates &= candidates - 1) {
+			int from = Long.numberOfTrailingZeros(candidates);
+			if (getPiece(model, from) == Piece.BlackPawn) {
+				attackers |= 1l << from;
+			}
+		}
+		
+		// the first piece along each ray, if it slides in that direction
+		int x = square & 7;
+		int y = square >>> 3;
+		for (int[] direction : bishopDirections) {
+			int from = getFirstOccupied(x, y, occupancy, direction);
+			if (from >= 0) {
+				Piece piece = getPiece(model, from);
+				if ((piece == Piece.WhiteBishop) || (piece == Piece.BlackBishop) || (piece == Piece.WhiteQueen) || (piece == Piece.BlackQueen)) {
+					attackers |= 1l << from;
+				}
+			}
+		}
+		for (int[] direction : rookDirections) {
+			int from = getFirstOccupied(x, y, occupancy, direction);
+			if (from >= 0) {
+				Piece piece = getPiece(model, from);
+				if ((piece == Piece.WhiteRook) || (piece == Piece.BlackRook) || (piece == Piece.WhiteQueen) || (piece == Piece.BlackQueen)) {
+					attackers |= 1l << from;
+				}
+			}
+		}
+		return attackers;
+	}
+
+	/**
+	 * Is the given square attacked by any piece of the given {@link Color}?
+	 * This looks outwards from the square only, so it is much cheaper than
+	 * building an {@link AttackMap} when a single square is of interest.
+	 *
+	 * @param model
+	 * @param square
+	 * @param color
+	 * @return
+	 */
+	public static boolean isAttacked(ChessModel model, int square, Color color) {
+		long occupancy = 0l;
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				if (model.getPieceAtIndex(x, y) != Piece.None) {
+					occupancy |= 1l << ((y * 8) + x);
+				}
+			}
+		}
+		for (long attackers = getAttackersTo(model, square, occupancy); attackers != 0l; attackers &= attackers - 1) {
+			if (getPiece(model, Long.numberOfTrailingZeros(attackers)).getColor() == color) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Squares a knight on the given square attacks
+	 *
+	 * @param square
+	 * @return
+	 */
+	public static long getKnightAttacks(int square) {
+		return knightAttacks[square];
+	}
+
+	/**
+	 * Squares a king on the given square attacks
+	 *
+	 * @param square
+	 * @return
+	 */
+	public static long getKingAttacks(int square) {
+		return kingAttacks[square];
+	}
+
+	/**
+	 * Squares a pawn of the given {@link Color} on the given square attacks
+	 *
+	 * @param square
+	 * @param color
+	 * @return
+	 */
+	public static long getPawnAttacks(int square, Color color) {
+		return (color == White ? whitePawnAttacks : blackPawnAttacks)[square];
+	}
+
+	/**
+	 * Squares a bishop on the given square attacks, given the occupied squares
+	 *
+	 * @param square
+	 * @param occupancy
+	 * @return
+	 */
+	public static long getBishopAttacks(int square, long occupancy) {
+		return getSlidingAttacks(square, occupancy, BISHOP_RAYS);
+	}
+
+	/**
+	 * Squares a rook on the given square attacks, given the occupied squares
+	 *
+	 * @param square
+	 * @param occupancy
+	 * @return
+	 */
+	public static long getRookAttacks(int square, long occupancy) {
+		return getSlidingAttacks(square, occupancy, ROOK_RAYS);
+	}
+
+	/**
+	 * Squares around the king of the given {@link Color}, empty if it is
+	 * not on the board
+	 *
+	 * @param color
+	 * @return
+	 */
+	public long getKingZone(Color color) {
+		int square = (color == White ? whiteKingSquare : blackKingSquare);
+		return (square < 0 ? 0l : kingAttacks[square]);
+	}
+
+	/**
+	 * Attacks of a sliding piece on the given square along the four rays
+	 * starting at the given one
+	 *
+	 * @param square
+	 * @param occupancy
+	 * @param firstRay
+	 * @return
+	 */
+	private static long getSlidingAttacks(int square, long occupancy, int firstRay) {
+		long attacks = 0l;
+		for (int ray=firstRay; ray < firstRay + 4; ray++) {
+			long squares = rays[ray][square];
+			long blockers = squares & occupancy;
+			if (blockers != 0l) {
+				int blocker = (isIncreasingRay[ray] ? Long.numberOfTrailingZeros(blockers) : 63 - Long.numberOfLeadingZeros(blockers));
+				squares ^= rays[ray][blocker];
+			}
+			attacks |= squares;
+		}
+		return attacks;
+	}
+
+	/**
+	 * First occupied square from (x, y) in the given direction, or -1
+	 *
+	 * @param x
+	 * @param y
+	 * @param occupancy
+	 * @param direction
+	 * @return
+	 */
+	private static int getFirstOccupied(int x, int y, long occupancy, int[] direction) {
+		int currentX = x + direction[0];
+		int currentY = y + direction[1];
+		while ((currentX >= 0) && (currentX < 8) && (currentY >= 0) && (currentY < 8)) {
+			int square = (currentY * 8) + currentX;
+			if ((occupancy & (1l << square)) != 0l) {
+				return square;
+			}
+			currentX += direction[0];
+			currentY += direction[1];
+		}
+		return -1;
+	}
+
+	private static Piece getPiece(ChessModel model, int square) {
+		return model.getPieceAtIndex(square & 7, square >>> 3);
+	}
+
+	/**
+	 * Bit for the square (x, y), or zero if it is off the board
+	 *
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	private static long getBit(int x, int y) {
+		if ((x < 0) || (x > 7) || (y < 0) || (y > 7)) {
+			return 0l;
+		}
+		return 1l << ((y * 8) + x);
+	}
+}
@@ -40,6 +40,12 @@ public class ChessModel {
 	private int fullmoveNumber;
 	private GameState state;
 	private float score;
+	private int[] evaluationTerms;
+	private long pieceKey;
+	private long pawnKey;
+	private long materialSignature;
+	private AttackMap attackMap;
+	private PositionHistory history;
 	
 	private static Logger log = Logger.getLogger(ChessModel.class);
 	
@@ -60,6 +66,10 @@ public class ChessModel {
 		 fullmoveNumber = 1;
 		 state = OK;
 		 score = 0.0f;
+		 pieceKey = 0l;
+		 pawnKey = 0l;
+		 materialSignature = 0l;
+		 history = PositionHistory.EMPTY;
 	}
 	
 	/**
@@ -81,6 +91,12 @@ public class ChessModel {
 		 this.fullmoveNumber = model.fullmoveNumber;
 		 this.state = model.state;
 		 this.score = model.score;
+		 this.evaluationTerms = (model.evaluationTerms == null ? null : model.evaluationTerms.clone());
+		 this.pieceKey = model.pieceKey;
+		 this.pawnKey = model.pawnKey;
+		 this.materialSignature = model.materialSignature;
+		 this.attackMap = model.attackMap;
+		 this.history = model.history;
 	}
 	
 	/**
@@ -102,7 +118,10 @@ public class ChessModel {
 	}
 	
 	public void setPieceAtLocation(Location location, Piece piece) {
-		pieces[location.getY()][location.getX()] = piece;
+		int x = location.getX();
+		int y = location.getY();
+		updateKeys(pieces[y][x], piece, x, y);
+		pieces[y][x] = piece;
 	}
 
 	public boolean isLocationEmpty(Location location) {
@@ -147,7 +166,9 @@ public class ChessModel {
  			log.error("Invalid rank");
 		} else {
 			for (int x=0; x < 8; x++) {
-				this.pieces[y][x] = rankPieces.get(x);
+				Piece piece = rankPieces.get(x);
+				updateKeys(pieces[y][x], piece, x, y);
+				this.pieces[y][x] = piece;
 			}
 		}
 	}
@@ -184,6 +205,126 @@ public class ChessModel {
 		this.score = score;
 	}
 	
+	/**
+	 * Running evaluation totals maintained by an incremental evaluation 
+	 * function, or <code>null</code> if they have not been initialized.
+	 * Note that these are not updated by {@link #setPieceAtLocation(Location, Piece)},
+	 * only by move application in the logic layer.
+	 * 
+	 * @return
+	 */
+	public int[] getEvaluationTerms() {
+		return this.evaluationTerms;
+	}
+	
+	public void setEvaluationTerms(int[] evaluationTerms) {
+		this.evaluationTerms = evaluationTerms;
+	}
+	
+	/**
+	 * {@link Zobrist} hash of the pieces on the board, kept up to date as
+	 * pieces are set.
+	 * 
+	 * @return
+	 */
+	public long getPieceKey() {
+		return this.pieceKey;
+	}
+	
+	/**
+	 * {@link Zobrist} hash of just the pawns on the board.  Pawns move
+	 * rarely compared to the other pieces, so this makes a good key for 
+	 * caching pawn structure evaluation.
+	 * 
+	 * @return
+	 */
+	public long getPawnKey() {
+		return this.pawnKey;
+	}
+	
+	/**
+	 * Count of each type of piece on the board, four bits per piece 
+	 * starting from the low bits in {@link Piece} ordinal order, kept up 
+	 * to date as pieces are set.
+	 * 
+	 * @return
+	 */
+	public long getMaterialSignature() {
+		return this.materialSignature;
+	}
+	
+	/**
+	 * {@link Zobrist} hash of the whole position: the pieces on the board,
+	 * the side to move, castling availability and the en passant file.
+	 * Two models with the same key are, barring collisions, the same 
+	 * position.
+	 * 
+	 * @return
+	 */
+	public long getPositionKey() {
+		return pieceKey 
+				^ Zobrist.getActiveColorKey(activeColor) 
+				^ Zobrist.getCastlingKey(castlingAvailability) 
+				^ Zobrist.getEnPassantKey(enPassant);
+	}
+	
+	/**
+	 * The {@link AttackMap} of the pieces on the board.  It is computed on
+	 * first use and kept until a piece is set, so every consumer at a node 
+	 * in the search shares the same one.  Copies of this model share it 
+	 * as well, which is safe since attack maps never change.
+	 * 
+	 * @return
+	 */
+	public AttackMap getAttackMap() {
+		if (attackMap == null) {
+			attackMap = new AttackMap(this);
+		}
+		return attackMap;
+	}
+	
+	/**
+	 * Keys of the positions played before this one in the game.  Moves
+	 * tried by the search are not recorded here.
+	 * 
+	 * @return
+	 */
+	public PositionHistory getHistory() {
+		return this.history;
+	}
+	
+	public void setHistory(PositionHistory history) {
+		this.history = history;
+	}
+	
+	/**
+	 * Replace the old piece with the new one in our hash keys and material
+	 * signature, which also makes our attack map out of date
+	 * 
+	 * @param oldPiece
+	 * @param newPiece
+	 * @param x
+	 * @param y
+	 */
+	private void updateKeys(Piece oldPiece, Piece newPiece, int x, int y) {
+		attackMap = null;
+		long oldKey = Zobrist.getPieceKey(oldPiece, x, y);
+		long newKey = Zobrist.getPieceKey(newPiece, x, y);
+		pieceKey ^= oldKey ^ newKey;
+		if ((oldPiece == WhitePawn) || (oldPiece == BlackPawn)) {
+			pawnKey ^= oldKey;
+		}
+		if ((newPiece == WhitePawn) || (newPiece == BlackPawn)) {
+			pawnKey ^= newKey;
+		}
+		if (oldPiece != None) {
+			materialSignature -= 1l << (oldPiece.ordinal() * 4);
+		}
+		if (newPiece != None) {
+			materialSignature += 1l << (newPiece.ordinal() * 4);
+		}
+	}
+	
 	/**
 	 * Use a velocity template to pretty-print this model
 	 * 
@@ -0,0 +1,25 @@
+package com.darringer.games.chess.model;
+
+/**
+ * Thrown when a chess model string could not be parsed.  Carries the 
+ * offset of the character where parsing stopped, relative to the start
+ * of the string.
+ * 
+ * @author cdarringer
+ *
+ */
+public class ChessParseException extends ChessSystemException {
+
+	private static final long serialVersionUID = 1L;
+	
+	private int offset;
+
+	public ChessParseException(String message, int offset) {
+		super(message + " at offset " + offset);
+		this.offset = offset;
+	}
+	
+	public int getOffset() {
+		return offset;
+	}
+}
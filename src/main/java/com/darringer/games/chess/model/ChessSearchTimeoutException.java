@@ -3,7 +3,8 @@ package com.darringer.games.chess.model;
 /**
  * It is impossible to exhaustively search the tree, so we will
  * need to cutoff the search after a certain amount of time has 
- * elapsed. 
+ * elapsed (or when the search is stopped by the caller).  Thrown 
+ * when a search is cut off before it produced any result. 
  * 
  * @author cdarringer
  *
@@ -0,0 +1,42 @@
+package com.darringer.games.chess.model;
+
+/**
+ * The outcome of a finished game, as recorded in game records such as
+ * PGN files, with the code used there.
+ * 
+ * @author cdarringer
+ *
+ */
+public enum GameResult {
+	WhiteWin("1-0"), BlackWin("0-1"), Draw("1/2-1/2"), Unknown("*");
+	
+	String code;
+	
+	private GameResult(String code) {
+		this.code = code;
+	}
+	
+	public String getCode() {
+		return code;
+	}
+	
+	/**
+	 * The result with the given code
+	 * 
+	 * @param code
+	 * @return the result, or <code>null</code> if it is not a result code
+	 */
+	public static GameResult get(String code) {
+		for (GameResult result : values()) {
+			if (result.code.equals(code)) {
+				return result;
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public String toString() {
+		return code;
+	}
+}
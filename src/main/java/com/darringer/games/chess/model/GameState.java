@@ -16,6 +16,8 @@ public enum GameState {
 	BlackInCheck(true, "Black is in check!"), 
 	WhiteInCheckMate(false, "White is in check mate!"), 
 	BlackInCheckMate(false, "Black is in check mate!"), 
+	Stalemate(false, "Stalemate!"), 
+	Draw(false, "Draw!"), 
 	SystemException(false, "System exception");
 	
 	boolean isInProgress;
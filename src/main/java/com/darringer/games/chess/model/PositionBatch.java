@@ -0,0 +1,123 @@
+package com.darringer.games.chess.model;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+
+/**
+ * A batch of positions stored as a struct of arrays, for scoring many
+ * positions at once.  Rather than one object per position, there is one
+ * array per square holding the {@link Piece} ordinal found on that square
+ * in each position of the batch (so <code>getSquare(s)[i]</code> is the
+ * piece on square <code>s</code> of position <code>i</code>).  Evaluation
+ * can then sweep each square across the whole batch with tight loops over
+ * primitive arrays.
+ * <p />
+ * Only the state evaluation looks at is kept: the pieces, the side to
+ * move and the fullmove number.  Squares are numbered like
+ * {@link Location#ordinal()}, that is <code>y*8+x</code>.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.model.ChessModel
+ *
+ */
+public class PositionBatch {
+
+	private byte[][] squares;
+	private byte[] activeColors;
+	private int[] fullmoveNumbers;
+	private int size;
+
+	/**
+	 * Create an empty batch that can hold the given number of positions
+	 *
+	 * @param capacity
+	 */
+	public PositionBatch(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Batch capacity must be positive");
+		}
+		squares = new byte[64][capacity];
+		activeColors = new byte[capacity];
+		fullmoveNumbers = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Add the given {@link ChessModel} to the batch
+	 *
+	 * @param model
+	 * @return the index of the position in the batch
+	 */
+	public int add(ChessModel model) {
+		if (size == activeColors.length) {
+			throw new IllegalStateException("Batch is full");
+		}
+		int index = size++;
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				squares[(y * 8) + x][index] = (byte) model.getPieceAtIndex(x, y).ordinal();
+			}
+		}
+		activeColors[index] = (byte) model.getActiveColor().ordinal();
+		fullmoveNumbers[index] = model.getFullmoveNumber();
+		return index;
+	}
+
+	/**
+	 * Rebuild a {@link ChessModel} for one position of the batch.  Castling
+	 * availability, en passant and the halfmove clock are not kept, so they
+	 * are left at their defaults.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public ChessModel getModel(int index) {
+		if ((index < 0) || (index >= size)) {
+			throw new IndexOutOfBoundsException("No position at index " + index);
+		}
+		Piece[] pieces = Piece.values();
+		ChessModel model = new ChessModel();
+		for (Location location : Location.values()) {
+			if (location != Location.Unknown) {
+				model.setPieceAtLocation(location, pieces[squares[location.ordinal()][index]]);
+			}
+		}
+		model.setActiveColor(activeColors[index] == White.ordinal() ? White : Black);
+		model.setFullmoveNumber(fullmoveNumbers[index]);
+		return model;
+	}
+
+	/**
+	 * Piece ordinals on the given square, one per position in the batch
+	 *
+	 * @param square
+	 * @return
+	 */
+	public byte[] getSquare(int square) {
+		return squares[square];
+	}
+
+	public byte[] getActiveColors() {
+		return activeColors;
+	}
+
+	public int[] getFullmoveNumbers() {
+		return fullmoveNumbers;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return activeColors.length;
+	}
+
+	/**
+	 * Empty the batch so it can be filled again
+	 */
+	public void clear() {
+		size = 0;
+	}
+}
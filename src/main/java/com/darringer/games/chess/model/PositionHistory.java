@@ -0,0 +1,123 @@
+package com.darringer.games.chess.model;
+
+import java.util.Arrays;
+
+/**
+ * The {@link ChessModel#getPositionKey()} keys of the positions that
+ * came before the current one in a game, oldest first.  Histories are
+ * immutable: playing a move creates a new history with one more key, so
+ * every copy of a model can safely share its history.
+ * <p />
+ * Histories that extend one another share a backing array, and each
+ * just remembers how much of it is its own.  Adding a key to the longest
+ * history writes into the next free slot, so playing a game is O(1) per
+ * move; only adding to a history that has already been extended some
+ * other way (a take back, or a line tried from an earlier position)
+ * copies the keys into a backing array of its own.
+ * <p />
+ * A position can only repeat as far back as the last capture or pawn
+ * move, which the halfmove clock tells us, so repetition checks only
+ * look at that many keys.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.model.ChessModel#getHistory()
+ *
+ */
+public class PositionHistory {
+
+	/* a game with no earlier positions */
+	public static final PositionHistory EMPTY = new PositionHistory(new Keys(new long[16]), 0);
+
+	private final Keys keys;
+	private final int size;
+
+
+	private PositionHistory(Keys keys, int size) {
+		this.keys = keys;
+		this.size = size;
+	}
+
+
+	/**
+	 * Return a new history with the given key added as the most recent
+	 * position
+	 *
+	 * @param key
+	 * @return
+	 */
+	public PositionHistory add(long key) {
+		synchronized (keys) {
+			if ((keys.size == size) && (size < keys.keys.length)) {
+				keys.keys[size] = key;
+				keys.size++;
+				return new PositionHistory(keys, size + 1);
+			}
+		}
+		Keys newKeys = new Keys(Arrays.copyOf(keys.keys, Math.max(size * 2, 16)));
+		newKeys.keys[size] = key;
+		newKeys.size = size + 1;
+		return new PositionHistory(newKeys, size + 1);
+	}
+
+
+	/**
+	 * Number of earlier positions
+	 *
+	 * @return
+	 */
+	public int getSize() {
+		return size;
+	}
+
+
+	/**
+	 * Key of the given earlier position, the oldest is at index 0
+	 *
+	 * @param index
+	 * @return
+	 */
+	public long getKey(int index) {
+		if (index >= size) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		return keys.keys[index];
+	}
+
+
+	/**
+	 * Number of times the position with the given key occurred before,
+	 * looking back no further than the given halfmove clock.  Only every
+	 * second position has the same side to move, so only those are
+	 * compared.
+	 *
+	 * @param key
+	 * @param halfmoveClock
+	 * @return
+	 */
+	public int getRepetitionCount(long key, int halfmoveClock) {
+		int count = 0;
+		long[] array = keys.keys;
+		int oldest = Math.max(size - halfmoveClock, 0);
+		for (int i=size - 2; i >= oldest; i -= 2) {
+			if (array[i] == key) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+	/**
+	 * Backing array shared by histories that extend one another, and how
+	 * many of its slots have been claimed
+	 */
+	private static class Keys {
+		private final long[] keys;
+		private int size;
+
+		private Keys(long[] keys) {
+			this.keys = keys;
+		}
+	}
+}
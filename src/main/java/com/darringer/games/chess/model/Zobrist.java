@@ -0,0 +1,127 @@
+package com.darringer.games.chess.model;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Location.Unknown;
+import static com.darringer.games.chess.model.Piece.None;
+
+/**
+ * Zobrist hashing for {@link ChessModel}s.  Every (piece, square) pair,
+ * the side to move, each castling right and each en passant file is
+ * assigned a random 64 bit key, and a position is hashed by xor-ing
+ * together the keys of everything that is true about it.  Since xor is
+ * its own inverse, the hash can be updated as pieces come and go rather
+ * than recomputed from scratch.
+ * <p />
+ * The keys come from a fixed seed, so hashes are stable from one run to
+ * the next.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.model.ChessModel#getPositionKey()
+ *
+ */
+public final class Zobrist {
+
+	/* pieces other than None, by ordinal */
+	private static final int PIECE_COUNT = 12;
+
+	private static final long[] pieceKeys = new long[PIECE_COUNT * 64];
+	private static final long[] castlingKeys = new long[4];
+	private static final long[] enPassantKeys = new long[8];
+	private static final long blackToMoveKey;
+
+	static {
+		long seed = 0l;
+		for (int i=0; i < pieceKeys.length; i++) {
+			pieceKeys[i] = getKey(++seed);
+		}
+		for (int i=0; i < castlingKeys.length; i++) {
+			castlingKeys[i] = getKey(++seed);
+		}
+		for (int i=0; i < enPassantKeys.length; i++) {
+			enPassantKeys[i] = getKey(++seed);
+		}
+		blackToMoveKey = getKey(++seed);
+	}
+
+	private Zobrist() {
+	}
+
+	/**
+	 * Key for the given {@link Piece} standing on the square (x, y), zero
+	 * for an empty square.
+	 *
+	 * @param piece
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public static long getPieceKey(Piece piece, int x, int y) {
+		if (piece == None) {
+			return 0l;
+		}
+		return pieceKeys[(piece.ordinal() << 6) + (y << 3) + x];
+	}
+
+	/**
+	 * Key for the side to move, zero when white is to move.
+	 *
+	 * @param color
+	 * @return
+	 */
+	public static long getActiveColorKey(Color color) {
+		return (color == Black ? blackToMoveKey : 0l);
+	}
+
+	/**
+	 * Key for the castling rights that are still available.
+	 *
+	 * @param castlingAvailability
+	 * @return
+	 */
+	public static long getCastlingKey(CastlingAvailability castlingAvailability) {
+		long key = 0l;
+		if (castlingAvailability.isCanCastleKingSide(White)) {
+			key ^= castlingKeys[0];
+		}
+		if (castlingAvailability.isCanCastleQueenSide(White)) {
+			key ^= castlingKeys[1];
+		}
+		if (castlingAvailability.isCanCastleKingSide(Black)) {
+			key ^= castlingKeys[2];
+		}
+		if (castlingAvailability.isCanCastleQueenSide(Black)) {
+			key ^= castlingKeys[3];
+		}
+		return key;
+	}
+
+	/**
+	 * Key for the file of the en passant target square, zero if there is
+	 * none.
+	 *
+	 * @param enPassant
+	 * @return
+	 */
+	public static long getEnPassantKey(Location enPassant) {
+		if ((enPassant == null) || (enPassant == Unknown)) {
+			return 0l;
+		}
+		return enPassantKeys[enPassant.getX()];
+	}
+
+	/**
+	 * The n-th output of the SplitMix64 generator, which is plenty random
+	 * for hashing purposes
+	 *
+	 * @param n
+	 * @return
+	 */
+	private static long getKey(long n) {
+		long z = n * 0x9E3779B97F4A7C15l;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9l;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBl;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,379 @@
+package com.darringer.games.chess.pgn;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.ChessMoveType.*;
+import static com.darringer.games.chess.model.Location.Unknown;
+
+import com.darringer.games.chess.model.AttackMap;
+import com.darringer.games.chess.model.CastlingAvailability;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMoveType;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * The board a {@link PgnReader} plays its games on: just enough state to
+ * turn SAN into packed moves (see {@link PgnGame}) without going through
+ * {@link ChessModel} and the piece logic.  Pieces are kept both square by
+ * square and as one bitboard per piece, so the pieces that can reach a
+ * square, and whether a king is attacked, are a few table lookups with
+ * the {@link AttackMap} attack sets.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.pgn.PgnReader
+ *
+ */
+class PgnBoard {
+
+	/* piece ordinals, see Piece */
+	private static final int PAWN = 0;
+	private static final int KNIGHT = 1;
+	private static final int BISHOP = 2;
+	private static final int ROOK = 3;
+	private static final int QUEEN = 4;
+	private static final int KING = 5;
+	private static final int BLACK_OFFSET = 6;
+	private static final int NONE = 12;
+
+	/* castling rights, cleared when a king or rook leaves (or is taken on) its square */
+	private static final int WHITE_KING_SIDE = 1;
+	private static final int WHITE_QUEEN_SIDE = 2;
+	private static final int BLACK_KING_SIDE = 4;
+	private static final int BLACK_QUEEN_SIDE = 8;
+	private static final int[] castlingMasks = new int[64];
+
+	/* the standard starting position, rank by rank from the first */
+	private static final int[] startingRank = {ROOK, KNIGHT, BISHOP, QUEEN, KING, BISHOP, KNIGHT, ROOK};
+
+	/* piece type by SAN letter, -1 for anything else */
+	private static final int[] pieceTypes = new int[128];
+
+	/* squares a bishop and a rook reach from each square on an empty board */
+	private static final long[] bishopRays = new long[64];
+	private static final long[] rookRays = new long[64];
+
+	static {
+		for (int c=0; c < pieceTypes.length; c++) {
+			pieceTypes[c] = "PNBRQK".indexOf(c);
+		}
+		for (int square=0; square < 64; square++) {
+			bishopRays[square] = AttackMap.getBishopAttacks(square, 0l);
+			rookRays[square] = AttackMap.getRookAttacks(square, 0l);
+		}
+		for (int square=0; square < 64; square++) {
+			castlingMasks[square] = 0xf;
+		}
+		castlingMasks[4] &= ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+		castlingMasks[7] &= ~WHITE_KING_SIDE;
+		castlingMasks[0] &= ~WHITE_QUEEN_SIDE;
+		castlingMasks[60] &= ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+		castlingMasks[63] &= ~BLACK_KING_SIDE;
+		castlingMasks[56] &= ~BLACK_QUEEN_SIDE;
+	}
+
+	private int[] squares = new int[64];
+	private long[] pieceBoards = new long[12];
+	private long[] colorBoards = new long[2];
+	private int colorToMove;
+	private int castling;
+	private int enPassant;
+
+
+	/**
+	 * Set up the standard starting position
+	 */
+	void reset() {
+		clear();
+		for (int x=0; x < 8; x++) {
+			put(x, startingRank[x]);
+			put(8 + x, PAWN);
+			put(48 + x, PAWN + BLACK_OFFSET);
+			put(56 + x, startingRank[x] + BLACK_OFFSET);
+		}
+		castling = WHITE_KING_SIDE | WHITE_QUEEN_SIDE | BLACK_KING_SIDE | BLACK_QUEEN_SIDE;
+	}
+
+
+	/**
+	 * Set up the position of the given {@link ChessModel}
+	 *
+	 * @param model
+	 */
+	void setModel(ChessModel model) {
+		clear();
+		for (int square=0; square < 64; square++) {
+			Piece piece = model.getPieceAtIndex(square & 7, square >>> 3);
+			if (piece != Piece.None) {
+				put(square, piece.ordinal());
+			}
+		}
+		colorToMove = (model.getActiveColor() == Black ? 1 : 0);
+		CastlingAvailability castlingAvailability = model.getCastlingAvailability();
+		castling = (castlingAvailability.isCanCastleKingSide(White) ? WHITE_KING_SIDE : 0)
+				| (castlingAvailability.isCanCastleQueenSide(White) ? WHITE_QUEEN_SIDE : 0)
+				| (castlingAvailability.isCanCastleKingSide(Black) ? BLACK_KING_SIDE : 0)
+				| (castlingAvailability.isCanCastleQueenSide(Black) ? BLACK_QUEEN_SIDE : 0);
+		enPassant = ((model.getEnPassant() == null) || (model.getEnPassant() == Unknown) ? -1 : model.getEnPassant().ordinal());
+	}
+
+
+	/**
+	 * The legal move written in SAN in the given part of the text, packed
+	 *
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @return the move, or -1 if it is not a legal move in SAN
+	 */
+	int getMove(byte[] text, int start, int end) {
+		// check, mate and annotation suffixes
+		while ((end > start) && ((text[end - 1] == '+') || (text[end - 1] == '#') || (text[end - 1] == '!') || (text[end - 1] == '?'))) {
+			end--;
+		}
+		if (end - start < 2) {
+			return -1;
+		}
+		if ((text[start] == 'O') || (text[start] == '0')) {
+			return getCastlingMove(end - start >= 5);
+		}
+
+		// piece, and the promotion piece at the end
+		int type = getPieceType(text[start]);
+		if (type > PAWN) {
+			start++;
+		} else {
+			type = PAWN;
+		}
+		int promotion = 0;
+		if (type == PAWN) {
+			int promotionType = getPieceType(text[end - 1]);
+			if ((promotionType > PAWN) && (promotionType < KING)) {
+				promotion = promotionType;
+				end -= ((end - start >= 2) && (text[end - 2] == '=') ? 2 : 1);
+			}
+		}
+
+		// the destination, and whatever the mover was narrowed down by
+		if (end - start < 2) {
+			return -1;
+		}
+		int toX = text[end - 2] - 'a';
+		int toY = text[end - 1] - '1';
+		if (((toX | toY) & ~7) != 0) {
+			return -1;
+		}
+		int to = (toY << 3) | toX;
+		int fromX = -1;
+		int fromY = -1;
+		boolean isCapture = false;
+		for (int i=start; i < end - 2; i++) {
+			byte c = text[i];
+			if ((c >= 'a') && (c <= 'h')) {
+				fromX = c - 'a';
+			} else if ((c >= '1') && (c <= '8')) {
+				fromY = c - '1';
+			} else if ((c == 'x') || (c == ':')) {
+				isCapture = true;
+			} else if (c != '-') {
+				return -1;
+			}
+		}
+		int piece = type + (colorToMove * BLACK_OFFSET);
+		if (((squares[to] != NONE) && ((squares[to] >= BLACK_OFFSET ? 1 : 0) == colorToMove))) {
+			return -1;
+		}
+		return (type == PAWN ? getPawnMove(piece, to, fromX, isCapture, promotion) : getPieceMove(piece, to, fromX, fromY));
+	}
+
+
+	/**
+	 * Play the given (packed) move
+	 *
+	 * @param move
+	 */
+	void play(int move) {
+		int to = move & 63;
+		int from = (move >>> 6) & 63;
+		int piece = squares[from];
+		int type = (move >>> 19) & 7;
+		remove(from);
+		if (type == EnPassantCapture.ordinal()) {
+			remove((from & ~7) | (to & 7));
+		} else if (squares[to] != NONE) {
+			remove(to);
+		}
+		put(to, (type == PawnPromotion.ordinal() ? ((move >>> 12) & 7) + (colorToMove * BLACK_OFFSET) : piece));
+		if (type == CastleKingSide.ordinal()) {
+			put(to - 1, squares[to + 1]);
+			remove(to + 1);
+		} else if (type == CastleQueenSide.ordinal()) {
+			put(to + 1, squares[to - 2]);
+			remove(to - 2);
+		}
+		castling &= castlingMasks[from] & castlingMasks[to];
+		enPassant = (((piece % BLACK_OFFSET) == PAWN) && (Math.abs(to - from) == 16) ? (from + to) >>> 1 : -1);
+		colorToMove ^= 1;
+	}
+
+
+	/**
+	 * Castling, if the right is still there and the way is clear (the
+	 * record is trusted not to castle out of or through check)
+	 */
+	private int getCastlingMove(boolean isQueenSide) {
+		int kingSquare = (colorToMove == 0 ? 4 : 60);
+		int right = (colorToMove == 0 ? WHITE_KING_SIDE : BLACK_KING_SIDE) << (isQueenSide ? 1 : 0);
+		long between = (isQueenSide ? 0xel : 0x60l) << (colorToMove * 56);
+		if (((castling & right) == 0) || (squares[kingSquare] != KING + (colorToMove * BLACK_OFFSET))
+				|| (((colorBoards[0] | colorBoards[1]) & between) != 0l)) {
+			return -1;
+		}
+		int to = kingSquare + (isQueenSide ? -2 : 2);
+		return pack(kingSquare, to, 0, squares[kingSquare], (isQueenSide ? CastleQueenSide : CastleKingSide));
+	}
+
+
+	private int getPawnMove(int piece, int to, int fromX, boolean isCapture, int promotion) {
+		int direction = (colorToMove == 0 ? 8 : -8);
+		int from;
+		ChessMoveType type = Regular;
+		if (fromX < 0) {
+			// a push, one or two squares
+			from = to - direction;
+			if (isCapture || (squares[to] != NONE) || (from < 0) || (from > 63)) {
+				return -1;
+			}
+			if ((squares[from] == NONE) && ((to >>> 3) == (colorToMove == 0 ? 3 : 4))) {
+				from -= direction;
+			}
+			if (squares[from] != piece) {
+				return -1;
+			}
+		} else {
+			from = ((to - direction) & ~7) | fromX;
+			if ((from < 0) || (from > 63) || (squares[from] != piece) || (Math.abs(fromX - (to & 7)) != 1)) {
+				return -1;
+			}
+			if (to == enPassant) {
+				type = EnPassantCapture;
+			} else if (squares[to] == NONE) {
+				return -1;
+			}
+		}
+		boolean isLastRank = ((to >>> 3) == (colorToMove == 0 ? 7 : 0));
+		if (isLastRank != (promotion != 0)) {
+			return -1;
+		}
+		if (isLastRank) {
+			type = PawnPromotion;
+		}
+		int move = pack(from, to, promotion, piece, type);
+		return (isLegal(move) ? move : -1);
+	}
+
+
+	private int getPieceMove(int piece, int to, int fromX, int fromY) {
+		long occupancy = colorBoards[0] | colorBoards[1];
+		long candidates = getAttacks(piece % BLACK_OFFSET, to, occupancy) & pieceBoards[piece];
+		int found = -1;
+		for (; candidates != 0l; candidates &= candidates - 1) {
+			int from = Long.numberOfTrailingZeros(candidates);
+			if (((fromX >= 0) && ((from & 7) != fromX)) || ((fromY >= 0) && ((from >>> 3) != fromY))) {
+				continue;
+			}
+			int move = pack(from, to, 0, piece, Regular);
+			if (isLegal(move)) {
+				if (found >= 0) {
+					// ambiguous
+					return -1;
+				}
+				found = move;
+			}
+		}
+		return found;
+	}
+
+
+	/**
+	 * Would the given move leave the mover's king safe?
+	 */
+	private boolean isLegal(int move) {
+		int to = move & 63;
+		int from = (move >>> 6) & 63;
+		int captureSquare = ((((move >>> 19) & 7) == EnPassantCapture.ordinal()) ? (from & ~7) | (to & 7) : to);
+		long captured = 1l << captureSquare;
+		long occupancy = ((colorBoards[0] | colorBoards[1]) & ~(1l << from) & ~captured) | (1l << to);
+		int king = KING + (colorToMove * BLACK_OFFSET);
+		int kingSquare = (squares[from] == king ? to : Long.numberOfTrailingZeros(pieceBoards[king]));
+		if (kingSquare == 64) {
+			return true;
+		}
+		int enemy = (colorToMove ^ 1) * BLACK_OFFSET;
+		long bishops = (pieceBoards[enemy + BISHOP] | pieceBoards[enemy + QUEEN]) & ~captured;
+		long rooks = (pieceBoards[enemy + ROOK] | pieceBoards[enemy + QUEEN]) & ~captured;
+
+		// sliders are only looked at when they are on a line with the king
+		return ((AttackMap.getKnightAttacks(kingSquare) & pieceBoards[enemy + KNIGHT] & ~captured) == 0l)
+				&& ((AttackMap.getKingAttacks(kingSquare) & pieceBoards[enemy + KING]) == 0l)
+				&& ((AttackMap.getPawnAttacks(kingSquare, (colorToMove == 0 ? White : Black)) & pieceBoards[enemy + PAWN] & ~captured) == 0l)
+				&& (((bishopRays[kingSquare] & bishops) == 0l) || ((AttackMap.getBishopAttacks(kingSquare, occupancy) & bishops) == 0l))
+				&& (((rookRays[kingSquare] & rooks) == 0l) || ((AttackMap.getRookAttacks(kingSquare, occupancy) & rooks) == 0l));
+	}
+
+
+	private static long getAttacks(int type, int square, long occupancy) {
+		switch (type) {
+		case KNIGHT:
+			return AttackMap.getKnightAttacks(square);
+		case BISHOP:
+			return AttackMap.getBishopAttacks(square, occupancy);
+		case ROOK:
+			return AttackMap.getRookAttacks(square, occupancy);
+		case QUEEN:
+			return AttackMap.getBishopAttacks(square, occupancy) | AttackMap.getRookAttacks(square, occupancy);
+		default:
+			return AttackMap.getKingAttacks(square);
+		}
+	}
+
+
+	private static int getPieceType(byte c) {
+		return ((c >= 0) && (c < pieceTypes.length) ? pieceTypes[c] : -1);
+	}
+
+
+	private static int pack(int from, int to, int promotion, int piece, ChessMoveType type) {
+		return to | (from << 6) | (promotion << 12) | (piece << 15) | (type.ordinal() << 19);
+	}
+
+
+	private void clear() {
+		for (int square=0; square < 64; square++) {
+			squares[square] = NONE;
+		}
+		for (int piece=0; piece < pieceBoards.length; piece++) {
+			pieceBoards[piece] = 0l;
+		}
+		colorBoards[0] = 0l;
+		colorBoards[1] = 0l;
+		colorToMove = 0;
+		castling = 0;
+		enPassant = -1;
+	}
+
+
+	private void put(int square, int piece) {
+		squares[square] = piece;
+		pieceBoards[piece] |= 1l << square;
+		colorBoards[piece / BLACK_OFFSET] |= 1l << square;
+	}
+
+
+	private void remove(int square) {
+		int piece = squares[square];
+		squares[square] = NONE;
+		pieceBoards[piece] &= ~(1l << square);
+		colorBoards[piece / BLACK_OFFSET] &= ~(1l << square);
+	}
+}
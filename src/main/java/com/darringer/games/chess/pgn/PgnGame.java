@@ -0,0 +1,343 @@
+package com.darringer.games.chess.pgn;
+
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessMoveCastleKingSide;
+import com.darringer.games.chess.model.ChessMoveCastleQueenSide;
+import com.darringer.games.chess.model.ChessMoveEnPassantCapture;
+import com.darringer.games.chess.model.ChessMovePawnPromotion;
+import com.darringer.games.chess.model.ChessMoveType;
+import com.darringer.games.chess.model.GameResult;
+import com.darringer.games.chess.model.Location;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * A game read by the {@link PgnReader}: its tags, as views into the
+ * reader's buffer, its moves, packed into ints, and its result.  The
+ * reader fills the same instance for every game, so nothing is allocated
+ * per game unless a caller asks for Strings or {@link ChessMove}s.
+ * <p />
+ * A packed move holds the squares (<code>y*8+x</code>) it goes to (bits
+ * 0-5) and from (bits 6-11), the promotion piece (bits 12-14: 1 knight,
+ * 2 bishop, 3 rook, 4 queen), the ordinal of the {@link Piece} that moves
+ * (bits 15-18) and the ordinal of its {@link ChessMoveType} (bits 19-21).
+ * The low 15 bits are the move as an opening book stores it, except that
+ * castling is the king's move rather than the king taking its rook.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.pgn.PgnReader
+ *
+ */
+public class PgnGame {
+
+	/* promotion pieces by their code in a packed move */
+	private static final Piece[] whitePromotionPieces = {None, WhiteKnight, WhiteBishop, WhiteRook, WhiteQueen};
+	private static final Piece[] blackPromotionPieces = {None, BlackKnight, BlackBishop, BlackRook, BlackQueen};
+
+	private static final Piece[] pieceValues = Piece.values();
+	private static final ChessMoveType[] typeValues = ChessMoveType.values();
+
+	/* the tag that holds a starting position other than the standard one */
+	private static final byte[] FEN_TAG = "FEN".getBytes(StandardCharsets.US_ASCII);
+
+	byte[] buffer;
+	int tagCount;
+	int[] tagNameStarts = new int[16];
+	int[] tagNameEnds = new int[16];
+	int[] tagValueStarts = new int[16];
+	int[] tagValueEnds = new int[16];
+	int[] moves = new int[256];
+	int moveCount;
+	GameResult result;
+	long offset;
+
+
+	/**
+	 * Number of tags
+	 *
+	 * @return
+	 */
+	public int getTagCount() {
+		return tagCount;
+	}
+
+
+	/**
+	 * Name of the given tag
+	 *
+	 * @param index
+	 * @return
+	 */
+	public String getTagName(int index) {
+		return new String(buffer, tagNameStarts[index], tagNameEnds[index] - tagNameStarts[index], StandardCharsets.ISO_8859_1);
+	}
+
+
+	/**
+	 * Value of the given tag, with escaped quotes and backslashes undone
+	 *
+	 * @param index
+	 * @return
+	 */
+	public String getTagValue(int index) {
+		StringBuilder value = new StringBuilder(tagValueEnds[index] - tagValueStarts[index]);
+		for (int i=tagValueStarts[index]; i < tagValueEnds[index]; i++) {
+			char c = (char) (buffer[i] & 0xff);
+			if ((c == '\\') && (i + 1 < tagValueEnds[index])) {
+				c = (char) (buffer[++i] & 0xff);
+			}
+			value.append(c);
+		}
+		return value.toString();
+	}
+
+
+	/**
+	 * Value of the tag with the given name, <code>null</code> if the game
+	 * does not have it
+	 *
+	 * @param name
+	 * @return
+	 */
+	public String getTagValue(String name) {
+		int index = getTagIndex(name.getBytes(StandardCharsets.ISO_8859_1));
+		return (index < 0 ? null : getTagValue(index));
+	}
+
+
+	/**
+	 * The raw value of the given tag (escapes are left as they are) as a
+	 * view into the reader's buffer, only valid until the listener returns
+	 *
+	 * @param index
+	 * @return
+	 */
+	public CharSequence getTagValueView(int index) {
+		return new ByteSequence(buffer, tagValueStarts[index], tagValueEnds[index]);
+	}
+
+
+	/**
+	 * Does the given tag have the given name?
+	 *
+	 * @param index
+	 * @param name
+	 * @return
+	 */
+	public boolean isTag(int index, CharSequence name) {
+		int length = tagNameEnds[index] - tagNameStarts[index];
+		if (length != name.length()) {
+			return false;
+		}
+		for (int i=0; i < length; i++) {
+			if ((buffer[tagNameStarts[index] + i] & 0xff) != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * The position the game starts from, as FEN, or <code>null</code> for
+	 * the standard starting position
+	 *
+	 * @return
+	 */
+	public String getStartFen() {
+		int index = getStartFenIndex();
+		return (index < 0 ? null : getTagValue(index));
+	}
+
+
+	/**
+	 * Number of moves (plies)
+	 *
+	 * @return
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+
+	/**
+	 * The given move, packed
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getMove(int index) {
+		return moves[index];
+	}
+
+
+	/**
+	 * The packed moves, which may be followed by unused slots, see
+	 * {@link #getMoveCount()}.  The array is reused for the next game.
+	 *
+	 * @return
+	 */
+	public int[] getMoves() {
+		return moves;
+	}
+
+
+	/**
+	 * The given move as a {@link ChessMove}
+	 *
+	 * @param index
+	 * @return
+	 */
+	public ChessMove getChessMove(int index) {
+		return toChessMove(moves[index]);
+	}
+
+
+	/**
+	 * The result at the end of the movetext
+	 *
+	 * @return
+	 */
+	public GameResult getResult() {
+		return result;
+	}
+
+
+	/**
+	 * Position of the game in the input, in bytes
+	 *
+	 * @return
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+
+	/**
+	 * Unpack a move into a {@link ChessMove}, just as the piece logic
+	 * would have generated it
+	 *
+	 * @param move
+	 * @return
+	 */
+	public static ChessMove toChessMove(int move) {
+		Location to = Location.get(move & 7, (move >>> 3) & 7);
+		Location from = Location.get((move >>> 6) & 7, (move >>> 9) & 7);
+		Piece piece = pieceValues[(move >>> 15) & 15];
+		switch (typeValues[(move >>> 19) & 7]) {
+		case CastleKingSide:
+			return new ChessMoveCastleKingSide(piece, from, to);
+		case CastleQueenSide:
+			return new ChessMoveCastleQueenSide(piece, from, to);
+		case EnPassantCapture:
+			return new ChessMoveEnPassantCapture(piece, from, to);
+		case PawnPromotion:
+			Piece[] promotionPieces = (piece == WhitePawn ? whitePromotionPieces : blackPromotionPieces);
+			return new ChessMovePawnPromotion(piece, from, to, promotionPieces[(move >>> 12) & 7]);
+		default:
+			ChessMove chessMove = new ChessMove(piece, from, to);
+			if (((piece == WhitePawn) || (piece == BlackPawn)) && (Math.abs(to.getY() - from.getY()) == 2)) {
+				chessMove.setEnPassantLocation(Location.get(from.getX(), (from.getY() + to.getY()) / 2));
+			}
+			return chessMove;
+		}
+	}
+
+
+	/**
+	 * Forget the previous game
+	 */
+	void clear(byte[] buffer, long offset) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.tagCount = 0;
+		this.moveCount = 0;
+		this.result = GameResult.Unknown;
+	}
+
+
+	void addTag(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		if (tagCount == tagNameStarts.length) {
+			tagNameStarts = Arrays.copyOf(tagNameStarts, tagCount * 2);
+			tagNameEnds = Arrays.copyOf(tagNameEnds, tagCount * 2);
+			tagValueStarts = Arrays.copyOf(tagValueStarts, tagCount * 2);
+			tagValueEnds = Arrays.copyOf(tagValueEnds, tagCount * 2);
+		}
+		tagNameStarts[tagCount] = nameStart;
+		tagNameEnds[tagCount] = nameEnd;
+		tagValueStarts[tagCount] = valueStart;
+		tagValueEnds[tagCount] = valueEnd;
+		tagCount++;
+	}
+
+
+	void addMove(int move) {
+		if (moveCount == moves.length) {
+			moves = Arrays.copyOf(moves, moveCount * 2);
+		}
+		moves[moveCount++] = move;
+	}
+
+
+	/**
+	 * Index of the tag holding the starting position, -1 if there isn't one
+	 */
+	int getStartFenIndex() {
+		return getTagIndex(FEN_TAG);
+	}
+
+
+	private int getTagIndex(byte[] name) {
+		for (int index=0; index < tagCount; index++) {
+			if ((tagNameEnds[index] - tagNameStarts[index]) != name.length) {
+				continue;
+			}
+			int i = 0;
+			while ((i < name.length) && (buffer[tagNameStarts[index] + i] == name[i])) {
+				i++;
+			}
+			if (i == name.length) {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Single byte characters in a part of a buffer
+	 */
+	private static class ByteSequence implements CharSequence {
+		private byte[] bytes;
+		private int start;
+		private int end;
+
+		private ByteSequence(byte[] bytes, int start, int end) {
+			this.bytes = bytes;
+			this.start = start;
+			this.end = end;
+		}
+
+		public int length() {
+			return end - start;
+		}
+
+		public char charAt(int index) {
+			return (char) (bytes[start + index] & 0xff);
+		}
+
+		public CharSequence subSequence(int subStart, int subEnd) {
+			return new ByteSequence(bytes, start + subStart, start + subEnd);
+		}
+
+		@Override
+		public String toString() {
+			return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.darringer.games.chess.pgn;
+
+/**
+ * Callback interface for clients of the {@link PgnReader}.  Called once
+ * for each game read, on the reading thread.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.pgn.PgnReader
+ * @see com.darringer.games.chess.pgn.PgnGame
+ *
+ */
+public interface PgnGameListener {
+
+	/**
+	 * A game has been read.  The {@link PgnGame} and its tag views are
+	 * reused for the next game, so anything needed later must be copied
+	 * before returning.
+	 *
+	 * @param game
+	 */
+	void gameRead(PgnGame game);
+}
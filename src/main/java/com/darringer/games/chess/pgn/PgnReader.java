@@ -0,0 +1,391 @@
+package com.darringer.games.chess.pgn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+
+import com.darringer.games.chess.converter.ChessModelFastFENConverter;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.GameResult;
+
+/**
+ * Reads games in PGN from a channel and hands them, one at a time, to a
+ * {@link PgnGameListener}.  The input is read in large blocks into a
+ * single buffer and parsed in place, byte by byte: tags become offsets
+ * into the buffer and SAN is resolved to packed moves on a small bitboard
+ * ({@link PgnBoard}), so no Strings or other objects are created per
+ * token and files of any size stream through in constant memory.
+ * <p />
+ * A game that runs past the end of the buffer is moved to the front and
+ * parsed again from its start once more input has been read, and the
+ * buffer grows if a single game does not fit.  Comments, NAGs and
+ * variations are skipped.  Games with a move that can't be played are
+ * counted (see {@link #getErrorCount()}) but not handed on.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.pgn.PgnGame
+ * @see com.darringer.games.chess.pgn.PgnGameListener
+ *
+ */
+public class PgnReader {
+
+	private static Logger log = Logger.getLogger(PgnReader.class);
+
+	/* bytes read at a time */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	/* a game (or tag) runs past the end of the buffer */
+	private static final int INCOMPLETE = -1;
+
+	/* bytes that end a token: white space and the PGN punctuation */
+	private static final boolean[] delimiters = new boolean[128];
+
+	static {
+		for (int b=0; b <= ' '; b++) {
+			delimiters[b] = true;
+		}
+		for (char c : "{}()[];".toCharArray()) {
+			delimiters[c] = true;
+		}
+	}
+
+	private PgnGameListener listener;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private PgnGame game = new PgnGame();
+	private PgnBoard board = new PgnBoard();
+	private ChessModelFastFENConverter fenConverter;
+	private long gameCount;
+	private long errorCount;
+
+
+	/**
+	 * @param listener
+	 */
+	public PgnReader(PgnGameListener listener) {
+		this.listener = listener;
+	}
+
+
+	/**
+	 * Read this many bytes at a time
+	 *
+	 * @param bufferSize
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+
+	/**
+	 * Number of games skipped by the last read, because of a move that
+	 * could not be played
+	 *
+	 * @return
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+
+	/**
+	 * Read all the games in the given file
+	 *
+	 * @param file
+	 * @return number of games handed to the listener
+	 * @throws ChessSystemException
+	 */
+	public long read(File file) throws ChessSystemException {
+		try {
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				return read(channel);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+	}
+
+
+	/**
+	 * Read all the games in the given channel
+	 *
+	 * @param channel
+	 * @return number of games handed to the listener
+	 * @throws ChessSystemException
+	 */
+	public long read(ReadableByteChannel channel) throws ChessSystemException {
+		gameCount = 0l;
+		errorCount = 0l;
+		ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+		long bufferOffset = 0l;
+		boolean isEof = false;
+		try {
+			while (!isEof) {
+				while (buffer.hasRemaining() && !isEof) {
+					isEof = (channel.read(buffer) < 0);
+				}
+				byte[] bytes = buffer.array();
+				int limit = buffer.position();
+				int position = 0;
+				while (true) {
+					while ((position < limit) && (bytes[position] <= ' ')) {
+						position++;
+					}
+					if (position == limit) {
+						break;
+					}
+					int next = parseGame(bytes, position, limit, isEof, bufferOffset);
+					if (next == INCOMPLETE) {
+						break;
+					}
+					position = next;
+				}
+				if (isEof) {
+					break;
+				}
+
+				// keep the unfinished game, in a larger buffer if it fills this one
+				if ((position == 0) && (limit == bytes.length)) {
+					ByteBuffer largerBuffer = ByteBuffer.allocate(bytes.length * 2);
+					largerBuffer.put(bytes, 0, limit);
+					buffer = largerBuffer;
+				} else {
+					System.arraycopy(bytes, position, bytes, 0, limit - position);
+					buffer.position(limit - position);
+					bufferOffset += position;
+				}
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+		log.debug(String.format("Read %d games, skipped %d", gameCount, errorCount));
+		return gameCount;
+	}
+
+
+	/**
+	 * Parse the game starting at the given position, and hand it on
+	 *
+	 * @return the position after the game, or <code>INCOMPLETE</code>
+	 */
+	private int parseGame(byte[] bytes, int p, int limit, boolean isEof, long bufferOffset) {
+		game.clear(bytes, bufferOffset + p);
+		boolean isMovetext = false;
+		boolean isValid = true;
+		int depth = 0;
+		while (true) {
+			if (p >= limit) {
+				if (!isEof) {
+					return INCOMPLETE;
+				}
+				finishGame(isValid);
+				return limit;
+			}
+			byte b = bytes[p];
+			if (b <= ' ') {
+				p++;
+				continue;
+			}
+			switch (b) {
+			case '[':
+				if (isMovetext) {
+					// the next game, this one had no result
+					finishGame(isValid);
+					return p;
+				}
+				p = parseTag(bytes, p, limit, isEof);
+				if (p == INCOMPLETE) {
+					return INCOMPLETE;
+				}
+				continue;
+			case '{':
+				p = skipTo(bytes, p, limit, (byte) '}');
+				if ((p == limit) && !isEof) {
+					return INCOMPLETE;
+				}
+				continue;
+			case ';':
+			case '%':
+				p = skipTo(bytes, p, limit, (byte) '\n');
+				if ((p == limit) && !isEof) {
+					return INCOMPLETE;
+				}
+				continue;
+			case '(':
+				depth++;
+				p++;
+				continue;
+			case ')':
+				depth = Math.max(depth - 1, 0);
+				p++;
+				continue;
+			}
+
+			// the whole token must be in the buffer
+			int start = p;
+			while ((p < limit) && !isDelimiter(bytes[p])) {
+				p++;
+			}
+			if ((p == limit) && !isEof) {
+				return INCOMPLETE;
+			}
+			if (!isMovetext) {
+				isMovetext = true;
+				isValid = setUpBoard();
+			}
+			if ((depth > 0) || (b == '$')) {
+				continue;
+			}
+			GameResult result = getResult(bytes, start, p);
+			if (result != null) {
+				game.result = result;
+				finishGame(isValid);
+				return p;
+			}
+
+			// move numbers, possibly run together with the move
+			int i = start;
+			while ((i < p) && (bytes[i] >= '0') && (bytes[i] <= '9')) {
+				i++;
+			}
+			if ((i < p) && (bytes[i] == '.')) {
+				start = i;
+			}
+			while ((start < p) && (bytes[start] == '.')) {
+				start++;
+			}
+			if ((start == p) || !isValid) {
+				continue;
+			}
+			int move = board.getMove(bytes, start, p);
+			if (move < 0) {
+				log.debug(String.format("Illegal move %s in the game at offset %d", new String(bytes, start, p - start), game.offset));
+				isValid = false;
+			} else {
+				game.addMove(move);
+				board.play(move);
+			}
+		}
+	}
+
+
+	/**
+	 * Parse the tag pair starting at the given position
+	 *
+	 * @return the position after the tag, or <code>INCOMPLETE</code>
+	 */
+	private int parseTag(byte[] bytes, int p, int limit, boolean isEof) {
+		int nameStart = p + 1;
+		while ((nameStart < limit) && (bytes[nameStart] <= ' ')) {
+			nameStart++;
+		}
+		int nameEnd = nameStart;
+		while ((nameEnd < limit) && (bytes[nameEnd] > ' ') && (bytes[nameEnd] != '"') && (bytes[nameEnd] != ']')) {
+			nameEnd++;
+		}
+		int end = nameEnd;
+		while ((end < limit) && (bytes[end] != '"') && (bytes[end] != ']') && (bytes[end] != '\n')) {
+			end++;
+		}
+		if ((end < limit) && (bytes[end] == '"')) {
+			int valueEnd = end + 1;
+			while ((valueEnd < limit) && (bytes[valueEnd] != '"') && (bytes[valueEnd] != '\n')) {
+				valueEnd += (bytes[valueEnd] == '\\' ? 2 : 1);
+			}
+			if ((valueEnd < limit) && (bytes[valueEnd] == '"')) {
+				if (nameEnd > nameStart) {
+					game.addTag(nameStart, nameEnd, end + 1, valueEnd);
+				}
+				end = valueEnd + 1;
+			}
+		}
+
+		// a malformed tag is skipped up to the end of the line
+		while ((end < limit) && (bytes[end] != ']') && (bytes[end] != '\n')) {
+			end++;
+		}
+		if ((end >= limit) && !isEof) {
+			return INCOMPLETE;
+		}
+		return Math.min(end + 1, limit);
+	}
+
+
+	/**
+	 * Set up the board for the game's first move
+	 *
+	 * @return whether the starting position could be set up
+	 */
+	private boolean setUpBoard() {
+		int index = game.getStartFenIndex();
+		if (index < 0) {
+			board.reset();
+			return true;
+		}
+		if (fenConverter == null) {
+			fenConverter = new ChessModelFastFENConverter();
+		}
+		try {
+			board.setModel(fenConverter.getModelFromBytes(game.buffer, game.tagValueStarts[index], game.tagValueEnds[index]));
+			return true;
+		} catch (ChessSystemException cse) {
+			log.debug(String.format("Invalid FEN in the game at offset %d: %s", game.offset, cse.getMessage()));
+			return false;
+		}
+	}
+
+
+	private void finishGame(boolean isValid) {
+		if (isValid) {
+			gameCount++;
+			listener.gameRead(game);
+		} else {
+			errorCount++;
+		}
+	}
+
+
+	/**
+	 * The position just after the next given byte, or the limit
+	 */
+	private static int skipTo(byte[] bytes, int p, int limit, byte b) {
+		while ((p < limit) && (bytes[p] != b)) {
+			p++;
+		}
+		return (p < limit ? p + 1 : limit);
+	}
+
+
+	private static boolean isDelimiter(byte b) {
+		return (b <= ' ') || delimiters[b];
+	}
+
+
+	/**
+	 * The game termination marker in the given token, <code>null</code>
+	 * if it is not one
+	 */
+	private static GameResult getResult(byte[] bytes, int start, int end) {
+		int length = end - start;
+		if ((length == 1) && (bytes[start] == '*')) {
+			return GameResult.Unknown;
+		} else if ((length == 3) && (bytes[start + 1] == '-')) {
+			if ((bytes[start] == '1') && (bytes[start + 2] == '0')) {
+				return GameResult.WhiteWin;
+			} else if ((bytes[start] == '0') && (bytes[start + 2] == '1')) {
+				return GameResult.BlackWin;
+			}
+		} else if ((length == 7) && (bytes[start] == '1') && (bytes[start + 1] == '/') && (bytes[start + 3] == '-')) {
+			return GameResult.Draw;
+		}
+		return null;
+	}
+}
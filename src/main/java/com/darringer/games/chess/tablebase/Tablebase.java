@@ -0,0 +1,320 @@
+package com.darringer.games.chess.tablebase;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Piece.BlackKing;
+import static com.darringer.games.chess.model.Piece.None;
+import static com.darringer.games.chess.model.Piece.WhiteKing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.Color;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * A distance to mate endgame table for one material signature, such as
+ * <code>KQK</code> or <code>KQKR</code> (the white pieces, then the black
+ * pieces), read through a memory mapped file so that a probe is a single
+ * read from the page cache.  Tables are built by the
+ * {@link TablebaseGenerator}.  A table answers for the same material with
+ * the colors swapped as well.
+ * <p />
+ * The file is a header (magic number, version and the signature) followed
+ * by one signed byte per position, for each side to move and every
+ * placement of the pieces on the squares <code>y*8+x</code>, indexed by
+ * <code>colorToMove * 64^n + square[0] + square[1]*64 + ...</code> with
+ * the pieces in the order white king, black king, then the other pieces
+ * of the signature.  Entries are from the point of view of the side to
+ * move:
+ * <ul>
+ *   <li><code>d &gt; 0</code>: wins, giving mate in <code>d</code> plies</li>
+ *   <li><code>d &lt; 0</code>: loses, being mated in <code>-d - 1</code> plies</li>
+ *   <li><code>0</code>: draw</li>
+ *   <li>{@link #ILLEGAL}: not a legal position</li>
+ * </ul>
+ * Castling and en passant are not taken into account.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.tablebase.TablebaseGenerator
+ *
+ */
+public class Tablebase {
+
+	/* "TBSE" */
+	static final int MAGIC = 0x54425345;
+	static final int VERSION = 1;
+
+	/* the tables get 64 times larger with every piece */
+	static final int MAX_PIECES = 4;
+
+	/*
+	 * Entry values, see the class description
+	 */
+	public static final int DRAW = 0;
+	public static final int ILLEGAL = Byte.MAX_VALUE;
+	static final int MAX_DISTANCE = ILLEGAL - 2;
+
+	private static final Piece[] pieceValues = Piece.values();
+
+	private String signature;
+	private Piece[] pieces;
+	private long materialSignature;
+	private long flippedMaterialSignature;
+	private MappedByteBuffer entries;
+	private int headerSize;
+
+
+	/**
+	 * Map the table in the given file
+	 *
+	 * @param file
+	 * @throws ChessSystemException if the file can't be read or is not a table
+	 */
+	public Tablebase(File file) throws ChessSystemException {
+		try {
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				if ((in.length() < 12) || (in.readInt() != MAGIC)) {
+					throw new ChessSystemException(String.format("%s is not a tablebase file", file));
+				}
+				int version = in.readInt();
+				if (version != VERSION) {
+					throw new ChessSystemException(String.format("Unsupported tablebase version %d", version));
+				}
+				byte[] signatureBytes = new byte[in.readInt()];
+				in.readFully(signatureBytes);
+				signature = new String(signatureBytes, StandardCharsets.US_ASCII);
+				pieces = getPieces(signature);
+				headerSize = 12 + signatureBytes.length;
+				if (in.length() != headerSize + getSize(pieces.length)) {
+					throw new ChessSystemException(String.format("Tablebase file %s has the wrong size", file));
+				}
+				entries = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+			} finally {
+				in.close();
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		} catch (IllegalArgumentException iae) {
+			throw new ChessSystemException(iae.getMessage());
+		}
+		materialSignature = getMaterialSignature(pieces, false);
+		flippedMaterialSignature = getMaterialSignature(pieces, true);
+	}
+
+
+	public String getSignature() {
+		return this.signature;
+	}
+
+
+	/**
+	 * Does this table cover the material in the given {@link ChessModel}?
+	 *
+	 * @param model
+	 * @return
+	 */
+	public boolean isApplicable(ChessModel model) {
+		long modelSignature = model.getMaterialSignature();
+		return (modelSignature == materialSignature) || (modelSignature == flippedMaterialSignature);
+	}
+
+
+	/**
+	 * Look up the given {@link ChessModel}, from the point of view of its
+	 * active color.  Returns {@link #ILLEGAL} if the position is not legal
+	 * or this table does not cover its material.
+	 *
+	 * @param model
+	 * @return
+	 */
+	public int probe(ChessModel model) {
+		long modelSignature = model.getMaterialSignature();
+		boolean isFlipped = (modelSignature != materialSignature);
+		if (isFlipped && (modelSignature != flippedMaterialSignature)) {
+			return ILLEGAL;
+		}
+
+		// find a slot in the table for each piece on the board
+		int[] squares = new int[pieces.length];
+		boolean[] isAssigned = new boolean[pieces.length];
+		for (int square=0; square < 64; square++) {
+			Piece piece = model.getPieceAtIndex(square & 7, square >>> 3);
+			if (piece == None) {
+				continue;
+			}
+			if (isFlipped) {
+				piece = getFlippedPiece(piece);
+			}
+			for (int slot=0; slot < pieces.length; slot++) {
+				if (!isAssigned[slot] && (pieces[slot] == piece)) {
+					squares[slot] = (isFlipped ? square ^ 56 : square);
+					isAssigned[slot] = true;
+					break;
+				}
+			}
+		}
+		Color colorToMove = model.getActiveColor();
+		if (isFlipped) {
+			colorToMove = (colorToMove == White ? Black : White);
+		}
+		return entries.get(headerSize + getIndex(squares, colorToMove));
+	}
+
+
+	/**
+	 * Does the side to move win?
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static boolean isWin(int value) {
+		return (value > 0) && (value != ILLEGAL);
+	}
+
+
+	/**
+	 * Does the side to move lose?
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static boolean isLoss(int value) {
+		return value < 0;
+	}
+
+
+	/**
+	 * Number of plies until mate, for a win or a loss
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static int getDistance(int value) {
+		return (value > 0 ? value : -value - 1);
+	}
+
+
+	/**
+	 * Pieces of the given signature, in table order: white king, black
+	 * king, the other white pieces and the other black pieces
+	 *
+	 * @param signature
+	 * @return
+	 * @throws IllegalArgumentException if it is not a signature
+	 */
+	static Piece[] getPieces(String signature) {
+		int blackKing = signature.indexOf('K', 1);
+		if (!signature.startsWith("K") || (blackKing < 0) || (signature.length() > MAX_PIECES)) {
+			throw new IllegalArgumentException(String.format("Not a tablebase signature: %s", signature));
+		}
+		Piece[] pieces = new Piece[signature.length()];
+		pieces[0] = WhiteKing;
+		pieces[1] = BlackKing;
+		int slot = 2;
+		for (int i=1; i < signature.length(); i++) {
+			if (i != blackKing) {
+				pieces[slot++] = getPiece(signature.charAt(i), (i < blackKing ? White : Black));
+			}
+		}
+		return pieces;
+	}
+
+
+	/**
+	 * The signature of the given pieces: the white pieces then the black
+	 * pieces, each king first and the rest strongest first
+	 *
+	 * @param pieces
+	 * @param count
+	 * @return
+	 */
+	static String getSignature(Piece[] pieces, int count) {
+		StringBuilder white = new StringBuilder("K");
+		StringBuilder black = new StringBuilder("K");
+		for (char code : "QRBNP".toCharArray()) {
+			for (int i=0; i < count; i++) {
+				if (Character.toUpperCase(pieces[i].getCode()) == code) {
+					(pieces[i].getColor() == White ? white : black).append(code);
+				}
+			}
+		}
+		return white.append(black).toString();
+	}
+
+
+	/**
+	 * Index of the given placement of the pieces
+	 *
+	 * @param squares
+	 * @param colorToMove
+	 * @return
+	 */
+	static int getIndex(int[] squares, Color colorToMove) {
+		int index = (colorToMove == White ? 0 : 1);
+		for (int i=squares.length - 1; i >= 0; i--) {
+			index = (index << 6) | squares[i];
+		}
+		return index;
+	}
+
+
+	/**
+	 * Number of entries in a table of the given number of pieces
+	 *
+	 * @param pieceCount
+	 * @return
+	 */
+	static int getSize(int pieceCount) {
+		return 2 << (6 * pieceCount);
+	}
+
+
+	/**
+	 * The same piece of the other color
+	 *
+	 * @param piece
+	 * @return
+	 */
+	static Piece getFlippedPiece(Piece piece) {
+		return pieceValues[(piece.ordinal() + 6) % 12];
+	}
+
+
+	/**
+	 * The {@link ChessModel#getMaterialSignature()} of the given pieces,
+	 * optionally with the colors swapped
+	 *
+	 * @param pieces
+	 * @param isFlipped
+	 * @return
+	 */
+	private static long getMaterialSignature(Piece[] pieces, boolean isFlipped) {
+		long signature = 0l;
+		for (Piece piece : pieces) {
+			signature += 1l << ((isFlipped ? getFlippedPiece(piece) : piece).ordinal() * 4);
+		}
+		return signature;
+	}
+
+
+	private static Piece getPiece(char code, Color color) {
+		if ("QRBNP".indexOf(code) < 0) {
+			throw new IllegalArgumentException(String.format("Not a piece: %s", code));
+		}
+		for (Piece piece : pieceValues) {
+			if ((piece != None) && (piece.getColor() == color) && (Character.toUpperCase(piece.getCode()) == code)) {
+				return piece;
+			}
+		}
+		throw new IllegalArgumentException(String.format("Not a piece: %s", code));
+	}
+}
@@ -0,0 +1,528 @@
+package com.darringer.games.chess.tablebase;
+
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Piece.*;
+import static com.darringer.games.chess.tablebase.Tablebase.DRAW;
+import static com.darringer.games.chess.tablebase.Tablebase.ILLEGAL;
+import static com.darringer.games.chess.tablebase.Tablebase.MAX_DISTANCE;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.darringer.games.chess.logic.MaterialSignatureLogic;
+import com.darringer.games.chess.model.AttackMap;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.Color;
+import com.darringer.games.chess.model.Piece;
+
+/**
+ * Builds {@link Tablebase} files by retrograde analysis.  Every legal
+ * position of the material is first scored from the moves that leave the
+ * table: check mates, stalemates, and captures and promotions, which are
+ * looked up in smaller tables (built on demand, and kept in memory for
+ * the lifetime of the generator).  Then, in order of increasing distance
+ * to mate, each newly decided position is taken back one move at a time:
+ * a predecessor of a lost position is won one ply further from mate, and
+ * a predecessor whose moves all lead to won positions for the opponent is
+ * lost.  Whatever is left undecided at the end is a draw.
+ * <p />
+ * Tables are not reduced by symmetry, so a four piece table takes 32MB on
+ * disk and about four times that while it is generated.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.tablebase.Tablebase
+ *
+ */
+public class TablebaseGenerator {
+
+	private static Logger log = Logger.getLogger(TablebaseGenerator.class);
+
+	/* generation flags of a position */
+	private static final byte RESOLVED = 1;
+	private static final byte OUTSIDE_WIN = 2;
+
+	/* pawns can be promoted to any of these */
+	private static final int[] promotionOffsets = {
+			WhiteQueen.ordinal(), WhiteRook.ordinal(), WhiteBishop.ordinal(), WhiteKnight.ordinal()};
+
+	private static final Piece[] pieceValues = Piece.values();
+
+	private MaterialSignatureLogic materialSignatureLogic = new MaterialSignatureLogic();
+	private Map<String, byte[]> tables = new HashMap<String, byte[]>();
+
+
+	/**
+	 * Build the table for the given signature and write it to the given file
+	 *
+	 * @param signature
+	 * @param file
+	 * @throws ChessSystemException
+	 */
+	public void generate(String signature, File file) throws ChessSystemException {
+		byte[] table;
+		try {
+			table = getTable(signature);
+		} catch (IllegalArgumentException iae) {
+			throw new ChessSystemException(iae.getMessage());
+		}
+		byte[] signatureBytes = signature.getBytes(StandardCharsets.US_ASCII);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(Tablebase.MAGIC);
+				out.writeInt(Tablebase.VERSION);
+				out.writeInt(signatureBytes.length);
+				out.write(signatureBytes);
+				out.write(table);
+			} finally {
+				out.close();
+			}
+		} catch (IOException ioe) {
+			throw new ChessSystemException(ioe);
+		}
+	}
+
+
+	/**
+	 * The entries of the table for the given signature, see
+	 * {@link Tablebase} for their layout
+	 *
+	 * @param signature
+	 * @return
+	 */
+	public byte[] getTable(String signature) {
+		byte[] table = tables.get(signature);
+		if (table == null) {
+			long startTime = System.currentTimeMillis();
+			table = new Generation(Tablebase.getPieces(signature)).run();
+			tables.put(signature, table);
+			log.info(String.format("Generated %s tablebase in %d ms", signature, System.currentTimeMillis() - startTime));
+		}
+		return table;
+	}
+
+
+	/**
+	 * Where to look up the positions after a capture or a promotion: the
+	 * table of the remaining material, with colors swapped if that table
+	 * is stored the other way round, and which slot of the parent table
+	 * goes in each of its slots.  Dead drawn material has no table.
+	 */
+	private class Child {
+		private byte[] table;
+		private boolean isFlipped;
+		private int[] slots;
+
+		private Child(Piece[] pieces, int[] parentSlots) {
+			long signature = 0l;
+			int whitePoints = 0;
+			int blackPoints = 0;
+			for (Piece piece : pieces) {
+				signature += 1l << (piece.ordinal() * 4);
+				if (piece.getColor() == White) {
+					whitePoints += piece.getPoints();
+				} else {
+					blackPoints -= piece.getPoints();
+				}
+			}
+			if (materialSignatureLogic.isDeadDraw(signature)) {
+				return;
+			}
+
+			// the stronger side is stored as white
+			String name = Tablebase.getSignature(pieces, pieces.length);
+			Piece[] flippedPieces = new Piece[pieces.length];
+			for (int i=0; i < pieces.length; i++) {
+				flippedPieces[i] = Tablebase.getFlippedPiece(pieces[i]);
+			}
+			String flippedName = Tablebase.getSignature(flippedPieces, flippedPieces.length);
+			isFlipped = (blackPoints > whitePoints) || ((blackPoints == whitePoints) && (flippedName.compareTo(name) > 0));
+			String tableName = (isFlipped ? flippedName : name);
+			table = getTable(tableName);
+
+			// match our pieces up with the table's
+			Piece[] tablePieces = Tablebase.getPieces(tableName);
+			slots = new int[tablePieces.length];
+			boolean[] isAssigned = new boolean[pieces.length];
+			for (int slot=0; slot < tablePieces.length; slot++) {
+				for (int i=0; i < pieces.length; i++) {
+					if (!isAssigned[i] && ((isFlipped ? flippedPieces[i] : pieces[i]) == tablePieces[slot])) {
+						slots[slot] = parentSlots[i];
+						isAssigned[i] = true;
+						break;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Value of the given placement of the parent's pieces, for the
+		 * given side to move
+		 */
+		private int getValue(int[] squares, int colorToMove) {
+			if (table == null) {
+				return DRAW;
+			}
+			int index = (isFlipped ? 1 - colorToMove : colorToMove);
+			for (int slot=slots.length - 1; slot >= 0; slot--) {
+				int square = squares[slots[slot]];
+				index = (index << 6) | (isFlipped ? square ^ 56 : square);
+			}
+			return table[index];
+		}
+	}
+
+
+	/**
+	 * The generation of one table
+	 */
+	private class Generation {
+		private Piece[] pieces;
+		private int pieceCount;
+		private byte[] values;
+		private byte[] flags;
+		private byte[] remaining;
+		private byte[] maxLosses;
+		private IntList[] buckets = new IntList[MAX_DISTANCE + 1];
+		private Child[] children;
+
+		private Generation(Piece[] pieces) {
+			this.pieces = pieces;
+			this.pieceCount = pieces.length;
+			int size = Tablebase.getSize(pieceCount);
+			values = new byte[size];
+			flags = new byte[size];
+			remaining = new byte[size];
+			maxLosses = new byte[size];
+			children = new Child[(pieceCount + 1) * (pieceCount + 1) * (promotionOffsets.length + 1)];
+			for (int d=0; d <= MAX_DISTANCE; d++) {
+				buckets[d] = new IntList();
+			}
+		}
+
+		private byte[] run() {
+			int[] squares = new int[pieceCount];
+			int[] childSquares = new int[pieceCount];
+			for (int index=0; index < values.length; index++) {
+				initialize(index, squares, childSquares);
+			}
+			for (int d=0; d <= MAX_DISTANCE; d++) {
+				IntList bucket = buckets[d];
+				for (int i=0; i < bucket.size; i++) {
+					int entry = bucket.values[i];
+					int index = entry >>> 1;
+					if ((flags[index] & RESOLVED) == 0) {
+						boolean isWin = ((entry & 1) != 0);
+						values[index] = (byte) (isWin ? d : -(d + 1));
+						flags[index] |= RESOLVED;
+						retract(index, d, isWin, squares);
+					}
+				}
+				buckets[d] = null;
+			}
+			return values;
+		}
+
+		/**
+		 * Mark illegal positions, count the moves that stay in the table
+		 * and score the ones that do not
+		 */
+		private void initialize(int index, int[] squares, int[] childSquares) {
+			int colorToMove = decode(index, squares);
+			long occupancy = 0l;
+			for (int i=0; i < pieceCount; i++) {
+				long bit = 1l << squares[i];
+				int y = squares[i] >>> 3;
+				if (((occupancy & bit) != 0l) || (isPawn(pieces[i]) && ((y == 0) || (y == 7)))) {
+					values[index] = ILLEGAL;
+					return;
+				}
+				occupancy |= bit;
+			}
+			if (isAttacked(squares, -1, squares[1 - colorToMove], colorToMove)) {
+				values[index] = ILLEGAL;
+				return;
+			}
+
+			int legalMoves = 0;
+			int inTableMoves = 0;
+			int bestWin = Integer.MAX_VALUE;
+			int maxLoss = 0;
+			long ownOccupancy = getOccupancy(squares, colorToMove);
+			for (int i=0; i < pieceCount; i++) {
+				if (getColorIndex(pieces[i]) != colorToMove) {
+					continue;
+				}
+				for (long targets = getTargets(i, squares, occupancy, ownOccupancy); targets != 0l; targets &= targets - 1) {
+					int target = Long.numberOfTrailingZeros(targets);
+					int captured = getSlotAt(squares, target);
+					boolean isPromotion = isPawn(pieces[i]) && (((target >>> 3) == 0) || ((target >>> 3) == 7));
+					System.arraycopy(squares, 0, childSquares, 0, pieceCount);
+					childSquares[i] = target;
+					if (isAttacked(childSquares, captured, childSquares[colorToMove], 1 - colorToMove)) {
+						continue;
+					}
+					legalMoves++;
+					if ((captured < 0) && !isPromotion) {
+						inTableMoves++;
+						continue;
+					}
+					for (int p=0; p < (isPromotion ? promotionOffsets.length : 1); p++) {
+						int value = getChild(captured, (isPromotion ? i : -1), p).getValue(childSquares, 1 - colorToMove);
+						if (Tablebase.isLoss(value)) {
+							bestWin = Math.min(bestWin, Tablebase.getDistance(value) + 1);
+						} else if (Tablebase.isWin(value)) {
+							maxLoss = Math.max(maxLoss, Tablebase.getDistance(value) + 1);
+						} else {
+							// a way out to a draw, this position can never be lost
+							inTableMoves++;
+						}
+					}
+				}
+			}
+
+			if (legalMoves == 0) {
+				if (isAttacked(squares, -1, squares[colorToMove], 1 - colorToMove)) {
+					buckets[0].add(index << 1);
+				} else {
+					flags[index] = RESOLVED;
+				}
+				return;
+			}
+			remaining[index] = (byte) Math.min(inTableMoves, Byte.MAX_VALUE);
+			maxLosses[index] = (byte) Math.min(maxLoss, MAX_DISTANCE);
+			if (bestWin <= MAX_DISTANCE) {
+				flags[index] |= OUTSIDE_WIN;
+				buckets[bestWin].add((index << 1) | 1);
+			} else if ((inTableMoves == 0) && (maxLoss <= MAX_DISTANCE)) {
+				buckets[maxLoss].add(index << 1);
+			}
+		}
+
+		/**
+		 * Take back every move (other than a capture or promotion) that
+		 * could have led to the given newly decided position
+		 */
+		private void retract(int index, int distance, boolean isWin, int[] squares) {
+			int colorToMove = decode(index, squares);
+			int mover = 1 - colorToMove;
+			int moverBits = mover << (6 * pieceCount);
+			long occupancy = getOccupancy(squares, -1);
+			for (int i=0; i < pieceCount; i++) {
+				if (getColorIndex(pieces[i]) != mover) {
+					continue;
+				}
+				int to = squares[i];
+				long origins;
+				if (isPawn(pieces[i])) {
+					origins = getPawnOrigins(to, mover, occupancy);
+				} else {
+					origins = getAttacks(pieces[i], to, occupancy) & ~occupancy;
+				}
+				int baseIndex = (index & ~(1 << (6 * pieceCount)) & ~(63 << (6 * i))) | moverBits;
+				for (; origins != 0l; origins &= origins - 1) {
+					int predecessor = baseIndex | (Long.numberOfTrailingZeros(origins) << (6 * i));
+					if ((values[predecessor] == ILLEGAL) || ((flags[predecessor] & RESOLVED) != 0)) {
+						continue;
+					}
+					if (!isWin) {
+						if (distance + 1 <= MAX_DISTANCE) {
+							buckets[distance + 1].add((predecessor << 1) | 1);
+						}
+					} else {
+						int maxLoss = Math.max(maxLosses[predecessor], distance + 1);
+						maxLosses[predecessor] = (byte) Math.min(maxLoss, MAX_DISTANCE);
+						remaining[predecessor]--;
+						if ((remaining[predecessor] == 0) && ((flags[predecessor] & OUTSIDE_WIN) == 0) && (maxLoss <= MAX_DISTANCE)) {
+							buckets[maxLoss].add(predecessor << 1);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Squares of the pieces from the given index, returning the index
+		 * (0 for white, 1 for black) of the side to move
+		 */
+		private int decode(int index, int[] squares) {
+			for (int i=0; i < pieceCount; i++) {
+				squares[i] = (index >>> (6 * i)) & 63;
+			}
+			return index >>> (6 * pieceCount);
+		}
+
+		/**
+		 * Where to look up the result of capturing the piece in the given
+		 * slot and/or promoting the pawn in the given slot
+		 */
+		private Child getChild(int captured, int promoted, int promotion) {
+			int key = ((((captured + 1) * (pieceCount + 1)) + (promoted + 1)) * (promotionOffsets.length + 1)) + promotion;
+			if (children[key] == null) {
+				Piece[] childPieces = new Piece[pieceCount];
+				int[] parentSlots = new int[pieceCount];
+				int count = 0;
+				for (int i=0; i < pieceCount; i++) {
+					if (i == captured) {
+						continue;
+					}
+					Piece piece = pieces[i];
+					if (i == promoted) {
+						piece = pieceValues[promotionOffsets[promotion] + (piece.getColor() == White ? 0 : 6)];
+					}
+					parentSlots[count] = i;
+					childPieces[count++] = piece;
+				}
+				children[key] = new Child(Arrays.copyOf(childPieces, count), parentSlots);
+			}
+			return children[key];
+		}
+
+		/**
+		 * Slot of the piece on the given square, -1 if it is empty
+		 */
+		private int getSlotAt(int[] squares, int square) {
+			for (int i=0; i < pieceCount; i++) {
+				if (squares[i] == square) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Squares the piece in the given slot can move to
+		 */
+		private long getTargets(int slot, int[] squares, long occupancy, long ownOccupancy) {
+			Piece piece = pieces[slot];
+			int square = squares[slot];
+			if (!isPawn(piece)) {
+				return getAttacks(piece, square, occupancy) & ~ownOccupancy;
+			}
+			Color color = piece.getColor();
+			long targets = AttackMap.getPawnAttacks(square, color) & occupancy & ~ownOccupancy;
+			int step = (color == White ? 8 : -8);
+			int push = square + step;
+			if ((occupancy & (1l << push)) == 0l) {
+				targets |= 1l << push;
+				int startRank = (color == White ? 1 : 6);
+				if (((square >>> 3) == startRank) && ((occupancy & (1l << (push + step))) == 0l)) {
+					targets |= 1l << (push + step);
+				}
+			}
+			return targets;
+		}
+
+		/**
+		 * Squares a pawn of the given color on the given square could have
+		 * been pushed from
+		 */
+		private long getPawnOrigins(int square, int color, long occupancy) {
+			int step = (color == 0 ? -8 : 8);
+			int y = square >>> 3;
+			long origins = 0l;
+			int from = square + step;
+			if ((color == 0 ? y >= 2 : y <= 5) && ((occupancy & (1l << from)) == 0l)) {
+				origins |= 1l << from;
+				int doubleRank = (color == 0 ? 3 : 4);
+				if ((y == doubleRank) && ((occupancy & (1l << (from + step))) == 0l)) {
+					origins |= 1l << (from + step);
+				}
+			}
+			return origins;
+		}
+
+		/**
+		 * Is the given square attacked by the given side, ignoring the
+		 * (captured) piece in the given slot?
+		 */
+		private boolean isAttacked(int[] squares, int captured, int square, int color) {
+			long occupancy = 0l;
+			for (int i=0; i < pieceCount; i++) {
+				if (i != captured) {
+					occupancy |= 1l << squares[i];
+				}
+			}
+			for (int i=0; i < pieceCount; i++) {
+				if ((i != captured) && (getColorIndex(pieces[i]) == color)) {
+					long attacks = (isPawn(pieces[i])
+							? AttackMap.getPawnAttacks(squares[i], pieces[i].getColor())
+							: getAttacks(pieces[i], squares[i], occupancy));
+					if ((attacks & (1l << square)) != 0l) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Squares occupied by the given side, or both sides if -1
+		 */
+		private long getOccupancy(int[] squares, int color) {
+			long occupancy = 0l;
+			for (int i=0; i < pieceCount; i++) {
+				if ((color < 0) || (getColorIndex(pieces[i]) == color)) {
+					occupancy |= 1l << squares[i];
+				}
+			}
+			return occupancy;
+		}
+	}
+
+
+	/**
+	 * Squares attacked by a piece other than a pawn
+	 */
+	private static long getAttacks(Piece piece, int square, long occupancy) {
+		switch (piece) {
+		case WhiteKnight: case BlackKnight:
+			return AttackMap.getKnightAttacks(square);
+		case WhiteBishop: case BlackBishop:
+			return AttackMap.getBishopAttacks(square, occupancy);
+		case WhiteRook: case BlackRook:
+			return AttackMap.getRookAttacks(square, occupancy);
+		case WhiteQueen: case BlackQueen:
+			return AttackMap.getBishopAttacks(square, occupancy) | AttackMap.getRookAttacks(square, occupancy);
+		default:
+			return AttackMap.getKingAttacks(square);
+		}
+	}
+
+
+	private static boolean isPawn(Piece piece) {
+		return (piece == WhitePawn) || (piece == BlackPawn);
+	}
+
+
+	private static int getColorIndex(Piece piece) {
+		return (piece.getColor() == White ? 0 : 1);
+	}
+
+
+	/**
+	 * Growable list of ints, to keep the positions waiting to be decided
+	 * at each distance without boxing them
+	 */
+	private static class IntList {
+		private int[] values = new int[64];
+		private int size;
+
+		private void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package com.darringer.games.chess.archive;
+
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.converter.ChessModelFENConverter;
+import com.darringer.games.chess.converter.ChessModelFastFENConverter;
+import com.darringer.games.chess.logic.GameLogic;
+import com.darringer.games.chess.logic.MoveLogic;
+import com.darringer.games.chess.logic.RandomGames;
+import com.darringer.games.chess.model.ChessInvalidMoveException;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessMovePawnPromotion;
+import com.darringer.games.chess.model.ChessParseException;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.GameResult;
+
+/**
+ * Ensure that games come back from an archive exactly as they went in,
+ * whichever way its blocks are replayed, and take far less room than
+ * the same games as FEN
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.archive.GameArchiveWriter
+ * @see com.darringer.games.chess.archive.GameArchiveReader
+ *
+ */
+public class TestGameArchive {
+
+	private GameLogic gameLogic = new GameLogic();
+	private MoveLogic moveLogic = new MoveLogic();
+	private ChessModelFastFENConverter fenConverter = new ChessModelFastFENConverter();
+
+
+	@Test
+	public void testRoundTrip() throws ChessSystemException, ChessInvalidMoveException {
+		List<Game> games = getGames();
+		byte[] archive = write(games, 256);
+
+		final List<ArchivedGame> replayed = new ArrayList<ArchivedGame>();
+		final AtomicLong moveCount = new AtomicLong();
+		GameArchiveReader reader = new GameArchiveReader(new GameArchiveListener() {
+			public void moveReplayed(ChessModel model, ChessMove move) {
+				moveCount.incrementAndGet();
+			}
+			public void gameReplayed(ArchivedGame game) {
+				replayed.add(game);
+			}
+		});
+		assert reader.read(getChannel(archive)) == games.size() : "Every game replayed";
+		long expectedMoveCount = 0l;
+		for (int i=0; i < games.size(); i++) {
+			Game game = games.get(i);
+			ArchivedGame archivedGame = replayed.get(i);
+			expectedMoveCount += game.moves.size();
+			assert fenConverter.getStringFromModel(archivedGame.getStart()).equals(fenConverter.getStringFromModel(game.start)) : "Same start of game " + i;
+			assert archivedGame.getMoves().size() == game.moves.size() : "Same number of moves in game " + i;
+			for (int ply=0; ply < game.moves.size(); ply++) {
+				assert archivedGame.getMoves().get(ply).equals(game.moves.get(ply)) : "Same move " + ply + " of game " + i;
+			}
+			assert archivedGame.getEnd().getPositionKey() == game.end.getPositionKey() : "Same end of game " + i;
+			assert archivedGame.getResult() == game.result : "Same result of game " + i;
+		}
+		assert moveCount.get() == expectedMoveCount : "Listener told about every move";
+
+		// an order of magnitude smaller than a FEN for every position
+		long fenLength = 0l;
+		for (Game game : games) {
+			ChessModel model = new ChessModel(game.start);
+			fenLength += fenConverter.getStringFromModel(model).length() + 1;
+			for (ChessMove move : game.moves) {
+				model = moveLogic.applyMoveToModel(model, move);
+				fenLength += fenConverter.getStringFromModel(model).length() + 1;
+			}
+		}
+		assert archive.length * 10l < fenLength : String.format("Archive of %d bytes against %d bytes of FEN", archive.length, fenLength);
+	}
+
+
+	@Test
+	public void testBlocks() throws Exception {
+		List<Game> games = getGames();
+		final byte[] archive = write(games, 64);
+		final AtomicLong sequentialCount = new AtomicLong();
+		final AtomicLong sequentialKeys = new AtomicLong();
+		new GameArchiveReader(getCountingListener(sequentialCount, sequentialKeys)).read(getChannel(archive));
+
+		// blocks replay on their own, in any order
+		List<GameArchiveBlock> blocks = new ArrayList<GameArchiveBlock>();
+		GameArchiveReader reader = new GameArchiveReader(null);
+		ReadableByteChannel channel = getChannel(archive);
+		GameArchiveBlock block;
+		long offset = 0l;
+		while ((block = reader.readBlock(channel, offset)) != null) {
+			blocks.add(block);
+			offset = block.getEndOffset();
+		}
+		assert blocks.size() > 4 : "Several blocks";
+		Collections.reverse(blocks);
+		AtomicLong count = new AtomicLong();
+		AtomicLong keys = new AtomicLong();
+		for (GameArchiveBlock reversedBlock : blocks) {
+			reversedBlock.replay(getCountingListener(count, keys));
+		}
+		assert count.get() == sequentialCount.get() : "Same moves in reverse block order";
+		assert keys.get() == sequentialKeys.get() : "Same positions in reverse block order";
+
+		// and on many threads
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			count = new AtomicLong();
+			keys = new AtomicLong();
+			reader = new GameArchiveReader(getCountingListener(count, keys));
+			reader.setBlocksInFlight(2);
+			assert reader.read(getChannel(archive), executor) == games.size() : "Every game replayed in parallel";
+			assert count.get() == sequentialCount.get() : "Same moves in parallel";
+			assert keys.get() == sequentialKeys.get() : "Same positions in parallel";
+
+			// one reader can read two archives at once
+			count = new AtomicLong();
+			keys = new AtomicLong();
+			final GameArchiveReader sharedReader = new GameArchiveReader(getCountingListener(count, keys));
+			List<Future<Long>> reads = new ArrayList<Future<Long>>();
+			for (int i=0; i < 2; i++) {
+				reads.add(executor.submit(new Callable<Long>() {
+					public Long call() throws ChessSystemException {
+						return sharedReader.read(getChannel(archive));
+					}
+				}));
+			}
+			for (Future<Long> read : reads) {
+				assert read.get() == games.size() : "Every game replayed by each read";
+			}
+			assert count.get() == 2 * sequentialCount.get() : "Same moves in both reads";
+			assert keys.get() == 2 * sequentialKeys.get() : "Same positions in both reads";
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+
+	/**
+	 * An archive written by an earlier run still decodes to the same
+	 * games, so move indices can't depend on the order moves happen to
+	 * be generated in
+	 */
+	@Test
+	public void testFixture() throws ChessSystemException, ChessInvalidMoveException, IOException {
+		List<Game> games = new ArrayList<Game>();
+		Game game = new Game(fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW), GameResult.WhiteWin);
+		game.add(new ChessMove(WhitePawn, E2, E4));
+		game.add(new ChessMove(BlackPawn, E7, E5));
+		game.add(new ChessMove(WhiteBishop, F1, C4));
+		game.add(new ChessMove(BlackKnight, B8, C6));
+		game.add(new ChessMove(WhiteQueen, D1, H5));
+		game.add(new ChessMove(BlackKnight, G8, F6));
+		game.add(new ChessMove(WhiteQueen, H5, F7));
+		games.add(game);
+		game = new Game(fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW), GameResult.Unknown);
+		game.add(new ChessMove(WhitePawn, E2, E4));
+		game.add(new ChessMove(BlackPawn, A7, A6));
+		game.add(new ChessMove(WhitePawn, E4, E5));
+		game.add(new ChessMove(BlackPawn, D7, D5));
+		game.add(new ChessMove(WhitePawn, E5, D6));
+		games.add(game);
+		game = new Game(fenConverter.getModelFromString("r3k2r/pppppppp/8/8/8/8/PPPPPPPP/R3K2R w KQkq - 0 1"), GameResult.Draw);
+		game.add(new ChessMove(WhiteKing, E1, G1));
+		game.add(new ChessMove(BlackKing, E8, C8));
+		games.add(game);
+		game = new Game(fenConverter.getModelFromString("8/P6k/8/8/8/8/7p/K7 w - - 0 1"), GameResult.BlackWin);
+		game.add(new ChessMovePawnPromotion(WhitePawn, A7, A8, WhiteKnight));
+		game.add(new ChessMovePawnPromotion(BlackPawn, H2, H1, BlackQueen));
+		games.add(game);
+
+		byte[] fixture = getResource("games.garc");
+		final List<ArchivedGame> replayed = new ArrayList<ArchivedGame>();
+		GameArchiveReader reader = new GameArchiveReader(new GameArchiveListener() {
+			public void moveReplayed(ChessModel model, ChessMove move) {
+			}
+			public void gameReplayed(ArchivedGame game) {
+				replayed.add(game);
+			}
+		});
+		assert reader.read(getChannel(fixture)) == games.size() : "Every game in the fixture replayed";
+		for (int i=0; i < games.size(); i++) {
+			ArchivedGame archivedGame = replayed.get(i);
+			assert archivedGame.getMoves().equals(games.get(i).moves) : "Same moves in game " + i + ": " + archivedGame.getMoves();
+			assert fenConverter.getStringFromModel(archivedGame.getEnd()).equals(fenConverter.getStringFromModel(games.get(i).end)) : "Same end of game " + i;
+			assert archivedGame.getResult() == games.get(i).result : "Same result of game " + i;
+		}
+		assert Arrays.equals(write(games, GameArchiveWriter.DEFAULT_BLOCK_SIZE), fixture) : "Same games write the same bytes";
+	}
+
+
+	@Test
+	public void testInvalid() throws ChessSystemException, ChessInvalidMoveException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GameArchiveWriter writer = new GameArchiveWriter(Channels.newChannel(out));
+		ChessModel model = fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW);
+		try {
+			writer.addGame(model, Arrays.asList(new ChessMove(WhitePawn, E2, E4), new ChessMove(BlackPawn, E7, E4)), GameResult.Unknown);
+			assert false : "e7e4 is not legal";
+		} catch (ChessInvalidMoveException cime) {
+			// expected
+		}
+		assert writer.getGameCount() == 0l : "Nothing added for an illegal game";
+		writer.addGame(model, Arrays.asList(new ChessMove(WhitePawn, E2, E4), new ChessMove(BlackPawn, E7, E5)), GameResult.Draw);
+		writer.close();
+		byte[] archive = out.toByteArray();
+
+		byte[] corrupt = archive.clone();
+		corrupt[corrupt.length - 1] ^= 1;
+		assert getErrorOffset(corrupt) == GameArchiveWriter.BLOCK_HEADER_SIZE : "Checksum catches a changed byte";
+		assert getErrorOffset(Arrays.copyOf(archive, archive.length - 1)) == GameArchiveWriter.BLOCK_HEADER_SIZE : "Block cut short";
+		assert getErrorOffset(Arrays.copyOf(archive, 10)) == 0 : "Header cut short";
+		corrupt = archive.clone();
+		corrupt[0] = 'X';
+		assert getErrorOffset(corrupt) == 0 : "Not an archive";
+		corrupt = archive.clone();
+		ByteBuffer.wrap(corrupt).putInt(8, GameArchiveWriter.MAX_BLOCK_SIZE + 1);
+		assert getErrorOffset(corrupt) == 0 : "No block is that long";
+		assert getErrorOffset(archive) == -1 : "The archive itself is fine";
+	}
+
+
+	private int getErrorOffset(byte[] archive) throws ChessSystemException {
+		try {
+			new GameArchiveReader(getCountingListener(new AtomicLong(), new AtomicLong())).read(getChannel(archive));
+		} catch (ChessParseException cpe) {
+			return cpe.getOffset();
+		}
+		return -1;
+	}
+
+
+	private GameArchiveListener getCountingListener(final AtomicLong count, final AtomicLong keys) {
+		return new GameArchiveListener() {
+			public void moveReplayed(ChessModel model, ChessMove move) {
+				count.incrementAndGet();
+				keys.addAndGet(model.getPositionKey());
+			}
+			public void gameReplayed(ArchivedGame game) {
+				keys.addAndGet(game.getEnd().getPositionKey());
+			}
+		};
+	}
+
+
+	private byte[] write(List<Game> games, int blockSize) throws ChessSystemException, ChessInvalidMoveException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GameArchiveWriter writer = new GameArchiveWriter(Channels.newChannel(out));
+		writer.setBlockSize(blockSize);
+		for (Game game : games) {
+			writer.addGame(game.start, game.moves, game.result);
+		}
+		writer.close();
+		assert writer.getGameCount() == games.size() : "Every game added";
+		assert writer.getByteCount() == out.size() : "Every byte counted";
+		return out.toByteArray();
+	}
+
+
+	private byte[] getResource(String name) throws IOException {
+		InputStream in = getClass().getResourceAsStream(name);
+		assert in != null : "Missing resource " + name;
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int length;
+			while ((length = in.read(buffer)) > 0) {
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+
+	private static ReadableByteChannel getChannel(byte[] bytes) {
+		return Channels.newChannel(new ByteArrayInputStream(bytes));
+	}
+
+
+	/**
+	 * Random games from the initial position, plus castling and
+	 * promotion from positions of their own
+	 */
+	private List<Game> getGames() throws ChessSystemException {
+		List<Game> games = new ArrayList<Game>();
+		RandomGames randomGames = new RandomGames(50l);
+		GameResult[] results = GameResult.values();
+		for (int i=0; i < 30; i++) {
+			Game game = new Game(fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW), results[i % results.length]);
+			for (ChessMove move : randomGames.getMoves(game.start, 80)) {
+				game.add(move);
+			}
+			games.add(game);
+		}
+
+		Game game = new Game(fenConverter.getModelFromString("r3k2r/pppppppp/8/8/8/8/PPPPPPPP/R3K2R w KQkq - 0 1"), GameResult.Draw);
+		game.add(new ChessMove(WhiteKing, E1, G1));
+		game.add(new ChessMove(BlackKing, E8, C8));
+		games.add(game);
+		game = new Game(fenConverter.getModelFromString("8/P6k/8/8/8/8/7p/K7 w - - 0 1"), GameResult.Draw);
+		game.add(new ChessMovePawnPromotion(WhitePawn, A7, A8, WhiteKnight));
+		game.add(new ChessMovePawnPromotion(BlackPawn, H2, H1, BlackQueen));
+		games.add(game);
+		games.add(new Game(fenConverter.getModelFromString("7k/8/8/8/8/8/8/K7 b - - 0 1"), GameResult.Draw));
+		return games;
+	}
+
+
+	/**
+	 * A game to archive, and where it should end up
+	 */
+	private class Game {
+		ChessModel start;
+		List<ChessMove> moves = new ArrayList<ChessMove>();
+		ChessModel end;
+		GameResult result;
+
+		Game(ChessModel start, GameResult result) {
+			this.start = start;
+			this.end = new ChessModel(start);
+			this.result = result;
+		}
+
+		/**
+		 * Play the legal move with the given squares (and promotion piece)
+		 */
+		void add(ChessMove move) {
+			for (ChessMove legalMove : gameLogic.getLegalMoves(end, end.getActiveColor())) {
+				if ((legalMove.getFrom() == move.getFrom()) && (legalMove.getTo() == move.getTo())
+						&& (legalMove.getPawnPromotionPiece() == move.getPawnPromotionPiece())) {
+					moves.add(legalMove);
+					end = moveLogic.applyMoveToModel(end, legalMove);
+					return;
+				}
+			}
+			throw new IllegalArgumentException("Not a legal move: " + move);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package com.darringer.games.chess.book;
+
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.converter.ChessModelFENConverter;
+import com.darringer.games.chess.logic.GameLogic;
+import com.darringer.games.chess.model.ChessInvalidMoveException;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessMoveCastleKingSide;
+import com.darringer.games.chess.model.ChessSystemException;
+
+/**
+ * Read opening books written by hand, by other tools and by the
+ * {@link OpeningBookBuilder}, and make sure the moves, their keys and
+ * statistics, and the search's use of them come out right
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.book.OpeningBook
+ * @see com.darringer.games.chess.book.OpeningBookBuilder
+ * @see com.darringer.games.chess.book.PolyglotKey
+ *
+ */
+public class TestOpeningBook {
+
+	private GameLogic logic = new GameLogic();
+	
+	
+	/**
+	 * Book moves are found by the Polyglot key of the position, illegal
+	 * and never played moves are skipped, and black answers from the book
+	 * without searching.
+	 */
+	@Test
+	public void testOpeningBook() throws ChessSystemException, ChessInvalidMoveException, IOException {
+		ChessModel model = new ChessModelFENConverter().getModelFromString(ChessModelFENConverter.FEN_NEW);
+		ChessMove e4 = new ChessMove(WhitePawn, E2, E4);
+		PolyglotKey polyglotKey = new PolyglotKey();
+		long e4Key = polyglotKey.getKey(logic.applyWhiteMoveToModel(new ChessModel(model), e4));
+		ChessModel castlingModel = new ChessModelFENConverter().getModelFromString("r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 0 1");
+		
+		// packed as to file, to row, from file, from row: e7e5 is never played, 
+		// e7e4 is not legal and e8h8 is castling
+		File file = File.createTempFile("book", ".bin");
+		file.deleteOnExit();
+		long[] keys = {polyglotKey.getKey(model), e4Key, e4Key, e4Key, polyglotKey.getKey(castlingModel)};
+		int[] moves = {4 | (3 << 3) | (4 << 6) | (1 << 9), 4 | (4 << 3) | (4 << 6) | (6 << 9), 
+				2 | (4 << 3) | (2 << 6) | (6 << 9), 4 | (3 << 3) | (4 << 6) | (6 << 9), 7 | (7 << 3) | (4 << 6) | (7 << 9)};
+		int[] weights = {10, 0, 5, 5, 1};
+		writeBook(file, keys, moves, weights);
+		OpeningBook book = new OpeningBook(file);
+		assert book.getEntryCount() == 5 : "Five entries in the book";
+		
+		List<BookMove> bookMoves = book.getMoves(model);
+		assert bookMoves.size() == 1 : "One book move for white";
+		assert bookMoves.get(0).getMove().equals(e4) : "White plays e4";
+		ChessModel e4Model = logic.applyWhiteMoveToModel(new ChessModel(model), e4);
+		assert book.getMoves(e4Model).size() == 2 : "Illegal book moves are skipped";
+		Random random = new Random(1l);
+		for (int i=0; i < 10; i++) {
+			assert book.getMove(e4Model, random).equals(new ChessMove(BlackPawn, C7, C5)) : "Moves with no weight are never played";
+		}
+		bookMoves = book.getMoves(castlingModel);
+		assert bookMoves.size() == 1 : "Castling is in the book";
+		assert bookMoves.get(0).getMove().equals(new ChessMoveCastleKingSide(BlackKing, E8, G8)) : "King takes rook is castling";
+		assert book.getMoves(new ChessModel()).isEmpty() : "An empty board is not in the book";
+		
+		// black answers from the book without searching
+		logic.setOpeningBook(book);
+		model = logic.processMove(model, e4, 10);
+		assert model.getPieceAtLocation(C5) == BlackPawn : "Black plays the book move";
+		assert logic.getIterations().isEmpty() : "No search for a book move";
+	}
+	
+	
+	/**
+	 * Polyglot keys should match the reference keys published with the
+	 * Polyglot book format, including its en passant rule, so books built
+	 * by other tools can be read.
+	 */
+	@Test
+	public void testPolyglotKey() throws ChessSystemException, IOException {
+		PolyglotKey polyglotKey = new PolyglotKey();
+		ChessModelFENConverter converter = new ChessModelFENConverter();
+		ChessModel model = converter.getModelFromString(ChessModelFENConverter.FEN_NEW);
+		assert polyglotKey.getKey(model) == 0x463b96181691fc9cl : "Starting position";
+		assert polyglotKey.getKey(converter.getModelFromString("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1")) == 0x823c9b50fd114196l : "No black pawn can take en passant";
+		assert polyglotKey.getKey(converter.getModelFromString("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3")) == 0x22a48b5a8e47ff78l : "White can take en passant";
+		assert polyglotKey.getKey(converter.getModelFromString("rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4")) == 0x00fdd303c946bdd9l : "Kings moved, no castling";
+		assert polyglotKey.getKey(converter.getModelFromString("rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4")) == 0x5c3f9b829b279560l : "Some castling rights left";
+		
+		// a book keyed by Polyglot keys is read with them
+		File file = File.createTempFile("polyglot", ".bin");
+		file.deleteOnExit();
+		writeBook(file, new long[] {0x463b96181691fc9cl}, new int[] {4 | (3 << 3) | (4 << 6) | (1 << 9)}, new int[] {1});
+		assert new OpeningBook(file).getMoves(model).get(0).getMove().equals(new ChessMove(WhitePawn, E2, E4)) : "White plays e4 from a Polyglot book";
+		assert new OpeningBook(file, OpeningBook.POSITION_KEY).getMoves(model).isEmpty() : "Our own keys don't read a Polyglot book";
+	}
+	
+	
+	/**
+	 * Books built from PGN count wins, draws and losses for the side that
+	 * moved, weigh moves by them, and come out the same however many runs
+	 * are spilled and however few are merged at once.
+	 */
+	@Test
+	public void testOpeningBookBuilder() throws ChessSystemException, ChessInvalidMoveException, IOException {
+		String games = "[Event \"A few short games\"]\n"
+				+ "1. e4 e5 2. Nf3 1-0\n\n"
+				+ "1. e4 c5 0-1\n\n"
+				+ "1. d4 d5 1/2-1/2\n\n"
+				+ "1. e4 e5 1/2-1/2\n\n"
+				+ "1. e4 e4 1-0\n\n"
+				+ "1. e4 e5 *\n\n"
+				+ "[FEN \"4k3/8/8/8/8/8/4P3/4K3 w - - 0 1\"]\n"
+				+ "1. e4 Kd7 1-0\n";
+		
+		// spilling a run for every move, and merging them two at a time, 
+		// gives the same book as none at all
+		OpeningBookBuilder builder = new OpeningBookBuilder();
+		builder.setMaxPly(2);
+		builder.setMaxEntriesInMemory(1);
+		builder.setMergeFanIn(2);
+		assert builder.addGames(getChannel(games)) == 4 : "Illegal moves, unfinished games and other start positions are skipped";
+		File file = File.createTempFile("book", ".bin");
+		file.deleteOnExit();
+		OpeningBook.getStatisticsFile(file).deleteOnExit();
+		assert builder.build(file) == 5 : "Five distinct moves in the first two plies";
+		builder = new OpeningBookBuilder();
+		builder.setMaxPly(2);
+		builder.addGames(getChannel(games));
+		File inMemoryFile = File.createTempFile("book", ".bin");
+		inMemoryFile.deleteOnExit();
+		OpeningBook.getStatisticsFile(inMemoryFile).deleteOnExit();
+		builder.build(inMemoryFile);
+		assert Arrays.equals(Files.readAllBytes(file.toPath()), Files.readAllBytes(inMemoryFile.toPath())) : "Spilled runs should merge to the same book";
+		assert Arrays.equals(Files.readAllBytes(OpeningBook.getStatisticsFile(file).toPath()), 
+				Files.readAllBytes(OpeningBook.getStatisticsFile(inMemoryFile).toPath())) : "Spilled runs should merge to the same statistics";
+		
+		// two points per win and one per draw, for the side that moved
+		OpeningBook book = new OpeningBook(file);
+		assert book.hasStatistics() : "Built books have statistics";
+		ChessModel model = new ChessModelFENConverter().getModelFromString(ChessModelFENConverter.FEN_NEW);
+		List<BookMove> bookMoves = book.getMoves(model);
+		assert bookMoves.size() == 2 : "White played e4 and d4";
+		for (BookMove bookMove : bookMoves) {
+			if (bookMove.getMove().getTo() == E4) {
+				assert (bookMove.getWins() == 1) && (bookMove.getDraws() == 1) && (bookMove.getLosses() == 1) : "e4 won, drew and lost: " + bookMove;
+				assert bookMove.getWeight() == 3 : "e4 is worth three points";
+			} else {
+				assert (bookMove.getWins() == 0) && (bookMove.getDraws() == 1) && (bookMove.getLosses() == 0) : "d4 drew: " + bookMove;
+				assert bookMove.getWeight() == 1 : "d4 is worth one point";
+			}
+		}
+		model = logic.applyWhiteMoveToModel(model, new ChessMove(WhitePawn, E2, E4));
+		bookMoves = book.getMoves(model);
+		assert bookMoves.size() == 2 : "Black answered e5 and c5";
+		for (BookMove bookMove : bookMoves) {
+			if (bookMove.getMove().getTo() == E5) {
+				assert (bookMove.getWins() == 0) && (bookMove.getDraws() == 1) && (bookMove.getLosses() == 1) : "e5 drew and lost: " + bookMove;
+				assert bookMove.getWeight() == 1 : "e5 is worth one point";
+			} else {
+				assert (bookMove.getWins() == 1) && (bookMove.getDraws() == 0) && (bookMove.getLosses() == 0) : "c5 won: " + bookMove;
+				assert bookMove.getWeight() == 2 : "c5 is worth two points";
+			}
+		}
+		
+		// rarely played moves can be left out
+		builder = new OpeningBookBuilder();
+		builder.setMaxPly(2);
+		builder.setMinGames(2);
+		builder.addGames(getChannel(games));
+		assert builder.build(file) == 2 : "Only e4 and e5 were played twice";
+		assert new OpeningBook(file).getMoves(model).get(0).getLosses() == 1 : "Statistics follow the entries that are left";
+	}
+	
+	
+	/**
+	 * A channel reading the given PGN text
+	 */
+	private static ReadableByteChannel getChannel(String pgn) {
+		return Channels.newChannel(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.US_ASCII)));
+	}
+	
+	
+	/**
+	 * Write a book with the given entries, sorted by key as a book must be
+	 */
+	private void writeBook(File file, long[] keys, int[] moves, int[] weights) throws IOException {
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i=0; i < keys.length; i++) {
+			int position = 0;
+			while ((position < order.size()) && (Long.compareUnsigned(keys[order.get(position)], keys[i]) <= 0)) {
+				position++;
+			}
+			order.add(position, i);
+		}
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			for (int i : order) {
+				out.writeLong(keys[i]);
+				out.writeShort(moves[i]);
+				out.writeShort(weights[i]);
+				out.writeInt(0);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.darringer.games.chess.converter;
+
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.logic.RandomGames;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessParseException;
+import com.darringer.games.chess.model.ChessSystemException;
+
+/**
+ * Ensure that {@link ChessModel}s survive the trip through fixed size
+ * binary records, one at a time and in bulk
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.converter.ChessModelBinaryConverter
+ *
+ */
+public class TestChessModelBinaryConverter {
+
+	private ChessModelBinaryConverter converter = new ChessModelBinaryConverter();
+	private ChessModelFastFENConverter fenConverter = new ChessModelFastFENConverter();
+
+
+	@Test
+	public void testRoundTrip() throws ChessSystemException {
+		List<ChessModel> models = getModels();
+		models.add(fenConverter.getModelFromString("8/8/8/8/8/8/8/K6k b - - 300 4000"));
+		models.add(fenConverter.getModelFromString("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b Kq e3 0 1"));
+		for (ChessModel model : models) {
+			String fen = fenConverter.getStringFromModel(model);
+			byte[] bytes = converter.getBytesFromModel(model);
+			assert bytes.length == ChessModelBinaryConverter.RECORD_SIZE : "Fixed size records";
+			ChessModel decoded = converter.getModelFromBytes(bytes, 0);
+			assert fenConverter.getStringFromModel(decoded).equals(fen) : "Same position back for " + fen;
+			assert decoded.getPositionKey() == model.getPositionKey() : "Same position key for " + fen;
+			assert decoded.getMaterialSignature() == model.getMaterialSignature() : "Same material for " + fen;
+
+			// the same position always gives the same bytes
+			assert Arrays.equals(converter.getBytesFromModel(fenConverter.getModelFromString(fen)), bytes) : "Canonical record for " + fen;
+		}
+	}
+
+
+	@Test
+	public void testBulk() throws ChessSystemException {
+		List<ChessModel> models = getModels();
+		ByteBuffer buffer = ByteBuffer.allocateDirect((models.size() + 1) * ChessModelBinaryConverter.RECORD_SIZE);
+		buffer.position(ChessModelBinaryConverter.RECORD_SIZE);
+		converter.putModels(models, buffer);
+		assert !buffer.hasRemaining() : "Buffer filled with records";
+
+		buffer.position(ChessModelBinaryConverter.RECORD_SIZE);
+		List<ChessModel> decoded = converter.getModels(buffer);
+		assert decoded.size() == models.size() : "Every record read";
+		for (int i=0; i < models.size(); i++) {
+			assert decoded.get(i).getPositionKey() == models.get(i).getPositionKey() : "Same position at " + i;
+		}
+
+		// random access leaves the position alone
+		buffer.position(0);
+		ChessModel model = converter.getModel(buffer, models.size());
+		assert fenConverter.getStringFromModel(model).equals(fenConverter.getStringFromModel(models.get(models.size() - 1))) : "Last record by index";
+		converter.putModel(model, buffer, 0);
+		assert buffer.position() == 0 : "Position unchanged";
+		model = converter.getModel(buffer);
+		assert buffer.position() == ChessModelBinaryConverter.RECORD_SIZE : "Position after the first record";
+		assert model.getPositionKey() == models.get(models.size() - 1).getPositionKey() : "Record written by index";
+	}
+
+
+	@Test
+	public void testInvalidRecords() throws ChessSystemException {
+		byte[] bytes = converter.getBytesFromModel(fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW));
+		bytes[8] = (byte) 0xd0;
+		assert getErrorOffset(bytes) == 8 : "Piece ordinal past the last piece";
+
+		bytes = converter.getBytesFromModel(fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW));
+		bytes[25] = (byte) 64;
+		assert getErrorOffset(bytes) == 25 : "En passant square off the board";
+
+		bytes = converter.getBytesFromModel(fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW));
+		bytes[3] = (byte) 0xff;
+		assert getErrorOffset(bytes) == 0 : "More pieces than fit in a record";
+
+		ChessModel model = fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW);
+		model.setPieceAtLocation(E4, WhiteQueen);
+		try {
+			converter.getBytesFromModel(model);
+			assert false : "33 pieces should not fit";
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+	}
+
+
+	private int getErrorOffset(byte[] bytes) {
+		try {
+			converter.getModelFromBytes(bytes, 0);
+		} catch (ChessParseException cpe) {
+			return cpe.getOffset();
+		}
+		return -1;
+	}
+
+
+	/**
+	 * The positions of some random games
+	 */
+	private List<ChessModel> getModels() throws ChessSystemException {
+		List<ChessModel> models = new ArrayList<ChessModel>();
+		RandomGames randomGames = new RandomGames(48l);
+		for (int game=0; game < 10; game++) {
+			models.addAll(randomGames.getPositions(fenConverter.getModelFromString(ChessModelFENConverter.FEN_NEW), 60));
+		}
+		return models;
+	}
+}
@@ -0,0 +1,203 @@
+package com.darringer.games.chess.converter;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.logic.RandomGames;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessParseException;
+import com.darringer.games.chess.model.ChessSystemException;
+
+/**
+ * Ensure that the hand written FEN parser builds the same models as
+ * the ANTLR grammar, says where a bad string goes wrong, and writes
+ * the same FEN as the ANTLR converter
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.converter.ChessModelFastFENConverter
+ * @see com.darringer.games.chess.converter.ChessModelFENConverter
+ *
+ */
+public class TestChessModelFastFENConverter {
+
+	private static final String[] FEN_CORPUS = {
+		ChessModelFENConverter.FEN_NEW,
+		ChessModelFENConverter.FEN_PAWN_GAME,
+		"rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+		"rnbqkbnr/pp1ppppp/8/2p5/4P3/8/PPPP1PPP/RNBQKBNR w KQkq c6 0 2",
+		"rnbqkbnr/pp1ppppp/8/2p5/4P3/5N2/PPPP1PPP/RNBQKB1R b KQkq - 1 2",
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQk - 0 1",
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w Q - 0 1",
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1",
+		"4k3/8/8/8/8/8/4P3/4K3 w - - 0 1",
+		"r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 3 9",
+	};
+
+	private static final String[] FEN_BAD = {
+		"XYZ",
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR X KQkq - 0 1",
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w XYZ - 0 1",
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq X 0 1",
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - X 1",
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 X",
+	};
+
+	private ChessModelFastFENConverter converter = new ChessModelFastFENConverter();
+	private ChessModelFENConverter antlrConverter = new ChessModelFENConverter();
+
+
+	@Test
+	public void testSameAsGrammar() throws ChessSystemException {
+		List<String> corpus = getCorpus();
+		int comparedCount = 0;
+		for (String fen : corpus) {
+			ChessModel model = converter.getModelFromString(fen);
+			assert converter.getStringFromModel(model).equals(fen) : "Same FEN back from " + fen;
+
+			if (isReadableByGrammar(fen)) {
+				ChessModel expected = antlrConverter.getModelFromString(fen);
+				assert antlrConverter.getStringFromModel(expected).equals(fen) : "Grammar round trip for " + fen;
+				assert model.getPositionKey() == expected.getPositionKey() : "Same position key for " + fen;
+				assert model.getPawnKey() == expected.getPawnKey() : "Same pawn key for " + fen;
+				assert model.getMaterialSignature() == expected.getMaterialSignature() : "Same material for " + fen;
+				comparedCount++;
+			}
+
+			byte[] bytes = (" " + fen + "\n").getBytes(StandardCharsets.US_ASCII);
+			model = converter.getModelFromBytes(bytes, 1, bytes.length);
+			assert converter.getStringFromModel(model).equals(fen) : "Same FEN from bytes for " + fen;
+			ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+			buffer.put(bytes).position(1);
+			model = converter.getModelFromBuffer(buffer);
+			assert converter.getStringFromModel(model).equals(fen) : "Same FEN from a buffer for " + fen;
+			assert buffer.position() == 1 : "Buffer position is left alone";
+		}
+		assert comparedCount > corpus.size() / 3 : "Enough of the corpus compared with the grammar";
+	}
+
+
+	@Test
+	public void testWriting() throws ChessSystemException, IOException {
+		List<String> corpus = getCorpus();
+		corpus.add("8/8/8/8/8/8/8/K6k b - - 49 123");
+		char[] chars = new char[ChessModelFastFENConverter.MAX_FEN_LENGTH + 2];
+		ByteBuffer buffer = ByteBuffer.allocate(ChessModelFastFENConverter.MAX_FEN_LENGTH + 2);
+		for (String fen : corpus) {
+			ChessModel model = converter.getModelFromString(fen);
+			String expected = antlrConverter.getStringFromModel(model);
+			assert converter.getStringFromModel(model).equals(expected) : "Same FEN as the ANTLR converter for " + fen;
+
+			StringBuilder out = new StringBuilder("[");
+			converter.appendModel(model, out);
+			assert out.toString().equals("[" + expected) : "Appended FEN for " + fen;
+
+			int length = converter.getCharsFromModel(model, chars, 2);
+			assert new String(chars, 2, length).equals(expected) : "FEN in a char array for " + fen;
+
+			buffer.clear();
+			buffer.put((byte) '[');
+			converter.putModel(model, buffer);
+			assert buffer.position() == expected.length() + 1 : "Buffer position after the FEN for " + fen;
+			assert new String(buffer.array(), 1, expected.length(), StandardCharsets.US_ASCII).equals(expected) : "FEN in a buffer for " + fen;
+		}
+	}
+
+
+	@Test
+	public void testClocksAndCastling() throws ChessSystemException {
+		ChessModel model = converter.getModelFromChars("[8/8/8/8/8/8/8/K6k b - - 49 123]", 1, 31);
+		assert model.getActiveColor() == Black : "Black to move";
+		assert model.getPieceAtLocation(A1) == WhiteKing : "White king on a1";
+		assert model.getPieceAtLocation(H1) == BlackKing : "Black king on h1";
+		assert model.getHalfmoveClock() == 49 : "All the digits of the halfmove clock";
+		assert model.getFullmoveNumber() == 123 : "All the digits of the fullmove number";
+
+		model = converter.getModelFromString("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w qkK - 0 1");
+		assert model.getCastlingAvailability().isWhiteCanCastleKingSide() : "expected white can castle king side";
+		assert !model.getCastlingAvailability().isWhiteCanCastleQueenSide() : "expected white cannot castle queen side";
+		assert model.getCastlingAvailability().isBlackCanCastleKingSide() : "expected black can castle king side";
+		assert model.getCastlingAvailability().isBlackCanCastleQueenSide() : "expected black can castle queen side";
+	}
+
+
+	@Test
+	public void testInvalidStrings() {
+		for (String fen : FEN_BAD) {
+			ChessModel model = new ChessModel();
+			try {
+				model = converter.getModelFromString(fen);
+			} catch (ChessSystemException cse) {
+				model = null;
+			}
+			assert model == null : "Bad string, expecting exception and null model for " + fen;
+		}
+
+		assert getErrorOffset("XYZ") == 0 : "Not a piece";
+		assert getErrorOffset("rnbqkbnr/ppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1") == 16 : "Short rank";
+		assert getErrorOffset("rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1") == 18 : "Not a number of squares";
+		assert getErrorOffset("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNRR w KQkq - 0 1") == 43 : "Long rank";
+		assert getErrorOffset("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR X KQkq - 0 1") == 44 : "Active color";
+		assert getErrorOffset("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w XYZ - 0 1") == 46 : "Castling";
+		assert getErrorOffset("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e9 0 1") == 52 : "En passant rank";
+		assert getErrorOffset("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0") == 54 : "Missing fullmove number";
+		assert getErrorOffset("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 x") == 57 : "Trailing characters";
+	}
+
+
+	/**
+	 * The FENs above and the positions of some random games
+	 */
+	private List<String> getCorpus() throws ChessSystemException {
+		List<String> corpus = new ArrayList<String>();
+		for (String fen : FEN_CORPUS) {
+			corpus.add(fen);
+		}
+		RandomGames randomGames = new RandomGames(46l);
+		for (int game=0; game < 20; game++) {
+			for (ChessModel model : randomGames.getPositions(converter.getModelFromString(ChessModelFENConverter.FEN_NEW), 16)) {
+				corpus.add(converter.getStringFromModel(model));
+			}
+		}
+		return corpus;
+	}
+
+
+	/**
+	 * Can the ANTLR grammar read the given FEN back?  It lexes a black
+	 * bishop before a digit as a square, and only keeps the last digit of
+	 * the clocks, so those strings are not handed to it at all rather
+	 * than have it print its parse errors.
+	 */
+	private static boolean isReadableByGrammar(String fen) {
+		String[] fields = fen.split(" ");
+		for (int i=0; i < fields[0].length() - 1; i++) {
+			char c = fields[0].charAt(i + 1);
+			if ((fields[0].charAt(i) == 'b') && (c >= '1') && (c <= '8')) {
+				return false;
+			}
+		}
+		return (fields[4].length() == 1) && (fields[5].length() == 1);
+	}
+
+
+	private int getErrorOffset(String fen) {
+		try {
+			converter.getModelFromString(fen);
+		} catch (ChessParseException cpe) {
+			return cpe.getOffset();
+		} catch (ChessSystemException cse) {
+			assert false : "unexpected system exception";
+		}
+		return -1;
+	}
+}
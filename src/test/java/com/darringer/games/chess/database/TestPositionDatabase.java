@@ -0,0 +1,206 @@
+package com.darringer.games.chess.database;
+
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessMovePawnPromotion;
+import com.darringer.games.chess.model.ChessSystemException;
+
+/**
+ * Ensure that {@link PositionRecord}s are found again, across index
+ * growth, segment files, reopening and crashes
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.database.PositionDatabase
+ *
+ */
+public class TestPositionDatabase {
+
+	private File directory;
+
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("positions").toFile();
+	}
+
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+
+	@Test
+	public void testPutAndGet() throws ChessSystemException {
+		PositionDatabase database = new PositionDatabase(directory);
+		try {
+			assert database.isWritable() : "The first instance writes";
+			assert database.get(1l) == null : "Nothing stored yet";
+			int move = PositionDatabase.encodeMove(new ChessMove(WhiteKnight, G1, F3));
+			PositionRecord record = database.put(1l, move, -35, 7);
+			assert record.getVisitCount() == 1l : "First visit";
+			record = database.get(1l);
+			assert record.getKey() == 1l : "Same key";
+			assert record.isMove(new ChessMove(WhiteKnight, G1, F3)) : "Same move";
+			assert !record.isMove(new ChessMove(WhiteKnight, G1, H3)) : "Not another move";
+			assert record.getScore() == -35 : "Same score";
+			assert record.getDepth() == 7 : "Same depth";
+
+			// storing a position again replaces its record
+			database.put(1l, move, 20, 300);
+			record = database.get(1l);
+			assert record.getScore() == 20 : "Latest score";
+			assert record.getDepth() == 255 : "Depth is capped";
+			assert record.getVisitCount() == 2l : "Second visit";
+			assert database.getPositionCount() == 1 : "One position";
+			assert database.getRecordCount() == 2l : "Two records";
+
+			// zero is a key like any other
+			database.put(0l, move, 0, 1);
+			assert database.get(0l) != null : "Zero key";
+		} finally {
+			database.close();
+		}
+
+		assert PositionDatabase.encodeMove(new ChessMovePawnPromotion(BlackPawn, B2, A1, BlackQueen))
+				== (0 | (0 << 3) | (1 << 6) | (1 << 9) | (4 << 12)) : "Promotion to a queen";
+	}
+
+
+	@Test
+	public void testGrowth() throws ChessSystemException {
+		PositionDatabase database = new PositionDatabase(directory, 8, 16);
+		try {
+			Random random = new Random(49l);
+			long[] keys = new long[1000];
+			for (int i=0; i < keys.length; i++) {
+				keys[i] = random.nextLong();
+				database.put(keys[i], i & 0x7fff, i, i & 0xff);
+			}
+			assert database.getPositionCount() == keys.length : "Every position stored";
+			assert new File(directory, "positions-00062.dat").exists() : "Records spread over segments";
+			for (int i=0; i < keys.length; i++) {
+				PositionRecord record = database.get(keys[i]);
+				assert (record != null) && (record.getScore() == i) && (record.getMove() == (i & 0x7fff)) : "Record found after growth " + i;
+			}
+			assert database.get(random.nextLong()) == null : "Unknown key";
+		} finally {
+			database.close();
+		}
+	}
+
+
+	@Test
+	public void testReopen() throws ChessSystemException {
+		PositionDatabase database = new PositionDatabase(directory, 8, 4);
+		for (long key=1l; key <= 20l; key++) {
+			database.put(key, 0, (int) key, 5);
+		}
+		database.close();
+
+		// sizes are read from the existing index, not the arguments
+		database = new PositionDatabase(directory);
+		try {
+			assert database.getPositionCount() == 20 : "Positions still there";
+			assert database.get(20l).getScore() == 20 : "Record still there";
+			database.put(21l, 0, 21, 5);
+			assert database.get(21l) != null : "Still writable";
+		} finally {
+			database.close();
+		}
+	}
+
+
+	@Test
+	public void testRecovery() throws ChessSystemException, IOException {
+		PositionDatabase database = new PositionDatabase(directory, 8, 4);
+		for (long key=1l; key <= 10l; key++) {
+			database.put(key, 0, (int) key, 5);
+		}
+		database.flush();
+		for (long key=11l; key <= 12l; key++) {
+			database.put(key, 0, (int) key, 5);
+		}
+		database.put(1l, 0, 100, 6);
+		database.put(13l, 0, 13, 5);
+		database.abandon();
+
+		// the last record was only half written when the process died
+		RandomAccessFile file = new RandomAccessFile(new File(directory, "positions-00003.dat"), "rw");
+		try {
+			file.seek(PositionDatabase.RECORD_SIZE + 8);
+			file.writeInt(-1);
+		} finally {
+			file.close();
+		}
+
+		database = new PositionDatabase(directory);
+		try {
+			assert database.getRecordCount() == 13l : "Whole records after the commit are kept";
+			assert database.get(12l) != null : "Uncommitted record recovered";
+			assert database.get(1l).getScore() == 100 : "The last record for a position wins";
+			assert database.get(13l) == null : "Torn record dropped";
+			assert database.getPositionCount() == 12 : "Positions counted again";
+		} finally {
+			database.close();
+		}
+
+		// either copy of the header will do
+		file = new RandomAccessFile(new File(directory, "positions.idx"), "rw");
+		try {
+			file.seek(PositionDatabase.HEADER_COPY_OFFSET + 16);
+			file.writeInt(-1);
+		} finally {
+			file.close();
+		}
+		database = new PositionDatabase(directory);
+		try {
+			assert database.getPositionCount() == 12 : "Older header copy used";
+			assert database.get(12l) != null : "Records still found";
+		} finally {
+			database.close();
+		}
+	}
+
+
+	@Test
+	public void testReadOnly() throws ChessSystemException {
+		PositionDatabase writer = new PositionDatabase(directory);
+		try {
+			writer.put(1l, 0, 1, 5);
+			PositionDatabase reader = new PositionDatabase(directory);
+			try {
+				assert !reader.isWritable() : "Only one writer";
+				assert reader.get(1l).getScore() == 1 : "Reader sees stored records";
+				writer.put(2l, 0, 2, 5);
+				assert reader.get(2l).getScore() == 2 : "Reader sees new records";
+				try {
+					reader.put(3l, 0, 3, 5);
+					assert false : "Reader should not write";
+				} catch (ChessSystemException cse) {
+					// expected
+				}
+			} finally {
+				reader.close();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
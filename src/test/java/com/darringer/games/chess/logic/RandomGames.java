@@ -0,0 +1,82 @@
+package com.darringer.games.chess.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+
+/**
+ * Games of random legal moves, for tests that need a repeatable corpus of
+ * positions or games rather than a few hand picked ones.  Every game
+ * drawn from the same instance continues the same random sequence, so a
+ * corpus built from a given seed is the same on every run.
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.logic.GameLogic#getLegalMoves(ChessModel, com.darringer.games.chess.model.Color)
+ *
+ */
+public class RandomGames {
+
+	private GameLogic gameLogic = new GameLogic();
+	private MoveLogic moveLogic = new MoveLogic();
+	private Random random;
+
+
+	/**
+	 *
+	 * @param seed
+	 */
+	public RandomGames(long seed) {
+		random = new Random(seed);
+	}
+
+
+	/**
+	 * Play random legal moves from the given {@link ChessModel}, which is
+	 * left as it is, until the game is over or the given number of plies
+	 * has been played
+	 *
+	 * @param start
+	 * @param maxPlies
+	 * @return the moves played
+	 */
+	public List<ChessMove> getMoves(ChessModel start, int maxPlies) {
+		List<ChessMove> moves = new ArrayList<ChessMove>();
+		getPositions(start, maxPlies, moves);
+		return moves;
+	}
+
+
+	/**
+	 * Play random legal moves from the given {@link ChessModel}, which is
+	 * left as it is, until the game is over or the given number of plies
+	 * has been played
+	 *
+	 * @param start
+	 * @param maxPlies
+	 * @return a copy of the position after each move
+	 */
+	public List<ChessModel> getPositions(ChessModel start, int maxPlies) {
+		return getPositions(start, maxPlies, new ArrayList<ChessMove>());
+	}
+
+
+	private List<ChessModel> getPositions(ChessModel start, int maxPlies, List<ChessMove> movesPlayed) {
+		List<ChessModel> positions = new ArrayList<ChessModel>();
+		ChessModel model = new ChessModel(start);
+		for (int ply=0; ply < maxPlies; ply++) {
+			List<ChessMove> moves = gameLogic.getLegalMoves(model, model.getActiveColor());
+			if (moves.isEmpty()) {
+				break;
+			}
+			ChessMove move = moves.get(random.nextInt(moves.size()));
+			model = moveLogic.applyMoveToModel(model, move);
+			movesPlayed.add(move);
+			positions.add(new ChessModel(model));
+		}
+		return positions;
+	}
+}
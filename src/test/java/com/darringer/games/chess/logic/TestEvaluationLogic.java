@@ -2,14 +2,27 @@ package com.darringer.games.chess.logic;
 
 import static com.darringer.games.chess.logic.EvaluationLogic.BLACK_WIN_THRESHOLD;
 import static com.darringer.games.chess.logic.EvaluationLogic.WHITE_WIN_THRESHOLD;
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
 import static com.darringer.games.chess.model.Location.*;
 import static com.darringer.games.chess.model.Piece.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
 import org.junit.Test;
 
 import com.darringer.games.chess.converter.ChessModelFENConverter;
 import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessMoveCastleKingSide;
+import com.darringer.games.chess.model.ChessMoveCastleQueenSide;
+import com.darringer.games.chess.model.ChessMoveEnPassantCapture;
+import com.darringer.games.chess.model.ChessMovePawnPromotion;
+import com.darringer.games.chess.model.ChessSearchTimeoutException;
 import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.PositionBatch;
 
 
 /**
@@ -27,8 +40,8 @@ public class TestEvaluationLogic {
 	@Test
 	public void testEmptyGame() {
 		ChessModel model = new ChessModel();
-		Float result = logic.evaluateModel(model);
-		assert result == 0.0f : "An empty board should have no score";
+		int result = logic.evaluateModel(model);
+		assert result == 0 : "An empty board should have no score";
 	}
 	
 
@@ -41,8 +54,8 @@ public class TestEvaluationLogic {
 		} catch (ChessSystemException cse) {
 			assert false : "Unexpected exception when creating new model: " + cse.getMessage();
 		}
-		Float result = logic.evaluateModel(model);
-		assert result == 0.0f : "A new game should have no score";
+		int result = logic.evaluateModel(model);
+		assert result == 0 : "A new game should have no score";
 	}
 	
 
@@ -58,8 +71,8 @@ public class TestEvaluationLogic {
 		model.setPieceAtLocation(D1, WhiteQueen);
 		model.setPieceAtLocation(E1, WhiteKing);
 
-		Float result = logic.evaluateModel(model);
-		assert result > 0.0f : "White should have a significant point advantage";
+		int result = logic.evaluateModel(model);
+		assert result > 0 : "White should have a significant point advantage";
 		assert result < WHITE_WIN_THRESHOLD : "White should not havewon the game yet";
 		
 		// white just has a king left
@@ -72,7 +85,7 @@ public class TestEvaluationLogic {
 		model.setPieceAtLocation(E8, BlackKing);
 
 		result = logic.evaluateModel(model);
-		assert result < 0.0f : "Black should have a significant point advantage";
+		assert result < 0 : "Black should have a significant point advantage";
 		assert result > BLACK_WIN_THRESHOLD : "Black should not have won the game yet";
 	}
 	
@@ -89,7 +102,7 @@ public class TestEvaluationLogic {
 		model.setPieceAtLocation(C2, WhiteQueen);
 		model.setPieceAtLocation(D2, WhiteBishop);
 		
-		Float result = logic.evaluateModel(model);
+		int result = logic.evaluateModel(model);
 		assert result < BLACK_WIN_THRESHOLD : "White lost its king, so it should be a black win";
 
 		model = new ChessModel();
@@ -105,4 +118,395 @@ public class TestEvaluationLogic {
 		result = logic.evaluateModel(model);
 		assert result > WHITE_WIN_THRESHOLD : "Black lost its king, so it should be a white win";		
 	}
+	
+	
+	/**
+	 * Running totals maintained while applying moves should always
+	 * agree with a full recompute of the evaluation.
+	 */
+	@Test
+	public void testIncrementalEvaluation() throws ChessSystemException {
+		EvaluationLogicCenterWeighted centerWeighted = new EvaluationLogicCenterWeighted();
+		MoveLogic moveLogic = new MoveLogic(centerWeighted);
+		ChessModel model = new ChessModelFENConverter().getModelFromString("r3k2r/1pp2ppp/8/3pP3/2B5/8/1PP2PpP/R3K2R w KQkq d6 0 1");
+		assert model.getEvaluationTerms() == null : "Running totals should not be initialized yet";
+		centerWeighted.initializeModel(model);
+		assertIncrementalEvaluation(centerWeighted, model);
+		
+		ChessMove[] moves = {
+			new ChessMoveEnPassantCapture(WhitePawn, E5, D6),
+			new ChessMovePawnPromotion(BlackPawn, G2, H1, BlackQueen),
+			new ChessMoveCastleQueenSide(WhiteKing, E1, C1),
+			new ChessMove(BlackQueen, H1, D1),
+			new ChessMove(WhiteKing, C1, D1),
+			new ChessMoveCastleKingSide(BlackKing, E8, G8),
+			new ChessMove(WhiteBishop, C4, F7)
+		};
+		for (ChessMove move : moves) {
+			model = moveLogic.applyMoveToModel(model, move);
+			assertIncrementalEvaluation(centerWeighted, model);
+		}
+		
+		// clones carry their own copy of the totals
+		ChessModel clone = new ChessModel(model);
+		moveLogic.applyMoveToModel(clone, new ChessMove(BlackRook, F8, F7));
+		assertIncrementalEvaluation(centerWeighted, clone);
+		assertIncrementalEvaluation(centerWeighted, model);
+	}
+	
+	
+	/**
+	 * Piece-square table evaluation should be symmetric, keep its win 
+	 * thresholds and agree with its running totals.
+	 */
+	@Test
+	public void testPieceSquareTables() throws ChessSystemException {
+		EvaluationLogicPieceSquareTables tables = new EvaluationLogicPieceSquareTables();
+		ChessModelFENConverter converter = new ChessModelFENConverter();
+		ChessModel model = converter.getModelFromString(ChessModelFENConverter.FEN_NEW);
+		assert tables.evaluateModel(model) == 0 : "A new game should have no score";
+		
+		// central pawns are worth more than edge pawns in the opening
+		MoveLogic moveLogic = new MoveLogic(tables);
+		tables.initializeModel(model);
+		ChessModel centerModel = moveLogic.applyMoveToModel(new ChessModel(model), new ChessMove(WhitePawn, E2, E4));
+		ChessModel edgeModel = moveLogic.applyMoveToModel(new ChessModel(model), new ChessMove(WhitePawn, A2, A4));
+		assert tables.evaluateModel(centerModel) > tables.evaluateModel(edgeModel) : "E4 should be preferred over A4";
+		assertIncrementalEvaluation(tables, centerModel);
+		assertIncrementalEvaluation(tables, edgeModel);
+		
+		// mirrored positions should have opposite scores
+		ChessModel whiteModel = converter.getModelFromString("4k3/8/8/8/3N4/8/1P6/4K3 w - - 0 1");
+		ChessModel blackModel = converter.getModelFromString("4k3/1p6/8/3n4/8/8/8/4K3 w - - 0 1");
+		assert tables.evaluateModel(whiteModel) == -tables.evaluateModel(blackModel) : "Mirrored positions should have opposite scores";
+		
+		// losing the king is still a loss
+		model = new ChessModel();
+		model.setPieceAtLocation(E1, WhiteKing);
+		model.setPieceAtLocation(E8, BlackKing);
+		model.setPieceAtLocation(A7, BlackQueen);
+		model.setPieceAtLocation(B7, BlackQueen);
+		assert tables.evaluateModel(model) > BLACK_WIN_THRESHOLD : "Black should not have won the game yet";
+		model.setPieceAtLocation(E1, None);
+		assert tables.evaluateModel(model) < BLACK_WIN_THRESHOLD : "White lost its king, so it should be a black win";
+	}
+	
+	
+	/**
+	 * Transpositions should share a position key, and the evaluation
+	 * cache should answer repeated positions without changing the scores.
+	 */
+	@Test
+	public void testEvaluationCache() throws ChessSystemException, ChessSearchTimeoutException {
+		ChessModelFENConverter converter = new ChessModelFENConverter();
+		ChessModel model = converter.getModelFromString(ChessModelFENConverter.FEN_NEW);
+		MoveLogic moveLogic = new MoveLogic();
+
+		// the same position reached by different move orders
+		ChessModel first = new ChessModel(model);
+		moveLogic.applyMoveToModel(first, new ChessMove(WhiteKnight, G1, F3));
+		moveLogic.applyMoveToModel(first, new ChessMove(BlackKnight, B8, C6));
+		moveLogic.applyMoveToModel(first, new ChessMove(WhiteKnight, B1, C3));
+		ChessModel second = new ChessModel(model);
+		moveLogic.applyMoveToModel(second, new ChessMove(WhiteKnight, B1, C3));
+		moveLogic.applyMoveToModel(second, new ChessMove(BlackKnight, B8, C6));
+		moveLogic.applyMoveToModel(second, new ChessMove(WhiteKnight, G1, F3));
+		assert first.getPieceKey() == second.getPieceKey() : "Transpositions should have the same piece key";
+		assert first.getPieceKey() != model.getPieceKey() : "Different positions should have different piece keys";
+
+		// keys follow the pieces, not the history
+		ChessModel parsed = converter.getModelFromString("r1bqkbnr/pppppppp/2n5/8/8/2N2N2/PPPPPPPP/R1BQKB1R b KQkq - 3 2");
+		assert parsed.getPieceKey() == first.getPieceKey() : "Parsed and played positions should have the same piece key";
+		assert parsed.getPositionKey() == first.getPositionKey() : "Parsed and played positions should have the same position key";
+		parsed.setActiveColor(White);
+		assert parsed.getPositionKey() != first.getPositionKey() : "Side to move should be part of the position key";
+
+		// cached scores should match the wrapped evaluation
+		EvaluationLogicPieceSquareTables tables = new EvaluationLogicPieceSquareTables();
+		EvaluationLogicCache cache = new EvaluationLogicCache(tables, 1000);
+		assert cache.getSize() == 1024 : "Cache size should be rounded up to a power of two";
+		assert cache.evaluateModel(first) == tables.evaluateModel(first) : "Cached score should match";
+		assert cache.evaluateModel(second) == tables.evaluateModel(second) : "Cached score should match";
+		assert cache.evaluateModel(model) == tables.evaluateModel(model) : "Cached score should match";
+		assert cache.getHits() == 1l : "The transposition should have been a cache hit";
+		assert cache.getMisses() == 2l : "The other positions should have been cache misses";
+
+		// the same position later in the game is still the same entry
+		ChessModel later = new ChessModel(first);
+		later.setFullmoveNumber(30);
+		assert cache.evaluateModel(later) == tables.evaluateModel(later) : "Cached score should match";
+		assert cache.getHits() == 2l : "A transposition at another move number should have been a cache hit";
+
+		// unless the evaluation scores the phase of the game by move number
+		EvaluationLogicCenterWeighted centerWeighted = new EvaluationLogicCenterWeighted();
+		EvaluationLogicCache centerWeightedCache = new EvaluationLogicCache(centerWeighted, 1024);
+		ChessModel opening = new ChessModel(first);
+		ChessModel laterOpening = new ChessModel(first);
+		laterOpening.setFullmoveNumber(10);
+		ChessModel middleGame = new ChessModel(first);
+		middleGame.setFullmoveNumber(30);
+		assert centerWeighted.evaluateModel(opening) != centerWeighted.evaluateModel(middleGame) : "Center weighting should depend on the fullmove number";
+		assert centerWeightedCache.evaluateModel(opening) == centerWeighted.evaluateModel(opening) : "Cached opening score should match";
+		assert centerWeightedCache.evaluateModel(middleGame) == centerWeighted.evaluateModel(middleGame) : "Cached middle game score should match";
+		assert centerWeightedCache.getHits() == 0l : "Different phases should not share a cache entry";
+		assert centerWeightedCache.evaluateModel(laterOpening) == centerWeighted.evaluateModel(laterOpening) : "Cached opening score should match";
+		assert centerWeightedCache.getHits() == 1l : "The same phase should share a cache entry";
+
+		// lazy tiers are passed through, and only exact scores are cached
+		centerWeightedCache.clear();
+		int full = centerWeighted.evaluateModel(middleGame);
+		int material = centerWeighted.evaluateMaterial(middleGame);
+		assert centerWeightedCache.evaluateMaterial(middleGame) == material : "Material tier should be passed through";
+		int bound = centerWeightedCache.evaluateModel(middleGame, full + 1000, full + 2000);
+		assert bound == centerWeighted.evaluateModel(middleGame, full + 1000, full + 2000) : "Lazy bound should be passed through";
+		assert centerWeightedCache.evaluateModel(middleGame, full - 1, full + 1) == full : "A bound should not be cached";
+		assert centerWeightedCache.evaluateModel(middleGame, full + 1000, full + 2000) == full : "An exact score should be cached";
+		assert centerWeightedCache.getHits() == 1l : "Only the exact score should have been a cache hit";
+		assert cache.evaluateModel(first, -100000, 100000) == tables.evaluateModel(first) : "Evaluations that are not lazy should be scored in full";
+
+		// as are batches
+		PositionBatch batch = new PositionBatch(4);
+		batch.add(opening);
+		batch.add(middleGame);
+		int[] batchScores = centerWeightedCache.evaluateBatch(batch);
+		assert (batchScores[0] == centerWeighted.evaluateModel(opening)) && (batchScores[1] == full) : "Batch scores should match";
+
+		// running totals are passed through to the wrapped evaluation
+		MoveLogic cachedMoveLogic = new MoveLogic(cache);
+		ChessModel incrementalModel = new ChessModel(model);
+		cache.initializeModel(incrementalModel);
+		cachedMoveLogic.applyMoveToModel(incrementalModel, new ChessMove(WhitePawn, E2, E4));
+		assertIncrementalEvaluation(cache, incrementalModel);
+		assertIncrementalEvaluation(tables, incrementalModel);
+
+		// and searching with the cache should still work
+		GameLogic gameLogic = new GameLogic();
+		gameLogic.setEvaluationLogic(cache);
+		gameLogic.getBestMove(model, White, 3);
+		assert cache.getHits() > 0l : "Searching should hit the cache";
+		cache.clear();
+		assert cache.getHits() == 0l && cache.getMisses() == 0l : "Clearing the cache should reset the counters";
+	}
+
+
+	/**
+	 * Doubled, isolated and passed pawns should be recognized, and pawn
+	 * structures should be looked up by the pawn key.
+	 */
+	@Test
+	public void testPawnStructure() throws ChessSystemException {
+		ChessModelFENConverter converter = new ChessModelFENConverter();
+		ChessModel model = converter.getModelFromString("4k3/3p4/8/3P4/8/P7/P1P1P3/4K3 w - - 0 1");
+		PawnStructureLogic pawnLogic = new PawnStructureLogic(new PawnHashTable(64));
+
+		// doubled (-15) and isolated (-24) a-pawns that are passed (+15), isolated black pawn (+12)
+		assert pawnLogic.evaluatePawns(model) == -12 : "Unexpected pawn structure score " + pawnLogic.evaluatePawns(model);
+		assert pawnLogic.getPassedPawns(model, White) == ((1l << A2.ordinal()) | (1l << A3.ordinal())) : "Only the a-pawns should be passed";
+		assert pawnLogic.getPassedPawns(model, Black) == 0l : "The black pawn is not passed";
+		assert pawnLogic.getPawnHashTable().getMisses() == 1l : "The pawn structure should only be computed once";
+
+		// moving other pieces keeps the pawn key, moving pawns does not
+		MoveLogic moveLogic = new MoveLogic();
+		long pawnKey = model.getPawnKey();
+		moveLogic.applyMoveToModel(model, new ChessMove(WhiteKing, E1, F1));
+		assert model.getPawnKey() == pawnKey : "King moves should not change the pawn key";
+		pawnLogic.evaluatePawns(model);
+		assert pawnLogic.getPawnHashTable().getMisses() == 1l : "The pawn structure should have been found in the table";
+		moveLogic.applyMoveToModel(model, new ChessMove(BlackPawn, D7, D6));
+		assert model.getPawnKey() != pawnKey : "Pawn moves should change the pawn key";
+
+		// mirrored pawn structures should have opposite scores
+		ChessModel whiteModel = converter.getModelFromString("4k3/8/8/8/8/3P4/3P4/4K3 w - - 0 1");
+		ChessModel blackModel = converter.getModelFromString("4k3/3p4/3p4/8/8/8/8/4K3 w - - 0 1");
+		assert pawnLogic.evaluatePawns(whiteModel) == -pawnLogic.evaluatePawns(blackModel) : "Mirrored pawn structures should have opposite scores";
+
+		// the pawn terms are part of the center weighted evaluation
+		EvaluationLogicCenterWeighted centerWeighted = new EvaluationLogicCenterWeighted();
+		assert centerWeighted.evaluateModel(whiteModel) < new EvaluationLogicSimpleMaterialValue().evaluateModel(whiteModel) : "Doubled pawns should cost more than passed pawns gain";
+		centerWeighted.initializeModel(whiteModel);
+		assertIncrementalEvaluation(centerWeighted, whiteModel);
+	}
+
+
+	/**
+	 * A neural network should survive a round trip through its file
+	 * format, and its accumulators should agree with a full recompute.
+	 */
+	@Test
+	public void testNeuralNetwork() throws ChessSystemException, IOException {
+		// a small network with arbitrary (but repeatable) weights
+		int hiddenSize = 16;
+		Random random = new Random(42l);
+		short[] featureWeights = new short[EvaluationLogicNeuralNetwork.FEATURE_COUNT * hiddenSize];
+		for (int i=0; i < featureWeights.length; i++) {
+			featureWeights[i] = (short) (random.nextInt(129) - 64);
+		}
+		short[] featureBiases = new short[hiddenSize];
+		for (int i=0; i < hiddenSize; i++) {
+			featureBiases[i] = (short) random.nextInt(64);
+		}
+		short[] outputWeights = new short[2 * hiddenSize];
+		for (int i=0; i < outputWeights.length; i++) {
+			outputWeights[i] = (short) (random.nextInt(129) - 64);
+		}
+		EvaluationLogicNeuralNetwork network = new EvaluationLogicNeuralNetwork(hiddenSize, featureWeights, featureBiases, outputWeights, 1000);
+
+		// save and reload it
+		File file = File.createTempFile("network", ".nnue");
+		file.deleteOnExit();
+		network.save(file);
+		EvaluationLogicNeuralNetwork loaded = new EvaluationLogicNeuralNetwork(file);
+		assert loaded.getHiddenSize() == hiddenSize : "Hidden layer size should survive the round trip";
+
+		// both should agree, and the running accumulators should match a full recompute
+		MoveLogic moveLogic = new MoveLogic(loaded);
+		ChessModel model = new ChessModelFENConverter().getModelFromString("r3k2r/1pp2ppp/8/3pP3/2B5/8/1PP2PpP/R3K2R w KQkq d6 0 1");
+		assert loaded.evaluateModel(model) == network.evaluateModel(model) : "Loaded network should give the same score";
+		loaded.initializeModel(model);
+		assertIncrementalEvaluation(loaded, model);
+		ChessMove[] moves = {
+			new ChessMoveEnPassantCapture(WhitePawn, E5, D6),
+			new ChessMovePawnPromotion(BlackPawn, G2, H1, BlackQueen),
+			new ChessMoveCastleQueenSide(WhiteKing, E1, C1),
+			new ChessMove(BlackQueen, H1, D1),
+			new ChessMove(WhiteKing, C1, D1)
+		};
+		for (ChessMove move : moves) {
+			model = moveLogic.applyMoveToModel(model, move);
+			assertIncrementalEvaluation(loaded, model);
+		}
+
+		// losing the king is still a loss
+		moveLogic.applyMoveToModel(model, new ChessMove(BlackRook, A8, D8));
+		moveLogic.applyMoveToModel(model, new ChessMove(WhiteBishop, C4, E6));
+		moveLogic.applyMoveToModel(model, new ChessMove(BlackRook, D8, D1));
+		assert loaded.evaluateModelIncrementally(model) < BLACK_WIN_THRESHOLD : "White lost its king, so it should be a black win";
+		assertIncrementalEvaluation(loaded, model);
+
+		// a huge output bias still can't pass for a won game
+		ChessModel start = new ChessModelFENConverter().getModelFromString(ChessModelFENConverter.FEN_NEW);
+		int winning = new EvaluationLogicNeuralNetwork(hiddenSize, featureWeights, featureBiases, outputWeights, Integer.MAX_VALUE / 2).evaluateModel(start);
+		int losing = new EvaluationLogicNeuralNetwork(hiddenSize, featureWeights, featureBiases, outputWeights, -Integer.MAX_VALUE / 2).evaluateModel(start);
+		assert (winning > 0) && (winning < WHITE_WIN_THRESHOLD) : "Network output should stay below the white win threshold, not " + winning;
+		assert (losing < 0) && (losing > BLACK_WIN_THRESHOLD) : "Network output should stay above the black win threshold, not " + losing;
+
+		// anything else is not a network
+		File bogus = File.createTempFile("bogus", ".nnue");
+		bogus.deleteOnExit();
+		try {
+			new EvaluationLogicNeuralNetwork(bogus);
+			assert false : "An empty file should not load";
+		} catch (ChessSystemException cse) {
+			// expected
+		}
+	}
+
+
+	/**
+	 * Scoring a batch should give the same scores as scoring each of its
+	 * positions on its own.
+	 */
+	@Test
+	public void testBatchEvaluation() throws ChessSystemException {
+		ChessModelFENConverter converter = new ChessModelFENConverter();
+		String[] fens = {
+			ChessModelFENConverter.FEN_NEW,
+			"r3k2r/1pp2ppp/8/3pP3/2B5/8/1PP2PpP/R3K2R w KQkq d6 0 1",
+			"4k3/3p4/8/3P4/8/P7/P1P1P3/4K3 w - - 0 30",
+			"4k3/8/8/8/3N4/8/1P6/4K3 b - - 0 1",
+			"4k3/8/8/8/8/8/8/8 w - - 0 1"
+		};
+		PositionBatch batch = new PositionBatch(8);
+		ChessModel[] models = new ChessModel[fens.length];
+		for (int i=0; i < fens.length; i++) {
+			models[i] = converter.getModelFromString(fens[i]);
+			assert batch.add(models[i]) == i : "Positions should be added in order";
+		}
+		assert batch.getSize() == fens.length : "Batch should hold every position";
+
+		EvaluationLogic[] evaluations = {
+			new EvaluationLogicPieceSquareTables(),
+			new EvaluationLogicSimpleMaterialValue(),
+			new EvaluationLogicCenterWeighted()
+		};
+		for (EvaluationLogic evaluation : evaluations) {
+			int[] scores = new EvaluationLogicBatchAdapter(evaluation).evaluateBatch(batch);
+			assert scores.length == fens.length : "There should be one score per position";
+			for (int i=0; i < fens.length; i++) {
+				assert scores[i] == evaluation.evaluateModel(models[i]) : String.format("Batch score of %s should match for %s", evaluation.getClass().getSimpleName(), fens[i]);
+			}
+		}
+
+		// positions can be rebuilt from the batch
+		ChessModel rebuilt = batch.getModel(3);
+		assert rebuilt.getPieceKey() == models[3].getPieceKey() : "Rebuilt position should have the same pieces";
+		assert rebuilt.getActiveColor() == Black : "Rebuilt position should have the same side to move";
+		batch.clear();
+		assert batch.getSize() == 0 : "Cleared batch should be empty";
+	}
+
+
+	/**
+	 * Lazy evaluation should match the full evaluation inside the window,
+	 * and skip the pawn structure when far outside of it.
+	 */
+	@Test
+	public void testLazyEvaluation() throws ChessSystemException {
+		EvaluationLogicCenterWeighted centerWeighted = new EvaluationLogicCenterWeighted();
+		ChessModel model = new ChessModelFENConverter().getModelFromString("4k3/3p4/8/3P4/8/P7/P1P1P3/4K3 w - - 0 30");
+		int full = centerWeighted.evaluateModel(model);
+		int pawns = centerWeighted.getPawnScore(model);
+		int attacks = centerWeighted.getAttackScore(model);
+		assert pawns != 0 : "Position should have pawn structure terms";
+		assert centerWeighted.evaluateModel(model, full - 1, full + 1) == full : "Lazy score inside the window should be exact";
+		assert centerWeighted.evaluateModel(model, full - 1000, full - 500) == full - pawns - attacks : "Positional tiers should be skipped above the window";
+		assert centerWeighted.evaluateModel(model, full + 500, full + 1000) == full - pawns - attacks : "Positional tiers should be skipped below the window";
+		assert centerWeighted.evaluateMaterial(model) == new EvaluationLogicSimpleMaterialValue().evaluateModel(model) : "Material tier should be the material balance";
+
+		// running totals give the same results
+		centerWeighted.initializeModel(model);
+		assert centerWeighted.evaluateModel(model, full - 1, full + 1) == full : "Lazy score from running totals should be exact";
+		assert centerWeighted.evaluateMaterial(model) == new EvaluationLogicSimpleMaterialValue().evaluateModel(model) : "Material tier from running totals should be the material balance";
+
+		// skipped tiers never move a score back across the window, even 
+		// with passed pawns and mobility well past the margins
+		String[] fens = {
+			"4k3/PPPPP3/8/8/8/8/8/4K3 w - - 0 30",
+			"4k3/8/8/8/8/8/3ppppp/4K3 b - - 0 30",
+			"k7/8/8/3Q4/2Q1Q3/3Q4/8/K7 w - - 0 30",
+			"1k6/1pp5/8/8/8/8/PPPPPPPP/RNBQKBNR w KQ - 0 30"
+		};
+		for (String fen : fens) {
+			model = new ChessModelFENConverter().getModelFromString(fen);
+			full = centerWeighted.evaluateModel(model);
+			for (int alpha = full - 600; alpha <= full + 600; alpha += 10) {
+				int beta = alpha + 20;
+				int lazy = centerWeighted.evaluateModel(model, alpha, beta);
+				if (full <= alpha) {
+					assert lazy <= alpha : String.format("Lazy score %d should fail low below %d for %s", lazy, alpha, fen);
+				} else if (full >= beta) {
+					assert lazy >= beta : String.format("Lazy score %d should fail high above %d for %s", lazy, beta, fen);
+				} else {
+					assert lazy == full : String.format("Lazy score %d should be exact inside (%d, %d) for %s", lazy, alpha, beta, fen);
+				}
+			}
+		}
+		model = new ChessModelFENConverter().getModelFromString(fens[0]);
+		assert centerWeighted.getPawnScore(model) == 150 : "Passed pawns should be clamped to the pawn structure margin";
+		model = new ChessModelFENConverter().getModelFromString(fens[2]);
+		assert centerWeighted.getAttackScore(model) == 100 : "Mobility should be clamped to the attack margin";
+	}
+
+
+	/**
+	 * Helper function comparing incremental and full evaluation results
+	 * 
+	 * @param logic
+	 * @param model
+	 */
+	private void assertIncrementalEvaluation(IncrementalEvaluationLogic logic, ChessModel model) {
+		int incremental = logic.evaluateModelIncrementally(model);
+		int full = logic.evaluateModel(model);
+		assert incremental == full : String.format("Incremental score %d should match full score %d", incremental, full);
+	}
 }
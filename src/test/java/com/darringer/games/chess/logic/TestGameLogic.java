@@ -2,17 +2,37 @@ package com.darringer.games.chess.logic;
 
 import static com.darringer.games.chess.model.Color.Black;
 import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.GameState.*;
 import static com.darringer.games.chess.model.Location.*;
 import static com.darringer.games.chess.model.Piece.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
+import com.darringer.games.chess.converter.ChessModelFENConverter;
+import com.darringer.games.chess.database.PositionDatabase;
+import com.darringer.games.chess.database.PositionRecord;
+import com.darringer.games.chess.model.ChessInvalidMoveException;
 import com.darringer.games.chess.model.ChessModel;
 import com.darringer.games.chess.model.ChessMove;
 import com.darringer.games.chess.model.ChessMoveEnPassantCapture;
 import com.darringer.games.chess.model.ChessMovePawnPromotion;
 import com.darringer.games.chess.model.ChessSearchTimeoutException;
+import com.darringer.games.chess.model.ChessSystemException;
 import com.darringer.games.chess.model.Color;
 
 /**
@@ -72,9 +92,12 @@ public class TestGameLogic {
 		ChessMove move = getBestMove(model, Black, 0);
 		ChessMove expected = new ChessMove(BlackPawn, E5, D4);
 		assert move.equals(expected) : "Expected black pawn to capture white pawn with depth 0";
+		// with quiescence search black sees it can also win the pawn back after Ke7 dxe5 Ke6
+		logic.setQuiescenceSearch(false);
 		move = getBestMove(model, Black, 4);
 		expected = new ChessMove(BlackPawn, E5, D4);
 		assert move.equals(expected) : "Expected black pawn to capture white pawn with depth 4";
+		logic.setQuiescenceSearch(true);
 		
 		model = new ChessModel();
 		model.setPieceAtLocation(E8, BlackKing);
@@ -90,9 +113,11 @@ public class TestGameLogic {
 		move = getBestMove(model, White, 0);
 		expected = new ChessMove(WhitePawn, E4, D5);
 		assert move.equals(expected) : "Expected white pawn to capture black pawn with depth 0";		
+		logic.setQuiescenceSearch(false);
 		move = getBestMove(model, White, 4);
 		expected = new ChessMove(WhitePawn, E4, D5);
 		assert move.equals(expected) : "Expected white pawn to capture black pawn with depth 4";
+		logic.setQuiescenceSearch(true);
 
 	}
 	
@@ -189,6 +214,26 @@ public class TestGameLogic {
 	}
 
 	
+	/**
+	 * Lazy evaluation (material only at interior nodes, windowed at the 
+	 * leaves) should still find the mate.
+	 */
+	@Test
+	public void testMateInOneLazyEvaluation() {
+		ChessModel model = new ChessModel();
+		model.setPieceAtLocation(A2, BlackPawn);
+		model.setPieceAtLocation(A8, BlackRook);
+		model.setPieceAtLocation(C7, WhiteBishop);
+		model.setPieceAtLocation(G6, WhiteKing);
+		model.setPieceAtLocation(H6, WhiteKnight);
+		model.setPieceAtLocation(H8, BlackKing);
+		logic.setEvaluationLogic(new EvaluationLogicCenterWeighted());
+		ChessMove move = getBestMove(model, White, 2);
+		assert move.equals(new ChessMove(WhiteBishop, C7, E5)) : "White bishop should make mate in one";
+		assert move.isBlackInCheckMate() : "Black should be in check mate";
+	}
+
+	
 	@Test
 	public void testMateInOne2() {
 		ChessModel model = new ChessModel();
@@ -554,6 +599,25 @@ public class TestGameLogic {
 	}
 	
 	
+	/**
+	 * Mate scores should keep the distance to mate: black's rook ladder
+	 * mates in two with the white king on h1, and in three on h2.
+	 */
+	@Test
+	public void testMateDistance() throws ChessSystemException {
+		GameLogic mateLogic = new GameLogic();
+		mateLogic.performBlackCounterMove(new ChessModelFENConverter().getModelFromString("r5k1/1r6/8/8/8/8/8/7K b - - 0 1"), 30);
+		SearchIteration mateInTwo = mateLogic.getIterations().get(mateLogic.getIterations().size() - 1);
+		mateLogic.performBlackCounterMove(new ChessModelFENConverter().getModelFromString("r5k1/1r6/8/8/8/8/7K/8 b - - 0 1"), 30);
+		SearchIteration mateInThree = mateLogic.getIterations().get(mateLogic.getIterations().size() - 1);
+		
+		assert mateInTwo.getScore() < -EvaluationLogic.MATE_THRESHOLD : "Mate in two should have a mate score, not " + mateInTwo.getScore();
+		assert mateInThree.getScore() < -EvaluationLogic.MATE_THRESHOLD : "Mate in three should have a mate score, not " + mateInThree.getScore();
+		assert mateInTwo.getScore() < mateInThree.getScore() : "Mate in two should score better for black than mate in three";
+		assert !mateInThree.getBestMove().isWhiteInCheckMate() : "The first move of a mate in three is not mate yet";
+	}
+	
+	
 	/**
 	 * Ignoring because of the time it takes to run this at the moment.
 	 * Search with depth 6 took 13197852 on February 1
@@ -623,6 +687,215 @@ public class TestGameLogic {
 	}
 	
 	
+	/**
+	 * When black has exactly one legal reply it should be played
+	 * without starting a search.
+	 */
+	@Test
+	public void testOnlyOneLegalMove() {
+		ChessModel model = new ChessModel();
+		model.setPieceAtLocation(A8, BlackKing);
+		model.setPieceAtLocation(B1, WhiteRook);
+		model.setPieceAtLocation(C6, WhiteKing);
+		model.setActiveColor(Black);
+		
+		model = logic.performBlackCounterMove(model, 10);
+		assert model.getPieceAtLocation(A7) == BlackKing : "Black king should be forced to A7";
+		assert logic.getIterations().isEmpty() : "No search iterations should be needed for a forced move";
+	}
+	
+	
+	/**
+	 * Effective branching factor and next iteration time predictions 
+	 * based on recorded iteration statistics.
+	 */
+	@Test
+	public void testIterationTimePrediction() {
+		List<SearchIteration> iterations = new ArrayList<SearchIteration>();
+		assert logic.getPredictedIterationTime(iterations) == 0l : "Nothing to predict without iterations";
+		
+		iterations.add(new SearchIteration(1, null, 0, 400l, 10l, true));
+		assert Math.abs(logic.getEffectiveBranchingFactor(iterations) - 20.0) < 0.001 : "Two plies of 400 nodes is a branching factor of 20";
+		
+		iterations.add(new SearchIteration(2, null, 0, 4000l, 100l, true));
+		assert Math.abs(logic.getEffectiveBranchingFactor(iterations) - 10.0) < 0.001 : "Node count grew by a factor of 10";
+		
+		iterations.add(new SearchIteration(3, null, 0, 160000l, 1000l, true));
+		assert Math.abs(logic.getEffectiveBranchingFactor(iterations) - 20.0) < 0.001 : "Geometric mean over the last two iterations";
+		assert logic.getPredictedIterationTime(iterations) == 20000l : "Next iteration should take 20 times longer";
+	}
+	
+	
+	/**
+	 * An external stop request should end a long search promptly,
+	 * still producing a counter move from the completed iterations.
+	 */
+	@Test
+	public void testStopSearch() throws Exception {
+		final ChessModel model = new ChessModelFENConverter().getModelFromString("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+		final GameLogic searchLogic = new GameLogic();
+		final ChessModel[] result = new ChessModel[1];
+		Thread searchThread = new Thread() {
+			public void run() {
+				result[0] = searchLogic.performBlackCounterMove(new ChessModel(model), 60);
+			}
+		};
+		long startTime = System.currentTimeMillis();
+		searchThread.start();
+		Thread.sleep(500);
+		searchLogic.stop();
+		searchThread.join(10000);
+		long time = System.currentTimeMillis() - startTime;
+		
+		assert !searchThread.isAlive() : "The search should have stopped";
+		assert time < 10000 : "The search should not run until its time limit";
+		assert result[0].getActiveColor() == White : "Black should still have made a counter move";
+	}
+	
+	
+	/**
+	 * A stop requested after a move is submitted, but before its search 
+	 * starts, should still stop that search, even once another search has
+	 * been submitted, and should leave the other search alone.
+	 */
+	@Test
+	public void testStopBeforeSearch() throws Exception {
+		ChessModel model = new ChessModelFENConverter().getModelFromString(ChessModelFENConverter.FEN_NEW);
+		GameLogic searchLogic = new GameLogic();
+		final List<Runnable> queue = new ArrayList<Runnable>();
+		Executor executor = new Executor() {
+			public void execute(Runnable command) {
+				queue.add(command);
+			}
+		};
+		CompletableFuture<ChessModel> future = searchLogic.processMoveAsync(model, new ChessMove(WhitePawn, E2, E4), 60, null, executor);
+		searchLogic.stop();
+		CompletableFuture<ChessModel> next = searchLogic.processMoveAsync(model, new ChessMove(WhitePawn, D2, D4), 1, null, executor);
+		long startTime = System.currentTimeMillis();
+		queue.get(0).run();
+		long time = System.currentTimeMillis() - startTime;
+		
+		assert time < 10000 : "The search should not run until its time limit";
+		assert searchLogic.getIterations().isEmpty() : "The search should stop before its first iteration";
+		assert future.get().getActiveColor() == White : "Black should still have made a counter move";
+		
+		queue.get(1).run();
+		assert !searchLogic.getIterations().isEmpty() : "The next search should not be stopped";
+		assert next.get().getPieceAtLocation(D4) == WhitePawn : "The next search should play its own move";
+		assert model.getPieceAtLocation(E2) == WhitePawn : "The caller's model should be left alone";
+		assert model.getActiveColor() == White : "The caller's model should still have white to move";
+	}
+	
+	
+	/**
+	 * Asynchronous move processing should report progress for each 
+	 * search iteration and complete the future with the counter move.
+	 */
+	@Test
+	public void testProcessMoveAsync() throws Exception {
+		ChessModel model = new ChessModelFENConverter().getModelFromString(ChessModelFENConverter.FEN_NEW);
+		final List<SearchIteration> progress = new CopyOnWriteArrayList<SearchIteration>();
+		SearchProgressListener listener = new SearchProgressListener() {
+			public void iterationComplete(SearchIteration iteration) {
+				progress.add(iteration);
+			}
+		};
+		
+		CompletableFuture<ChessModel> future = new GameLogic().processMoveAsync(model, new ChessMove(WhitePawn, E2, E4), 1, listener);
+		ChessModel result = future.get(30, TimeUnit.SECONDS);
+		assert result.getPieceAtLocation(E4) == WhitePawn : "White pawn should have moved to E4";
+		assert result.getActiveColor() == White : "Black should have made a counter move";
+		assert !progress.isEmpty() : "At least one search iteration should have been reported";
+		assert progress.get(0).getBestMove() != null : "Each iteration should report a best move";
+		
+		// invalid moves complete the future exceptionally
+		assert model.getPieceAtLocation(E2) == WhitePawn : "The search should work on a copy of the model";
+		future = new GameLogic().processMoveAsync(model, new ChessMove(WhitePawn, E2, E5), 1, null);
+		try {
+			future.get(30, TimeUnit.SECONDS);
+			assert false : "An invalid move should not produce a model";
+		} catch (ExecutionException ee) {
+			assert ee.getCause() instanceof ChessInvalidMoveException : "Expected an invalid move exception";
+			assert ee.getCause().getMessage().contains("not a valid destination") : "Expected an illegal destination, not " + ee.getCause().getMessage();
+		}
+	}
+	
+	
+	/**
+	 * Cancelling the future of a long search should stop the search 
+	 * promptly and free its thread.
+	 */
+	@Test
+	public void testCancelProcessMoveAsync() throws Exception {
+		ChessModel model = new ChessModelFENConverter().getModelFromString(ChessModelFENConverter.FEN_NEW);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<ChessModel> future = new GameLogic().processMoveAsync(model, new ChessMove(WhitePawn, E2, E4), 60, null, executor);
+			Thread.sleep(500);
+			assert !future.isDone() : "The search should still be running";
+			long startTime = System.currentTimeMillis();
+			assert future.cancel(true) : "The search should be cancelled";
+			
+			// the search thread is free once the search has unwound
+			Future<?> next = executor.submit(new Runnable() {
+				public void run() {
+				}
+			});
+			next.get(10, TimeUnit.SECONDS);
+			long time = System.currentTimeMillis() - startTime;
+			assert future.isCancelled() : "The future should be cancelled";
+			assert time < 10000 : "The search should stop promptly";
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	
+	/**
+	 * Deep enough searches are written back to the position database, and
+	 * a deep enough stored move is played without searching
+	 */
+	@Test
+	public void testPositionDatabase() throws ChessSystemException, IOException {
+		File directory = Files.createTempDirectory("positions").toFile();
+		PositionDatabase database = new PositionDatabase(directory);
+		try {
+			// black mates on the back rank
+			ChessModel model = new ChessModel();
+			model.setPieceAtLocation(G1, WhiteKing);
+			model.setPieceAtLocation(F2, WhitePawn);
+			model.setPieceAtLocation(G2, WhitePawn);
+			model.setPieceAtLocation(H2, WhitePawn);
+			model.setPieceAtLocation(A8, BlackRook);
+			model.setPieceAtLocation(G8, BlackKing);
+			model.setActiveColor(Black);
+			long key = model.getPositionKey();
+			logic.setPositionDatabase(database);
+			logic.setPositionDatabaseDepth(1);
+			ChessModel result = logic.performBlackCounterMove(new ChessModel(model), 5);
+			assert result.getPieceAtLocation(A1) == BlackRook : "Black should find the mate";
+			PositionRecord record = database.get(key);
+			assert record != null : "The search should be stored";
+			assert record.isMove(new ChessMove(BlackRook, A8, A1)) : "The mating move should be stored";
+			assert record.getVisitCount() == 1l : "Stored once";
+			
+			// a deeper stored move wins over searching, even a worse one
+			database.put(key, PositionDatabase.encodeMove(new ChessMove(BlackRook, A8, A2)), 0, 20);
+			result = logic.performBlackCounterMove(new ChessModel(model), 5);
+			assert result.getPieceAtLocation(A2) == BlackRook : "Black should play the stored move";
+			assert logic.getIterations().isEmpty() : "No search for a stored move";
+			assert database.get(key).getVisitCount() == 2l : "Stored twice";
+		} finally {
+			logic.setPositionDatabase(null);
+			database.close();
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+	
+	
 	/**
 	 * Helper function to invoke search logic without worrying about timeouts
 	 * 
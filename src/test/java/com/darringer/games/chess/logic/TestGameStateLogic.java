@@ -0,0 +1,112 @@
+package com.darringer.games.chess.logic;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.GameState.*;
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.PositionHistory;
+
+/**
+ * Test cases for the states of a game told apart by 
+ * {@link GameStateLogic}.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.logic.GameStateLogic
+ *
+ */
+public class TestGameStateLogic {
+
+	private GameLogic logic = new GameLogic();
+	
+
+	/**
+	 * The game state classifier should tell check, check mate and 
+	 * stalemate apart for the player to move, and the search should 
+	 * not be started once the game is over.
+	 */
+	@Test
+	public void testGameState() {
+		GameStateLogic gameStateLogic = new GameStateLogic();
+		ChessModel model = new ChessModel();
+		model.setPieceAtLocation(A8, BlackKing);
+		model.setPieceAtLocation(C7, WhiteQueen);
+		model.setPieceAtLocation(C6, WhiteKing);
+		model.setActiveColor(Black);
+		assert !gameStateLogic.hasLegalMove(model, Black) : "Black has no legal moves";
+		assert gameStateLogic.hasLegalMove(model, White) : "White has legal moves";
+		assert gameStateLogic.getGameState(model, Black) == Stalemate : "Black should be stalemated";
+		assert gameStateLogic.getGameState(model, White) == OK : "White is free to move";
+		model = logic.performBlackCounterMove(model, 10);
+		assert model.getState() == Stalemate : "Black cannot move when stalemated";
+		assert !model.getState().isInProgress() : "Stalemate ends the game";
+		
+		// queen to B7 is check mate
+		model.setPieceAtLocation(C7, None);
+		model.setPieceAtLocation(B7, WhiteQueen);
+		assert gameStateLogic.getGameState(model, Black) == BlackInCheckMate : "Black should be check mated";
+		
+		// without the king's support the queen can be captured
+		model.setPieceAtLocation(C6, None);
+		model.setPieceAtLocation(H1, WhiteKing);
+		assert gameStateLogic.getGameState(model, Black) == BlackInCheck : "Black is only in check";
+		assert gameStateLogic.isLegalMove(model, new ChessMove(BlackKing, A8, B7)) : "Black king can capture the queen";
+		assert !gameStateLogic.isLegalMove(model, new ChessMove(BlackKing, A8, B8)) : "Black king cannot stay on the queen's file";
+		
+		// a missing king has been check mated
+		model.setPieceAtLocation(H1, None);
+		assert gameStateLogic.getGameState(model, Black) == WhiteInCheckMate : "White has lost its king";
+	}
+
+
+	/**
+	 * Positions repeated three times in a game, or fifty moves by each
+	 * side without a capture or pawn move, are draws.  The search scores
+	 * a draw as soon as it reaches one.
+	 */
+	@Test
+	public void testDraws() {
+		GameStateLogic gameStateLogic = new GameStateLogic();
+		MoveLogic moveLogic = new MoveLogic();
+		ChessModel model = new ChessModel();
+		model.setPieceAtLocation(E1, WhiteKing);
+		model.setPieceAtLocation(G1, WhiteKnight);
+		model.setPieceAtLocation(E8, BlackKing);
+		model.setPieceAtLocation(G8, BlackKnight);
+		long key = model.getPositionKey();
+		
+		// shuffle the knights out and back twice
+		ChessMove[] moves = { new ChessMove(WhiteKnight, G1, F3), new ChessMove(BlackKnight, G8, F6), 
+				new ChessMove(WhiteKnight, F3, G1), new ChessMove(BlackKnight, F6, G8) };
+		for (int i=0; i < 8; i++) {
+			assert !gameStateLogic.isDraw(model) : "Not a draw before the third repetition";
+			PositionHistory history = model.getHistory().add(model.getPositionKey());
+			model = moveLogic.applyMoveToModel(model, moves[i % 4]);
+			model.setHistory(history);
+		}
+		assert model.getPositionKey() == key : "Back to the starting position";
+		assert model.getHalfmoveClock() == 8 : "Eight moves without a capture or pawn move";
+		assert model.getHistory().getRepetitionCount(key, model.getHalfmoveClock()) == 2 : "Starting position was seen twice before";
+		assert model.getHistory().getRepetitionCount(key, 4) == 1 : "Only one repetition within the last four plies";
+		assert gameStateLogic.isDraw(model) : "Third repetition is a draw";
+		assert gameStateLogic.getGameState(model, White) == Draw : "Game state should be a draw";
+		
+		// black is a rook down, but any move ends the game in a fifty move draw
+		model = new ChessModel();
+		model.setPieceAtLocation(E1, WhiteKing);
+		model.setPieceAtLocation(A1, WhiteRook);
+		model.setPieceAtLocation(E8, BlackKing);
+		model.setActiveColor(Black);
+		model.setHalfmoveClock(99);
+		model = logic.performBlackCounterMove(model, 10);
+		assert model.getHalfmoveClock() == 100 : "Black king move adds to the halfmove clock";
+		assert model.getState() == Draw : "Fifty moves without progress is a draw";
+		assert logic.getIterations().get(0).getScore() == 0 : "Search should score the draw as even";
+	}
+}
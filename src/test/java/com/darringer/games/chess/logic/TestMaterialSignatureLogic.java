@@ -0,0 +1,73 @@
+package com.darringer.games.chess.logic;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.GameState.*;
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.model.ChessModel;
+
+/**
+ * Test cases for the endings recognized by 
+ * {@link MaterialSignatureLogic}.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.logic.MaterialSignatureLogic
+ *
+ */
+public class TestMaterialSignatureLogic {
+
+	private GameLogic logic = new GameLogic();
+	
+
+	/**
+	 * The material signature should count pieces as they are set, and 
+	 * recognize dead draws, drawish and trivially won endings.  A dead 
+	 * draw ends the game without a search.
+	 */
+	@Test
+	public void testMaterialSignature() {
+		MaterialSignatureLogic signatureLogic = new MaterialSignatureLogic();
+		ChessModel model = new ChessModel();
+		model.setPieceAtLocation(E1, WhiteKing);
+		model.setPieceAtLocation(E8, BlackKing);
+		model.setPieceAtLocation(C3, WhiteKnight);
+		model.setActiveColor(Black);
+		long signature = model.getMaterialSignature();
+		assert signatureLogic.getCount(signature, WhiteKnight) == 1 : "One white knight";
+		assert signatureLogic.getCount(signature, BlackKing) == 1 : "One black king";
+		assert signatureLogic.getCount(signature, WhitePawn) == 0 : "No white pawns";
+		assert signatureLogic.isDeadDraw(signature) : "Knight against a bare king cannot mate";
+		model = logic.performBlackCounterMove(model, 10);
+		assert model.getState() == Draw : "Insufficient material is a draw";
+		assert logic.getIterations().isEmpty() : "No search for a dead draw";
+		
+		// two knights cannot force mate, a knight and bishop can
+		model.setPieceAtLocation(D4, WhiteKnight);
+		signature = model.getMaterialSignature();
+		assert signatureLogic.getCount(signature, WhiteKnight) == 2 : "Two white knights";
+		assert !signatureLogic.isDeadDraw(signature) : "Two knights can mate with help";
+		assert !signatureLogic.isTriviallyWon(signature, White) : "Two knights cannot force mate";
+		assert signatureLogic.getScaledScore(signature, 600) < 100 : "Two knights should be scaled towards a draw";
+		model.setPieceAtLocation(D4, WhiteBishop);
+		signature = model.getMaterialSignature();
+		assert signatureLogic.getCount(signature, WhiteKnight) == 1 : "Knight replaced by bishop";
+		assert signatureLogic.isTriviallyWon(signature, White) : "Bishop and knight mate a bare king";
+		assert signatureLogic.getScaledScore(signature, 600) > 600 : "Known wins get a bonus";
+		
+		// rook against bishop is drawish, the pawns make it normal again
+		model.setPieceAtLocation(C3, None);
+		model.setPieceAtLocation(D4, None);
+		model.setPieceAtLocation(A1, WhiteRook);
+		model.setPieceAtLocation(A8, BlackBishop);
+		signature = model.getMaterialSignature();
+		assert signatureLogic.getScaleFactor(signature, White) < MaterialSignatureLogic.FULL_SCALE : "Rook against bishop is drawish";
+		model.setPieceAtLocation(A2, WhitePawn);
+		model.setPieceAtLocation(A7, BlackPawn);
+		assert signatureLogic.isNormal(model.getMaterialSignature()) : "Pawns on both sides is a normal ending";
+	}
+}
@@ -5,7 +5,6 @@ import static com.darringer.games.chess.model.Color.White;
 import static com.darringer.games.chess.model.Location.*;
 import static com.darringer.games.chess.model.Piece.*;
 
-import org.junit.Ignore;
 import org.junit.Test;
 
 import com.darringer.games.chess.model.CastlingAvailability;
@@ -263,12 +262,28 @@ public class TestMoveLogic {
 	}
 	
 	
-	/**
-	 * TODO: Implement halfmove clock tests (and logic)
-	 */
-	@Ignore
+	@Test
 	public void testHalfmoveClockUpdate() {
-		assert false;		
+		ChessModel model = new ChessModel();
+		model.setPieceAtLocation(E1, WhiteKing);
+		model.setPieceAtLocation(E8, BlackKing);
+		model.setPieceAtLocation(A1, WhiteRook);
+		model.setPieceAtLocation(D7, BlackPawn);
+		model.setPieceAtLocation(H5, BlackKnight);
+		assert 0 == model.getHalfmoveClock() : "Halfmove clock should be 0 initially";
+		
+		model = logic.applyMoveToModel(model, new ChessMove(WhiteRook, A1, A5));
+		assert 1 == model.getHalfmoveClock() : "Halfmove clock counts a rook move";
+		model = logic.applyMoveToModel(model, new ChessMove(BlackKing, E8, F8));
+		assert 2 == model.getHalfmoveClock() : "Halfmove clock counts a king move";
+		model = logic.applyMoveToModel(model, new ChessMove(WhiteRook, A5, H5));
+		assert 0 == model.getHalfmoveClock() : "Halfmove clock is reset by a capture";
+		model = logic.applyMoveToModel(model, new ChessMove(BlackKing, F8, G8));
+		assert 1 == model.getHalfmoveClock() : "Halfmove clock counts again after a capture";
+		model = logic.applyMoveToModel(model, new ChessMove(WhiteKing, E1, E2));
+		assert 2 == model.getHalfmoveClock() : "Halfmove clock counts a king move";
+		model = logic.applyMoveToModel(model, new ChessMove(BlackPawn, D7, D6));
+		assert 0 == model.getHalfmoveClock() : "Halfmove clock is reset by a pawn move";
 	}
 	
 
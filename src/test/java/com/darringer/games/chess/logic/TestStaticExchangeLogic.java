@@ -0,0 +1,76 @@
+package com.darringer.games.chess.logic;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessSearchTimeoutException;
+
+/**
+ * Test cases for the capture sequences scored by 
+ * {@link StaticExchangeLogic}.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.logic.StaticExchangeLogic
+ *
+ */
+public class TestStaticExchangeLogic {
+
+	private GameLogic logic = new GameLogic();
+	
+
+	/**
+	 * Static exchange evaluation should play out the captures on a square
+	 * with the least valuable attacker first, including pieces x-rayed 
+	 * behind other attackers, and the search should not walk into a 
+	 * losing exchange at the depth limit.
+	 */
+	@Test
+	public void testStaticExchange() throws ChessSearchTimeoutException {
+		StaticExchangeLogic staticExchangeLogic = new StaticExchangeLogic();
+		ChessModel model = new ChessModel();
+		model.setPieceAtLocation(H1, WhiteKing);
+		model.setPieceAtLocation(H8, BlackKing);
+		model.setPieceAtLocation(E4, WhitePawn);
+		model.setPieceAtLocation(D5, BlackKnight);
+		model.setPieceAtLocation(E6, BlackPawn);
+		ChessMove move = new ChessMove(WhitePawn, E4, D5);
+		assert staticExchangeLogic.getExchangeScore(model, move) == 200 : "Pawn takes a defended knight wins two pawns";
+		assert !staticExchangeLogic.isLosingCapture(model, move) : "Pawn takes knight is not a losing capture";
+		
+		// doubled rooks win a pawn defended by one rook
+		model = new ChessModel();
+		model.setPieceAtLocation(H1, WhiteKing);
+		model.setPieceAtLocation(H8, BlackKing);
+		model.setPieceAtLocation(D1, WhiteRook);
+		model.setPieceAtLocation(D2, WhiteRook);
+		model.setPieceAtLocation(D5, BlackPawn);
+		model.setPieceAtLocation(D8, BlackRook);
+		move = new ChessMove(WhiteRook, D2, D5);
+		assert staticExchangeLogic.getExchangeScore(model, move) == 100 : "The rook behind should back up the capture";
+		model.setPieceAtLocation(D1, None);
+		assert staticExchangeLogic.getExchangeScore(model, move) == -400 : "A single rook loses the exchange";
+		
+		// a queen grabbing a defended pawn loses the queen
+		model = new ChessModel();
+		model.setPieceAtLocation(H1, WhiteKing);
+		model.setPieceAtLocation(H8, BlackKing);
+		model.setPieceAtLocation(E4, WhitePawn);
+		model.setPieceAtLocation(F3, WhitePawn);
+		model.setPieceAtLocation(D5, BlackQueen);
+		move = new ChessMove(BlackQueen, D5, E4);
+		assert staticExchangeLogic.getExchangeScore(model, move) == -800 : "Queen takes defended pawn loses 8 pawns";
+		assert staticExchangeLogic.isLosingCapture(model, move) : "Queen takes defended pawn is a losing capture";
+		
+		// without quiescence search the recapture is beyond the horizon
+		logic.setQuiescenceSearch(false);
+		assert logic.getBestMove(model, Black, 0).equals(move) : "Without quiescence the pawn looks free";
+		logic.setQuiescenceSearch(true);
+		assert !logic.getBestMove(model, Black, 0).equals(move) : "Quiescence search should see the recapture";
+	}
+}
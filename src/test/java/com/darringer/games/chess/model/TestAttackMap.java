@@ -0,0 +1,65 @@
+package com.darringer.games.chess.model;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.converter.ChessModelFENConverter;
+import com.darringer.games.chess.logic.GameLogic;
+
+/**
+ * Test cases for the attackers per square in an {@link AttackMap}, and
+ * for the castling rules that depend on them.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.model.AttackMap
+ *
+ */
+public class TestAttackMap {
+
+	private GameLogic logic = new GameLogic();
+	
+
+	/**
+	 * Attack maps should count attackers per square, treat pawns as 
+	 * attacking diagonally only, and be shared until the board changes.
+	 */
+	@Test
+	public void testAttackMap() throws ChessSystemException {
+		ChessModel model = new ChessModelFENConverter().getModelFromString("4k3/8/8/8/8/2p5/8/R3K2R w KQ - 0 1");
+		AttackMap attackMap = model.getAttackMap();
+		assert model.getAttackMap() == attackMap : "Attack map should be computed once";
+		assert attackMap.getKingLocation(White) == E1 : "White king should be found";
+		assert attackMap.isAttacked(D2, Black) && attackMap.isAttacked(B2, Black) : "Pawns attack diagonally";
+		assert !attackMap.isAttacked(C2, Black) : "Pawns do not attack straight ahead";
+		assert !logic.isLocationReachableByColor(model, C2, Black) : "A pawn push should not count as an attack";
+		assert attackMap.getAttackCount(D1, White) == 2 : "Rook and king both attack D1";
+		assert attackMap.getAttackCount(E8, White) == 0 : "The king on E8 is not attacked";
+		assert attackMap.isAttacked(A8, White) && !attackMap.isAttacked(A8, Black) : "Rooks attack along open files";
+		assert !attackMap.isInCheck(White) && !attackMap.isInCheck(Black) : "Nobody is in check";
+
+		// castling is still available, the pawn does not attack the king's path
+		Set<ChessMove> kingMoves = WhiteKing.getLogic().getPossibleMoves(model, E1);
+		assert kingMoves.contains(new ChessMoveCastleQueenSide(WhiteKing, E1, C1)) : "White should be able to castle queen side";
+
+		// a pawn attacking D1 prevents castling queen side
+		model.setPieceAtLocation(C3, None);
+		model.setPieceAtLocation(C2, BlackPawn);
+		assert model.getAttackMap() != attackMap : "Attack map should be recomputed after a change";
+		kingMoves = WhiteKing.getLogic().getPossibleMoves(model, E1);
+		assert !kingMoves.contains(new ChessMoveCastleQueenSide(WhiteKing, E1, C1)) : "White should not castle through an attacked square";
+		assert kingMoves.contains(new ChessMoveCastleKingSide(WhiteKing, E1, G1)) : "White should still be able to castle king side";
+		
+		// the kings attack each other's squares too
+		model.setPieceAtLocation(E8, None);
+		model.setPieceAtLocation(E3, BlackKing);
+		assert model.getAttackMap().isAttacked(E2, Black) : "Black king attacks E2";
+		assert !model.getAttackMap().isInCheck(White) : "Kings two squares apart do not give check";
+	}
+}
@@ -0,0 +1,34 @@
+package com.darringer.games.chess.model;
+
+import org.junit.Test;
+
+/**
+ * Test cases for the keys kept by a {@link PositionHistory} as games
+ * are played and branch.
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.model.PositionHistory
+ *
+ */
+public class TestPositionHistory {
+
+	/**
+	 * Histories that branch from the same position keep their own keys,
+	 * and share the keys before the branch.
+	 */
+	@Test
+	public void testBranches() {
+		PositionHistory trunk = PositionHistory.EMPTY;
+		for (long i=0l; i < 1000l; i++) {
+			trunk = trunk.add(i);
+		}
+		PositionHistory first = trunk.add(-1l);
+		PositionHistory second = trunk.add(-2l);
+		assert trunk.getSize() == 1000 : "Adding a key should not change the history it was added to";
+		assert (first.getSize() == 1001) && (second.getSize() == 1001) : "Each branch has one more key";
+		assert (first.getKey(1000) == -1l) && (second.getKey(1000) == -2l) : "Each branch keeps its own latest key";
+		assert (first.getKey(999) == 999l) && (second.getKey(0) == 0l) : "Branches share the earlier keys";
+		assert first.add(-3l).getKey(1000) == -1l : "Extending a branch keeps its keys";
+	}
+}
@@ -0,0 +1,188 @@
+package com.darringer.games.chess.pgn;
+
+import static com.darringer.games.chess.model.ChessMoveType.*;
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.converter.ChessModelFENConverter;
+import com.darringer.games.chess.logic.GameLogic;
+import com.darringer.games.chess.logic.MoveLogic;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessSystemException;
+import com.darringer.games.chess.model.GameResult;
+
+/**
+ * Ensure that the {@link PgnReader} turns PGN into the same moves the
+ * piece logic generates, however the input is split up
+ *
+ * @author cdarringer
+ *
+ * @see com.darringer.games.chess.pgn.PgnReader
+ *
+ */
+public class TestPgnReader {
+
+	private static final String PGN =
+			"[Event \"Paris\"]\n"
+			+ "[White \"Paul Morphy\"]\n"
+			+ "[Black \"Duke Karl / Count Isouard\"]\n"
+			+ "[Result \"1-0\"]\n"
+			+ "\n"
+			+ "1. e4 e5 2. Nf3 d6 3. d4 Bg4 {This is a weak move already.} 4. dxe5 Bxf3 5. Qxf3 dxe5\n"
+			+ "6. Bc4 Nf6 7. Qb3 Qe7 8. Nc3 c6 9. Bg5 b5 $2 (9... Qb4 10. Qxb4) 10. Nxb5 cxb5\n"
+			+ "11. Bxb5+ Nbd7 12. O-O-O Rd8 13. Rxd7 Rxd7 14. Rd1 Qe6 15. Bxd7+ Nxd7\n"
+			+ "16. Qb8+ Nxb8 17. Rd8# 1-0\n"
+			+ "\n"
+			+ "[Event \"En passant and promotion\"]\n"
+			+ "[Annotator \"A \\\"quoted\\\" name\"]\n"
+			+ "1.e4 d5 2.e5 f5 3.exf6 Nc6 4.fxg7 Nf6 5.gxh8=Q Kd7 6.Nf3 a6 7.Be2 b5 8.O-O *\n"
+			+ "\n"
+			+ "[Event \"From a position\"]\n"
+			+ "[SetUp \"1\"]\n"
+			+ "[FEN \"4k3/8/8/8/8/8/4P3/4K3 w - - 0 1\"]\n"
+			+ "1. e4 Kd7 2. e5 1/2-1/2\n"
+			+ "\n"
+			+ "[Event \"Illegal\"]\n"
+			+ "1. e4 e5 2. Ke3 Nc6 1-0\n"
+			+ "\n"
+			+ "; no tags at all\n"
+			+ "1. d4 d5 0-1\n";
+
+	private GameLogic gameLogic = new GameLogic();
+	private MoveLogic moveLogic = new MoveLogic();
+
+
+	@Test
+	public void testRead() throws ChessSystemException {
+		final List<String> summaries = new ArrayList<String>();
+		PgnReader reader = new PgnReader(new PgnGameListener() {
+			public void gameRead(PgnGame game) {
+				summaries.add(getSummary(game));
+				if (game.getTagCount() > 1) {
+					assert game.isTag(1, "White") || game.isTag(1, "Annotator") || game.isTag(1, "SetUp") : "Second tag name";
+				}
+			}
+		});
+		long gameCount = reader.read(Channels.newChannel(new ByteArrayInputStream(PGN.getBytes(StandardCharsets.US_ASCII))));
+		assert gameCount == 4 : "Four games can be played";
+		assert reader.getErrorCount() == 1 : "One game has an illegal move";
+
+		final List<PgnGame> games = new ArrayList<PgnGame>();
+		final List<List<ChessMove>> gameMoves = new ArrayList<List<ChessMove>>();
+		reader = new PgnReader(new PgnGameListener() {
+			public void gameRead(PgnGame game) {
+				// the game is reused, so keep a copy of what we look at
+				PgnGame copy = new PgnGame();
+				copy.clear(game.buffer.clone(), game.getOffset());
+				for (int i=0; i < game.getTagCount(); i++) {
+					copy.addTag(game.tagNameStarts[i], game.tagNameEnds[i], game.tagValueStarts[i], game.tagValueEnds[i]);
+				}
+				copy.result = game.getResult();
+				games.add(copy);
+				gameMoves.add(getLegalMoves(game));
+			}
+		});
+		reader.read(Channels.newChannel(new ByteArrayInputStream(PGN.getBytes(StandardCharsets.US_ASCII))));
+
+		// the opera game
+		List<ChessMove> moves = gameMoves.get(0);
+		assert games.get(0).getTagValue("White").equals("Paul Morphy") : "White player tag";
+		assert games.get(0).getTagValueView(2).toString().equals("Duke Karl / Count Isouard") : "Black player tag view";
+		assert games.get(0).getResult() == GameResult.WhiteWin : "White won";
+		assert moves.size() == 33 : "The variation is skipped";
+		assert moves.get(21).equals(new ChessMove(BlackKnight, B8, D7)) : "Nbd7 is the knight on b8";
+		assert moves.get(22).getType() == CastleQueenSide : "White castles queen side";
+		assert moves.get(32).equals(new ChessMove(WhiteRook, D1, D8)) : "Mate with the rook";
+
+		// en passant, promotion and castling
+		moves = gameMoves.get(1);
+		assert games.get(1).getTagValue("Annotator").equals("A \"quoted\" name") : "Escaped quotes in a tag";
+		assert games.get(1).getResult() == GameResult.Unknown : "Game in progress";
+		assert moves.get(4).getType() == EnPassantCapture : "exf6 is en passant";
+		assert moves.get(8).getPawnPromotionPiece() == WhiteQueen : "gxh8=Q promotes to a queen";
+		assert moves.get(14).getType() == CastleKingSide : "White castles king side";
+
+		// from a position, and without tags
+		assert games.get(2).getStartFen().equals("4k3/8/8/8/8/8/4P3/4K3 w - - 0 1") : "Game from a FEN";
+		assert gameMoves.get(2).size() == 3 : "Three moves from the position";
+		assert games.get(2).getResult() == GameResult.Draw : "Drawn";
+		assert games.get(3).getTagCount() == 0 : "No tags";
+		assert gameMoves.get(3).size() == 2 : "Two moves";
+		assert games.get(3).getResult() == GameResult.BlackWin : "Black won";
+	}
+
+
+	@Test
+	public void testSmallBuffer() throws ChessSystemException, IOException {
+		final List<String> summaries = new ArrayList<String>();
+		PgnGameListener listener = new PgnGameListener() {
+			public void gameRead(PgnGame game) {
+				summaries.add(getSummary(game));
+			}
+		};
+		PgnReader reader = new PgnReader(listener);
+		reader.read(Channels.newChannel(new ByteArrayInputStream(PGN.getBytes(StandardCharsets.US_ASCII))));
+		List<String> expected = new ArrayList<String>(summaries);
+
+		// every game is split across buffers, and some do not fit at all
+		File file = File.createTempFile("games", ".pgn");
+		file.deleteOnExit();
+		Files.write(file.toPath(), PGN.getBytes(StandardCharsets.US_ASCII));
+		for (int bufferSize=8; bufferSize <= 256; bufferSize *= 2) {
+			summaries.clear();
+			reader = new PgnReader(listener);
+			reader.setBufferSize(bufferSize);
+			assert reader.read(file) == 4 : "Four games with a buffer of " + bufferSize;
+			assert summaries.equals(expected) : "Same games with a buffer of " + bufferSize;
+		}
+	}
+
+
+	/**
+	 * Tags, moves and result of a game
+	 */
+	private String getSummary(PgnGame game) {
+		StringBuilder summary = new StringBuilder();
+		for (int i=0; i < game.getTagCount(); i++) {
+			summary.append(game.getTagName(i)).append('=').append(game.getTagValue(i)).append(' ');
+		}
+		for (int i=0; i < game.getMoveCount(); i++) {
+			summary.append(game.getMove(i)).append(' ');
+		}
+		return summary.append(game.getResult()).toString();
+	}
+
+
+	/**
+	 * Replay the game, making sure every move is one the piece logic
+	 * generates
+	 */
+	private List<ChessMove> getLegalMoves(PgnGame game) {
+		List<ChessMove> moves = new ArrayList<ChessMove>();
+		try {
+			String fen = game.getStartFen();
+			ChessModel model = new ChessModelFENConverter().getModelFromString(fen == null ? ChessModelFENConverter.FEN_NEW : fen);
+			for (int i=0; i < game.getMoveCount(); i++) {
+				ChessMove move = game.getChessMove(i);
+				assert gameLogic.getLegalMoves(model, model.getActiveColor()).contains(move) : "Move " + move + " should be legal";
+				moves.add(move);
+				model = moveLogic.applyMoveToModel(model, move);
+			}
+		} catch (ChessSystemException cse) {
+			assert false : "unexpected system exception";
+		}
+		return moves;
+	}
+}
@@ -0,0 +1,132 @@
+package com.darringer.games.chess.tablebase;
+
+import static com.darringer.games.chess.model.Color.Black;
+import static com.darringer.games.chess.model.Color.White;
+import static com.darringer.games.chess.model.Location.*;
+import static com.darringer.games.chess.model.Piece.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.darringer.games.chess.logic.GameLogic;
+import com.darringer.games.chess.logic.MoveLogic;
+import com.darringer.games.chess.model.ChessModel;
+import com.darringer.games.chess.model.ChessMove;
+import com.darringer.games.chess.model.ChessSearchTimeoutException;
+import com.darringer.games.chess.model.ChessSystemException;
+
+/**
+ * Generate small endgame tables and make sure their distances to mate,
+ * and the search using them, get known endings right
+ * 
+ * @author cdarringer
+ * 
+ * @see com.darringer.games.chess.tablebase.Tablebase
+ * @see com.darringer.games.chess.tablebase.TablebaseGenerator
+ *
+ */
+public class TestTablebase {
+
+	private GameLogic logic = new GameLogic();
+	
+	
+	/**
+	 * Mates, stalemates, the longest wins and the king and pawn 
+	 * opposition, with either color having the extra piece.  A search 
+	 * with the table keeps a won ending won.
+	 */
+	@Test
+	public void testTablebase() throws ChessSystemException, ChessSearchTimeoutException, IOException {
+		TablebaseGenerator generator = new TablebaseGenerator();
+		File kqkFile = File.createTempFile("KQK", ".tb");
+		File krkFile = File.createTempFile("KRK", ".tb");
+		File kpkFile = File.createTempFile("KPK", ".tb");
+		kqkFile.deleteOnExit();
+		krkFile.deleteOnExit();
+		kpkFile.deleteOnExit();
+		generator.generate("KQK", kqkFile);
+		generator.generate("KRK", krkFile);
+		generator.generate("KPK", kpkFile);
+		Tablebase kqk = new Tablebase(kqkFile);
+		Tablebase krk = new Tablebase(krkFile);
+		Tablebase kpk = new Tablebase(kpkFile);
+		assert kqk.getSignature().equals("KQK") : "Signature is read back from the file";
+		
+		// the longest wins: mate in 10 with a queen, 16 with a rook
+		assert getLongestWin(generator.getTable("KQK")) == 19 : "Queen mates in at most 19 plies";
+		assert getLongestWin(generator.getTable("KRK")) == 31 : "Rook mates in at most 31 plies";
+		
+		// mate, stalemate and mate in one
+		ChessModel model = new ChessModel();
+		model.setPieceAtLocation(A8, BlackKing);
+		model.setPieceAtLocation(B6, WhiteKing);
+		model.setPieceAtLocation(B7, WhiteQueen);
+		model.setActiveColor(Black);
+		assert kqk.isApplicable(model) && !krk.isApplicable(model) : "Only the queen table applies";
+		assert kqk.probe(model) == -1 : "Black is check mated";
+		model.setPieceAtLocation(B7, None);
+		model.setPieceAtLocation(C7, WhiteQueen);
+		assert kqk.probe(model) == Tablebase.DRAW : "Black is stalemated";
+		model.setPieceAtLocation(C7, None);
+		model.setPieceAtLocation(C1, WhiteQueen);
+		model.setActiveColor(White);
+		assert kqk.probe(model) == 1 : "White mates in one";
+		
+		// the same table answers with the colors swapped
+		model = new ChessModel();
+		model.setPieceAtLocation(A1, WhiteKing);
+		model.setPieceAtLocation(B3, BlackKing);
+		model.setPieceAtLocation(B2, BlackQueen);
+		model.setActiveColor(White);
+		assert kqk.isApplicable(model) : "Queen table applies to a black queen";
+		assert kqk.probe(model) == -1 : "White is check mated";
+		
+		// king and pawn: the opposition wins, the rook pawn draws
+		model = new ChessModel();
+		model.setPieceAtLocation(E6, WhiteKing);
+		model.setPieceAtLocation(E5, WhitePawn);
+		model.setPieceAtLocation(E8, BlackKing);
+		model.setActiveColor(Black);
+		assert Tablebase.isLoss(kpk.probe(model)) : "Black to move loses without the opposition";
+		model = new ChessModel();
+		model.setPieceAtLocation(C1, WhiteKing);
+		model.setPieceAtLocation(A2, WhitePawn);
+		model.setPieceAtLocation(A8, BlackKing);
+		model.setActiveColor(White);
+		assert kpk.probe(model) == Tablebase.DRAW : "Rook pawn with the king in the corner is a draw";
+		
+		// the search keeps the win rather than leaving the rook hanging
+		logic.addTablebase(krk);
+		model = new ChessModel();
+		model.setPieceAtLocation(D1, WhiteKing);
+		model.setPieceAtLocation(F3, BlackKing);
+		model.setPieceAtLocation(B2, BlackRook);
+		model.setActiveColor(Black);
+		MoveLogic moveLogic = new MoveLogic();
+		int drawingMoves = 0;
+		for (ChessMove move : logic.getLegalMoves(model, Black)) {
+			if (krk.probe(moveLogic.applyMoveToModel(new ChessModel(model), move)) == Tablebase.DRAW) {
+				drawingMoves++;
+			}
+		}
+		assert drawingMoves > 0 : "Some rook moves throw away the win";
+		ChessMove bestMove = logic.getBestMove(model, Black, 2);
+		assert Tablebase.isLoss(krk.probe(moveLogic.applyMoveToModel(new ChessModel(model), bestMove))) : "Black should keep the win";
+	}
+	
+	
+	/**
+	 * Longest win in a table with white to move
+	 */
+	private int getLongestWin(byte[] table) {
+		int longestWin = 0;
+		for (int i=0; i < table.length / 2; i++) {
+			if (Tablebase.isWin(table[i])) {
+				longestWin = Math.max(longestWin, table[i]);
+			}
+		}
+		return longestWin;
+	}
+}